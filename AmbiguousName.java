@@ -48,7 +48,7 @@ class AmbiguousName {
                 break;
             } else if (!st.hasMoreTokens()) {
                 // Nothing found. :(
-                JAST.compilationUnit.reportSemanticError(line, "Cannot find name " + newName);
+                JAST.compilationUnit().reportSemanticError(line, "Cannot find name " + newName);
                 return null;
             } else {
                 newName += "." + st.nextToken();
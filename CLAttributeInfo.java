@@ -10,7 +10,9 @@ import static jminusminus.CLConstants.*;
 /**
  * The abstract base class for the representation of attribute_info} structure. Classes
  * representing individual attributes inherit this class. This file has representations for all
- * attributes specified in JVM Spec Second Edition, including the ones that were added for JDK 1.5.
+ * attributes specified in JVM Spec Second Edition, including the ones that were added for JDK 1.5,
+ * for the StackMapTable attribute that the type checking verifier (JDK 6) uses, and for the
+ * BootstrapMethods attribute that invokedynamic instructions (JDK 7) refer to.
  * <p>
  * Attributes are used in the CLFile, CLFieldInfo, CLMethodInfo, and CLCodeAttribute structures
  * of the class file. While there are many kinds of attributes, only some are mandatory; these
@@ -167,7 +169,7 @@ class CLCodeAttribute extends CLAttributeInfo {
     /**
      * Code_attribute.code item.
      */
-    public ArrayList<Integer> code;
+    public CLByteBuffer code;
 
     /**
      * Code_attribute.exception_table_length item.
@@ -204,7 +206,7 @@ class CLCodeAttribute extends CLAttributeInfo {
      * @param attributes           Code_attribute.attributes item.
      */
     public CLCodeAttribute(int attributeNameIndex, long attributeLength, int maxStack,
-                           int maxLocals, long codeLength, ArrayList<Integer> code,
+                           int maxLocals, long codeLength, CLByteBuffer code,
                            int exceptionTableLength, ArrayList<CLExceptionInfo> exceptionTable,
                            int attributesCount, ArrayList<CLAttributeInfo> attributes) {
         super(attributeNameIndex, attributeLength);
@@ -226,9 +228,7 @@ class CLCodeAttribute extends CLAttributeInfo {
         out.writeShort(maxStack);
         out.writeShort(maxLocals);
         out.writeInt(codeLength);
-        for (int info : code) {
-            out.writeByte(info);
-        }
+        code.write(out);
         out.writeShort(exceptionTableLength);
         for (CLExceptionInfo info : exceptionTable) {
             info.write(out);
@@ -1338,3 +1338,350 @@ class CLAnnotationDefaultAttribute extends CLAttributeInfo {
         defaultValue.write(out);
     }
 }
+
+/**
+ * Representation of bootstrap_methods table entry structure.
+ */
+class CLBootstrapMethodInfo {
+    /**
+     * bootstrap_methods_table_entry.bootstrap_method_ref item.
+     */
+    public int bootstrapMethodRef;
+
+    /**
+     * bootstrap_methods_table_entry.num_bootstrap_arguments item.
+     */
+    public int numBootstrapArguments;
+
+    /**
+     * bootstrap_methods_table_entry.bootstrap_arguments item.
+     */
+    public ArrayList<Integer> bootstrapArguments;
+
+    /**
+     * Construct a CLBootstrapMethodInfo object.
+     *
+     * @param bootstrapMethodRef    bootstrap_methods_table_entry.bootstrap_method_ref item.
+     * @param numBootstrapArguments bootstrap_methods_table_entry.num_bootstrap_arguments item.
+     * @param bootstrapArguments    bootstrap_methods_table_entry.bootstrap_arguments item.
+     */
+    public CLBootstrapMethodInfo(int bootstrapMethodRef, int numBootstrapArguments,
+                                 ArrayList<Integer> bootstrapArguments) {
+        this.bootstrapMethodRef = bootstrapMethodRef;
+        this.numBootstrapArguments = numBootstrapArguments;
+        this.bootstrapArguments = bootstrapArguments;
+    }
+
+    /**
+     * Write the contents of this object to the specified output stream.
+     *
+     * @param out output stream.
+     * @throws IOException if an error occurs while writing.
+     */
+    public void write(CLOutputStream out) throws IOException {
+        out.writeShort(bootstrapMethodRef);
+        out.writeShort(numBootstrapArguments);
+        for (int argument : bootstrapArguments) {
+            out.writeShort(argument);
+        }
+    }
+
+    /**
+     * Returns true if this entry has the same bootstrap method and arguments as other, and false
+     * otherwise.
+     *
+     * @param other the reference object with which to compare.
+     * @return true if this entry is the same as other, and false otherwise.
+     */
+    public boolean equals(Object other) {
+        if (other instanceof CLBootstrapMethodInfo) {
+            CLBootstrapMethodInfo c = (CLBootstrapMethodInfo) other;
+            return c.bootstrapMethodRef == bootstrapMethodRef
+                    && c.bootstrapArguments.equals(bootstrapArguments);
+        }
+        return false;
+    }
+
+    /**
+     * Returns a hash code for this entry that is consistent with equals().
+     *
+     * @return a hash code for this entry.
+     */
+    public int hashCode() {
+        return 31 * bootstrapMethodRef + bootstrapArguments.hashCode();
+    }
+}
+
+/**
+ * Representation of BootstrapMethods_attribute structure.
+ */
+class CLBootstrapMethodsAttribute extends CLAttributeInfo {
+    /**
+     * BootstrapMethods_attribute.num_bootstrap_methods item.
+     */
+    public int numBootstrapMethods;
+
+    /**
+     * BootstrapMethods_attribute.bootstrap_methods item.
+     */
+    public ArrayList<CLBootstrapMethodInfo> bootstrapMethods;
+
+    /**
+     * Construct a CLBootstrapMethodsAttribute object.
+     *
+     * @param attributeNameIndex  BootstrapMethods_attribute.attribute_name_index item.
+     * @param attributeLength     BootstrapMethods_attribute.attribute_length item.
+     * @param numBootstrapMethods BootstrapMethods_attribute.num_bootstrap_methods item.
+     * @param bootstrapMethods    BootstrapMethods_attribute.bootstrap_methods item.
+     */
+    public CLBootstrapMethodsAttribute(int attributeNameIndex, long attributeLength,
+                                       int numBootstrapMethods,
+                                       ArrayList<CLBootstrapMethodInfo> bootstrapMethods) {
+        super(attributeNameIndex, attributeLength);
+        this.numBootstrapMethods = numBootstrapMethods;
+        this.bootstrapMethods = bootstrapMethods;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void write(CLOutputStream out) throws IOException {
+        super.write(out);
+        out.writeShort(numBootstrapMethods);
+        for (CLBootstrapMethodInfo info : bootstrapMethods) {
+            info.write(out);
+        }
+    }
+}
+
+/**
+ * Representation of verification_type_info structure.
+ */
+class CLVerificationTypeInfo {
+    /**
+     * verification_type_info.tag item.
+     */
+    public short tag;
+
+    /**
+     * Object_variable_info.cpool_index item; applies only to ITEM_Object.
+     */
+    public int cpoolIndex;
+
+    /**
+     * Uninitialized_variable_info.offset item; applies only to ITEM_Uninitialized.
+     */
+    public int offset;
+
+    /**
+     * Construct a CLVerificationTypeInfo object.
+     *
+     * @param tag verification_type_info.tag item.
+     */
+    public CLVerificationTypeInfo(short tag) {
+        this.tag = tag;
+    }
+
+    /**
+     * Construct a CLVerificationTypeInfo object for an ITEM_Object or ITEM_Uninitialized tag.
+     *
+     * @param tag   verification_type_info.tag item.
+     * @param value Object_variable_info.cpool_index item or Uninitialized_variable_info.offset
+     *              item.
+     */
+    public CLVerificationTypeInfo(short tag, int value) {
+        this.tag = tag;
+        if (tag == ITEM_Object) {
+            cpoolIndex = value;
+        } else if (tag == ITEM_Uninitialized) {
+            offset = value;
+        }
+    }
+
+    /**
+     * Return the number of bytes in this verification_type_info structure.
+     *
+     * @return the number of bytes in this structure.
+     */
+    public int length() {
+        return (tag == ITEM_Object || tag == ITEM_Uninitialized) ? 3 : 1;
+    }
+
+    /**
+     * Write the contents of this object to the specified output stream.
+     *
+     * @param out output stream.
+     * @throws IOException if an error occurs while writing.
+     */
+    public void write(CLOutputStream out) throws IOException {
+        out.writeByte(tag);
+        if (tag == ITEM_Object) {
+            out.writeShort(cpoolIndex);
+        } else if (tag == ITEM_Uninitialized) {
+            out.writeShort(offset);
+        }
+    }
+
+    /**
+     * Return true if this verification_type_info object is the same as other, and false
+     * otherwise.
+     *
+     * @param other the reference verification_type_info object with which to compare.
+     * @return true if this verification_type_info object is the same as other, and false
+     * otherwise.
+     */
+    public boolean equals(Object other) {
+        if (other instanceof CLVerificationTypeInfo) {
+            CLVerificationTypeInfo c = (CLVerificationTypeInfo) other;
+            if (c.tag == tag && c.cpoolIndex == cpoolIndex && c.offset == offset) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
+
+/**
+ * Representation of stack_map_frame structure. The frame type determines which of the items
+ * are written: same_frame (SAME_FRAME to SAME_LOCALS_1_STACK_ITEM_FRAME - 1) writes none,
+ * same_locals_1_stack_item_frame (SAME_LOCALS_1_STACK_ITEM_FRAME to 127) and its extended form
+ * write the one stack item, chop_frame and same_frame_extended write no locals, append_frame
+ * writes the locals added, and full_frame writes all of them.
+ */
+class CLStackMapFrame {
+    /**
+     * stack_map_frame.frame_type item.
+     */
+    public int frameType;
+
+    /**
+     * stack_map_frame.offset_delta item; implicit in the frame type of same_frame and
+     * same_locals_1_stack_item_frame structures.
+     */
+    public int offsetDelta;
+
+    /**
+     * stack_map_frame.locals item.
+     */
+    public ArrayList<CLVerificationTypeInfo> locals;
+
+    /**
+     * stack_map_frame.stack item.
+     */
+    public ArrayList<CLVerificationTypeInfo> stack;
+
+    /**
+     * Construct a CLStackMapFrame object.
+     *
+     * @param frameType   stack_map_frame.frame_type item.
+     * @param offsetDelta stack_map_frame.offset_delta item.
+     * @param locals      stack_map_frame.locals item.
+     * @param stack       stack_map_frame.stack item.
+     */
+    public CLStackMapFrame(int frameType, int offsetDelta,
+                           ArrayList<CLVerificationTypeInfo> locals,
+                           ArrayList<CLVerificationTypeInfo> stack) {
+        this.frameType = frameType;
+        this.offsetDelta = offsetDelta;
+        this.locals = locals;
+        this.stack = stack;
+    }
+
+    /**
+     * Return the number of bytes in this stack_map_frame structure.
+     *
+     * @return the number of bytes in this structure.
+     */
+    public int length() {
+        int length = 1;
+        if (frameType >= SAME_LOCALS_1_STACK_ITEM_FRAME_EXTENDED) {
+            length += 2;
+        }
+        if (frameType == FULL_FRAME) {
+            length += 4;
+        }
+        if (frameType >= APPEND_FRAME) {
+            for (CLVerificationTypeInfo info : locals) {
+                length += info.length();
+            }
+        }
+        if (frameType >= SAME_LOCALS_1_STACK_ITEM_FRAME && frameType < CHOP_FRAME ||
+                frameType == FULL_FRAME) {
+            for (CLVerificationTypeInfo info : stack) {
+                length += info.length();
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Write the contents of this object to the specified output stream.
+     *
+     * @param out output stream.
+     * @throws IOException if an error occurs while writing.
+     */
+    public void write(CLOutputStream out) throws IOException {
+        out.writeByte(frameType);
+        if (frameType >= SAME_LOCALS_1_STACK_ITEM_FRAME_EXTENDED) {
+            out.writeShort(offsetDelta);
+        }
+        if (frameType == FULL_FRAME) {
+            out.writeShort(locals.size());
+        }
+        if (frameType >= APPEND_FRAME) {
+            for (CLVerificationTypeInfo info : locals) {
+                info.write(out);
+            }
+        }
+        if (frameType == FULL_FRAME) {
+            out.writeShort(stack.size());
+        }
+        if (frameType >= SAME_LOCALS_1_STACK_ITEM_FRAME && frameType < CHOP_FRAME ||
+                frameType == FULL_FRAME) {
+            for (CLVerificationTypeInfo info : stack) {
+                info.write(out);
+            }
+        }
+    }
+}
+
+/**
+ * Representation of StackMapTable_attribute structure.
+ */
+class CLStackMapTableAttribute extends CLAttributeInfo {
+    /**
+     * StackMapTable_attribute.number_of_entries item.
+     */
+    public int numberOfEntries;
+
+    /**
+     * StackMapTable_attribute.entries item.
+     */
+    public ArrayList<CLStackMapFrame> entries;
+
+    /**
+     * Construct a CLStackMapTableAttribute object.
+     *
+     * @param attributeNameIndex StackMapTable_attribute.attribute_name_index item.
+     * @param attributeLength    StackMapTable_attribute.attribute_length item.
+     * @param numberOfEntries    StackMapTable_attribute.number_of_entries item.
+     * @param entries            StackMapTable_attribute.entries item.
+     */
+    public CLStackMapTableAttribute(int attributeNameIndex, long attributeLength,
+                                    int numberOfEntries, ArrayList<CLStackMapFrame> entries) {
+        super(attributeNameIndex, attributeLength);
+        this.numberOfEntries = numberOfEntries;
+        this.entries = entries;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void write(CLOutputStream out) throws IOException {
+        super.write(out);
+        out.writeShort(numberOfEntries);
+        for (CLStackMapFrame frame : entries) {
+            frame.write(out);
+        }
+    }
+}
@@ -40,6 +40,16 @@ abstract class CLCPInfo {
     public boolean equals(Object other) {
         return false;
     }
+
+    /**
+     * Returns a hash code for this CLCPInfo object that is consistent with equals(), computed from
+     * the tag and the payload of the item.
+     *
+     * @return a hash code for this CLCPInfo object.
+     */
+    public int hashCode() {
+        return tag;
+    }
 }
 
 /**
@@ -81,6 +91,13 @@ class CLConstantClassInfo extends CLCPInfo {
         }
         return false;
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int hashCode() {
+        return 31 * tag + nameIndex;
+    }
 }
 
 /**
@@ -133,6 +150,13 @@ abstract class CLConstantMemberRefInfo extends CLCPInfo {
         }
         return false;
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int hashCode() {
+        return (31 * tag + classIndex) * 31 + nameAndTypeIndex;
+    }
 }
 
 /**
@@ -220,6 +244,13 @@ class CLConstantStringInfo extends CLCPInfo {
         }
         return false;
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int hashCode() {
+        return 31 * tag + stringIndex;
+    }
 }
 
 /**
@@ -279,6 +310,13 @@ class CLConstantIntegerInfo extends CLCPInfo {
         }
         return false;
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int hashCode() {
+        return 31 * tag + i;
+    }
 }
 
 /**
@@ -336,6 +374,14 @@ class CLConstantFloatInfo extends CLCPInfo {
         }
         return false;
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int hashCode() {
+        // 0.0f and -0.0f are equal under ==, so they must hash alike.
+        return 31 * tag + (f == 0.0f ? 0 : Float.floatToIntBits(f));
+    }
 }
 
 /**
@@ -423,6 +469,13 @@ class CLConstantLongInfo extends CLCPInfo {
         }
         return false;
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int hashCode() {
+        return 31 * tag + Long.hashCode(l);
+    }
 }
 
 /**
@@ -510,6 +563,14 @@ class CLConstantDoubleInfo extends CLCPInfo {
         }
         return false;
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int hashCode() {
+        // 0.0 and -0.0 are equal under ==, so they must hash alike.
+        return 31 * tag + (d == 0.0 ? 0 : Double.hashCode(d));
+    }
 }
 
 /**
@@ -560,6 +621,175 @@ class CLConstantNameAndTypeInfo extends CLCPInfo {
         }
         return false;
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int hashCode() {
+        return (31 * tag + nameIndex) * 31 + descriptorIndex;
+    }
+}
+
+/**
+ * Representation of CONSTANT_MethodHandle_info structure.
+ */
+class CLConstantMethodHandleInfo extends CLCPInfo {
+    /**
+     * CONSTANT_MethodHandle_info.reference_kind item.
+     */
+    public int referenceKind;
+
+    /**
+     * CONSTANT_MethodHandle_info.reference_index item.
+     */
+    public int referenceIndex;
+
+    /**
+     * Constructs a CLConstantMethodHandleInfo object.
+     *
+     * @param referenceKind  CONSTANT_MethodHandle_info.reference_kind item.
+     * @param referenceIndex CONSTANT_MethodHandle_info.reference_index item.
+     */
+    public CLConstantMethodHandleInfo(int referenceKind, int referenceIndex) {
+        super.tag = CONSTANT_MethodHandle;
+        this.referenceKind = referenceKind;
+        this.referenceIndex = referenceIndex;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void write(CLOutputStream out) throws IOException {
+        super.write(out);
+        out.writeByte(referenceKind);
+        out.writeShort(referenceIndex);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean equals(Object other) {
+        if (other instanceof CLConstantMethodHandleInfo) {
+            CLConstantMethodHandleInfo c = (CLConstantMethodHandleInfo) other;
+            if ((c.referenceKind == referenceKind) && (c.referenceIndex == referenceIndex)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int hashCode() {
+        return (31 * tag + referenceKind) * 31 + referenceIndex;
+    }
+}
+
+/**
+ * Representation of CONSTANT_MethodType_info structure.
+ */
+class CLConstantMethodTypeInfo extends CLCPInfo {
+    /**
+     * CONSTANT_MethodType_info.descriptor_index item.
+     */
+    public int descriptorIndex;
+
+    /**
+     * Constructs a CLConstantMethodTypeInfo object.
+     *
+     * @param descriptorIndex CONSTANT_MethodType_info.descriptor_index item.
+     */
+    public CLConstantMethodTypeInfo(int descriptorIndex) {
+        super.tag = CONSTANT_MethodType;
+        this.descriptorIndex = descriptorIndex;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void write(CLOutputStream out) throws IOException {
+        super.write(out);
+        out.writeShort(descriptorIndex);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean equals(Object other) {
+        if (other instanceof CLConstantMethodTypeInfo) {
+            CLConstantMethodTypeInfo c = (CLConstantMethodTypeInfo) other;
+            if (c.descriptorIndex == descriptorIndex) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int hashCode() {
+        return 31 * tag + descriptorIndex;
+    }
+}
+
+/**
+ * Representation of CONSTANT_InvokeDynamic_info structure.
+ */
+class CLConstantInvokeDynamicInfo extends CLCPInfo {
+    /**
+     * CONSTANT_InvokeDynamic_info.bootstrap_method_attr_index item.
+     */
+    public int bootstrapMethodAttrIndex;
+
+    /**
+     * CONSTANT_InvokeDynamic_info.name_and_type_index item.
+     */
+    public int nameAndTypeIndex;
+
+    /**
+     * Constructs a CLConstantInvokeDynamicInfo object.
+     *
+     * @param bootstrapMethodAttrIndex CONSTANT_InvokeDynamic_info.bootstrap_method_attr_index
+     *                                 item.
+     * @param nameAndTypeIndex         CONSTANT_InvokeDynamic_info.name_and_type_index item.
+     */
+    public CLConstantInvokeDynamicInfo(int bootstrapMethodAttrIndex, int nameAndTypeIndex) {
+        super.tag = CONSTANT_InvokeDynamic;
+        this.bootstrapMethodAttrIndex = bootstrapMethodAttrIndex;
+        this.nameAndTypeIndex = nameAndTypeIndex;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void write(CLOutputStream out) throws IOException {
+        super.write(out);
+        out.writeShort(bootstrapMethodAttrIndex);
+        out.writeShort(nameAndTypeIndex);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean equals(Object other) {
+        if (other instanceof CLConstantInvokeDynamicInfo) {
+            CLConstantInvokeDynamicInfo c = (CLConstantInvokeDynamicInfo) other;
+            if ((c.bootstrapMethodAttrIndex == bootstrapMethodAttrIndex)
+                    && (c.nameAndTypeIndex == nameAndTypeIndex)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int hashCode() {
+        return (31 * tag + bootstrapMethodAttrIndex) * 31 + nameAndTypeIndex;
+    }
 }
 
 /**
@@ -610,4 +840,11 @@ class CLConstantUtf8Info extends CLCPInfo {
         }
         return false;
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int hashCode() {
+        return 31 * tag + (new String(b)).hashCode();
+    }
 }
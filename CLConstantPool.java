@@ -4,9 +4,15 @@ package jminusminus;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
+
+import static jminusminus.CLConstants.*;
 
 /**
- * Representation of a class' constant pool.
+ * Representation of a class' constant pool. The pool may be shared by threads generating the
+ * code of different methods of the class (see CLEmitter.methodEmitter()), so the methods that
+ * look up or add items are synchronized; an item's index depends on the order in which the
+ * threads add items.
  */
 class CLConstantPool {
     // Index of the next item into the constant pool.
@@ -15,12 +21,17 @@ class CLConstantPool {
     // List of constant pool items.
     private ArrayList<CLCPInfo> cpItems;
 
+    // Maps each constant pool item (by its tag and payload) to its index in the constant pool, so
+    // that lookups do not have to scan cpItems.
+    private HashMap<CLCPInfo, Integer> cpIndices;
+
     /**
      * Constructs an empty constant pool.
      */
     public CLConstantPool() {
         cpIndex = 1;
         cpItems = new ArrayList<CLCPInfo>();
+        cpIndices = new HashMap<CLCPInfo, Integer>();
     }
 
     /**
@@ -28,7 +39,7 @@ class CLConstantPool {
      *
      * @return the size of the constant pool.
      */
-    public int size() {
+    public synchronized int size() {
         return cpItems.size();
     }
 
@@ -38,9 +49,9 @@ class CLConstantPool {
      * @param cpInfo item to find.
      * @return the index of the specified item in the constant pool or -1.
      */
-    public int find(CLCPInfo cpInfo) {
-        int index = cpItems.indexOf(cpInfo);
-        return (index != -1) ? cpItems.get(index).cpIndex : index;
+    public synchronized int find(CLCPInfo cpInfo) {
+        Integer index = cpIndices.get(cpInfo);
+        return (index != null) ? index : -1;
     }
 
     /**
@@ -49,7 +60,7 @@ class CLConstantPool {
      * @param i constant pool index.
      * @return the constant pool item at the specified index or null.
      */
-    public CLCPInfo cpItem(int i) {
+    public synchronized CLCPInfo cpItem(int i) {
         if (((i - 1) < 0) || ((i - 1) >= cpItems.size())) {
             return null;
         }
@@ -62,9 +73,10 @@ class CLConstantPool {
      * @param cpInfo the item to add.
      * @return constant pool index of the item.
      */
-    public int addCPItem(CLCPInfo cpInfo) {
+    public synchronized int addCPItem(CLCPInfo cpInfo) {
         cpInfo.cpIndex = cpIndex++;
         cpItems.add(cpInfo);
+        cpIndices.putIfAbsent(cpInfo, cpInfo.cpIndex);
 
         // long and double, with their lower and higher words, are treated by JVM as two items in
         // the constant pool. We have a single representation for each, so we add a null as
@@ -82,7 +94,7 @@ class CLConstantPool {
      * @param out output stream.
      * @throws IOException if an error occurs while writing.
      */
-    public void write(CLOutputStream out) throws IOException {
+    public synchronized void write(CLOutputStream out) throws IOException {
         for (CLCPInfo cpInfo : cpItems) {
             if (cpInfo != null) {
                 cpInfo.write(out);
@@ -210,6 +222,55 @@ class CLConstantPool {
         return findOrAdd(c);
     }
 
+    /**
+     * Returns the constant pool index of a singleton instance of CLConstantMethodHandleInfo.
+     *
+     * @param referenceKind kind of the method handle (one of the REF_ constants in CLConstants).
+     * @param className     class or interface name in internal form.
+     * @param name          name of the field or method.
+     * @param type          descriptor of the field or method.
+     * @return constant pool index.
+     */
+    public int constantMethodHandleInfo(int referenceKind, String className, String name,
+                                        String type) {
+        int referenceIndex;
+        if (referenceKind <= REF_putStatic) {
+            referenceIndex = constantFieldRefInfo(className, name, type);
+        } else if (referenceKind == REF_invokeInterface) {
+            referenceIndex = constantInterfaceMethodRefInfo(className, name, type);
+        } else {
+            referenceIndex = constantMethodRefInfo(className, name, type);
+        }
+        CLCPInfo c = new CLConstantMethodHandleInfo(referenceKind, referenceIndex);
+        return findOrAdd(c);
+    }
+
+    /**
+     * Returns the constant pool index of a singleton instance of CLConstantMethodTypeInfo.
+     *
+     * @param type method descriptor.
+     * @return constant pool index.
+     */
+    public int constantMethodTypeInfo(String type) {
+        CLCPInfo c = new CLConstantMethodTypeInfo(constantUtf8Info(type));
+        return findOrAdd(c);
+    }
+
+    /**
+     * Returns the constant pool index of a singleton instance of CLConstantInvokeDynamicInfo.
+     *
+     * @param bootstrapMethodAttrIndex index of the bootstrap method in the BootstrapMethods
+     *                                 attribute of the class.
+     * @param name                     name of the call site.
+     * @param type                     method descriptor of the call site.
+     * @return constant pool index.
+     */
+    public int constantInvokeDynamicInfo(int bootstrapMethodAttrIndex, String name, String type) {
+        CLCPInfo c = new CLConstantInvokeDynamicInfo(bootstrapMethodAttrIndex,
+                constantNameAndTypeInfo(name, type));
+        return findOrAdd(c);
+    }
+
     /**
      * Returns the constant pool index of a singleton instance of CLConstantUtf8Info.
      *
@@ -223,7 +284,7 @@ class CLConstantPool {
 
     // Returns the index of the specified item in the constant pool. If the item does not exist,
     // adds the item to the pool and return its (new) index.
-    private int findOrAdd(CLCPInfo cpInfo) {
+    private synchronized int findOrAdd(CLCPInfo cpInfo) {
         int index = find(cpInfo);
         if (index == -1) {
             index = addCPItem(cpInfo);
@@ -21,6 +21,24 @@ public class CLConstants {
      */
     public static final int MINOR_VERSION = 0;
 
+    /**
+     * Lowest major version of a class file that may contain invokedynamic instructions, and the
+     * constant pool structures they need; j-- raises the version of such a class to this.
+     */
+    public static final int INVOKEDYNAMIC_MAJOR_VERSION = 51;
+
+    /**
+     * Lowest major version of a class file that may be verified by type checking, using the
+     * StackMapTable attributes of its methods; j-- adds these attributes to such a class. From
+     * major version 51 on, a class cannot be verified without them.
+     */
+    public static final int STACK_MAP_MAJOR_VERSION = 50;
+
+    /**
+     * Maximum length, in bytes, of the code array of a method.
+     */
+    public static final int MAX_CODE_LENGTH = 65535;
+
     /**
      * public access flag.
      */
@@ -166,6 +184,66 @@ public class CLConstants {
      */
     public static final short CONSTANT_NameAndType = 12;
 
+    /**
+     * Identifies CONSTANT_MethodHandle_info constant pool structure.
+     */
+    public static final short CONSTANT_MethodHandle = 15;
+
+    /**
+     * Identifies CONSTANT_MethodType_info constant pool structure.
+     */
+    public static final short CONSTANT_MethodType = 16;
+
+    /**
+     * Identifies CONSTANT_InvokeDynamic_info constant pool structure.
+     */
+    public static final short CONSTANT_InvokeDynamic = 18;
+
+    /**
+     * Method handle kind for reading an instance field.
+     */
+    public static final int REF_getField = 1;
+
+    /**
+     * Method handle kind for reading a static field.
+     */
+    public static final int REF_getStatic = 2;
+
+    /**
+     * Method handle kind for writing an instance field.
+     */
+    public static final int REF_putField = 3;
+
+    /**
+     * Method handle kind for writing a static field.
+     */
+    public static final int REF_putStatic = 4;
+
+    /**
+     * Method handle kind for invoking an instance method.
+     */
+    public static final int REF_invokeVirtual = 5;
+
+    /**
+     * Method handle kind for invoking a static method.
+     */
+    public static final int REF_invokeStatic = 6;
+
+    /**
+     * Method handle kind for invoking a private or super class instance method.
+     */
+    public static final int REF_invokeSpecial = 7;
+
+    /**
+     * Method handle kind for invoking a constructor on a new object.
+     */
+    public static final int REF_newInvokeSpecial = 8;
+
+    /**
+     * Method handle kind for invoking an interface method.
+     */
+    public static final int REF_invokeInterface = 9;
+
     /**
      * Identifies ConstantValue attribute.
      */
@@ -258,6 +336,16 @@ public class CLConstants {
      */
     public static final String ATT_ANNOTATION_DEFAULT = "AnnotationDefault";
 
+    /**
+     * Identifies BootstrapMethods attribute.
+     */
+    public static final String ATT_BOOTSTRAP_METHODS = "BootstrapMethods";
+
+    /**
+     * Identifies StackMapTable attribute.
+     */
+    public static final String ATT_STACK_MAP_TABLE = "StackMapTable";
+
     /**
      * Identifies boolean type of annotation element value.
      */
@@ -323,6 +411,86 @@ public class CLConstants {
      */
     public static final short ELT_e = 'e';
 
+    /**
+     * Identifies top type of verification type info.
+     */
+    public static final short ITEM_Top = 0;
+
+    /**
+     * Identifies int type of verification type info.
+     */
+    public static final short ITEM_Integer = 1;
+
+    /**
+     * Identifies float type of verification type info.
+     */
+    public static final short ITEM_Float = 2;
+
+    /**
+     * Identifies double type of verification type info.
+     */
+    public static final short ITEM_Double = 3;
+
+    /**
+     * Identifies long type of verification type info.
+     */
+    public static final short ITEM_Long = 4;
+
+    /**
+     * Identifies null type of verification type info.
+     */
+    public static final short ITEM_Null = 5;
+
+    /**
+     * Identifies uninitialized this type of verification type info.
+     */
+    public static final short ITEM_UninitializedThis = 6;
+
+    /**
+     * Identifies object type of verification type info.
+     */
+    public static final short ITEM_Object = 7;
+
+    /**
+     * Identifies uninitialized (object) type of verification type info.
+     */
+    public static final short ITEM_Uninitialized = 8;
+
+    /**
+     * Smallest frame type of same_frame stack map frames.
+     */
+    public static final int SAME_FRAME = 0;
+
+    /**
+     * Smallest frame type of same_locals_1_stack_item_frame stack map frames.
+     */
+    public static final int SAME_LOCALS_1_STACK_ITEM_FRAME = 64;
+
+    /**
+     * Frame type of same_locals_1_stack_item_frame_extended stack map frames.
+     */
+    public static final int SAME_LOCALS_1_STACK_ITEM_FRAME_EXTENDED = 247;
+
+    /**
+     * Smallest frame type of chop_frame stack map frames.
+     */
+    public static final int CHOP_FRAME = 248;
+
+    /**
+     * Frame type of same_frame_extended stack map frames.
+     */
+    public static final int SAME_FRAME_EXTENDED = 251;
+
+    /**
+     * Smallest frame type of append_frame stack map frames.
+     */
+    public static final int APPEND_FRAME = 252;
+
+    /**
+     * Frame type of full_frame stack map frames.
+     */
+    public static final int FULL_FRAME = 255;
+
     // JVM instructions begin here
 
     /**
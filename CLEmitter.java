@@ -12,6 +12,7 @@ import java.io.IOException;
 import java.io.OutputStream;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Hashtable;
 import java.util.Stack;
 import java.util.StringTokenizer;
@@ -66,6 +67,31 @@ public class CLEmitter {
     // Inner classes of the class.
     private ArrayList<CLInnerClassInfo> innerClasses;
 
+    // Bootstrap methods of the invokedynamic instructions in the class, in the order in which
+    // their CONSTANT_InvokeDynamic_info structures refer to them.
+    private ArrayList<CLBootstrapMethodInfo> bootstrapMethods;
+
+    // The BootstrapMethods attribute last added to the class, or null.
+    private CLBootstrapMethodsAttribute bootstrapMethodsAttribute;
+
+    // Whether string concatenation is to be compiled to an invokedynamic instruction.
+    private boolean invokeDynamicConcat;
+
+    // Major version of the class files built; the methods of a class of version
+    // STACK_MAP_MAJOR_VERSION or later get StackMapTable attributes.
+    private int majorVersion = MAJOR_VERSION;
+
+    // Peephole optimizer run over the code of each method when it is ended, or null.
+    private CLPeepholeOptimizer peepholeOptimizer;
+
+    // Class loader of the thread that constructed this emitter, through which the classes of the
+    // compilation unit are found when computing stack map frames.
+    private ByteClassLoader classLoader;
+
+    // Whether this emitter generates methods for the class of another emitter, rather than a
+    // class of its own (see methodEmitter()).
+    private boolean isMethodEmitter;
+
     // Code (instruction) section of the method last added.
     private ArrayList<CLInstruction> mCode;
 
@@ -109,14 +135,21 @@ public class CLEmitter {
     // added.
     private int mPC;
 
+    // Maps a pc within the code section of the method last added to the index (within mCode) of
+    // the instruction at that pc, or to -1 if no instruction starts there. Built by
+    // indexInstructions() once the code section is complete.
+    private int[] mPCIndex;
+
     // Name of the method last added; used for error reporting.
     private String eCurrentMethod;
 
     // Whether an error occurred while creating/writing the class.
     private boolean errorHasOccurred;
 
-    // Class loader to use for creating in-memory representation of classes from byte streams.
-    private static ByteClassLoader byteClassLoader;
+    // Class loader to use for creating in-memory representation of classes from byte streams;
+    // each thread compiling a unit has its own.
+    private static ThreadLocal<ByteClassLoader> byteClassLoader =
+            new ThreadLocal<ByteClassLoader>();
 
     /**
      * Constructs a CLEmitter instance given a boolean on whether or not the class file will be
@@ -128,6 +161,7 @@ public class CLEmitter {
     public CLEmitter(boolean toFile) {
         destDir = ".";
         this.toFile = toFile;
+        classLoader = byteClassLoader.get();
     }
 
     /**
@@ -139,6 +173,69 @@ public class CLEmitter {
         this.destDir = destDir;
     }
 
+    /**
+     * Sets whether string concatenation is to be compiled to an invokedynamic instruction that
+     * calls java.lang.invoke.StringConcatFactory.makeConcatWithConstants() (which needs JDK 9 or
+     * later to run), rather than to code that builds the string with a StringBuilder.
+     *
+     * @param invokeDynamicConcat whether string concatenation is compiled to invokedynamic.
+     */
+    public void invokeDynamicConcat(boolean invokeDynamicConcat) {
+        this.invokeDynamicConcat = invokeDynamicConcat;
+    }
+
+    /**
+     * Returns true if string concatenation is to be compiled to an invokedynamic instruction,
+     * and false otherwise.
+     *
+     * @return true if string concatenation is to be compiled to an invokedynamic instruction,
+     * and false otherwise.
+     */
+    public boolean invokeDynamicConcat() {
+        return invokeDynamicConcat;
+    }
+
+    /**
+     * Sets the major version of the class files built, which is MAJOR_VERSION by default. From
+     * STACK_MAP_MAJOR_VERSION on, each method gets a StackMapTable attribute, computed when the
+     * method is ended. A class is built with at least INVOKEDYNAMIC_MAJOR_VERSION if string
+     * concatenation is compiled to invokedynamic.
+     *
+     * @param majorVersion the major version of the class files built.
+     */
+    public void majorVersion(int majorVersion) {
+        this.majorVersion = majorVersion;
+    }
+
+    /**
+     * Returns the major version of the class files built.
+     *
+     * @return the major version of the class files built.
+     */
+    public int majorVersion() {
+        return majorVersion;
+    }
+
+    /**
+     * Sets the peephole optimizer to run over the code of each method when the method is ended,
+     * before its jump labels are resolved. The code is not optimized if the optimizer is null,
+     * which is the default.
+     *
+     * @param peepholeOptimizer the peephole optimizer, or null.
+     */
+    public void peepholeOptimizer(CLPeepholeOptimizer peepholeOptimizer) {
+        this.peepholeOptimizer = peepholeOptimizer;
+    }
+
+    /**
+     * Returns the peephole optimizer run over the code of each method, or null if there is none.
+     *
+     * @return the peephole optimizer, or null.
+     */
+    public CLPeepholeOptimizer peepholeOptimizer() {
+        return peepholeOptimizer;
+    }
+
     /**
      * Returns true if an emitter error has occurred up to now, and false otherwise.
      *
@@ -171,9 +268,16 @@ public class CLEmitter {
         methods = new ArrayList<CLMethodInfo>();
         attributes = new ArrayList<CLAttributeInfo>();
         innerClasses = new ArrayList<CLInnerClassInfo>();
+        bootstrapMethods = new ArrayList<CLBootstrapMethodInfo>();
+        bootstrapMethodsAttribute = null;
         errorHasOccurred = false;
         clFile.magic = MAGIC;
-        clFile.majorVersion = MAJOR_VERSION;
+        clFile.majorVersion = majorVersion;
+        if (invokeDynamicConcat) {
+            // Fixed from the start, so that methods ended before an invokedynamic instruction
+            // is added get their StackMapTable attributes too.
+            clFile.majorVersion = Math.max(majorVersion, INVOKEDYNAMIC_MAJOR_VERSION);
+        }
         clFile.minorVersion = MINOR_VERSION;
         if (!validInternalForm(thisClass)) {
             reportEmitterError("'%s' is not in internal form", thisClass);
@@ -348,6 +452,48 @@ public class CLEmitter {
         }
     }
 
+    /**
+     * Returns a new emitter for generating methods of the class being built, which may be used
+     * by another thread while this emitter, and other method emitters for the class, are used.
+     * The methods share the constant pool (and the bootstrap methods) of the class, so the
+     * order of its items depends on how the threads interleave; otherwise, each method comes
+     * out as if it were generated by this emitter. Only methods (with their instructions,
+     * exception handlers and attributes) may be added to a method emitter, and they become part
+     * of the class when the emitter is passed to addMethods().
+     *
+     * @return a new method emitter for the class being built.
+     */
+    public CLEmitter methodEmitter() {
+        CLEmitter emitter = new CLEmitter(false);
+        emitter.isMethodEmitter = true;
+        emitter.name = name;
+        emitter.invokeDynamicConcat = invokeDynamicConcat;
+        emitter.majorVersion = majorVersion;
+        emitter.peepholeOptimizer = peepholeOptimizer;
+        emitter.classLoader = classLoader;
+        emitter.clFile = new CLFile();
+        emitter.clFile.majorVersion = clFile.majorVersion;
+        emitter.constantPool = constantPool;
+        emitter.bootstrapMethods = bootstrapMethods;
+        emitter.methods = new ArrayList<CLMethodInfo>();
+        return emitter;
+    }
+
+    /**
+     * Adds the methods generated by the specified method emitter (see methodEmitter()) to the
+     * class, after the methods added to it so far. Neither emitter may be in use by another
+     * thread.
+     *
+     * @param methodEmitter a method emitter for the class being built.
+     */
+    public void addMethods(CLEmitter methodEmitter) {
+        endOpenMethodIfAny();
+        methodEmitter.endOpenMethodIfAny();
+        methods.addAll(methodEmitter.methods);
+        clFile.majorVersion = Math.max(clFile.majorVersion, methodEmitter.clFile.majorVersion);
+        errorHasOccurred |= methodEmitter.errorHasOccurred;
+    }
+
     /**
      * Adds an exception handler.
      *
@@ -583,9 +729,11 @@ public class CLEmitter {
      * Method Instructions:
      *
      * <pre>
-     *   INVOKEVIRTUAL, INVOKESPECIAL, INVOKESTATIC, INVOKEINTERFACE, INVOKEDYNAMIC
+     *   INVOKEVIRTUAL, INVOKESPECIAL, INVOKESTATIC, INVOKEINTERFACE
      * </pre>
      * <p>
+     * INVOKEDYNAMIC is added using addInvokeDynamicInstruction().
+     * <p>
      * The opcodes for instructions are defined in CLConstants class.
      *
      * @param opcode opcode of the instruction.
@@ -615,6 +763,10 @@ public class CLEmitter {
                 instr = new CLFieldInstruction(opcode, mPC++, index, stackUnits);
                 break;
             case METHOD1:
+                if (opcode == INVOKEDYNAMIC) {
+                    reportOpcodeError(opcode);
+                    break;
+                }
                 if (!validMethodDescriptor(type)) {
                     reportEmitterError("%s: '%s' is not a valid type descriptor for method",
                             eCurrentMethod, type);
@@ -648,6 +800,77 @@ public class CLEmitter {
         }
     }
 
+    /**
+     * Adds an INVOKEDYNAMIC instruction, whose call site is linked by calling the given static
+     * bootstrap method. The bootstrap method is passed a MethodHandles.Lookup, the name and the
+     * type (as a MethodType) of the call site, followed by the given static arguments, each of
+     * which must be a String, an Integer, a Long, a Float, or a Double.
+     * <p>
+     * A class with an INVOKEDYNAMIC instruction is written with a major version of at least
+     * INVOKEDYNAMIC_MAJOR_VERSION.
+     *
+     * @param bootstrapClass     fully qualified name in internal form of the class declaring the
+     *                           bootstrap method.
+     * @param bootstrapName      name of the bootstrap method.
+     * @param bootstrapType      type descriptor of the bootstrap method.
+     * @param bootstrapArguments static arguments for the bootstrap method.
+     * @param name               name of the call site.
+     * @param type               type descriptor of the call site.
+     */
+    public void addInvokeDynamicInstruction(String bootstrapClass, String bootstrapName,
+                                            String bootstrapType,
+                                            ArrayList<Object> bootstrapArguments, String name,
+                                            String type) {
+        if (!validInternalForm(bootstrapClass)) {
+            reportEmitterError("%s: '%s' is not in internal form", eCurrentMethod,
+                    bootstrapClass);
+        }
+        if (!validMethodDescriptor(bootstrapType)) {
+            reportEmitterError("%s: '%s' is not a valid type descriptor for method",
+                    eCurrentMethod, bootstrapType);
+        }
+        if (!validMethodDescriptor(type)) {
+            reportEmitterError("%s: '%s' is not a valid type descriptor for method",
+                    eCurrentMethod, type);
+        }
+        ArrayList<Integer> arguments = new ArrayList<Integer>();
+        for (Object argument : bootstrapArguments) {
+            if (argument instanceof String) {
+                arguments.add(constantPool.constantStringInfo((String) argument));
+            } else if (argument instanceof Integer) {
+                arguments.add(constantPool.constantIntegerInfo((Integer) argument));
+            } else if (argument instanceof Long) {
+                arguments.add(constantPool.constantLongInfo((Long) argument));
+            } else if (argument instanceof Float) {
+                arguments.add(constantPool.constantFloatInfo((Float) argument));
+            } else if (argument instanceof Double) {
+                arguments.add(constantPool.constantDoubleInfo((Double) argument));
+            } else {
+                reportEmitterError("%s: '%s' is not a valid bootstrap method argument",
+                        eCurrentMethod, argument);
+            }
+        }
+        CLBootstrapMethodInfo bootstrapMethod = new CLBootstrapMethodInfo(
+                constantPool.constantMethodHandleInfo(REF_invokeStatic, bootstrapClass,
+                        bootstrapName, bootstrapType), arguments.size(), arguments);
+        int bootstrapMethodIndex;
+        synchronized (bootstrapMethods) {
+            // Shared with the method emitters of the class.
+            bootstrapMethodIndex = bootstrapMethods.indexOf(bootstrapMethod);
+            if (bootstrapMethodIndex == -1) {
+                bootstrapMethodIndex = bootstrapMethods.size();
+                bootstrapMethods.add(bootstrapMethod);
+            }
+        }
+        int index = constantPool.constantInvokeDynamicInfo(bootstrapMethodIndex, name, type);
+        CLInstruction instr = new CLMethodInstruction(INVOKEDYNAMIC, mPC++, index,
+                methodStackResidue(type));
+        mPC += instr.operandCount();
+        mCode.add(instr);
+        mInstructionAfterLabel = true;
+        clFile.majorVersion = Math.max(clFile.majorVersion, INVOKEDYNAMIC_MAJOR_VERSION);
+    }
+
     /**
      * Adds a reference (object) instruction. The following instructions can be added using this
      * method:
@@ -956,7 +1179,7 @@ public class CLEmitter {
      * Sets a new ByteClassLoader for loading classes from byte streams.
      */
     public static void initializeByteClassLoader() {
-        byteClassLoader = new ByteClassLoader();
+        byteClassLoader.set(new ByteClassLoader());
     }
 
     /**
@@ -986,8 +1209,9 @@ public class CLEmitter {
             byteStream.close();
 
             // Load a Java Class instance from its byte representation.
-            byteClassLoader.setClassBytes(classBytes);
-            theClass = byteClassLoader.loadClass(name, true);
+            ByteClassLoader loader = byteClassLoader.get();
+            loader.setClassBytes(classBytes);
+            theClass = loader.loadClass(name, true);
         } catch (IOException e) {
             reportEmitterError("Cannot write class to byte stream");
         } catch (ClassNotFoundException e) {
@@ -1048,6 +1272,19 @@ public class CLEmitter {
                 addNoArgInstruction(NOP);
             }
 
+            // Optimize the code, which may move labels, while they are still symbolic.
+            if (peepholeOptimizer != null) {
+                mCode = peepholeOptimizer.optimize(mCode, mLabels, mExceptionHandlers);
+            }
+
+            // Widen the jumps that do not reach their targets with a 16-bit offset.
+            relaxBranches();
+            int codeLength = codeLength();
+            if (codeLength > MAX_CODE_LENGTH) {
+                reportEmitterError("%s: Code is %d bytes long, more than the %d bytes a method "
+                        + "may have", eCurrentMethod, codeLength, MAX_CODE_LENGTH);
+            }
+
             // Resolve jump labels in exception handlers.
             ArrayList<CLExceptionInfo> exceptionTable = new ArrayList<CLExceptionInfo>();
             for (CLException e : mExceptionHandlers) {
@@ -1065,8 +1302,7 @@ public class CLEmitter {
                 exceptionTable.add(c);
             }
 
-            // Convert Instruction objects to bytes.
-            ArrayList<Integer> byteCode = new ArrayList<Integer>();
+            // Compute maxLocals and resolve jump labels.
             int maxLocals = mArgumentCount;
             for (CLInstruction instr : mCode) {
                 // Compute maxLocals.
@@ -1103,14 +1339,42 @@ public class CLEmitter {
                         reportEmitterError("%s: Unable to resolve jump label(s)", eCurrentMethod);
                     }
                 }
-
-                byteCode.addAll(instr.toBytes());
             }
 
             // Code attribute; add only if method is neither native nor abstract.
             if (!((mAccessFlags & ACC_NATIVE) == ACC_NATIVE ||
                     (mAccessFlags & ACC_ABSTRACT) == ACC_ABSTRACT)) {
-                addMethodAttribute(codeAttribute(byteCode, exceptionTable, stackDepth(),
+                // Compute the StackMapTable attribute, which may replace unreachable code.
+                boolean hasDeadCode = false;
+                if (clFile.majorVersion >= STACK_MAP_MAJOR_VERSION && !errorHasOccurred) {
+                    CLFrameComputer frames = new CLFrameComputer(name, constantPool,
+                            classLoader, mAccessFlags, mNameIndex, mDescriptorIndex,
+                            maxLocals, mCode, exceptionTable);
+                    if (frames.compute()) {
+                        mCode = frames.code();
+                        exceptionTable = frames.exceptionTable();
+                        hasDeadCode = frames.hasDeadCode();
+                        ArrayList<CLStackMapFrame> entries = frames.stackMapFrames();
+                        if (entries.size() > 0) {
+                            addCodeAttribute(stackMapTableAttribute(entries));
+                        }
+                    } else {
+                        reportEmitterError("%s: %s", eCurrentMethod, frames.error());
+                    }
+                }
+
+                // Convert Instruction objects to bytes.
+                CLByteBuffer byteCode = new CLByteBuffer();
+                for (CLInstruction instr : mCode) {
+                    instr.toBytes(byteCode);
+                }
+
+                // The frames of unreachable code have a Throwable on the operand stack.
+                int stackDepth = stackDepth();
+                if (hasDeadCode) {
+                    stackDepth = Math.max(stackDepth, 1);
+                }
+                addMethodAttribute(codeAttribute(byteCode, exceptionTable, stackDepth,
                         maxLocals));
             }
 
@@ -1118,6 +1382,11 @@ public class CLEmitter {
                     mAttributes.size(), mAttributes));
         }
 
+        // The class of a method emitter is wrapped up by the emitter its methods are added to.
+        if (isMethodEmitter) {
+            return;
+        }
+
         // This method could be the last method, so we need the following wrap up code:
 
         // Add the InnerClass attribute if this class has inner classes.
@@ -1125,6 +1394,14 @@ public class CLEmitter {
             addClassAttribute(innerClassesAttribute());
         }
 
+        // Add (or replace, as the method just ended may have added to them) the BootstrapMethods
+        // attribute if this class has invokedynamic instructions.
+        if (bootstrapMethods.size() > 0) {
+            attributes.remove(bootstrapMethodsAttribute);
+            bootstrapMethodsAttribute = bootstrapMethodsAttribute();
+            addClassAttribute(bootstrapMethodsAttribute);
+        }
+
         // Set the members of the ClassFile structure to their appropriate values.
         clFile.constantPoolCount = constantPool.size() + 1;
         clFile.constantPool = constantPool;
@@ -1380,30 +1657,160 @@ public class CLEmitter {
         return false;
     }
 
+    // Returns the length of the code array of the current method being added.
+    private int codeLength() {
+        if (mCode.size() == 0) {
+            return 0;
+        }
+        CLInstruction last = mCode.get(mCode.size() - 1);
+        return last.pc() + 1 + last.operandCount();
+    }
+
+    // Rewrites each jump of the current method being added whose offset does not fit in 16 bits:
+    // GOTO (JSR) L becomes GOTO_W (JSR_W) L, and a conditional branch IF<cond> L becomes
+    // IF<!cond> Skip; GOTO_W L; Skip: .... Widening a jump moves the code after it, which may put
+    // other jumps out of range, so this is repeated until all of them are in range; as jumps are
+    // only ever widened, that happens after at most as many rounds as there are jumps.
+    private void relaxBranches() {
+        if (codeLength() <= Short.MAX_VALUE) {
+            // No offset can be out of range.
+            return;
+        }
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            ArrayList<CLInstruction> code = new ArrayList<CLInstruction>();
+
+            // oldPCs.get(i) is the pc (in the code before this round) of the instruction that
+            // code.get(i) is or replaces, or -1 for an added GOTO_W.
+            ArrayList<Integer> oldPCs = new ArrayList<Integer>();
+
+            // Labels to add, each at the pc (in the code before this round) of the instruction
+            // after the GOTO_W it follows.
+            ArrayList<String> skipLabels = new ArrayList<String>();
+            ArrayList<Integer> skipPCs = new ArrayList<Integer>();
+            for (int i = 0; i < mCode.size(); i++) {
+                CLInstruction instr = mCode.get(i);
+                int opcode = instr.opcode();
+                oldPCs.add(instr.pc());
+                if (CLInstruction.instructionInfo[opcode].category != Category.FLOW_CONTROL1 ||
+                        opcode == GOTO_W || opcode == JSR_W) {
+                    code.add(instr);
+                    continue;
+                }
+                String label = ((CLFlowControlInstruction) instr).jumpToLabel();
+                Integer target = mLabels.get(label);
+                if (target == null || (short) (target - instr.pc()) == target - instr.pc()) {
+                    code.add(instr);
+                    continue;
+                }
+                if (opcode == GOTO || opcode == JSR) {
+                    code.add(new CLFlowControlInstruction(opcode == GOTO ? GOTO_W : JSR_W,
+                            instr.pc(), label));
+                } else {
+                    String skip = createLabel();
+                    code.add(new CLFlowControlInstruction(negatedBranch(opcode), instr.pc(),
+                            skip));
+                    code.add(new CLFlowControlInstruction(GOTO_W, instr.pc(), label));
+                    oldPCs.add(-1);
+                    skipLabels.add(skip);
+                    skipPCs.add(instr.pc() + 1 + instr.operandCount());
+                }
+                changed = true;
+            }
+            if (!changed) {
+                break;
+            }
+
+            // Assign the new pcs, and move the labels along with the instructions they are at.
+            int length = codeLength();
+            int[] newPC = new int[length + 1];
+            int pc = 0;
+            for (int i = 0; i < code.size(); i++) {
+                CLInstruction instr = code.get(i);
+                if (oldPCs.get(i) != -1) {
+                    newPC[oldPCs.get(i)] = pc;
+                }
+                instr.setPC(pc);
+                pc += 1 + instr.operandCount();
+            }
+            newPC[length] = pc;
+            for (String label : mLabels.keySet()) {
+                mLabels.put(label, newPC[mLabels.get(label)]);
+            }
+            for (int i = 0; i < skipLabels.size(); i++) {
+                mLabels.put(skipLabels.get(i), newPC[skipPCs.get(i)]);
+            }
+            mCode = code;
+            mPC = pc;
+        }
+    }
+
+    // Returns the opcode of the conditional branch that jumps when the one with the specified
+    // opcode does not.
+    private static int negatedBranch(int opcode) {
+        switch (opcode) {
+            case IFEQ:
+                return IFNE;
+            case IFNE:
+                return IFEQ;
+            case IFLT:
+                return IFGE;
+            case IFGE:
+                return IFLT;
+            case IFGT:
+                return IFLE;
+            case IFLE:
+                return IFGT;
+            case IF_ICMPEQ:
+                return IF_ICMPNE;
+            case IF_ICMPNE:
+                return IF_ICMPEQ;
+            case IF_ICMPLT:
+                return IF_ICMPGE;
+            case IF_ICMPGE:
+                return IF_ICMPLT;
+            case IF_ICMPGT:
+                return IF_ICMPLE;
+            case IF_ICMPLE:
+                return IF_ICMPGT;
+            case IF_ACMPEQ:
+                return IF_ACMPNE;
+            case IF_ACMPNE:
+                return IF_ACMPEQ;
+            case IFNULL:
+                return IFNONNULL;
+            default:
+                return IFNULL;
+        }
+    }
+
+    // Builds the table mapping each pc within the code array of the current method being added to
+    // the index of the instruction at that pc.
+    private void indexInstructions() {
+        mPCIndex = new int[mPC];
+        Arrays.fill(mPCIndex, -1);
+        for (int i = 0; i < mCode.size(); i++) {
+            mPCIndex[mCode.get(i).pc()] = i;
+        }
+    }
+
     // Returns the instruction with the specified pc within the code array of the current method
     // being added, or null.
     private CLInstruction instruction(int pc) {
-        for (CLInstruction instruction : mCode) {
-            if (instruction.pc() == pc) {
-                return instruction;
-            }
-        }
-        return null;
+        int i = instructionIndex(pc);
+        return (i == -1) ? null : mCode.get(i);
     }
 
     // Returns the index of the instruction with the specified pc, within the code array of the
     // current method being added, or -1.
     private int instructionIndex(int pc) {
-        for (int i = 0; i < mCode.size(); i++) {
-            if (mCode.get(i).pc() == pc) {
-                return i;
-            }
-        }
-        return -1;
+        return (pc < 0 || pc >= mPCIndex.length) ? -1 : mPCIndex[pc];
     }
 
     // Computes and returns the maximum depth of the operand stack for the method last added.
     private int stackDepth() {
+        indexInstructions();
         CLBranchStack branchTargets = new CLBranchStack();
         for (CLException e : mExceptionHandlers) {
             CLInstruction h = instruction(e.handlerPC);
@@ -1412,9 +1819,13 @@ public class CLEmitter {
                 branchTargets.push(h, 1);
             }
         }
+        // Instructions already walked; their stack depths are already accounted for, so each
+        // instruction is walked at most once.
+        boolean[] walked = new boolean[mCode.size()];
         int stackDepth = 0, maxStackDepth = 0, c = 0;
         CLInstruction instr = (mCode.size() == 0) ? null : mCode.get(c);
         while (instr != null) {
+            walked[c] = true;
             int opcode = instr.opcode();
             int stackUnits = instr.stackUnits();
             if (stackUnits == EMPTY_STACK) {
@@ -1453,14 +1864,17 @@ public class CLEmitter {
             }
             if (instr != null) {
                 c++;
-                instr = (c >= mCode.size()) ? null : mCode.get(c);
+                instr = (c >= mCode.size() || walked[c]) ? null : mCode.get(c);
             }
-            if (instr == null) {
+            while (instr == null) {
                 CLBranchTarget bt = branchTargets.pop();
-                if (bt != null) {
+                if (bt == null) {
+                    break;
+                }
+                c = instructionIndex(bt.target.pc());
+                if (!walked[c]) {
                     instr = bt.target;
                     stackDepth = bt.stackDepth;
-                    c = instructionIndex(instr.pc());
                 }
             }
         }
@@ -1495,7 +1909,7 @@ public class CLEmitter {
     // Constructs and returns a Code attribute given the list of bytes that make up the
     // instructions and their operands, exception table, maximum depth of operand stack, and
     // maximum number of local variables.
-    private CLCodeAttribute codeAttribute(ArrayList<Integer> byteCode,
+    private CLCodeAttribute codeAttribute(CLByteBuffer byteCode,
                                           ArrayList<CLExceptionInfo> exceptionTable, int stackDepth,
                                           int maxLocals) {
         int codeLength = byteCode.size();
@@ -1509,6 +1923,17 @@ public class CLEmitter {
                 mCodeAttributes.size(), mCodeAttributes);
     }
 
+    // Constructs and returns a StackMapTable attribute given its entries.
+    private CLStackMapTableAttribute stackMapTableAttribute(ArrayList<CLStackMapFrame> entries) {
+        int attributeNameIndex = constantPool.constantUtf8Info(ATT_STACK_MAP_TABLE);
+        long attributeLength = 2;
+        for (CLStackMapFrame frame : entries) {
+            attributeLength += frame.length();
+        }
+        return new CLStackMapTableAttribute(attributeNameIndex, attributeLength, entries.size(),
+                entries);
+    }
+
     // Constructs and returns an ExceptionsAttribute given the list of exceptions.
     private CLExceptionsAttribute exceptionsAttribute(ArrayList<String> exceptions) {
         int attributeNameIndex = constantPool.constantUtf8Info(ATT_EXCEPTIONS);
@@ -1528,6 +1953,17 @@ public class CLEmitter {
                 innerClasses.size(), innerClasses);
     }
 
+    // Constructs and returns a BootstrapMethods attribute.
+    private CLBootstrapMethodsAttribute bootstrapMethodsAttribute() {
+        int attributeNameIndex = constantPool.constantUtf8Info(ATT_BOOTSTRAP_METHODS);
+        long attributeLength = 2;
+        for (CLBootstrapMethodInfo info : bootstrapMethods) {
+            attributeLength += 4 + 2 * info.numBootstrapArguments;
+        }
+        return new CLBootstrapMethodsAttribute(attributeNameIndex, attributeLength,
+                bootstrapMethods.size(), bootstrapMethods);
+    }
+
     // Constructs and returns a Synthetic attribute.
     private CLAttributeInfo syntheticAttribute() {
         int attributeNameIndex = constantPool.constantUtf8Info(ATT_SYNTHETIC);
@@ -1547,8 +1983,7 @@ public class CLEmitter {
 
     // Used to report any error that occurs while creating/writing the class, to STDERR.
     private void reportEmitterError(String message, Object... args) {
-        System.err.printf(message, args);
-        System.err.println();
+        System.err.printf("%s%n", String.format(message, args));
         errorHasOccurred = true;
     }
 }
@@ -1774,6 +2209,29 @@ class ByteClassLoader extends ClassLoader {
         }
         return cls;
     }
+
+    /**
+     * Returns the class with the specified fully qualified name if it has already been loaded by
+     * this class loader or can be found by the system class loader, and null otherwise. Unlike
+     * loadClass(), this method never defines a class from the bytes set on this class loader.
+     *
+     * @param name the fully qualified name of the class.
+     * @return the class, or null.
+     */
+    public Class<?> loadedClass(String name) {
+        name = name.replace("/", ".");
+        Class<?> cls = findLoadedClass(name);
+        if (cls == null) {
+            try {
+                cls = findSystemClass(name);
+            } catch (Exception e) {
+                // Ignore these.
+            } catch (LinkageError e) {
+                // Ignore these.
+            }
+        }
+        return cls;
+    }
 }
 
 /**
@@ -1812,3 +2270,64 @@ class CLOutputStream extends DataOutputStream {
         out.write((byte) (mask & v));
     }
 }
+
+/**
+ * A growable buffer of (unsigned) bytes, used for assembling the code section of a method without
+ * boxing each byte.
+ */
+class CLByteBuffer {
+    // The bytes in the buffer.
+    private byte[] bytes;
+
+    // Number of bytes in the buffer.
+    private int size;
+
+    /**
+     * Constructs an empty CLByteBuffer.
+     */
+    public CLByteBuffer() {
+        bytes = new byte[256];
+        size = 0;
+    }
+
+    /**
+     * Appends the lower order byte of the specified value to the buffer.
+     *
+     * @param b the byte to append.
+     */
+    public void add(int b) {
+        if (size == bytes.length) {
+            bytes = Arrays.copyOf(bytes, 2 * bytes.length);
+        }
+        bytes[size++] = (byte) b;
+    }
+
+    /**
+     * Returns the (unsigned) byte at the specified index.
+     *
+     * @param i index of the byte.
+     * @return the (unsigned) byte at the specified index.
+     */
+    public int get(int i) {
+        return bytes[i] & 0xFF;
+    }
+
+    /**
+     * Returns the number of bytes in the buffer.
+     *
+     * @return the number of bytes in the buffer.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Writes the contents of the buffer to the specified output stream.
+     *
+     * @param out output stream.
+     * @throws IOException if an error occurs while writing.
+     */
+    public void write(CLOutputStream out) throws IOException {
+        out.write(bytes, 0, size);
+    }
+}
@@ -0,0 +1,1158 @@
+// Copyright 2012- Bill Campbell, Swami Iyer and Bahar Akbal-Delibas
+
+package jminusminus;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static jminusminus.CLConstants.*;
+
+/**
+ * Computes the verification frames of the code of a method, for the StackMapTable attribute that
+ * the type checking verifier requires of class files of major version STACK_MAP_MAJOR_VERSION and
+ * later. CLEmitter runs it when a method is ended, after the jump labels in the code are resolved.
+ * <p>
+ * The computer makes a data-flow pass over the basic blocks of the code: starting from the frame
+ * given by the method descriptor, it simulates the effect of each instruction on the types of the
+ * local variables and operand stack words, and merges the frames flowing into each branch target
+ * and exception handler until none of them changes. Two reference types are merged into their
+ * nearest common superclass, which is looked up among the classes loaded for the compilation unit
+ * (the partial classes built from the analyzed AST) and the system classes; java.lang.Object
+ * stands in for a class that cannot be found, and for an interface.
+ * <p>
+ * The type checker demands a frame for unreachable code too, so the computer replaces each run of
+ * unreachable instructions with NOPs and an ATHROW, whose frame has an empty set of locals and a
+ * Throwable on the operand stack, and removes the run from the ranges of the exception handlers.
+ */
+class CLFrameComputer {
+    // The verification type of a word of the locals or the operand stack is one of "I", "F", "J"
+    // (the first word of a long), "D" (the first word of a double), TOP (also the second word of a
+    // long or double), NULL, UNINITIALIZED_THIS, UNINITIALIZED followed by the pc of the NEW
+    // instruction that created the object, or the field descriptor of a reference type.
+    private static final String TOP = "T";
+
+    private static final String NULL = "N";
+
+    private static final String UNINITIALIZED_THIS = "uninitializedThis";
+
+    private static final String UNINITIALIZED = "uninitialized";
+
+    private static final String OBJECT = "Ljava/lang/Object;";
+
+    private static final String THROWABLE = "Ljava/lang/Throwable;";
+
+    // ARRAY_TYPES.charAt(atype) is the descriptor of the component type of the array that NEWARRAY
+    // creates for atype.
+    private static final String ARRAY_TYPES = "????ZCFDBSIJ";
+
+    // Internal name of the class whose method this is.
+    private String className;
+
+    // Constant pool of the class.
+    private CLConstantPool constantPool;
+
+    // Class loader for the classes of the compilation unit, or null.
+    private ByteClassLoader classLoader;
+
+    // Access flags of the method.
+    private int accessFlags;
+
+    // Name of the method.
+    private String methodName;
+
+    // Descriptor of the method.
+    private String descriptor;
+
+    // Maximum number of local variables of the method.
+    private int maxLocals;
+
+    // Code of the method; its jump labels are resolved.
+    private ArrayList<CLInstruction> code;
+
+    // Exception table of the method.
+    private ArrayList<CLExceptionInfo> exceptionTable;
+
+    // Length of the code array of the method.
+    private int codeLength;
+
+    // Maps a pc to the index (within code) of the instruction at that pc, or to -1.
+    private int[] pcIndex;
+
+    // handlerIndex[h] is the index of the first instruction of exceptionTable.get(h).
+    private int[] handlerIndex;
+
+    // handlerStack.get(h) is the operand stack on entry to exceptionTable.get(h).
+    private ArrayList<ArrayList<String>> handlerStack;
+
+    // Whether the instruction at an index starts a basic block that is a branch target or an
+    // exception handler, and so needs a frame.
+    private boolean[] isTarget;
+
+    // Frames on entry to the instructions that start basic blocks, or null where no frame has
+    // reached yet.
+    private CLFrame[] frames;
+
+    // Whether an instruction has been reached.
+    private boolean[] reached;
+
+    // Indices of the basic blocks whose entry frames changed and must be walked (again).
+    private ArrayList<Integer> worklist;
+
+    // Whether a basic block is on the worklist.
+    private boolean[] queued;
+
+    // pcs of the frames to put in the StackMapTable, in increasing order.
+    private ArrayList<Integer> framePCs;
+
+    // frameList.get(f) is the frame to put in the StackMapTable at framePCs.get(f).
+    private ArrayList<CLFrame> frameList;
+
+    // Whether any unreachable code was replaced.
+    private boolean hasDeadCode;
+
+    // The reason the frames could not be computed, or null.
+    private String error;
+
+    /**
+     * Constructs a frame computer for the code of a method.
+     *
+     * @param className       internal name of the class.
+     * @param constantPool    constant pool of the class.
+     * @param classLoader     class loader for the classes of the compilation unit, or null.
+     * @param accessFlags     access flags of the method.
+     * @param nameIndex       constant pool index of the name of the method.
+     * @param descriptorIndex constant pool index of the descriptor of the method.
+     * @param maxLocals       maximum number of local variables of the method.
+     * @param code            code of the method, with its jump labels resolved.
+     * @param exceptionTable  exception table of the method.
+     */
+    public CLFrameComputer(String className, CLConstantPool constantPool,
+                           ByteClassLoader classLoader, int accessFlags, int nameIndex,
+                           int descriptorIndex, int maxLocals, ArrayList<CLInstruction> code,
+                           ArrayList<CLExceptionInfo> exceptionTable) {
+        this.className = className;
+        this.constantPool = constantPool;
+        this.classLoader = classLoader;
+        this.accessFlags = accessFlags;
+        this.methodName = utf8(nameIndex);
+        this.descriptor = utf8(descriptorIndex);
+        this.maxLocals = maxLocals;
+        this.code = code;
+        this.exceptionTable = exceptionTable;
+    }
+
+    /**
+     * Computes the frames of the code, and replaces the unreachable code. Returns true if the
+     * frames were computed, and false otherwise, in which case error() says why.
+     *
+     * @return true if the frames were computed, and false otherwise.
+     */
+    public boolean compute() {
+        int n = code.size();
+        CLInstruction last = code.get(n - 1);
+        codeLength = last.pc() + 1 + last.operandCount();
+        pcIndex = new int[codeLength + 1];
+        Arrays.fill(pcIndex, -1);
+        for (int i = 0; i < n; i++) {
+            pcIndex[code.get(i).pc()] = i;
+        }
+        isTarget = new boolean[n];
+        frames = new CLFrame[n];
+        reached = new boolean[n];
+        queued = new boolean[n];
+        worklist = new ArrayList<Integer>();
+        for (CLInstruction instr : code) {
+            if (instr instanceof CLFlowControlInstruction) {
+                int opcode = instr.opcode();
+                if (opcode == JSR || opcode == JSR_W || opcode == RET) {
+                    error = "Cannot compute frames for subroutines (jsr/ret)";
+                    return false;
+                }
+                for (int pc : ((CLFlowControlInstruction) instr).jumpTargets()) {
+                    int i = index(pc);
+                    if (i == -1) {
+                        error = String.format("Jump to invalid pc %d", pc);
+                        return false;
+                    }
+                    isTarget[i] = true;
+                }
+            }
+        }
+        handlerIndex = new int[exceptionTable.size()];
+        handlerStack = new ArrayList<ArrayList<String>>();
+        for (int h = 0; h < exceptionTable.size(); h++) {
+            CLExceptionInfo e = exceptionTable.get(h);
+            handlerIndex[h] = index(e.handlerPC);
+            if (handlerIndex[h] == -1) {
+                error = String.format("Exception handler at invalid pc %d", e.handlerPC);
+                return false;
+            }
+            isTarget[handlerIndex[h]] = true;
+            ArrayList<String> stack = new ArrayList<String>();
+            stack.add(e.catchType == 0 ? THROWABLE : "L" + className(e.catchType) + ";");
+            handlerStack.add(stack);
+        }
+
+        // Walk the basic blocks until no entry frame changes.
+        CLFrame initial = initialFrame();
+        mergeInto(0, initial.locals, initial.stack);
+        while (!worklist.isEmpty()) {
+            int b = worklist.remove(worklist.size() - 1);
+            queued[b] = false;
+            if (!walk(b)) {
+                return false;
+            }
+        }
+
+        replaceDeadCode();
+        return true;
+    }
+
+    /**
+     * Returns the reason the frames could not be computed, or null.
+     *
+     * @return the reason the frames could not be computed, or null.
+     */
+    public String error() {
+        return error;
+    }
+
+    /**
+     * Returns the code of the method, in which any unreachable code is replaced.
+     *
+     * @return the code of the method.
+     */
+    public ArrayList<CLInstruction> code() {
+        return code;
+    }
+
+    /**
+     * Returns the exception table of the method, from the ranges of which any unreachable code is
+     * removed.
+     *
+     * @return the exception table of the method.
+     */
+    public ArrayList<CLExceptionInfo> exceptionTable() {
+        return exceptionTable;
+    }
+
+    /**
+     * Returns true if unreachable code was replaced, in which case the operand stack of the
+     * method must hold at least one word, and false otherwise.
+     *
+     * @return true if unreachable code was replaced, and false otherwise.
+     */
+    public boolean hasDeadCode() {
+        return hasDeadCode;
+    }
+
+    /**
+     * Returns the computed frames, each in the most compact form relative to the frame before it,
+     * as the entries of a StackMapTable attribute.
+     *
+     * @return the stack map frames.
+     */
+    public ArrayList<CLStackMapFrame> stackMapFrames() {
+        ArrayList<CLStackMapFrame> entries = new ArrayList<CLStackMapFrame>();
+        ArrayList<CLVerificationTypeInfo> previous = verificationTypes(initialFrame().locals,
+                true);
+        int previousPC = -1;
+        for (int f = 0; f < framePCs.size(); f++) {
+            int pc = framePCs.get(f);
+            CLFrame frame = frameList.get(f);
+            ArrayList<CLVerificationTypeInfo> locals = verificationTypes(frame.locals, true);
+            ArrayList<CLVerificationTypeInfo> stack =
+                    verificationTypes(frame.stack.toArray(new String[0]), false);
+            int offsetDelta = pc - previousPC - 1;
+            int k = locals.size() - previous.size();
+            CLStackMapFrame entry;
+            if (stack.size() == 0 && locals.equals(previous)) {
+                entry = offsetDelta < SAME_LOCALS_1_STACK_ITEM_FRAME ?
+                        new CLStackMapFrame(SAME_FRAME + offsetDelta, offsetDelta, null, null) :
+                        new CLStackMapFrame(SAME_FRAME_EXTENDED, offsetDelta, null, null);
+            } else if (stack.size() == 1 && locals.equals(previous)) {
+                entry = offsetDelta < SAME_LOCALS_1_STACK_ITEM_FRAME ?
+                        new CLStackMapFrame(SAME_LOCALS_1_STACK_ITEM_FRAME + offsetDelta,
+                                offsetDelta, null, stack) :
+                        new CLStackMapFrame(SAME_LOCALS_1_STACK_ITEM_FRAME_EXTENDED, offsetDelta,
+                                null, stack);
+            } else if (stack.size() == 0 && k >= -3 && k < 0 && isPrefix(locals, previous)) {
+                entry = new CLStackMapFrame(SAME_FRAME_EXTENDED + k, offsetDelta, null, null);
+            } else if (stack.size() == 0 && k > 0 && k <= 3 && isPrefix(previous, locals)) {
+                ArrayList<CLVerificationTypeInfo> appended = new ArrayList<CLVerificationTypeInfo>(
+                        locals.subList(previous.size(), locals.size()));
+                entry = new CLStackMapFrame(APPEND_FRAME + k - 1, offsetDelta, appended, null);
+            } else {
+                entry = new CLStackMapFrame(FULL_FRAME, offsetDelta, locals, stack);
+            }
+            entries.add(entry);
+            previous = locals;
+            previousPC = pc;
+        }
+        return entries;
+    }
+
+    // Returns the frame on entry to the method, given by its descriptor.
+    private CLFrame initialFrame() {
+        ArrayList<String> arguments = argumentTypes(descriptor);
+        int words = (accessFlags & ACC_STATIC) == 0 ? 1 : 0;
+        for (String argument : arguments) {
+            words += isTwoWords(typeOf(argument)) ? 2 : 1;
+        }
+        String[] locals = new String[Math.max(maxLocals, words)];
+        Arrays.fill(locals, TOP);
+        int i = 0;
+        if ((accessFlags & ACC_STATIC) == 0) {
+            locals[i++] = methodName.equals("<init>") && !className.equals("java/lang/Object") ?
+                    UNINITIALIZED_THIS : "L" + className + ";";
+        }
+        for (String argument : arguments) {
+            String type = typeOf(argument);
+            locals[i++] = type;
+            if (isTwoWords(type)) {
+                i++;
+            }
+        }
+        return new CLFrame(locals, new ArrayList<String>());
+    }
+
+    // Walks the basic block starting at the specified index, merging the frames flowing out of
+    // it into the frames of its successors. Returns false if it finds an error.
+    private boolean walk(int b) {
+        CLFrame frame = frames[b].copy();
+        for (int i = b; i < code.size(); i++) {
+            CLInstruction instr = code.get(i);
+            int opcode = instr.opcode();
+            reached[i] = true;
+            if (!mergeIntoHandlers(instr.pc(), frame)) {
+                return false;
+            }
+            try {
+                if (!execute(instr, frame)) {
+                    return false;
+                }
+            } catch (IndexOutOfBoundsException e) {
+                error = String.format("Operand stack underflow at pc %d", instr.pc());
+                return false;
+            }
+
+            // A handler must also accept the locals as a store in its range leaves them.
+            if (opcode >= ISTORE && opcode <= ASTORE_3 && !mergeIntoHandlers(instr.pc(), frame)) {
+                return false;
+            }
+            if (instr instanceof CLFlowControlInstruction) {
+                for (int pc : ((CLFlowControlInstruction) instr).jumpTargets()) {
+                    if (!mergeInto(index(pc), frame.locals, frame.stack)) {
+                        return false;
+                    }
+                }
+                if (opcode == GOTO || opcode == GOTO_W || opcode == TABLESWITCH ||
+                        opcode == LOOKUPSWITCH) {
+                    return true;
+                }
+            } else if (opcode == ATHROW || (opcode >= IRETURN && opcode <= RETURN)) {
+                return true;
+            }
+            if (i + 1 < code.size() && isTarget[i + 1]) {
+                return mergeInto(i + 1, frame.locals, frame.stack);
+            }
+        }
+
+        // Execution falls off the end of the code, which the verifier reports.
+        return true;
+    }
+
+    // Merges the specified locals, with the exception on the operand stack, into the frames of
+    // the exception handlers whose range includes the specified pc.
+    private boolean mergeIntoHandlers(int pc, CLFrame frame) {
+        for (int h = 0; h < handlerIndex.length; h++) {
+            CLExceptionInfo e = exceptionTable.get(h);
+            if (pc >= e.startPC && pc < e.endPC &&
+                    !mergeInto(handlerIndex[h], frame.locals, handlerStack.get(h))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Merges the specified locals and operand stack into the frame on entry to the basic block
+    // starting at the specified index, and queues the block if that frame changed. Returns false
+    // if the operand stack heights differ.
+    private boolean mergeInto(int b, String[] locals, ArrayList<String> stack) {
+        CLFrame frame = frames[b];
+        if (frame == null) {
+            frames[b] = new CLFrame(locals.clone(), new ArrayList<String>(stack));
+            queue(b);
+            return true;
+        }
+        if (frame.stack.size() != stack.size()) {
+            error = String.format("Inconsistent operand stack height at pc %d",
+                    code.get(b).pc());
+            return false;
+        }
+        boolean changed = false;
+        for (int i = 0; i < locals.length; i++) {
+            String type = merge(frame.locals[i], locals[i]);
+            if (!type.equals(frame.locals[i])) {
+                frame.locals[i] = type;
+                changed = true;
+            }
+        }
+        for (int i = 0; i < stack.size(); i++) {
+            String type = merge(frame.stack.get(i), stack.get(i));
+            if (!type.equals(frame.stack.get(i))) {
+                frame.stack.set(i, type);
+                changed = true;
+            }
+        }
+        if (changed) {
+            queue(b);
+        }
+        return true;
+    }
+
+    // Adds the basic block starting at the specified index to the worklist, unless it is on it.
+    private void queue(int b) {
+        if (!queued[b]) {
+            queued[b] = true;
+            worklist.add(b);
+        }
+    }
+
+    // Returns the merge of the specified verification types.
+    private String merge(String a, String b) {
+        if (a.equals(b)) {
+            return a;
+        }
+        if (isReference(a) && isReference(b)) {
+            return commonSuperType(a, b);
+        }
+        return TOP;
+    }
+
+    // Returns the nearest common supertype of the specified reference types.
+    private String commonSuperType(String a, String b) {
+        if (a.equals(NULL)) {
+            return b;
+        }
+        if (b.equals(NULL)) {
+            return a;
+        }
+        if (a.startsWith("[") && b.startsWith("[")) {
+            String ca = a.substring(1), cb = b.substring(1);
+            if (isReference(ca) && isReference(cb)) {
+                return "[" + commonSuperType(ca, cb);
+            }
+            return OBJECT;
+        }
+        if (a.startsWith("[") || b.startsWith("[")) {
+            return OBJECT;
+        }
+        Class<?> c = classFor(a), d = classFor(b);
+        if (c == null || d == null || c.isInterface() || d.isInterface()) {
+            return OBJECT;
+        }
+        if (c.isAssignableFrom(d)) {
+            return a;
+        }
+        if (d.isAssignableFrom(c)) {
+            return b;
+        }
+        do {
+            c = c.getSuperclass();
+        } while (c != null && !c.isAssignableFrom(d));
+        return c == null ? OBJECT : "L" + c.getName().replace('.', '/') + ";";
+    }
+
+    // Returns the class with the specified descriptor, or null if it cannot be found.
+    private Class<?> classFor(String descriptor) {
+        String name = descriptor.substring(1, descriptor.length() - 1);
+        if (classLoader != null) {
+            return classLoader.loadedClass(name);
+        }
+        try {
+            return Class.forName(name.replace('/', '.'), false,
+                    CLFrameComputer.class.getClassLoader());
+        } catch (Exception e) {
+            return null;
+        } catch (LinkageError e) {
+            return null;
+        }
+    }
+
+    // Simulates the effect of the specified instruction on the specified frame. Returns false if
+    // it finds an error.
+    private boolean execute(CLInstruction instr, CLFrame frame) {
+        int opcode = instr.opcode();
+        int index = instr.localVariableIndex();
+        ArrayList<String> stack = frame.stack;
+        switch (opcode) {
+            case NOP:
+            case WIDE:
+            case IINC:
+            case GOTO:
+            case GOTO_W:
+            case RETURN:
+                break;
+            case ACONST_NULL:
+                push(stack, NULL);
+                break;
+            case ICONST_M1:
+            case ICONST_0:
+            case ICONST_1:
+            case ICONST_2:
+            case ICONST_3:
+            case ICONST_4:
+            case ICONST_5:
+            case BIPUSH:
+            case SIPUSH:
+                push(stack, "I");
+                break;
+            case LCONST_0:
+            case LCONST_1:
+                push(stack, "J");
+                break;
+            case FCONST_0:
+            case FCONST_1:
+            case FCONST_2:
+                push(stack, "F");
+                break;
+            case DCONST_0:
+            case DCONST_1:
+                push(stack, "D");
+                break;
+            case LDC:
+            case LDC_W:
+            case LDC2_W:
+                push(stack, constantType(((CLLoadStoreInstruction) instr).constVal()));
+                break;
+            case ILOAD:
+            case ILOAD_0:
+            case ILOAD_1:
+            case ILOAD_2:
+            case ILOAD_3:
+                push(stack, "I");
+                break;
+            case LLOAD:
+            case LLOAD_0:
+            case LLOAD_1:
+            case LLOAD_2:
+            case LLOAD_3:
+                push(stack, "J");
+                break;
+            case FLOAD:
+            case FLOAD_0:
+            case FLOAD_1:
+            case FLOAD_2:
+            case FLOAD_3:
+                push(stack, "F");
+                break;
+            case DLOAD:
+            case DLOAD_0:
+            case DLOAD_1:
+            case DLOAD_2:
+            case DLOAD_3:
+                push(stack, "D");
+                break;
+            case ALOAD:
+            case ALOAD_0:
+            case ALOAD_1:
+            case ALOAD_2:
+            case ALOAD_3:
+                push(stack, frame.locals[index]);
+                break;
+            case IALOAD:
+            case BALOAD:
+            case CALOAD:
+            case SALOAD:
+                pop(stack, 2);
+                push(stack, "I");
+                break;
+            case LALOAD:
+                pop(stack, 2);
+                push(stack, "J");
+                break;
+            case FALOAD:
+                pop(stack, 2);
+                push(stack, "F");
+                break;
+            case DALOAD:
+                pop(stack, 2);
+                push(stack, "D");
+                break;
+            case AALOAD: {
+                pop(stack, 1);
+                String array = pop(stack, 1);
+                push(stack, array.startsWith("[") ? typeOf(array.substring(1)) : NULL);
+                break;
+            }
+            case ISTORE:
+            case ISTORE_0:
+            case ISTORE_1:
+            case ISTORE_2:
+            case ISTORE_3:
+            case FSTORE:
+            case FSTORE_0:
+            case FSTORE_1:
+            case FSTORE_2:
+            case FSTORE_3:
+            case ASTORE:
+            case ASTORE_0:
+            case ASTORE_1:
+            case ASTORE_2:
+            case ASTORE_3:
+                store(frame, index, pop(stack, 1));
+                break;
+            case LSTORE:
+            case LSTORE_0:
+            case LSTORE_1:
+            case LSTORE_2:
+            case LSTORE_3:
+            case DSTORE:
+            case DSTORE_0:
+            case DSTORE_1:
+            case DSTORE_2:
+            case DSTORE_3:
+                pop(stack, 1);
+                store(frame, index, pop(stack, 1));
+                break;
+            case IASTORE:
+            case FASTORE:
+            case AASTORE:
+            case BASTORE:
+            case CASTORE:
+            case SASTORE:
+                pop(stack, 3);
+                break;
+            case LASTORE:
+            case DASTORE:
+                pop(stack, 4);
+                break;
+            case POP:
+            case MONITORENTER:
+            case MONITOREXIT:
+            case IFEQ:
+            case IFNE:
+            case IFLT:
+            case IFGE:
+            case IFGT:
+            case IFLE:
+            case IFNULL:
+            case IFNONNULL:
+            case TABLESWITCH:
+            case LOOKUPSWITCH:
+            case IRETURN:
+            case FRETURN:
+            case ARETURN:
+            case ATHROW:
+                pop(stack, 1);
+                break;
+            case POP2:
+            case IF_ICMPEQ:
+            case IF_ICMPNE:
+            case IF_ICMPLT:
+            case IF_ICMPGE:
+            case IF_ICMPGT:
+            case IF_ICMPLE:
+            case IF_ACMPEQ:
+            case IF_ACMPNE:
+            case LRETURN:
+            case DRETURN:
+                pop(stack, 2);
+                break;
+            case DUP:
+                stack.add(stack.get(stack.size() - 1));
+                break;
+            case DUP_X1:
+                stack.add(stack.size() - 2, stack.get(stack.size() - 1));
+                break;
+            case DUP_X2:
+                stack.add(stack.size() - 3, stack.get(stack.size() - 1));
+                break;
+            case DUP2:
+                stack.add(stack.get(stack.size() - 2));
+                stack.add(stack.get(stack.size() - 2));
+                break;
+            case DUP2_X1:
+                stack.add(stack.size() - 3, stack.get(stack.size() - 2));
+                stack.add(stack.size() - 3, stack.get(stack.size() - 1));
+                break;
+            case DUP2_X2:
+                stack.add(stack.size() - 4, stack.get(stack.size() - 2));
+                stack.add(stack.size() - 4, stack.get(stack.size() - 1));
+                break;
+            case SWAP:
+                stack.add(stack.size() - 1, stack.remove(stack.size() - 2));
+                break;
+            case IADD:
+            case ISUB:
+            case IMUL:
+            case IDIV:
+            case IREM:
+            case ISHL:
+            case ISHR:
+            case IUSHR:
+            case IAND:
+            case IOR:
+            case IXOR:
+            case FCMPL:
+            case FCMPG:
+                pop(stack, 2);
+                push(stack, "I");
+                break;
+            case LADD:
+            case LSUB:
+            case LMUL:
+            case LDIV:
+            case LREM:
+            case LAND:
+            case LOR:
+            case LXOR:
+                pop(stack, 4);
+                push(stack, "J");
+                break;
+            case LSHL:
+            case LSHR:
+            case LUSHR:
+                pop(stack, 3);
+                push(stack, "J");
+                break;
+            case FADD:
+            case FSUB:
+            case FMUL:
+            case FDIV:
+            case FREM:
+                pop(stack, 2);
+                push(stack, "F");
+                break;
+            case DADD:
+            case DSUB:
+            case DMUL:
+            case DDIV:
+            case DREM:
+                pop(stack, 4);
+                push(stack, "D");
+                break;
+            case INEG:
+            case I2B:
+            case I2C:
+            case I2S:
+            case F2I:
+            case ARRAYLENGTH:
+            case INSTANCEOF:
+                pop(stack, 1);
+                push(stack, "I");
+                break;
+            case LNEG:
+            case D2L:
+                pop(stack, 2);
+                push(stack, "J");
+                break;
+            case FNEG:
+            case I2F:
+                pop(stack, 1);
+                push(stack, "F");
+                break;
+            case DNEG:
+            case L2D:
+                pop(stack, 2);
+                push(stack, "D");
+                break;
+            case I2L:
+            case F2L:
+                pop(stack, 1);
+                push(stack, "J");
+                break;
+            case I2D:
+            case F2D:
+                pop(stack, 1);
+                push(stack, "D");
+                break;
+            case L2I:
+            case D2I:
+                pop(stack, 2);
+                push(stack, "I");
+                break;
+            case LCMP:
+            case DCMPL:
+            case DCMPG:
+                pop(stack, 4);
+                push(stack, "I");
+                break;
+            case L2F:
+            case D2F:
+                pop(stack, 2);
+                push(stack, "F");
+                break;
+            case GETSTATIC:
+                push(stack, typeOf(memberDescriptor(((CLFieldInstruction) instr).index())));
+                break;
+            case GETFIELD:
+                pop(stack, 1);
+                push(stack, typeOf(memberDescriptor(((CLFieldInstruction) instr).index())));
+                break;
+            case PUTSTATIC:
+            case PUTFIELD: {
+                String type = typeOf(memberDescriptor(((CLFieldInstruction) instr).index()));
+                pop(stack, (isTwoWords(type) ? 2 : 1) + (opcode == PUTFIELD ? 1 : 0));
+                break;
+            }
+            case INVOKEVIRTUAL:
+            case INVOKESPECIAL:
+            case INVOKESTATIC:
+            case INVOKEINTERFACE:
+            case INVOKEDYNAMIC: {
+                int cpIndex = ((CLMethodInstruction) instr).index();
+                String methodDescriptor = opcode == INVOKEDYNAMIC ?
+                        invokeDynamicDescriptor(cpIndex) : memberDescriptor(cpIndex);
+                for (String argument : argumentTypes(methodDescriptor)) {
+                    pop(stack, isTwoWords(typeOf(argument)) ? 2 : 1);
+                }
+                if (opcode != INVOKESTATIC && opcode != INVOKEDYNAMIC) {
+                    String receiver = pop(stack, 1);
+                    if (opcode == INVOKESPECIAL && memberName(cpIndex).equals("<init>")) {
+                        initialize(frame, receiver);
+                    }
+                }
+                String returnType = methodDescriptor.substring(methodDescriptor.indexOf(')') + 1);
+                if (!returnType.equals("V")) {
+                    push(stack, typeOf(returnType));
+                }
+                break;
+            }
+            case NEW:
+                push(stack, UNINITIALIZED + instr.pc());
+                break;
+            case NEWARRAY:
+                pop(stack, 1);
+                push(stack, "[" + ARRAY_TYPES.charAt(((CLArrayInstruction) instr).type()));
+                break;
+            case ANEWARRAY: {
+                pop(stack, 1);
+                String component = className(((CLArrayInstruction) instr).type());
+                push(stack, "[" + (component.startsWith("[") ? component : "L" + component + ";"));
+                break;
+            }
+            case MULTIANEWARRAY:
+                pop(stack, ((CLArrayInstruction) instr).dim());
+                push(stack, className(((CLArrayInstruction) instr).type()));
+                break;
+            case CHECKCAST: {
+                pop(stack, 1);
+                String type = className(((CLObjectInstruction) instr).index());
+                push(stack, type.startsWith("[") ? type : "L" + type + ";");
+                break;
+            }
+            default:
+                error = String.format("Cannot compute frames for instruction '%s' at pc %d",
+                        instr.mnemonic(), instr.pc());
+                return false;
+        }
+        return true;
+    }
+
+    // Replaces each run of unreachable instructions with NOPs and an ATHROW, removes the runs from
+    // the ranges of the exception handlers, and lists the frames for the StackMapTable.
+    private void replaceDeadCode() {
+        ArrayList<CLInstruction> live = new ArrayList<CLInstruction>();
+        ArrayList<Integer> deadStarts = new ArrayList<Integer>();
+        ArrayList<Integer> deadEnds = new ArrayList<Integer>();
+        framePCs = new ArrayList<Integer>();
+        frameList = new ArrayList<CLFrame>();
+        for (int i = 0; i < code.size(); i++) {
+            if (reached[i]) {
+                if (isTarget[i]) {
+                    framePCs.add(code.get(i).pc());
+                    frameList.add(frames[i]);
+                }
+                live.add(code.get(i));
+                continue;
+            }
+            int j = i;
+            while (j < code.size() && !reached[j]) {
+                j++;
+            }
+            int start = code.get(i).pc(), end = j < code.size() ? code.get(j).pc() : codeLength;
+            for (int pc = start; pc < end - 1; pc++) {
+                live.add(new CLMiscInstruction(NOP, pc));
+            }
+            live.add(new CLMiscInstruction(ATHROW, end - 1));
+            deadStarts.add(start);
+            deadEnds.add(end);
+            String[] locals = new String[frames[0].locals.length];
+            Arrays.fill(locals, TOP);
+            ArrayList<String> stack = new ArrayList<String>();
+            stack.add(THROWABLE);
+            framePCs.add(start);
+            frameList.add(new CLFrame(locals, stack));
+            i = j - 1;
+        }
+        if (deadStarts.size() == 0) {
+            return;
+        }
+        hasDeadCode = true;
+        code = live;
+        ArrayList<CLExceptionInfo> table = new ArrayList<CLExceptionInfo>();
+        for (CLExceptionInfo e : exceptionTable) {
+            int start = e.startPC;
+            for (int d = 0; d < deadStarts.size(); d++) {
+                if (deadEnds.get(d) <= start || deadStarts.get(d) >= e.endPC) {
+                    continue;
+                }
+                if (deadStarts.get(d) > start) {
+                    table.add(new CLExceptionInfo(start, deadStarts.get(d), e.handlerPC,
+                            e.catchType));
+                }
+                start = deadEnds.get(d);
+            }
+            if (start < e.endPC) {
+                table.add(new CLExceptionInfo(start, e.endPC, e.handlerPC, e.catchType));
+            }
+        }
+        exceptionTable = table;
+    }
+
+    // Returns the verification_type_info structures for the specified words, without the
+    // trailing tops if these are locals.
+    private ArrayList<CLVerificationTypeInfo> verificationTypes(String[] words,
+                                                                boolean areLocals) {
+        int n = words.length;
+        if (areLocals) {
+            while (n > 0 && words[n - 1].equals(TOP) &&
+                    (n < 2 || !isTwoWords(words[n - 2]))) {
+                n--;
+            }
+        }
+        ArrayList<CLVerificationTypeInfo> types = new ArrayList<CLVerificationTypeInfo>();
+        for (int i = 0; i < n; i++) {
+            String type = words[i];
+            if (type.equals(TOP)) {
+                types.add(new CLVerificationTypeInfo(ITEM_Top));
+            } else if (type.equals("I")) {
+                types.add(new CLVerificationTypeInfo(ITEM_Integer));
+            } else if (type.equals("F")) {
+                types.add(new CLVerificationTypeInfo(ITEM_Float));
+            } else if (type.equals("J")) {
+                types.add(new CLVerificationTypeInfo(ITEM_Long));
+                i++;
+            } else if (type.equals("D")) {
+                types.add(new CLVerificationTypeInfo(ITEM_Double));
+                i++;
+            } else if (type.equals(NULL)) {
+                types.add(new CLVerificationTypeInfo(ITEM_Null));
+            } else if (type.equals(UNINITIALIZED_THIS)) {
+                types.add(new CLVerificationTypeInfo(ITEM_UninitializedThis));
+            } else if (type.startsWith(UNINITIALIZED)) {
+                types.add(new CLVerificationTypeInfo(ITEM_Uninitialized,
+                        Integer.parseInt(type.substring(UNINITIALIZED.length()))));
+            } else {
+                String name = type.startsWith("[") ? type : type.substring(1, type.length() - 1);
+                types.add(new CLVerificationTypeInfo(ITEM_Object,
+                        constantPool.constantClassInfo(name)));
+            }
+        }
+        return types;
+    }
+
+    // Returns true if the first list is a prefix of the second, and false otherwise.
+    private static boolean isPrefix(ArrayList<CLVerificationTypeInfo> prefix,
+                                    ArrayList<CLVerificationTypeInfo> list) {
+        return prefix.equals(list.subList(0, prefix.size()));
+    }
+
+    // Replaces the specified uninitialized type, throughout the specified frame, with the type of
+    // the object once initialized.
+    private void initialize(CLFrame frame, String receiver) {
+        String type;
+        if (receiver.equals(UNINITIALIZED_THIS)) {
+            type = "L" + className + ";";
+        } else if (receiver.startsWith(UNINITIALIZED)) {
+            int pc = Integer.parseInt(receiver.substring(UNINITIALIZED.length()));
+            type = "L" + className(((CLObjectInstruction) code.get(index(pc))).index()) + ";";
+        } else {
+            return;
+        }
+        for (int i = 0; i < frame.locals.length; i++) {
+            if (frame.locals[i].equals(receiver)) {
+                frame.locals[i] = type;
+            }
+        }
+        for (int i = 0; i < frame.stack.size(); i++) {
+            if (frame.stack.get(i).equals(receiver)) {
+                frame.stack.set(i, type);
+            }
+        }
+    }
+
+    // Stores a value of the specified type in the local variable at the specified index.
+    private void store(CLFrame frame, int index, String type) {
+        if (index > 0 && isTwoWords(frame.locals[index - 1])) {
+            // The long or double this overwrites half of is lost.
+            frame.locals[index - 1] = TOP;
+        }
+        frame.locals[index] = type;
+        if (isTwoWords(type)) {
+            frame.locals[index + 1] = TOP;
+        }
+    }
+
+    // Pushes a value of the specified type onto the operand stack.
+    private static void push(ArrayList<String> stack, String type) {
+        stack.add(type);
+        if (isTwoWords(type)) {
+            stack.add(TOP);
+        }
+    }
+
+    // Pops the specified number of words off the operand stack, and returns the type of the last
+    // word popped.
+    private static String pop(ArrayList<String> stack, int words) {
+        String type = null;
+        for (int i = 0; i < words; i++) {
+            type = stack.remove(stack.size() - 1);
+        }
+        return type;
+    }
+
+    // Returns the index of the instruction at the specified pc, or -1.
+    private int index(int pc) {
+        return (pc < 0 || pc >= pcIndex.length) ? -1 : pcIndex[pc];
+    }
+
+    // Returns the verification type of the constant at the specified constant pool index.
+    private String constantType(int cpIndex) {
+        switch (constantPool.cpItem(cpIndex).tag) {
+            case CONSTANT_Integer:
+                return "I";
+            case CONSTANT_Float:
+                return "F";
+            case CONSTANT_Long:
+                return "J";
+            case CONSTANT_Double:
+                return "D";
+            case CONSTANT_String:
+                return "Ljava/lang/String;";
+            case CONSTANT_Class:
+                return "Ljava/lang/Class;";
+            case CONSTANT_MethodType:
+                return "Ljava/lang/invoke/MethodType;";
+            default:
+                return "Ljava/lang/invoke/MethodHandle;";
+        }
+    }
+
+    // Returns the string at the specified constant pool index.
+    private String utf8(int cpIndex) {
+        return new String(((CLConstantUtf8Info) constantPool.cpItem(cpIndex)).b);
+    }
+
+    // Returns the name of the class at the specified constant pool index.
+    private String className(int cpIndex) {
+        return utf8(((CLConstantClassInfo) constantPool.cpItem(cpIndex)).nameIndex);
+    }
+
+    // Returns the name and type of the member at the specified constant pool index.
+    private CLConstantNameAndTypeInfo nameAndType(int cpIndex) {
+        int nameAndTypeIndex = ((CLConstantMemberRefInfo) constantPool.cpItem(cpIndex))
+                .nameAndTypeIndex;
+        return (CLConstantNameAndTypeInfo) constantPool.cpItem(nameAndTypeIndex);
+    }
+
+    // Returns the name of the member at the specified constant pool index.
+    private String memberName(int cpIndex) {
+        return utf8(nameAndType(cpIndex).nameIndex);
+    }
+
+    // Returns the descriptor of the member at the specified constant pool index.
+    private String memberDescriptor(int cpIndex) {
+        return utf8(nameAndType(cpIndex).descriptorIndex);
+    }
+
+    // Returns the descriptor of the call site at the specified constant pool index.
+    private String invokeDynamicDescriptor(int cpIndex) {
+        int nameAndTypeIndex = ((CLConstantInvokeDynamicInfo) constantPool.cpItem(cpIndex))
+                .nameAndTypeIndex;
+        return utf8(((CLConstantNameAndTypeInfo) constantPool.cpItem(nameAndTypeIndex))
+                .descriptorIndex);
+    }
+
+    // Returns the field descriptors of the arguments in the specified method descriptor.
+    private static ArrayList<String> argumentTypes(String descriptor) {
+        ArrayList<String> arguments = new ArrayList<String>();
+        int i = 1;
+        while (descriptor.charAt(i) != ')') {
+            int start = i;
+            while (descriptor.charAt(i) == '[') {
+                i++;
+            }
+            if (descriptor.charAt(i) == 'L') {
+                i = descriptor.indexOf(';', i);
+            }
+            i++;
+            arguments.add(descriptor.substring(start, i));
+        }
+        return arguments;
+    }
+
+    // Returns the verification type of a value with the specified field descriptor.
+    private static String typeOf(String descriptor) {
+        switch (descriptor.charAt(0)) {
+            case 'Z':
+            case 'B':
+            case 'C':
+            case 'S':
+            case 'I':
+                return "I";
+            default:
+                return descriptor;
+        }
+    }
+
+    // Returns true if the specified verification type is a reference type (or null), and false
+    // otherwise.
+    private static boolean isReference(String type) {
+        return type.equals(NULL) || type.startsWith("L") || type.startsWith("[");
+    }
+
+    // Returns true if a value of the specified verification type takes two words, and false
+    // otherwise.
+    private static boolean isTwoWords(String type) {
+        return type.equals("J") || type.equals("D");
+    }
+}
+
+/**
+ * The types of the local variables and operand stack words on entry to an instruction, as
+ * computed by CLFrameComputer.
+ */
+class CLFrame {
+    /**
+     * Verification types of the local variables.
+     */
+    public String[] locals;
+
+    /**
+     * Verification types of the operand stack words, from the bottom.
+     */
+    public ArrayList<String> stack;
+
+    /**
+     * Constructs a frame.
+     *
+     * @param locals verification types of the local variables.
+     * @param stack  verification types of the operand stack words.
+     */
+    public CLFrame(String[] locals, ArrayList<String> stack) {
+        this.locals = locals;
+        this.stack = stack;
+    }
+
+    /**
+     * Returns a copy of this frame.
+     *
+     * @return a copy of this frame.
+     */
+    public CLFrame copy() {
+        return new CLFrame(locals.clone(), new ArrayList<String>(stack));
+    }
+}
@@ -244,7 +244,7 @@ abstract class CLInstruction {
             new CLInsInfo(INVOKESPECIAL, "invokespecial", 2, IRRELEVANT, DYNAMIC, METHOD1),
             new CLInsInfo(INVOKESTATIC, "invokestatic", 2, IRRELEVANT, DYNAMIC, METHOD1),
             new CLInsInfo(INVOKEINTERFACE, "invokeinterface", 4, IRRELEVANT, DYNAMIC, METHOD1),
-            new CLInsInfo(INVOKEDYNAMIC, "invokedynamic", 2, IRRELEVANT, DYNAMIC, METHOD1),
+            new CLInsInfo(INVOKEDYNAMIC, "invokedynamic", 4, IRRELEVANT, DYNAMIC, METHOD1),
             new CLInsInfo(NEW, "new", 2, IRRELEVANT, 1, OBJECT),
             new CLInsInfo(NEWARRAY, "newarray", 1, IRRELEVANT, 0, ARRAY1),
             new CLInsInfo(ANEWARRAY, "anewarray", 2, IRRELEVANT, 0, ARRAY1),
@@ -307,6 +307,16 @@ abstract class CLInstruction {
         return pc;
     }
 
+    /**
+     * Sets the pc for this instruction, as when the code of a method is rearranged after the
+     * instruction is added to it.
+     *
+     * @param pc index of this instruction within the code array of a method.
+     */
+    public void setPC(int pc) {
+        this.pc = pc;
+    }
+
     /**
      * Returns the stack units for this instruction.
      *
@@ -326,11 +336,11 @@ abstract class CLInstruction {
     }
 
     /**
-     * Returns the bytecode for this instruction.
+     * Appends the bytecode for this instruction to the specified buffer.
      *
-     * @return the bytecode for this instruction.
+     * @param bytes the buffer to append to.
      */
-    public abstract ArrayList<Integer> toBytes();
+    public abstract void toBytes(CLByteBuffer bytes);
 
     /**
      * Returns the byte from i at position byteNum.
@@ -383,15 +393,22 @@ class CLObjectInstruction extends CLInstruction {
         this.index = index;
     }
 
+    /**
+     * Returns the index into the constant pool, the item at which identifies the object.
+     *
+     * @return the index into the constant pool, the item at which identifies the object.
+     */
+    public int index() {
+        return index;
+    }
+
     /**
      * {@inheritDoc}
      */
-    public ArrayList<Integer> toBytes() {
-        ArrayList<Integer> bytes = new ArrayList<Integer>();
+    public void toBytes(CLByteBuffer bytes) {
         bytes.add(opcode);
         bytes.add(byteAt(index, 2));
         bytes.add(byteAt(index, 1));
-        return bytes;
     }
 }
 
@@ -422,15 +439,24 @@ class CLFieldInstruction extends CLInstruction {
         this.index = index;
     }
 
+    /**
+     * Returns the index into the constant pool, the item at which contains the name and
+     * descriptor of the field.
+     *
+     * @return the index into the constant pool, the item at which contains the name and
+     * descriptor of the field.
+     */
+    public int index() {
+        return index;
+    }
+
     /**
      * {@inheritDoc}
      */
-    public ArrayList<Integer> toBytes() {
-        ArrayList<Integer> bytes = new ArrayList<Integer>();
+    public void toBytes(CLByteBuffer bytes) {
         bytes.add(opcode);
         bytes.add(byteAt(index, 2));
         bytes.add(byteAt(index, 1));
-        return bytes;
     }
 }
 
@@ -488,11 +514,21 @@ class CLMethodInstruction extends CLInstruction {
         this.nArgs = nArgs;
     }
 
+    /**
+     * Returns the index into the constant pool, the item at which contains the name and
+     * descriptor of the method; applies only to METHOD1 instructions.
+     *
+     * @return the index into the constant pool, the item at which contains the name and
+     * descriptor of the method.
+     */
+    public int index() {
+        return index;
+    }
+
     /**
      * {@inheritDoc}
      */
-    public ArrayList<Integer> toBytes() {
-        ArrayList<Integer> bytes = new ArrayList<Integer>();
+    public void toBytes(CLByteBuffer bytes) {
         bytes.add(opcode);
         if (instructionInfo[opcode].category == METHOD1) {
             bytes.add(byteAt(index, 2));
@@ -504,8 +540,13 @@ class CLMethodInstruction extends CLInstruction {
                 bytes.add(byteAt(nArgs, 1));
                 bytes.add(0);
             }
+
+            // INVOKEDYNAMIC expects a third and a fourth operand, both of which must be 0.
+            if (opcode == INVOKEDYNAMIC) {
+                bytes.add(0);
+                bytes.add(0);
+            }
         }
-        return bytes;
     }
 }
 
@@ -571,11 +612,30 @@ class CLArrayInstruction extends CLInstruction {
         localVariableIndex = instructionInfo[opcode].localVariableIndex;
     }
 
+    /**
+     * Returns the number identifying the type of primitive array (for NEWARRAY), or the index
+     * into the constant pool, the item at which specifies the reference type of the array (for
+     * ANEWARRAY and MULTIANEWARRAY).
+     *
+     * @return the number or constant pool index identifying the type.
+     */
+    public int type() {
+        return type;
+    }
+
+    /**
+     * Returns the number of dimensions; applies only to MULTIANEWARRAY instruction.
+     *
+     * @return the number of dimensions.
+     */
+    public int dim() {
+        return dim;
+    }
+
     /**
      * {@inheritDoc}
      */
-    public ArrayList<Integer> toBytes() {
-        ArrayList<Integer> bytes = new ArrayList<Integer>();
+    public void toBytes(CLByteBuffer bytes) {
         bytes.add(opcode);
         switch (opcode) {
             case NEWARRAY:
@@ -591,7 +651,6 @@ class CLArrayInstruction extends CLInstruction {
                 bytes.add(byteAt(dim, 1));
                 break;
         }
-        return bytes;
     }
 }
 
@@ -636,7 +695,7 @@ class CLArithmeticInstruction extends CLInstruction {
         super.pc = pc;
         super.localVariableIndex = localVariableIndex;
         mnemonic = instructionInfo[opcode].mnemonic;
-        operandCount = instructionInfo[opcode].operandCount;
+        operandCount = instructionInfo[opcode].operandCount + (isWidened ? 2 : 0);
         stackUnits = instructionInfo[opcode].stackUnits;
         this.constVal = constVal;
         this.isWidened = isWidened;
@@ -645,8 +704,7 @@ class CLArithmeticInstruction extends CLInstruction {
     /**
      * {@inheritDoc}
      */
-    public ArrayList<Integer> toBytes() {
-        ArrayList<Integer> bytes = new ArrayList<Integer>();
+    public void toBytes(CLByteBuffer bytes) {
         bytes.add(opcode);
         if (opcode == IINC) {
             if (isWidened) {
@@ -659,7 +717,6 @@ class CLArithmeticInstruction extends CLInstruction {
                 bytes.add(byteAt(constVal, 1));
             }
         }
-        return bytes;
     }
 }
 
@@ -685,10 +742,8 @@ class CLBitInstruction extends CLInstruction {
     /**
      * {@inheritDoc}
      */
-    public ArrayList<Integer> toBytes() {
-        ArrayList<Integer> bytes = new ArrayList<Integer>();
+    public void toBytes(CLByteBuffer bytes) {
         bytes.add(opcode);
-        return bytes;
     }
 }
 
@@ -714,10 +769,8 @@ class CLComparisonInstruction extends CLInstruction {
     /**
      * {@inheritDoc}
      */
-    public ArrayList<Integer> toBytes() {
-        ArrayList<Integer> bytes = new ArrayList<Integer>();
+    public void toBytes(CLByteBuffer bytes) {
         bytes.add(opcode);
-        return bytes;
     }
 }
 
@@ -743,10 +796,8 @@ class CLConversionInstruction extends CLInstruction {
     /**
      * {@inheritDoc}
      */
-    public ArrayList<Integer> toBytes() {
-        ArrayList<Integer> bytes = new ArrayList<Integer>();
+    public void toBytes(CLByteBuffer bytes) {
         bytes.add(opcode);
-        return bytes;
     }
 }
 
@@ -828,7 +879,7 @@ class CLFlowControlInstruction extends CLInstruction {
         super.opcode = RET;
         super.pc = pc;
         mnemonic = instructionInfo[opcode].mnemonic;
-        operandCount = instructionInfo[opcode].operandCount;
+        operandCount = instructionInfo[opcode].operandCount + (isWidened ? 1 : 0);
         stackUnits = instructionInfo[opcode].stackUnits;
         localVariableIndex = instructionInfo[opcode].localVariableIndex;
         this.index = index;
@@ -957,11 +1008,81 @@ class CLFlowControlInstruction extends CLInstruction {
         return jumpToOffset;
     }
 
+    /**
+     * Returns the label this instruction jumps to; applies only to FLOW_CONTROL1 instructions.
+     *
+     * @return the label this instruction jumps to.
+     */
+    public String jumpToLabel() {
+        return jumpToLabel;
+    }
+
+    /**
+     * Returns the labels this instruction may jump to: the jump label for FLOW_CONTROL1
+     * instructions, the default and match labels for TABLESWITCH and LOOKUPSWITCH instructions,
+     * and none for RET instruction.
+     *
+     * @return the labels this instruction may jump to.
+     */
+    public ArrayList<String> jumpLabels() {
+        ArrayList<String> jumpLabels = new ArrayList<String>();
+        if (instructionInfo[opcode].category == FLOW_CONTROL1) {
+            jumpLabels.add(jumpToLabel);
+        } else if (opcode == LOOKUPSWITCH) {
+            jumpLabels.add(defaultLabel);
+            jumpLabels.addAll(matchLabelPairs.values());
+        } else if (opcode == TABLESWITCH) {
+            jumpLabels.add(defaultLabel);
+            jumpLabels.addAll(labels);
+        }
+        return jumpLabels;
+    }
+
+    /**
+     * Returns the pcs this instruction may jump to, once its labels are resolved: the pc for
+     * FLOW_CONTROL1 instructions, the default and match pcs for TABLESWITCH and LOOKUPSWITCH
+     * instructions, and none for RET instruction.
+     *
+     * @return the pcs this instruction may jump to.
+     */
+    public ArrayList<Integer> jumpTargets() {
+        ArrayList<Integer> jumpTargets = new ArrayList<Integer>();
+        if (instructionInfo[opcode].category == FLOW_CONTROL1) {
+            jumpTargets.add(pc + jumpToOffset);
+        } else if (opcode == LOOKUPSWITCH) {
+            jumpTargets.add(pc + defaultOffset);
+            for (int offset : matchOffsetPairs.values()) {
+                jumpTargets.add(pc + offset);
+            }
+        } else if (opcode == TABLESWITCH) {
+            jumpTargets.add(pc + defaultOffset);
+            for (int offset : offsets) {
+                jumpTargets.add(pc + offset);
+            }
+        }
+        return jumpTargets;
+    }
+
     /**
      * {@inheritDoc}
      */
-    public ArrayList<Integer> toBytes() {
-        ArrayList<Integer> bytes = new ArrayList<Integer>();
+    public void setPC(int pc) {
+        super.setPC(pc);
+        if (opcode == TABLESWITCH || opcode == LOOKUPSWITCH) {
+            // The padding depends on the pc, so the operand count does too.
+            operandCount -= pad;
+            pad = 4 - ((pc + 1) % 4);
+            if (pad == 4) {
+                pad = 0;
+            }
+            operandCount += pad;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void toBytes(CLByteBuffer bytes) {
         bytes.add(opcode);
         switch (opcode) {
             case RET:
@@ -1035,7 +1156,6 @@ class CLFlowControlInstruction extends CLInstruction {
                 bytes.add(byteAt(jumpToOffset, 2));
                 bytes.add(byteAt(jumpToOffset, 1));
         }
-        return bytes;
     }
 }
 
@@ -1061,7 +1181,9 @@ class CLLoadStoreInstruction extends CLInstruction {
         super.opcode = opcode;
         super.pc = pc;
         mnemonic = instructionInfo[opcode].mnemonic;
-        operandCount = instructionInfo[opcode].operandCount;
+
+        // The operands of WIDE are counted with the instruction it widens.
+        operandCount = opcode == WIDE ? 0 : instructionInfo[opcode].operandCount;
         stackUnits = instructionInfo[opcode].stackUnits;
         localVariableIndex = instructionInfo[opcode].localVariableIndex;
     }
@@ -1079,7 +1201,7 @@ class CLLoadStoreInstruction extends CLInstruction {
         super.opcode = opcode;
         super.pc = pc;
         mnemonic = instructionInfo[opcode].mnemonic;
-        operandCount = instructionInfo[opcode].operandCount;
+        operandCount = instructionInfo[opcode].operandCount + (isWidened ? 1 : 0);
         stackUnits = instructionInfo[opcode].stackUnits;
         super.localVariableIndex = localVariableIndex;
         this.isWidened = isWidened;
@@ -1104,11 +1226,20 @@ class CLLoadStoreInstruction extends CLInstruction {
         this.constVal = constVal;
     }
 
+    /**
+     * Returns the byte (for BIPUSH), the short (for SIPUSH), or the constant pool index (for LDC
+     * instructions) this instruction was constructed with.
+     *
+     * @return the constant value of this instruction.
+     */
+    public int constVal() {
+        return constVal;
+    }
+
     /**
      * {@inheritDoc}
      */
-    public ArrayList<Integer> toBytes() {
-        ArrayList<Integer> bytes = new ArrayList<Integer>();
+    public void toBytes(CLByteBuffer bytes) {
         bytes.add(opcode);
         if (instructionInfo[opcode].operandCount > 0) {
             if (localVariableIndex != IRRELEVANT) {
@@ -1130,7 +1261,6 @@ class CLLoadStoreInstruction extends CLInstruction {
                 }
             }
         }
-        return bytes;
     }
 }
 
@@ -1156,10 +1286,8 @@ class CLStackInstruction extends CLInstruction {
     /**
      * {@inheritDoc}
      */
-    public ArrayList<Integer> toBytes() {
-        ArrayList<Integer> bytes = new ArrayList<Integer>();
+    public void toBytes(CLByteBuffer bytes) {
         bytes.add(opcode);
-        return bytes;
     }
 }
 
@@ -1185,10 +1313,8 @@ class CLMiscInstruction extends CLInstruction {
     /**
      * {@inheritDoc}
      */
-    public ArrayList<Integer> toBytes() {
-        ArrayList<Integer> bytes = new ArrayList<Integer>();
+    public void toBytes(CLByteBuffer bytes) {
         bytes.add(opcode);
-        return bytes;
     }
 }
 
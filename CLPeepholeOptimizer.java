@@ -0,0 +1,762 @@
+// Copyright 2012- Bill Campbell, Swami Iyer and Bahar Akbal-Delibas
+
+package jminusminus;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.IdentityHashMap;
+
+import static jminusminus.CLConstants.*;
+
+/**
+ * A peephole optimizer for the code of a method, which CLEmitter runs (if it is given one) when
+ * the method is ended, before the jump labels in the code are resolved. The optimizer applies
+ * each of its rules at each instruction in turn, and makes passes over the code until no rule
+ * applies anywhere. It counts, for each rule, the number of times the rule applied.
+ * <p>
+ * The default rules are, in order:
+ *
+ * <pre>
+ *   store-load        xSTORE n; xLOAD n              =&gt; DUP (DUP2); xSTORE n
+ *   iinc              ILOAD n; ICONST k; IADD; ISTORE n =&gt; IINC n, k
+ *   jump-to-jump      GOTO (IF) L1; ... L1: GOTO L2  =&gt; GOTO (IF) L2
+ *   jump-to-next      GOTO L; L: ...                 =&gt; L: ...
+ *   constant-branch   ICONST_0; IFEQ L               =&gt; GOTO L (and so on)
+ *   unreachable-code  GOTO L; (unlabeled code)       =&gt; GOTO L
+ * </pre>
+ * <p>
+ * Further rules may be added with addRule().
+ */
+public class CLPeepholeOptimizer {
+    // Upper bound on the number of passes over the code of a method.
+    private static final int MAX_PASSES = 16;
+
+    // The rules, in the order in which they are tried at each instruction.
+    private ArrayList<CLPeepholeRule> rules;
+
+    // hits.get(i) is the number of times rules.get(i) applied.
+    private ArrayList<Integer> hits;
+
+    /**
+     * Constructs a peephole optimizer with the default rules.
+     */
+    public CLPeepholeOptimizer() {
+        rules = new ArrayList<CLPeepholeRule>();
+        hits = new ArrayList<Integer>();
+        addRule(new CLStoreLoadRule());
+        addRule(new CLIincRule());
+        addRule(new CLJumpToJumpRule());
+        addRule(new CLJumpToNextRule());
+        addRule(new CLConstantBranchRule());
+        addRule(new CLUnreachableCodeRule());
+    }
+
+    /**
+     * Adds a rule to this optimizer; it is tried after the rules already added.
+     *
+     * @param rule the rule.
+     */
+    public void addRule(CLPeepholeRule rule) {
+        rules.add(rule);
+        hits.add(0);
+    }
+
+    /**
+     * Returns the number of times the rule with the specified name applied.
+     *
+     * @param name name of the rule.
+     * @return the number of times the rule applied, or 0 if this optimizer has no such rule.
+     */
+    public int hits(String name) {
+        int count = 0;
+        for (int i = 0; i < rules.size(); i++) {
+            if (rules.get(i).name().equals(name)) {
+                count += hits.get(i);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns a report of the number of times each rule applied, one rule per line.
+     *
+     * @return a report of the number of times each rule applied.
+     */
+    public String report() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < rules.size(); i++) {
+            sb.append(String.format("  %-20s %d\n", rules.get(i).name(), hits.get(i)));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Optimizes the code of a method and returns the optimized code, with each instruction's pc
+     * set to its new location, and with the label to pc mapping updated to match. The original
+     * code is returned (and the mapping left alone) if it jumps to a label that is not in the
+     * mapping, if no rule applies, or if the optimized code would leave an exception handler
+     * covering no instructions.
+     *
+     * @param code       the code of the method.
+     * @param labels     label to pc mapping for the code.
+     * @param handlers   exception handlers of the method.
+     * @return the optimized code.
+     */
+    public ArrayList<CLInstruction> optimize(ArrayList<CLInstruction> code,
+                                             Hashtable<String, Integer> labels,
+                                             ArrayList<CLException> handlers) {
+        int[] pcs = new int[code.size()];
+        for (int i = 0; i < code.size(); i++) {
+            pcs[i] = code.get(i).pc();
+            if (code.get(i) instanceof CLFlowControlInstruction) {
+                for (String label : ((CLFlowControlInstruction) code.get(i)).jumpLabels()) {
+                    if (!labels.containsKey(label)) {
+                        // Leave the code as it is, so the label is reported as unresolved.
+                        return code;
+                    }
+                }
+            }
+        }
+        CLPeepholeCode peephole = new CLPeepholeCode(code, labels, handlers);
+        int[] applied = new int[rules.size()];
+        boolean changed = false;
+        for (int pass = 0; pass < MAX_PASSES; pass++) {
+            boolean passChanged = false;
+            for (int i = 0; i < peephole.size(); i++) {
+                for (int r = 0; r < rules.size(); r++) {
+                    if (rules.get(r).apply(peephole, i)) {
+                        applied[r]++;
+                        passChanged = true;
+                    }
+                }
+            }
+            if (!passChanged) {
+                break;
+            }
+            changed = true;
+        }
+        if (!changed) {
+            return code;
+        }
+        ArrayList<CLInstruction> optimized = peephole.instructions();
+        Hashtable<String, Integer> optimizedLabels = peephole.labels();
+        for (CLException e : handlers) {
+            Integer start = optimizedLabels.get(e.startLabel);
+            Integer end = optimizedLabels.get(e.endLabel);
+            if (start != null && end != null && start >= end) {
+                for (int i = 0; i < code.size(); i++) {
+                    code.get(i).setPC(pcs[i]);
+                }
+                return code;
+            }
+        }
+        synchronized (hits) {
+            // The method emitters of a class, used in parallel, share its optimizer.
+            for (int r = 0; r < rules.size(); r++) {
+                hits.set(r, hits.get(r) + applied[r]);
+            }
+        }
+        labels.clear();
+        labels.putAll(optimizedLabels);
+        return optimized;
+    }
+}
+
+/**
+ * A peephole rule, that is, a pattern over a few consecutive instructions along with the
+ * instructions that replace it.
+ */
+interface CLPeepholeRule {
+    /**
+     * Returns the name of this rule.
+     *
+     * @return the name of this rule.
+     */
+    String name();
+
+    /**
+     * Rewrites the instructions starting at the specified index if they match this rule's
+     * pattern, and returns true if it did, and false otherwise.
+     *
+     * @param code the code being optimized.
+     * @param i    index of the first instruction of the pattern.
+     * @return true if the rule applied, and false otherwise.
+     */
+    boolean apply(CLPeepholeCode code, int i);
+}
+
+/**
+ * The code of a method as a peephole optimizer edits it: a list of instructions, each with the
+ * labels that are on it, along with the number of references to each label. A label that is
+ * referenced is the target of a jump or an exception handler label, so control may reach the
+ * instruction it is on other than from the instruction before it.
+ */
+class CLPeepholeCode {
+    // The instructions.
+    private ArrayList<CLInstruction> code;
+
+    // onLabels.get(i) is the list of labels on code.get(i), or null if there are none; an extra
+    // last element is the list of labels at the end of the code.
+    private ArrayList<ArrayList<String>> onLabels;
+
+    // Maps each label to the instruction it is on, or to null if it is at the end of the code.
+    private HashMap<String, CLInstruction> labelTargets;
+
+    // Maps each label to the number of references to it.
+    private HashMap<String, Integer> references;
+
+    // Maps each instruction to its index in code; null when out of date.
+    private IdentityHashMap<CLInstruction, Integer> indices;
+
+    // Used to generate unique labels.
+    private int labelCount;
+
+    /**
+     * Constructs the editable code for the specified code of a method.
+     *
+     * @param code     the code of the method.
+     * @param labels   label to pc mapping for the code.
+     * @param handlers exception handlers of the method.
+     */
+    public CLPeepholeCode(ArrayList<CLInstruction> code, Hashtable<String, Integer> labels,
+                          ArrayList<CLException> handlers) {
+        this.code = new ArrayList<CLInstruction>(code);
+        onLabels = new ArrayList<ArrayList<String>>();
+        labelTargets = new HashMap<String, CLInstruction>();
+        references = new HashMap<String, Integer>();
+        HashMap<Integer, Integer> pcIndices = new HashMap<Integer, Integer>();
+        for (int i = 0; i < code.size(); i++) {
+            pcIndices.put(code.get(i).pc(), i);
+            onLabels.add(null);
+        }
+        onLabels.add(null);
+        for (String label : labels.keySet()) {
+            Integer i = pcIndices.get(labels.get(label));
+            addLabel(i == null ? code.size() : i, label);
+        }
+        for (CLInstruction instr : code) {
+            reference(instr, 1);
+        }
+        for (CLException e : handlers) {
+            // Never released, so code in a handler's range or the handler itself stays put.
+            reference(e.startLabel, 1);
+            reference(e.endLabel, 1);
+            reference(e.handlerLabel, 1);
+        }
+    }
+
+    /**
+     * Returns the number of instructions.
+     *
+     * @return the number of instructions.
+     */
+    public int size() {
+        return code.size();
+    }
+
+    /**
+     * Returns the instruction at the specified index, or null if there is none.
+     *
+     * @param i index of the instruction.
+     * @return the instruction at the index, or null.
+     */
+    public CLInstruction get(int i) {
+        return i >= 0 && i < code.size() ? code.get(i) : null;
+    }
+
+    /**
+     * Returns the opcode of the instruction at the specified index, or -1 if there is none.
+     *
+     * @param i index of the instruction.
+     * @return the opcode of the instruction at the index, or -1.
+     */
+    public int opcode(int i) {
+        return i >= 0 && i < code.size() ? code.get(i).opcode() : -1;
+    }
+
+    /**
+     * Returns true if a referenced label is on the instruction at the specified index, and false
+     * otherwise.
+     *
+     * @param i index of the instruction.
+     * @return true if a referenced label is on the instruction, and false otherwise.
+     */
+    public boolean isLabeled(int i) {
+        ArrayList<String> labels = onLabels.get(i);
+        if (labels != null) {
+            for (String label : labels) {
+                if (references.containsKey(label)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the instruction the specified label is on, or null if the label is at the end of
+     * the code or there is no such label. This is cheaper than target().
+     *
+     * @param label the label.
+     * @return the instruction the label is on, or null.
+     */
+    public CLInstruction instructionAt(String label) {
+        return labelTargets.get(label);
+    }
+
+    /**
+     * Returns the index of the instruction the specified label is on, which is size() if the
+     * label is at the end of the code, and -1 if there is no such label.
+     *
+     * @param label the label.
+     * @return the index of the instruction the label is on.
+     */
+    public int target(String label) {
+        if (!labelTargets.containsKey(label)) {
+            return -1;
+        }
+        CLInstruction instr = labelTargets.get(label);
+        if (instr == null) {
+            return code.size();
+        }
+        if (indices == null) {
+            indices = new IdentityHashMap<CLInstruction, Integer>();
+            for (int i = 0; i < code.size(); i++) {
+                indices.put(code.get(i), i);
+            }
+        }
+        return indices.get(instr);
+    }
+
+    /**
+     * Returns a label on the instruction at the specified index, adding a new one if there is
+     * none.
+     *
+     * @param i index of the instruction.
+     * @return a label on the instruction.
+     */
+    public String labelOn(int i) {
+        ArrayList<String> labels = onLabels.get(i);
+        if (labels != null) {
+            return labels.get(0);
+        }
+        String label = "Peephole" + labelCount++;
+        addLabel(i, label);
+        return label;
+    }
+
+    /**
+     * Replaces the instruction at the specified index; the labels on it stay on the new
+     * instruction.
+     *
+     * @param i     index of the instruction.
+     * @param instr the new instruction.
+     */
+    public void set(int i, CLInstruction instr) {
+        reference(code.get(i), -1);
+        reference(instr, 1);
+        code.set(i, instr);
+        if (onLabels.get(i) != null) {
+            for (String label : onLabels.get(i)) {
+                labelTargets.put(label, instr);
+            }
+        }
+        indices = null;
+    }
+
+    /**
+     * Inserts an instruction before the one at the specified index; the labels on that
+     * instruction stay on it.
+     *
+     * @param i     index at which to insert the instruction.
+     * @param instr the instruction.
+     */
+    public void insert(int i, CLInstruction instr) {
+        reference(instr, 1);
+        code.add(i, instr);
+        onLabels.add(i, null);
+        indices = null;
+    }
+
+    /**
+     * Removes the instruction at the specified index; the labels on it move to the instruction
+     * after it.
+     *
+     * @param i index of the instruction.
+     */
+    public void remove(int i) {
+        reference(code.get(i), -1);
+        code.remove(i);
+        ArrayList<String> labels = onLabels.remove(i);
+        if (labels != null) {
+            for (String label : labels) {
+                addLabel(i, label);
+            }
+        }
+        indices = null;
+    }
+
+    /**
+     * Returns the instructions, with their pcs set to their locations in the code. A NOP is added
+     * if there are labels at the end of the code, since a label must be on an instruction.
+     *
+     * @return the instructions.
+     */
+    public ArrayList<CLInstruction> instructions() {
+        if (onLabels.get(code.size()) != null) {
+            code.add(new CLMiscInstruction(NOP, 0));
+            onLabels.add(null);
+        }
+        int pc = 0;
+        for (CLInstruction instr : code) {
+            instr.setPC(pc);
+            pc += 1 + instr.operandCount();
+        }
+        return code;
+    }
+
+    /**
+     * Returns the label to pc mapping for the instructions returned by instructions().
+     *
+     * @return the label to pc mapping.
+     */
+    public Hashtable<String, Integer> labels() {
+        Hashtable<String, Integer> labels = new Hashtable<String, Integer>();
+        for (int i = 0; i < onLabels.size(); i++) {
+            if (onLabels.get(i) != null) {
+                int pc = i < code.size() ? code.get(i).pc() : 0;
+                for (String label : onLabels.get(i)) {
+                    labels.put(label, pc);
+                }
+            }
+        }
+        return labels;
+    }
+
+    // Puts the specified label on the instruction at index i.
+    private void addLabel(int i, String label) {
+        if (onLabels.get(i) == null) {
+            onLabels.set(i, new ArrayList<String>());
+        }
+        onLabels.get(i).add(label);
+        labelTargets.put(label, i < code.size() ? code.get(i) : null);
+    }
+
+    // Adds delta to the number of references to each label instr jumps to.
+    private void reference(CLInstruction instr, int delta) {
+        if (instr instanceof CLFlowControlInstruction) {
+            for (String label : ((CLFlowControlInstruction) instr).jumpLabels()) {
+                reference(label, delta);
+            }
+        }
+    }
+
+    // Adds delta to the number of references to label, forgetting the label once there are none.
+    private void reference(String label, int delta) {
+        Integer count = references.get(label);
+        int newCount = (count == null ? 0 : count) + delta;
+        if (newCount > 0) {
+            references.put(label, newCount);
+        } else {
+            references.remove(label);
+        }
+    }
+}
+
+/**
+ * Rule "store-load": a store to a local variable followed by a load of the same variable leaves
+ * the stored value on the operand stack, so duplicate the value instead of loading it.
+ */
+class CLStoreLoadRule implements CLPeepholeRule {
+    /**
+     * {@inheritDoc}
+     */
+    public String name() {
+        return "store-load";
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean apply(CLPeepholeCode code, int i) {
+        int kind = kind(code.opcode(i), ISTORE, ISTORE_0);
+        if (kind < 0 || kind != kind(code.opcode(i + 1), ILOAD, ILOAD_0) ||
+                code.opcode(i - 1) == WIDE || code.isLabeled(i + 1)) {
+            return false;
+        }
+        CLInstruction store = code.get(i);
+        if (store.localVariableIndex() != code.get(i + 1).localVariableIndex()) {
+            return false;
+        }
+        int dup = kind == 1 || kind == 3 ? DUP2 : DUP;
+        code.set(i + 1, store);
+        code.set(i, new CLStackInstruction(dup, 0));
+        return true;
+    }
+
+    // Returns the kind (0 for int, 1 for long, 2 for float, 3 for double, and 4 for reference) of
+    // a load or store opcode, given the opcodes ILOAD and ILOAD_0 (or ISTORE and ISTORE_0) of the
+    // family, or -1 if the opcode is not in the family.
+    private static int kind(int opcode, int first, int first0) {
+        if (opcode >= first && opcode < first + 5) {
+            return opcode - first;
+        } else if (opcode >= first0 && opcode < first0 + 20) {
+            return (opcode - first0) / 4;
+        }
+        return -1;
+    }
+}
+
+/**
+ * Rule "iinc": loading an int variable, adding (or subtracting) a small constant, and storing the
+ * result back to the same variable is IINC.
+ */
+class CLIincRule implements CLPeepholeRule {
+    /**
+     * {@inheritDoc}
+     */
+    public String name() {
+        return "iinc";
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean apply(CLPeepholeCode code, int i) {
+        int load = code.opcode(i);
+        int op = code.opcode(i + 2);
+        int store = code.opcode(i + 3);
+        if (!(load == ILOAD || load >= ILOAD_0 && load <= ILOAD_3) ||
+                !(op == IADD || op == ISUB) ||
+                !(store == ISTORE || store >= ISTORE_0 && store <= ISTORE_3) ||
+                code.opcode(i - 1) == WIDE || code.isLabeled(i + 1) || code.isLabeled(i + 2) ||
+                code.isLabeled(i + 3)) {
+            return false;
+        }
+        int index = code.get(i).localVariableIndex();
+        Integer value = intConstant(code.get(i + 1));
+        if (value == null || index > 255 || code.get(i + 3).localVariableIndex() != index) {
+            return false;
+        }
+        int increment = op == IADD ? value : -value;
+        if (increment < Byte.MIN_VALUE || increment > Byte.MAX_VALUE) {
+            return false;
+        }
+        code.set(i, new CLArithmeticInstruction(IINC, 0, index, increment, false));
+        code.remove(i + 3);
+        code.remove(i + 2);
+        code.remove(i + 1);
+        return true;
+    }
+
+    // Returns the int that instr pushes if it is ICONST_M1 - ICONST_5, BIPUSH, or SIPUSH, and null
+    // otherwise.
+    private static Integer intConstant(CLInstruction instr) {
+        int opcode = instr.opcode();
+        if (opcode >= ICONST_M1 && opcode <= ICONST_5) {
+            return opcode - ICONST_0;
+        } else if (opcode == BIPUSH || opcode == SIPUSH) {
+            return ((CLLoadStoreInstruction) instr).constVal();
+        }
+        return null;
+    }
+}
+
+/**
+ * Rule "jump-to-jump": a jump to a GOTO may jump to the GOTO's target instead.
+ */
+class CLJumpToJumpRule implements CLPeepholeRule {
+    /**
+     * {@inheritDoc}
+     */
+    public String name() {
+        return "jump-to-jump";
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean apply(CLPeepholeCode code, int i) {
+        int opcode = code.opcode(i);
+        if (!(opcode >= IFEQ && opcode <= GOTO || opcode == IFNULL || opcode == IFNONNULL)) {
+            return false;
+        }
+        String label = ((CLFlowControlInstruction) code.get(i)).jumpToLabel();
+        HashSet<String> seen = new HashSet<String>();
+        seen.add(label);
+        String target = label;
+        CLInstruction instr = code.instructionAt(target);
+        while (instr != null && instr.opcode() == GOTO) {
+            target = ((CLFlowControlInstruction) instr).jumpToLabel();
+            if (!seen.add(target)) {
+                // An infinite loop of GOTOs; leave it be.
+                return false;
+            }
+            instr = code.instructionAt(target);
+        }
+        if (target.equals(label)) {
+            return false;
+        }
+        code.set(i, new CLFlowControlInstruction(opcode, 0, target));
+        return true;
+    }
+}
+
+/**
+ * Rule "jump-to-next": a GOTO to the instruction right after it does nothing.
+ */
+class CLJumpToNextRule implements CLPeepholeRule {
+    /**
+     * {@inheritDoc}
+     */
+    public String name() {
+        return "jump-to-next";
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean apply(CLPeepholeCode code, int i) {
+        if (code.opcode(i) != GOTO || code.get(i + 1) == null || code.get(i + 1) !=
+                code.instructionAt(((CLFlowControlInstruction) code.get(i)).jumpToLabel())) {
+            return false;
+        }
+        code.remove(i);
+        return true;
+    }
+}
+
+/**
+ * Rule "constant-branch": an IFEQ or IFNE that tests an ICONST_0 or ICONST_1 pushed right before
+ * it (or by an ICONST_0 or ICONST_1 that jumps to it) always goes the same way. This is the code
+ * JBooleanBinaryExpression and friends generate to push a boolean that is then tested, often
+ * after storing it to a variable, which CLStoreLoadRule leaves as a DUP and a store before the
+ * test.
+ */
+class CLConstantBranchRule implements CLPeepholeRule {
+    /**
+     * {@inheritDoc}
+     */
+    public String name() {
+        return "constant-branch";
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean apply(CLPeepholeCode code, int i) {
+        int value = code.opcode(i) - ICONST_0;
+        if (value != 0 && value != 1) {
+            return false;
+        }
+        int first = i + 1;
+        boolean jumps = code.opcode(first) == GOTO;
+        if (jumps) {
+            // ICONST_x; GOTO L; ... L: IFEQ (IFNE) M.
+            String label = ((CLFlowControlInstruction) code.get(first)).jumpToLabel();
+            CLInstruction instr = code.instructionAt(label);
+            if (code.isLabeled(first) || instr == null ||
+                    instr.opcode() != IFEQ && instr.opcode() != IFNE && instr.opcode() != DUP) {
+                // Checked first, as finding the target's index may take a while.
+                return false;
+            }
+            first = code.target(label);
+        }
+        int test = first;
+        CLInstruction store = null;
+        if (code.opcode(test) == DUP && isIntStore(code.opcode(test + 1))) {
+            // ICONST_x; DUP; ISTORE n; IFEQ (IFNE) M.
+            store = code.get(test + 1);
+            test += 2;
+        }
+        int opcode = code.opcode(test);
+        if (opcode != IFEQ && opcode != IFNE || test + 1 >= code.size()) {
+            return false;
+        }
+        boolean taken = (opcode == IFEQ) == (value == 0);
+        String target = ((CLFlowControlInstruction) code.get(test)).jumpToLabel();
+        boolean otherPaths = jumps;
+        for (int j = first; j <= test; j++) {
+            otherPaths |= code.isLabeled(j);
+        }
+        if (!otherPaths) {
+            // No other way to the test, so it goes, along with the constant if nothing else
+            // uses it.
+            code.remove(test);
+            if (store != null) {
+                code.remove(first);
+                if (taken) {
+                    code.insert(i + 2, new CLFlowControlInstruction(GOTO, 0, target));
+                }
+            } else if (taken) {
+                code.set(i, new CLFlowControlInstruction(GOTO, 0, target));
+            } else {
+                code.remove(i);
+            }
+            return true;
+        }
+
+        // Other paths reach the test, so just this one skips it.
+        String destination = taken ? target : code.labelOn(test + 1);
+        CLInstruction jump = new CLFlowControlInstruction(GOTO, 0, destination);
+        if (store == null) {
+            code.set(i, jump);
+            if (jumps) {
+                code.remove(i + 1);
+            }
+        } else {
+            if (jumps) {
+                code.set(i + 1, copy(store));
+            } else {
+                code.insert(i + 1, copy(store));
+            }
+            code.insert(i + 2, jump);
+        }
+        return true;
+    }
+
+    // Returns true if opcode is ISTORE or ISTORE_0 - ISTORE_3, and false otherwise.
+    private static boolean isIntStore(int opcode) {
+        return opcode == ISTORE || opcode >= ISTORE_0 && opcode <= ISTORE_3;
+    }
+
+    // Returns a copy of the specified (unwidened) int store instruction.
+    private static CLInstruction copy(CLInstruction store) {
+        if (store.opcode() == ISTORE) {
+            return new CLLoadStoreInstruction(ISTORE, 0, store.localVariableIndex(), false);
+        }
+        return new CLLoadStoreInstruction(store.opcode(), 0);
+    }
+}
+
+/**
+ * Rule "unreachable-code": instructions after an unconditional transfer of control, up to the
+ * next referenced label, are never executed.
+ */
+class CLUnreachableCodeRule implements CLPeepholeRule {
+    /**
+     * {@inheritDoc}
+     */
+    public String name() {
+        return "unreachable-code";
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean apply(CLPeepholeCode code, int i) {
+        int opcode = code.opcode(i);
+        if (!(opcode == GOTO || opcode == GOTO_W || opcode == RET || opcode == ATHROW ||
+                opcode >= TABLESWITCH && opcode <= RETURN)) {
+            return false;
+        }
+        boolean removed = false;
+        while (i + 1 < code.size() && !code.isLabeled(i + 1)) {
+            code.remove(i + 1);
+            removed = true;
+        }
+        return removed;
+    }
+}
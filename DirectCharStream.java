@@ -0,0 +1,222 @@
+// Copyright 2012- Bill Campbell, Swami Iyer and Bahar Akbal-Delibas
+
+package jminusminus;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * A character stream for the JavaCC generated token manager that holds the whole source file in a
+ * single char array. SimpleCharStream reads the file in chunks into a growing ring buffer, and
+ * records the line and column of every character it reads in two more arrays as large as that
+ * buffer. This stream instead records where each line starts, and works out a line and column
+ * only when the token manager asks for one, that is, once per token.
+ * <p>
+ * Line and column numbers are as SimpleCharStream (with its default tab size of 1) reports them:
+ * "\n", "\r\n", and "\r" each end a line, and every character, including a tab, takes up one
+ * column.
+ */
+public class DirectCharStream extends SimpleCharStream {
+    // The source characters.
+    private char[] chars;
+
+    // Number of characters in chars.
+    private int length;
+
+    // Index of the last character read, or -1.
+    private int pos;
+
+    // Index of the first character of the current token, or -1 if the token has not begun.
+    private int begin;
+
+    // lineStarts[i] is the index of the first character of line i + 1.
+    private int[] lineStarts;
+
+    // Number of lines in lineStarts.
+    private int lineCount;
+
+    // Index into lineStarts of the line last looked up; tokens are created in order, so the next
+    // lookup is usually on this line or shortly after it.
+    private int lineCursor;
+
+    /**
+     * Constructs a DirectCharStream from a file name.
+     *
+     * @param fileName the name of the input file.
+     * @throws FileNotFoundException if the file is not found.
+     */
+    public DirectCharStream(String fileName) throws FileNotFoundException {
+        // The superclass buffers are never used, so keep them as small as possible.
+        super((Reader) null, 1, 1, 1);
+        super.Done();
+        FileInputStream in = new FileInputStream(fileName);
+        CharBuffer source;
+        try {
+            // Decode with the default charset, as SimpleCharStream(InputStream, ...) does.
+            source = Charset.defaultCharset().decode(ByteBuffer.wrap(in.readAllBytes()));
+            in.close();
+        } catch (IOException e) {
+            FileNotFoundException notRead = new FileNotFoundException(fileName
+                    + " (unable to read)");
+            notRead.initCause(e);
+            throw notRead;
+        }
+        chars = source.array();
+        length = source.limit();
+        pos = -1;
+        begin = -1;
+        indexLines();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public char BeginToken() throws IOException {
+        begin = -1;
+        char c = readChar();
+        begin = pos;
+        return c;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public char readChar() throws IOException {
+        if (pos + 1 >= length) {
+            // Like SimpleCharStream, leave the stream on the last character.
+            if (begin == -1) {
+                begin = pos;
+            }
+            throw new IOException();
+        }
+        return chars[++pos];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void backup(int amount) {
+        pos -= amount;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public String GetImage() {
+        return new String(chars, begin, pos - begin + 1);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public char[] GetSuffix(int len) {
+        char[] suffix = new char[len];
+        System.arraycopy(chars, pos - len + 1, suffix, 0, len);
+        return suffix;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int getBeginLine() {
+        return lineOf(begin);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int getBeginColumn() {
+        return columnOf(begin);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int getEndLine() {
+        return lineOf(pos);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int getEndColumn() {
+        return columnOf(pos);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int getLine() {
+        return getEndLine();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int getColumn() {
+        return getEndColumn();
+    }
+
+    /**
+     * Not supported by this stream, since it does not keep a line and column per character.
+     *
+     * @param newLine the new line.
+     * @param newCol  the new column.
+     */
+    public void adjustBeginLineColumn(int newLine, int newCol) {
+        throw new UnsupportedOperationException("adjustBeginLineColumn");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void Done() {
+        chars = null;
+        lineStarts = null;
+    }
+
+    // Records the index of the first character of every line in lineStarts.
+    private void indexLines() {
+        lineStarts = new int[16];
+        lineCount = 1;
+        for (int i = 0; i < length; i++) {
+            char c = chars[i];
+            if (c == '\n' || c == '\r' && (i + 1 == length || chars[i + 1] != '\n')) {
+                if (lineCount == lineStarts.length) {
+                    int[] larger = new int[lineStarts.length * 2];
+                    System.arraycopy(lineStarts, 0, larger, 0, lineCount);
+                    lineStarts = larger;
+                }
+                lineStarts[lineCount++] = i + 1;
+            }
+        }
+        lineCursor = 0;
+    }
+
+    // Returns the index into lineStarts of the line holding the character at index p.
+    private int lineIndex(int p) {
+        if (p < lineStarts[lineCursor]) {
+            // Rare, so search from the start.
+            lineCursor = 0;
+        }
+        while (lineCursor + 1 < lineCount && lineStarts[lineCursor + 1] <= p) {
+            lineCursor++;
+        }
+        return lineCursor;
+    }
+
+    // Returns the line number of the character at index p; an empty file has just line 1.
+    private int lineOf(int p) {
+        return p < 0 ? 1 : lineIndex(p) + 1;
+    }
+
+    // Returns the column number of the character at index p.
+    private int columnOf(int p) {
+        return p < 0 ? 0 : p - lineStarts[lineIndex(p)] + 1;
+    }
+}
@@ -8,10 +8,10 @@ import java.util.ArrayList;
  * JAST is the abstract superclass of all nodes in the abstract syntax tree (AST).
  */
 abstract class JAST {
-    /**
-     * Current compilation unit (set in JCompilationUnit()).
-     */
-    public static JCompilationUnit compilationUnit;
+    // Compilation unit being compiled by the current thread (set in JCompilationUnit()); units
+    // compiled in parallel each have their own.
+    private static ThreadLocal<JCompilationUnit> compilationUnit =
+            new ThreadLocal<JCompilationUnit>();
 
     /**
      * Line in which the source for the AST was found.
@@ -27,6 +27,25 @@ abstract class JAST {
         this.line = line;
     }
 
+    /**
+     * Returns the current compilation unit, that is, the one last constructed by the current
+     * thread.
+     *
+     * @return the current compilation unit.
+     */
+    public static JCompilationUnit compilationUnit() {
+        return compilationUnit.get();
+    }
+
+    /**
+     * Sets the current compilation unit for the current thread.
+     *
+     * @param unit the compilation unit.
+     */
+    protected static void setCompilationUnit(JCompilationUnit unit) {
+        compilationUnit.set(unit);
+    }
+
     /**
      * Returns the line in which the source for the AST was found.
      *
@@ -119,6 +138,47 @@ abstract class JAST {
         }
         return b.toString();
     }
+
+    /**
+     * Escapes the characters in the specified string that unescape() unescapes, so that the
+     * escaped string, enclosed in the specified quote, reads as a literal with the original value.
+     *
+     * @param s     string to escape.
+     * @param quote the quote (' or ") that will enclose the escaped string.
+     * @return the escaped string.
+     */
+    public static String escape(String s, char quote) {
+        StringBuffer b = new StringBuffer();
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '\b':
+                    b.append("\\b");
+                    break;
+                case '\t':
+                    b.append("\\t");
+                    break;
+                case '\n':
+                    b.append("\\n");
+                    break;
+                case '\f':
+                    b.append("\\f");
+                    break;
+                case '\r':
+                    b.append("\\r");
+                    break;
+                case '\\':
+                    b.append("\\\\");
+                    break;
+                default:
+                    if (c == quote) {
+                        b.append('\\');
+                    }
+                    b.append(c);
+            }
+        }
+        return b.toString();
+    }
 }
 
 /**
@@ -35,7 +35,8 @@ class JArrayExpression extends JExpression implements JLhs {
         theArray = (JExpression) theArray.analyze(context);
         indexExpr = (JExpression) indexExpr.analyze(context);
         if (!(theArray.type().isArray())) {
-            JAST.compilationUnit.reportSemanticError(line(), "attempt to index a non-array object");
+            JAST.compilationUnit().reportSemanticError(line(),
+                    "attempt to index a non-array object");
             this.type = Type.ANY;
         } else {
             this.type = theArray.type().componentType();
@@ -41,7 +41,7 @@ class JAssignOp extends JAssignment {
      */
     public JExpression analyze(Context context) {
         if (!(lhs instanceof JLhs)) {
-            JAST.compilationUnit.reportSemanticError(line(), "Illegal lhs for assignment");
+            JAST.compilationUnit().reportSemanticError(line(), "Illegal lhs for assignment");
         } else {
             lhs = (JExpression) ((JLhs) lhs).analyzeLhs(context);
         }
@@ -91,7 +91,7 @@ class JPlusAssignOp extends JAssignment {
      */
     public JExpression analyze(Context context) {
         if (!(lhs instanceof JLhs)) {
-            JAST.compilationUnit.reportSemanticError(line(), "Illegal lhs for assignment");
+            JAST.compilationUnit().reportSemanticError(line(), "Illegal lhs for assignment");
             return this;
         } else {
             lhs = (JExpression) ((JLhs) lhs).analyzeLhs(context);
@@ -113,7 +113,7 @@ class JPlusAssignOp extends JAssignment {
             rhs = (new JStringConcatenationOp(line, lhs, rhs)).analyze(context);
             type = Type.STRING;
         } else {
-            JAST.compilationUnit.reportSemanticError(line(),
+            JAST.compilationUnit().reportSemanticError(line(),
                     "Invalid lhs type for +=: " + lhs.type());
         }
         return this;
@@ -169,7 +169,7 @@ class JMinusAssignOp extends JAssignment {
      */
     public JExpression analyze(Context context) {
         if (!(lhs instanceof JLhs)) {
-            JAST.compilationUnit.reportSemanticError(line(), "Illegal lhs for assignment");
+            JAST.compilationUnit().reportSemanticError(line(), "Illegal lhs for assignment");
             return this;
         } else {
             lhs = (JExpression) ((JLhs) lhs).analyzeLhs(context);
@@ -188,7 +188,7 @@ class JMinusAssignOp extends JAssignment {
             type = Type.DOUBLE;
         }
        else {
-            JAST.compilationUnit.reportSemanticError(line(),
+            JAST.compilationUnit().reportSemanticError(line(),
                     "Invalid lhs type for -=: " + lhs.type());
         }
         return this;
@@ -244,7 +244,7 @@ class JStarAssignOp extends JAssignment {
      */
     public JExpression analyze(Context context) {
         if (!(lhs instanceof JLhs)) {
-            JAST.compilationUnit.reportSemanticError(line(), "Illegal lhs for assignment");
+            JAST.compilationUnit().reportSemanticError(line(), "Illegal lhs for assignment");
             return this;
         } else {
             lhs = (JExpression) ((JLhs) lhs).analyzeLhs(context);
@@ -263,7 +263,7 @@ class JStarAssignOp extends JAssignment {
             type = Type.DOUBLE;
         }
         else {
-            JAST.compilationUnit.reportSemanticError(line(),
+            JAST.compilationUnit().reportSemanticError(line(),
                     "Invalid lhs type for *=: " + lhs.type());
         }
         return this;
@@ -319,7 +319,7 @@ class JDivAssignOp extends JAssignment {
      */
     public JExpression analyze(Context context) {
         if (!(lhs instanceof JLhs)) {
-            JAST.compilationUnit.reportSemanticError(line(), "Illegal lhs for assignment");
+            JAST.compilationUnit().reportSemanticError(line(), "Illegal lhs for assignment");
             return this;
         } else {
             lhs = (JExpression) ((JLhs) lhs).analyzeLhs(context);
@@ -338,7 +338,7 @@ class JDivAssignOp extends JAssignment {
             type = Type.DOUBLE;
         }
         else {
-            JAST.compilationUnit.reportSemanticError(line(),
+            JAST.compilationUnit().reportSemanticError(line(),
                     "Invalid lhs type for /=: " + lhs.type());
         }
         return this;
@@ -394,7 +394,7 @@ class JRemAssignOp extends JAssignment {
      */
     public JExpression analyze(Context context) {
         if (!(lhs instanceof JLhs)) {
-            JAST.compilationUnit.reportSemanticError(line(), "Illegal lhs for assignment");
+            JAST.compilationUnit().reportSemanticError(line(), "Illegal lhs for assignment");
             return this;
         } else {
             lhs = (JExpression) ((JLhs) lhs).analyzeLhs(context);
@@ -413,7 +413,7 @@ class JRemAssignOp extends JAssignment {
             type = Type.DOUBLE;
         }
         else {
-            JAST.compilationUnit.reportSemanticError(line(),
+            JAST.compilationUnit().reportSemanticError(line(),
                     "Invalid lhs type for %=: " + lhs.type());
         }
         return this;
@@ -469,7 +469,7 @@ class JOrAssignOp extends JAssignment {
      */
     public JExpression analyze(Context context) {
         if (!(lhs instanceof JLhs)) {
-            JAST.compilationUnit.reportSemanticError(line(), "Illegal lhs for assignment");
+            JAST.compilationUnit().reportSemanticError(line(), "Illegal lhs for assignment");
             return this;
         } else {
             lhs = (JExpression) ((JLhs) lhs).analyzeLhs(context);
@@ -480,7 +480,7 @@ class JOrAssignOp extends JAssignment {
             type = Type.INT;
         }
         else {
-            JAST.compilationUnit.reportSemanticError(line(),
+            JAST.compilationUnit().reportSemanticError(line(),
                     "Invalid lhs type for |=: " + lhs.type());
         }
         return this;
@@ -523,7 +523,7 @@ class JAndAssignOp extends JAssignment {
      */
     public JExpression analyze(Context context) {
         if (!(lhs instanceof JLhs)) {
-            JAST.compilationUnit.reportSemanticError(line(), "Illegal lhs for assignment");
+            JAST.compilationUnit().reportSemanticError(line(), "Illegal lhs for assignment");
             return this;
         } else {
             lhs = (JExpression) ((JLhs) lhs).analyzeLhs(context);
@@ -534,7 +534,7 @@ class JAndAssignOp extends JAssignment {
             type = Type.INT;
         }
         else {
-            JAST.compilationUnit.reportSemanticError(line(),
+            JAST.compilationUnit().reportSemanticError(line(),
                     "Invalid lhs type for &=: " + lhs.type());
         }
         return this;
@@ -577,7 +577,7 @@ class JXorAssignOp extends JAssignment {
      */
     public JExpression analyze(Context context) {
         if (!(lhs instanceof JLhs)) {
-            JAST.compilationUnit.reportSemanticError(line(), "Illegal lhs for assignment");
+            JAST.compilationUnit().reportSemanticError(line(), "Illegal lhs for assignment");
             return this;
         } else {
             lhs = (JExpression) ((JLhs) lhs).analyzeLhs(context);
@@ -588,7 +588,7 @@ class JXorAssignOp extends JAssignment {
             type = Type.INT;
         }
         else {
-            JAST.compilationUnit.reportSemanticError(line(),
+            JAST.compilationUnit().reportSemanticError(line(),
                     "Invalid lhs type for ^=: " + lhs.type());
         }
         return this;
@@ -631,7 +631,7 @@ class JALeftShiftAssignOp extends JAssignment {
      */
     public JExpression analyze(Context context) {
         if (!(lhs instanceof JLhs)) {
-            JAST.compilationUnit.reportSemanticError(line(), "Illegal lhs for assignment");
+            JAST.compilationUnit().reportSemanticError(line(), "Illegal lhs for assignment");
             return this;
         } else {
             lhs = (JExpression) ((JLhs) lhs).analyzeLhs(context);
@@ -642,7 +642,7 @@ class JALeftShiftAssignOp extends JAssignment {
             type = Type.INT;
         }
         else {
-            JAST.compilationUnit.reportSemanticError(line(),
+            JAST.compilationUnit().reportSemanticError(line(),
                     "Invalid lhs type for <<=: " + lhs.type());
         }
         return this;
@@ -685,7 +685,7 @@ class JARightShiftAssignOp extends JAssignment {
      */
     public JExpression analyze(Context context) {
         if (!(lhs instanceof JLhs)) {
-            JAST.compilationUnit.reportSemanticError(line(), "Illegal lhs for assignment");
+            JAST.compilationUnit().reportSemanticError(line(), "Illegal lhs for assignment");
             return this;
         } else {
             lhs = (JExpression) ((JLhs) lhs).analyzeLhs(context);
@@ -696,7 +696,7 @@ class JARightShiftAssignOp extends JAssignment {
             type = Type.INT;
         }
         else {
-            JAST.compilationUnit.reportSemanticError(line(),
+            JAST.compilationUnit().reportSemanticError(line(),
                     "Invalid lhs type for >>=: " + lhs.type());
         }
         return this;
@@ -739,7 +739,7 @@ class JLRightShiftAssignOp extends JAssignment {
      */
     public JExpression analyze(Context context) {
         if (!(lhs instanceof JLhs)) {
-            JAST.compilationUnit.reportSemanticError(line(), "Illegal lhs for assignment");
+            JAST.compilationUnit().reportSemanticError(line(), "Illegal lhs for assignment");
             return this;
         } else {
             lhs = (JExpression) ((JLhs) lhs).analyzeLhs(context);
@@ -750,7 +750,7 @@ class JLRightShiftAssignOp extends JAssignment {
             type = Type.INT;
         }
         else {
-            JAST.compilationUnit.reportSemanticError(line(),
+            JAST.compilationUnit().reportSemanticError(line(),
                     "Invalid lhs type for >>>=: " + lhs.type());
         }
         return this;
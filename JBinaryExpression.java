@@ -2,6 +2,8 @@
 
 package jminusminus;
 
+import java.util.ArrayList;
+
 import static jminusminus.CLConstants.*;
 
 /**
@@ -39,6 +41,125 @@ abstract class JBinaryExpression extends JExpression {
         this.rhs = rhs;
     }
 
+    /**
+     * Analyzes the operands of this binary expression and then, by way of analyzeOperator(), the
+     * operator itself. The parser builds a chain such as a + b + c + ... leaning left, so the
+     * chain is walked down its lhs operands with a loop rather than by recursion, and a long
+     * chain cannot overflow the Java stack.
+     *
+     * @param context context in which names are resolved.
+     * @return the analyzed (and possibly rewritten) AST subtree.
+     */
+    public JExpression analyze(Context context) {
+        ArrayList<JBinaryExpression> chain = new ArrayList<JBinaryExpression>();
+        JExpression e = this;
+        while (isAnalyzedInChain(e)) {
+            chain.add((JBinaryExpression) e);
+            e = ((JBinaryExpression) e).lhs;
+        }
+        JExpression operand = (JExpression) e.analyze(context);
+        for (int i = chain.size() - 1; i >= 0; i--) {
+            JBinaryExpression link = chain.get(i);
+            link.lhs = operand;
+            link.rhs = (JExpression) link.rhs.analyze(context);
+            operand = link.analyzeOperator(context);
+            if (operand == link) {
+                operand = link.foldConstant();
+            }
+        }
+        return operand;
+    }
+
+    /**
+     * Analyzes the operator of this binary expression, whose operands have already been analyzed,
+     * and returns the analyzed (and possibly rewritten) expression. Subclasses that override
+     * analyze() need not override this.
+     *
+     * @param context context in which names are resolved.
+     * @return the analyzed (and possibly rewritten) AST subtree.
+     */
+    protected JExpression analyzeOperator(Context context) {
+        return this;
+    }
+
+    /**
+     * Returns the value of the operator of this binary expression applied to the specified
+     * operand values, which are boxed as by constantValue(), or null if the value is not a
+     * compile-time constant, as for an int division by zero, which must throw at run time.
+     * Subclasses whose values can be computed at compile time override this.
+     *
+     * @param lhsValue the value of the lhs operand.
+     * @param rhsValue the value of the rhs operand.
+     * @return the value of this binary expression, or null.
+     */
+    protected Object fold(Object lhsValue, Object rhsValue) {
+        return null;
+    }
+
+    /**
+     * Returns a literal for the value of this (analyzed) binary expression if both its operands
+     * are constants and fold() computes a value for them, and this expression otherwise. Since
+     * analyze() works from the bottom of a chain up, a constant operand may itself be the result
+     * of folding, and so a whole constant subtree folds into one literal.
+     *
+     * @return a literal for the value of this binary expression, or this binary expression.
+     */
+    protected JExpression foldConstant() {
+        Object lhsValue = lhs.constantValue();
+        Object rhsValue = rhs.constantValue();
+        if (lhsValue == null || rhsValue == null) {
+            return this;
+        }
+        Object value = fold(lhsValue, rhsValue);
+        return value == null ? this : literal(line, value);
+    }
+
+    /**
+     * Generates code for the operands of this binary expression and then, by way of
+     * codegenOperator(), for the operator itself. As in analyze(), a chain leaning left is walked
+     * with a loop.
+     *
+     * @param output the code emitter (basically an abstraction for producing the .class file).
+     */
+    public void codegen(CLEmitter output) {
+        ArrayList<JBinaryExpression> chain = new ArrayList<JBinaryExpression>();
+        JExpression e = this;
+        while (isGeneratedInChain(e)) {
+            chain.add((JBinaryExpression) e);
+            e = ((JBinaryExpression) e).lhs;
+        }
+        e.codegen(output);
+        for (int i = chain.size() - 1; i >= 0; i--) {
+            JBinaryExpression link = chain.get(i);
+            link.rhs.codegen(output);
+            link.codegenOperator(output);
+        }
+    }
+
+    /**
+     * Generates code for the operator of this binary expression, once code for its operands has
+     * been generated. Subclasses that override codegen() need not override this.
+     *
+     * @param output the code emitter (basically an abstraction for producing the .class file).
+     */
+    protected void codegenOperator(CLEmitter output) {
+        // Nothing here.
+    }
+
+    // Returns true if e is a binary expression whose operands are analyzed by analyze() above,
+    // and false otherwise. Assignments analyze their lhs as a variable, and string concatenation
+    // ops are created already analyzed.
+    private static boolean isAnalyzedInChain(JExpression e) {
+        return e instanceof JBinaryExpression && !(e instanceof JAssignment)
+                && !(e instanceof JStringConcatenationOp);
+    }
+
+    // Returns true if e is a binary expression whose code is generated by codegen() above, and
+    // false otherwise.
+    private static boolean isGeneratedInChain(JExpression e) {
+        return isAnalyzedInChain(e) && !(e instanceof JBooleanBinaryExpression);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -74,9 +195,7 @@ class JMultiplyOp extends JBinaryExpression {
     /**
      * {@inheritDoc}
      */
-    public JExpression analyze(Context context) {
-        lhs = (JExpression) lhs.analyze(context);
-        rhs = (JExpression) rhs.analyze(context);
+    protected JExpression analyzeOperator(Context context) {
         if (lhs.type().equals(Type.INT) && rhs.type().equals(Type.INT)) {
             type = Type.INT;
         }
@@ -88,7 +207,7 @@ class JMultiplyOp extends JBinaryExpression {
         }
         else {
             type = Type.ANY;
-            JAST.compilationUnit.reportSemanticError(line(), "Invalid operand types for *");
+            JAST.compilationUnit().reportSemanticError(line(), "Invalid operand types for *");
         }
         return this;
     }
@@ -96,9 +215,21 @@ class JMultiplyOp extends JBinaryExpression {
     /**
      * {@inheritDoc}
      */
-    public void codegen(CLEmitter output) {
-        lhs.codegen(output);
-        rhs.codegen(output);
+    protected Object fold(Object lhsValue, Object rhsValue) {
+        if (type == Type.INT) {
+            return (Integer) lhsValue * (Integer) rhsValue;
+        } else if (type == Type.LONG) {
+            return (Long) lhsValue * (Long) rhsValue;
+        } else if (type == Type.DOUBLE) {
+            return (Double) lhsValue * (Double) rhsValue;
+        }
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected void codegenOperator(CLEmitter output) {
         if(lhs.type() == rhs.type() && lhs.type() == Type.INT){
             output.addNoArgInstruction(IMUL);
         }
@@ -128,9 +259,7 @@ class JDivideOp extends JBinaryExpression {
     /**
      * {@inheritDoc}
      */
-    public JExpression analyze(Context context) {
-        lhs = (JExpression) lhs.analyze(context);
-        rhs = (JExpression) rhs.analyze(context);
+    protected JExpression analyzeOperator(Context context) {
         if (lhs.type().equals(Type.INT) && rhs.type().equals(Type.INT)) {
             type = Type.INT;
         }
@@ -142,7 +271,7 @@ class JDivideOp extends JBinaryExpression {
         }
         else {
             type = Type.ANY;
-            JAST.compilationUnit.reportSemanticError(line(), "Invalid operand types for *");
+            JAST.compilationUnit().reportSemanticError(line(), "Invalid operand types for *");
         }
         return this;
     }
@@ -150,9 +279,22 @@ class JDivideOp extends JBinaryExpression {
     /**
      * {@inheritDoc}
      */
-    public void codegen(CLEmitter output) {
-        lhs.codegen(output);
-        rhs.codegen(output);
+    protected Object fold(Object lhsValue, Object rhsValue) {
+        // An integer division by zero is left to throw at run time.
+        if (type == Type.INT && (Integer) rhsValue != 0) {
+            return (Integer) lhsValue / (Integer) rhsValue;
+        } else if (type == Type.LONG && (Long) rhsValue != 0) {
+            return (Long) lhsValue / (Long) rhsValue;
+        } else if (type == Type.DOUBLE) {
+            return (Double) lhsValue / (Double) rhsValue;
+        }
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected void codegenOperator(CLEmitter output) {
         if(lhs.type() == rhs.type() && lhs.type() == Type.INT){ //maybe just use type instead of lhs.type
             output.addNoArgInstruction(IDIV);
         }
@@ -183,9 +325,7 @@ class JPlusOp extends JBinaryExpression {
     /**
      * {@inheritDoc}
      */
-    public JExpression analyze(Context context) {
-        lhs = (JExpression) lhs.analyze(context);
-        rhs = (JExpression) rhs.analyze(context);
+    protected JExpression analyzeOperator(Context context) {
         if (lhs.type() == Type.STRING || rhs.type() == Type.STRING) {
             return (new JStringConcatenationOp(line, lhs, rhs)).analyze(context);
         } else if (lhs.type() == Type.INT && rhs.type() == Type.INT) {
@@ -199,7 +339,7 @@ class JPlusOp extends JBinaryExpression {
         }
         else {
             type = Type.ANY;
-            JAST.compilationUnit.reportSemanticError(line(), "Invalid operand types for +");
+            JAST.compilationUnit().reportSemanticError(line(), "Invalid operand types for +");
         }
         return this;
     }
@@ -207,9 +347,21 @@ class JPlusOp extends JBinaryExpression {
     /**
      * {@inheritDoc}
      */
-    public void codegen(CLEmitter output) {
-        lhs.codegen(output);
-        rhs.codegen(output);
+    protected Object fold(Object lhsValue, Object rhsValue) {
+        if (type == Type.INT) {
+            return (Integer) lhsValue + (Integer) rhsValue;
+        } else if (type == Type.LONG) {
+            return (Long) lhsValue + (Long) rhsValue;
+        } else if (type == Type.DOUBLE) {
+            return (Double) lhsValue + (Double) rhsValue;
+        }
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected void codegenOperator(CLEmitter output) {
         if(lhs.type() == rhs.type() && lhs.type() == Type.INT){
             output.addNoArgInstruction(IADD);
         }
@@ -241,9 +393,7 @@ class JSubtractOp extends JBinaryExpression {
     /**
      * {@inheritDoc}
      */
-    public JExpression analyze(Context context) {
-        lhs = (JExpression) lhs.analyze(context);
-        rhs = (JExpression) rhs.analyze(context);
+    protected JExpression analyzeOperator(Context context) {
         if (lhs.type() == Type.INT && rhs.type() == Type.INT) {
             type = Type.INT;
         }
@@ -255,7 +405,7 @@ class JSubtractOp extends JBinaryExpression {
         }
         else {
             type = Type.ANY;
-            JAST.compilationUnit.reportSemanticError(line(), "Invalid operand types for -");
+            JAST.compilationUnit().reportSemanticError(line(), "Invalid operand types for -");
         }
         return this;
     }
@@ -263,9 +413,21 @@ class JSubtractOp extends JBinaryExpression {
     /**
      * {@inheritDoc}
      */
-    public void codegen(CLEmitter output) {
-        lhs.codegen(output);
-        rhs.codegen(output);
+    protected Object fold(Object lhsValue, Object rhsValue) {
+        if (type == Type.INT) {
+            return (Integer) lhsValue - (Integer) rhsValue;
+        } else if (type == Type.LONG) {
+            return (Long) lhsValue - (Long) rhsValue;
+        } else if (type == Type.DOUBLE) {
+            return (Double) lhsValue - (Double) rhsValue;
+        }
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected void codegenOperator(CLEmitter output) {
         if(lhs.type() == rhs.type() && lhs.type() == Type.INT){
             output.addNoArgInstruction(ISUB);
         }
@@ -297,9 +459,7 @@ class JRemainderOp extends JBinaryExpression {
     /**
      * {@inheritDoc}
      */
-    public JExpression analyze(Context context) {
-        lhs = (JExpression) lhs.analyze(context);
-        rhs = (JExpression) rhs.analyze(context);
+    protected JExpression analyzeOperator(Context context) {
         if (lhs.type() == Type.INT && rhs.type() == Type.INT) {
             type = Type.INT;
         }
@@ -311,7 +471,7 @@ class JRemainderOp extends JBinaryExpression {
         }
         else {
             type = Type.ANY;
-            JAST.compilationUnit.reportSemanticError(line(), "Invalid operand types for %");
+            JAST.compilationUnit().reportSemanticError(line(), "Invalid operand types for %");
         }
         return this;
     }
@@ -319,9 +479,22 @@ class JRemainderOp extends JBinaryExpression {
     /**
      * {@inheritDoc}
      */
-    public void codegen(CLEmitter output) {
-        lhs.codegen(output);
-        rhs.codegen(output);
+    protected Object fold(Object lhsValue, Object rhsValue) {
+        // An integer division by zero is left to throw at run time.
+        if (type == Type.INT && (Integer) rhsValue != 0) {
+            return (Integer) lhsValue % (Integer) rhsValue;
+        } else if (type == Type.LONG && (Long) rhsValue != 0) {
+            return (Long) lhsValue % (Long) rhsValue;
+        } else if (type == Type.DOUBLE) {
+            return (Double) lhsValue % (Double) rhsValue;
+        }
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected void codegenOperator(CLEmitter output) {
         if(lhs.type() == rhs.type() && lhs.type() ==Type.INT){
             output.addNoArgInstruction(IREM);
         }
@@ -352,9 +525,7 @@ class JOrOp extends JBinaryExpression {
     /**
      * {@inheritDoc}
      */
-    public JExpression analyze(Context context) {
-        lhs = (JExpression) lhs.analyze(context);
-        rhs = (JExpression) rhs.analyze(context);
+    protected JExpression analyzeOperator(Context context) {
         lhs.type().mustMatchExpected(line(), Type.INT);
         rhs.type().mustMatchExpected(line(), Type.INT);
         type = Type.INT;
@@ -364,9 +535,17 @@ class JOrOp extends JBinaryExpression {
     /**
      * {@inheritDoc}
      */
-    public void codegen(CLEmitter output) {
-        lhs.codegen(output);//first int
-        rhs.codegen(output);//second int
+    protected Object fold(Object lhsValue, Object rhsValue) {
+        if (lhsValue instanceof Integer && rhsValue instanceof Integer) {
+            return (Integer) lhsValue | (Integer) rhsValue;
+        }
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected void codegenOperator(CLEmitter output) {
         output.addNoArgInstruction(IOR);
     }
 }
@@ -389,9 +568,7 @@ class JXorOp extends JBinaryExpression {
     /**
      * {@inheritDoc}
      */
-    public JExpression analyze(Context context) {
-        lhs = (JExpression) lhs.analyze(context);
-        rhs = (JExpression) rhs.analyze(context);
+    protected JExpression analyzeOperator(Context context) {
         lhs.type().mustMatchExpected(line(), Type.INT);
         rhs.type().mustMatchExpected(line(), Type.INT);
         type = Type.INT;
@@ -401,9 +578,17 @@ class JXorOp extends JBinaryExpression {
     /**
      * {@inheritDoc}
      */
-    public void codegen(CLEmitter output) {
-        lhs.codegen(output);//first int
-        rhs.codegen(output);//second int
+    protected Object fold(Object lhsValue, Object rhsValue) {
+        if (lhsValue instanceof Integer && rhsValue instanceof Integer) {
+            return (Integer) lhsValue ^ (Integer) rhsValue;
+        }
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected void codegenOperator(CLEmitter output) {
         output.addNoArgInstruction(IXOR);
     }
 }
@@ -426,9 +611,7 @@ class JAndOp extends JBinaryExpression {
     /**
      * {@inheritDoc}
      */
-    public JExpression analyze(Context context) {
-        lhs = (JExpression) lhs.analyze(context);
-        rhs = (JExpression) rhs.analyze(context);
+    protected JExpression analyzeOperator(Context context) {
         lhs.type().mustMatchExpected(line(), Type.INT);
         rhs.type().mustMatchExpected(line(), Type.INT);
         type = Type.INT;
@@ -438,9 +621,17 @@ class JAndOp extends JBinaryExpression {
     /**
      * {@inheritDoc}
      */
-    public void codegen(CLEmitter output) {
-        lhs.codegen(output);//first int
-        rhs.codegen(output);//second int
+    protected Object fold(Object lhsValue, Object rhsValue) {
+        if (lhsValue instanceof Integer && rhsValue instanceof Integer) {
+            return (Integer) lhsValue & (Integer) rhsValue;
+        }
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected void codegenOperator(CLEmitter output) {
         output.addNoArgInstruction(IAND);
     }
 }
@@ -463,9 +654,7 @@ class JALeftShiftOp extends JBinaryExpression {
     /**
      * {@inheritDoc}
      */
-    public JExpression analyze(Context context) {
-        lhs = (JExpression) lhs.analyze(context);
-        rhs = (JExpression) rhs.analyze(context);
+    protected JExpression analyzeOperator(Context context) {
         lhs.type().mustMatchExpected(line(), Type.INT);
         rhs.type().mustMatchExpected(line(), Type.INT);
         type = Type.INT;
@@ -475,9 +664,17 @@ class JALeftShiftOp extends JBinaryExpression {
     /**
      * {@inheritDoc}
      */
-    public void codegen(CLEmitter output) {
-        lhs.codegen(output);//first int
-        rhs.codegen(output);//second int
+    protected Object fold(Object lhsValue, Object rhsValue) {
+        if (lhsValue instanceof Integer && rhsValue instanceof Integer) {
+            return (Integer) lhsValue << (Integer) rhsValue;
+        }
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected void codegenOperator(CLEmitter output) {
         output.addNoArgInstruction(ISHL);
     }
 }
@@ -500,9 +697,7 @@ class JARightShiftOp extends JBinaryExpression {
     /**
      * {@inheritDoc}
      */
-    public JExpression analyze(Context context) {
-        lhs = (JExpression) lhs.analyze(context);
-        rhs = (JExpression) rhs.analyze(context);
+    protected JExpression analyzeOperator(Context context) {
         lhs.type().mustMatchExpected(line(), Type.INT);
         rhs.type().mustMatchExpected(line(), Type.INT);
         type = Type.INT;
@@ -512,9 +707,17 @@ class JARightShiftOp extends JBinaryExpression {
     /**
      * {@inheritDoc}
      */
-    public void codegen(CLEmitter output) {
-        lhs.codegen(output);//first int
-        rhs.codegen(output);//second int
+    protected Object fold(Object lhsValue, Object rhsValue) {
+        if (lhsValue instanceof Integer && rhsValue instanceof Integer) {
+            return (Integer) lhsValue >> (Integer) rhsValue;
+        }
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected void codegenOperator(CLEmitter output) {
         output.addNoArgInstruction(ISHR);
     }
 }
@@ -537,9 +740,7 @@ class JLRightShiftOp extends JBinaryExpression {
     /**
      * {@inheritDoc}
      */
-    public JExpression analyze(Context context) {
-        lhs = (JExpression) lhs.analyze(context);
-        rhs = (JExpression) rhs.analyze(context);
+    protected JExpression analyzeOperator(Context context) {
         lhs.type().mustMatchExpected(line(), Type.INT);
         rhs.type().mustMatchExpected(line(), Type.INT);
         type = Type.INT;
@@ -549,9 +750,17 @@ class JLRightShiftOp extends JBinaryExpression {
     /**
      * {@inheritDoc}
      */
-    public void codegen(CLEmitter output) {
-        lhs.codegen(output);//first int
-        rhs.codegen(output);//second int
+    protected Object fold(Object lhsValue, Object rhsValue) {
+        if (lhsValue instanceof Integer && rhsValue instanceof Integer) {
+            return (Integer) lhsValue >>> (Integer) rhsValue;
+        }
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected void codegenOperator(CLEmitter output) {
         output.addNoArgInstruction(IUSHR);
     }
 }
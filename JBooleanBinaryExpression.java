@@ -2,6 +2,8 @@
 
 package jminusminus;
 
+import java.util.ArrayList;
+
 import static jminusminus.CLConstants.*;
 
 /**
@@ -35,6 +37,26 @@ abstract class JBooleanBinaryExpression extends JBinaryExpression {
         output.addNoArgInstruction(ICONST_0); // false
         output.addLabel(trueLabel);
     }
+
+    /**
+     * Returns whether the specified operand values, which are boxed as by constantValue(), are
+     * equal under ==, or null if that is not known at compile time, as for String operands
+     * (which == compares as references).
+     *
+     * @param lhsValue the value of the lhs operand.
+     * @param rhsValue the value of the rhs operand.
+     * @return whether the operand values are equal, or null.
+     */
+    protected static Boolean equal(Object lhsValue, Object rhsValue) {
+        if (lhsValue instanceof String || lhsValue.getClass() != rhsValue.getClass()) {
+            return null;
+        }
+        if (lhsValue instanceof Double) {
+            // Unlike Double.equals(), == has NaN unequal to itself and -0.0 equal to 0.0.
+            return ((Double) lhsValue).doubleValue() == ((Double) rhsValue).doubleValue();
+        }
+        return lhsValue.equals(rhsValue);
+    }
 }
 
 /**
@@ -56,14 +78,19 @@ class JEqualOp extends JBooleanBinaryExpression {
     /**
      * {@inheritDoc}
      */
-    public JExpression analyze(Context context) {
-        lhs = (JExpression) lhs.analyze(context);
-        rhs = (JExpression) rhs.analyze(context);
+    protected JExpression analyzeOperator(Context context) {
         lhs.type().mustMatchExpected(line(), rhs.type());
         type = Type.BOOLEAN;
         return this;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    protected Object fold(Object lhsValue, Object rhsValue) {
+        return equal(lhsValue, rhsValue);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -96,12 +123,14 @@ class JLogicalAndOp extends JBooleanBinaryExpression {
     /**
      * {@inheritDoc}
      */
-    public JExpression analyze(Context context) {
-        lhs = (JExpression) lhs.analyze(context);
-        rhs = (JExpression) rhs.analyze(context);
+    protected JExpression analyzeOperator(Context context) {
         lhs.type().mustMatchExpected(line(), Type.BOOLEAN);
         rhs.type().mustMatchExpected(line(), Type.BOOLEAN);
         type = Type.BOOLEAN;
+        if (lhs.constantValue() instanceof Boolean) {
+            // false && rhs is false without rhs being evaluated, and true && rhs is just rhs.
+            return (Boolean) lhs.constantValue() ? rhs : lhs;
+        }
         return this;
     }
 
@@ -115,8 +144,18 @@ class JLogicalAndOp extends JBooleanBinaryExpression {
             rhs.codegen(output, targetLabel, true);
             output.addLabel(falseLabel);
         } else {
-            lhs.codegen(output, targetLabel, false);
-            rhs.codegen(output, targetLabel, false);
+            // Every operand of a chain a && b && c && ... branches to targetLabel when false, so
+            // the chain is walked down its lhs operands with a loop rather than by recursion.
+            ArrayList<JExpression> operands = new ArrayList<JExpression>();
+            JExpression e = this;
+            while (e instanceof JLogicalAndOp) {
+                operands.add(((JLogicalAndOp) e).rhs);
+                e = ((JLogicalAndOp) e).lhs;
+            }
+            e.codegen(output, targetLabel, false);
+            for (int i = operands.size() - 1; i >= 0; i--) {
+                operands.get(i).codegen(output, targetLabel, false);
+            }
         }
     }
 }
@@ -139,12 +178,14 @@ class JLogicalOrOp extends JBooleanBinaryExpression {
     /**
      * {@inheritDoc}
      */
-    public JExpression analyze(Context context) {
-        lhs = (JExpression) lhs.analyze(context);
-        rhs = (JExpression) rhs.analyze(context);
+    protected JExpression analyzeOperator(Context context) {
         lhs.type().mustMatchExpected(line(), Type.BOOLEAN);
         rhs.type().mustMatchExpected(line(), Type.BOOLEAN);
         type = Type.BOOLEAN;
+        if (lhs.constantValue() instanceof Boolean) {
+            // true || rhs is true without rhs being evaluated, and false || rhs is just rhs.
+            return (Boolean) lhs.constantValue() ? lhs : rhs;
+        }
         return this;
     }
 
@@ -183,15 +224,24 @@ class JNotEqualOp extends JBooleanBinaryExpression {
     /**
      * {@inheritDoc}
      */
-    public JExpression analyze(Context context) {
-        lhs = (JExpression) lhs.analyze(context);
-        rhs = (JExpression) rhs.analyze(context);
+    protected JExpression analyzeOperator(Context context) {
         lhs.type().mustMatchOneOf(line(), Type.BOOLEAN, Type.INT);
         rhs.type().mustMatchOneOf(line(),Type.BOOLEAN, Type.INT);
         type = Type.BOOLEAN;
         return this;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    protected Object fold(Object lhsValue, Object rhsValue) {
+        Boolean equal = equal(lhsValue, rhsValue);
+        if (equal == null) {
+            return null;
+        }
+        return !equal;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -24,7 +24,7 @@ public class JBreakStatement extends JStatement {
     public JStatement analyze(Context context) {
         //getting a bunch of exceptions in each thing so adding if != null
         //setting it to the value at the top of the jmember enclosing statement stack
-        enclosingStatement = JMember.enclosingStatement.peek();
+        enclosingStatement = JMember.enclosingStatement.get().peek();
         //set the enclosing statement's hasbreak to true
         if(enclosingStatement instanceof JForStatement){
             ((JForStatement) enclosingStatement).hasBreak = true;
@@ -17,7 +17,7 @@ class JCastOp extends JExpression {
     private JExpression expr;
 
     // The conversions table.
-    private static Conversions conversions;
+    private static final Conversions conversions = new Conversions();
 
     // The converter to use for this cast.
     private Converter converter;
@@ -33,7 +33,6 @@ class JCastOp extends JExpression {
         super(line);
         this.cast = cast;
         this.expr = expr;
-        conversions = new Conversions();
     }
 
     /**
@@ -51,9 +50,16 @@ class JCastOp extends JExpression {
         } else if (conversions.get(expr.type(), cast) != null) {
             converter = conversions.get(expr.type(), cast);
         } else {
-            JAST.compilationUnit.reportSemanticError(line,
+            JAST.compilationUnit().reportSemanticError(line,
                     "Cannot cast a " + expr.type().toString() + " to a " + cast.toString());
         }
+        Object value = expr.constantValue();
+        if (value != null && converter != null) {
+            value = castConstant(value, cast);
+            if (value != null) {
+                return literal(line, value);
+            }
+        }
         return this;
     }
 
@@ -65,6 +71,31 @@ class JCastOp extends JExpression {
         converter.codegen(output);
     }
 
+    // Returns the constant value (boxed as by constantValue()) cast to the specified type, or null
+    // if that type is neither primitive nor String; a cast to any other reference type must not
+    // give its operand the type of a literal.
+    private static Object castConstant(Object value, Type cast) {
+        if (value instanceof Character) {
+            // A char converts as the int it widens to.
+            value = (int) (Character) value;
+        }
+        if (value instanceof Number) {
+            Number n = (Number) value;
+            if (cast.equals(Type.INT)) {
+                return n.intValue();
+            } else if (cast.equals(Type.LONG)) {
+                return n.longValue();
+            } else if (cast.equals(Type.DOUBLE)) {
+                return n.doubleValue();
+            } else if (cast.equals(Type.CHAR)) {
+                return (char) n.intValue();
+            }
+        } else if (cast.equals(Type.BOOLEAN) || cast.equals(Type.STRING)) {
+            return value;
+        }
+        return null;
+    }
+
     /**
      * {@inheritDoc}
      */
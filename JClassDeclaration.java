@@ -3,6 +3,7 @@
 package jminusminus;
 
 import java.util.ArrayList;
+import java.util.concurrent.RecursiveAction;
 
 import static jminusminus.CLConstants.*;
 
@@ -10,6 +11,11 @@ import static jminusminus.CLConstants.*;
  * A representation of a class declaration.
  */
 class JClassDeclaration extends JAST implements JTypeDecl {
+    // Least number of methods (constructors included) that a class must have for its members to
+    // be compiled in parallel, if the compilation unit has a member pool. Smaller classes are
+    // not worth the bookkeeping, and their class files come out the same every time.
+    private static final int PARALLEL_METHOD_COUNT = 64;
+
     // Class modifiers.
     private ArrayList<String> mods;
 
@@ -76,8 +82,8 @@ class JClassDeclaration extends JAST implements JTypeDecl {
      * {@inheritDoc}
      */
     public void declareThisType(Context context) {
-        String qualifiedName = JAST.compilationUnit.packageName() == "" ?
-                name : JAST.compilationUnit.packageName() + "/" + name;
+        String qualifiedName = JAST.compilationUnit().packageName() == "" ?
+                name : JAST.compilationUnit().packageName() + "/" + name;
         CLEmitter partial = new CLEmitter(false);
         partial.addClass(mods, qualifiedName, Type.OBJECT.jvmName(), null, false);//superinterfaces shoul dbe a arratylist of strings
         thisType = Type.typeFor(partial.toClass());
@@ -98,7 +104,7 @@ class JClassDeclaration extends JAST implements JTypeDecl {
         // semantics below are violated, so we can't defer these checks to analyze().
         thisType.checkAccess(line, superType);
         if (superType.isFinal()) {
-            JAST.compilationUnit.reportSemanticError(line, "Cannot extend a final type: %s",
+            JAST.compilationUnit().reportSemanticError(line, "Cannot extend a final type: %s",
                     superType.toString());
         }
 
@@ -106,8 +112,8 @@ class JClassDeclaration extends JAST implements JTypeDecl {
         CLEmitter partial = new CLEmitter(false);
 
         // Add the class header to the partial class
-        String qualifiedName = JAST.compilationUnit.packageName() == "" ?
-                name : JAST.compilationUnit.packageName() + "/" + name;
+        String qualifiedName = JAST.compilationUnit().packageName() == "" ?
+                name : JAST.compilationUnit().packageName() + "/" + name;
         partial.addClass(mods, qualifiedName, superType.jvmName(), null, false);
 
         // Pre-analyze the members and add them to the partial class.
@@ -124,7 +130,7 @@ class JClassDeclaration extends JAST implements JTypeDecl {
 
         // Get the ClassRep for the (partial) class and make it the representation for this type.
         Type id = this.context.lookupType(name);
-        if (id != null && !JAST.compilationUnit.errorHasOccurred()) {
+        if (id != null && !JAST.compilationUnit().errorHasOccurred()) {
             id.setClassRep(partial.toClass());
         }
     }
@@ -161,9 +167,13 @@ class JClassDeclaration extends JAST implements JTypeDecl {
      * {@inheritDoc}
      */
     public JAST analyze(Context context) {
-        // Analyze all members.
-        for (JMember member : classBlock) {
-            ((JAST) member).analyze(this.context);
+        // Analyze all members; those of a class with many methods in parallel.
+        if (isCompiledInParallel()) {
+            analyzeInParallel();
+        } else {
+            for (JMember member : classBlock) {
+                ((JAST) member).analyze(this.context);
+            }
         }
 
         // Separate declared fields for purposes of initialization.
@@ -184,7 +194,7 @@ class JClassDeclaration extends JAST implements JTypeDecl {
             for (Method method : thisType.abstractMethods()) {
                 methods += "\n" + method;
             }
-            JAST.compilationUnit.reportSemanticError(line,
+            JAST.compilationUnit().reportSemanticError(line,
                     "Class must be abstract since it defines abstract methods: %s", methods);
         }
         return this;
@@ -195,8 +205,8 @@ class JClassDeclaration extends JAST implements JTypeDecl {
      */
     public void codegen(CLEmitter output) {
         // The class header.
-        String qualifiedName = JAST.compilationUnit.packageName() == "" ?
-                name : JAST.compilationUnit.packageName() + "/" + name;
+        String qualifiedName = JAST.compilationUnit().packageName() == "" ?
+                name : JAST.compilationUnit().packageName() + "/" + name;
         ArrayList <String> str = new ArrayList<>();
         //include a list of implemented interfaces in the class header
         if(superInterfaces != null){
@@ -216,9 +226,13 @@ class JClassDeclaration extends JAST implements JTypeDecl {
             codegenImplicitConstructor(output);
         }
 
-        // The members.
-        for (JMember member : classBlock) {
-            ((JAST) member).codegen(output);
+        // The members; the methods of a class with many of them are generated in parallel.
+        if (isCompiledInParallel()) {
+            codegenInParallel(output);
+        } else {
+            for (JMember member : classBlock) {
+                ((JAST) member).codegen(output);
+            }
         }
 
         // Generate a class initialization method?
@@ -259,6 +273,89 @@ class JClassDeclaration extends JAST implements JTypeDecl {
         }
     }
 
+    // Returns true if the members of this class are to be compiled in parallel, and false
+    // otherwise.
+    private boolean isCompiledInParallel() {
+        if (JAST.compilationUnit().memberPool() == null) {
+            return false;
+        }
+        int methodCount = 0;
+        for (JMember member : classBlock) {
+            if (member instanceof JMethodDeclaration) {
+                methodCount++;
+            }
+        }
+        return methodCount >= PARALLEL_METHOD_COUNT;
+    }
+
+    // Analyzes the members of this class, the methods in parallel and the fields in this thread,
+    // and then prints the semantic errors found in each member, in the order of the members.
+    private void analyzeInParallel() {
+        JCompilationUnit unit = JAST.compilationUnit();
+        ArrayList<JMemberTask> tasks = new ArrayList<JMemberTask>();
+        StringBuilder[] errors = new StringBuilder[classBlock.size()];
+        for (int i = 0; i < classBlock.size(); i++) {
+            errors[i] = new StringBuilder();
+            if (classBlock.get(i) instanceof JMethodDeclaration) {
+                final JAST member = (JAST) classBlock.get(i);
+                tasks.add(new JMemberTask(unit, errors[i]) {
+                    protected void compile() {
+                        member.analyze(context);
+                    }
+                });
+            }
+        }
+        runInParallel(tasks);
+        for (int i = 0; i < classBlock.size(); i++) {
+            if (!(classBlock.get(i) instanceof JMethodDeclaration)) {
+                StringBuilder held = unit.holdErrors(errors[i]);
+                ((JAST) classBlock.get(i)).analyze(this.context);
+                unit.holdErrors(held);
+            }
+        }
+        for (StringBuilder memberErrors : errors) {
+            System.err.print(memberErrors);
+        }
+    }
+
+    // Generates code for the members of this class: for each method in parallel, into a method
+    // emitter of its own, and for the fields in this thread. The methods are added to the class
+    // in the order of the members.
+    private void codegenInParallel(CLEmitter output) {
+        ArrayList<JMemberTask> tasks = new ArrayList<JMemberTask>();
+        CLEmitter[] methodEmitters = new CLEmitter[classBlock.size()];
+        for (int i = 0; i < classBlock.size(); i++) {
+            if (classBlock.get(i) instanceof JMethodDeclaration) {
+                final JAST member = (JAST) classBlock.get(i);
+                final CLEmitter methodEmitter = output.methodEmitter();
+                methodEmitters[i] = methodEmitter;
+                tasks.add(new JMemberTask(JAST.compilationUnit(), null) {
+                    protected void compile() {
+                        member.codegen(methodEmitter);
+                    }
+                });
+            }
+        }
+        runInParallel(tasks);
+        for (int i = 0; i < classBlock.size(); i++) {
+            if (methodEmitters[i] != null) {
+                output.addMethods(methodEmitters[i]);
+            } else {
+                ((JAST) classBlock.get(i)).codegen(output);
+            }
+        }
+    }
+
+    // Runs the specified tasks in the member pool of the compilation unit, and returns once all
+    // of them have completed.
+    private static void runInParallel(final ArrayList<JMemberTask> tasks) {
+        JAST.compilationUnit().memberPool().invoke(new RecursiveAction() {
+            protected void compute() {
+                invokeAll(tasks);
+            }
+        });
+    }
+
     // Generates code for an implicit empty constructor (necessary only if there is not already
     // an explicit one).
     private void codegenPartialImplicitConstructor(CLEmitter partial) {
@@ -302,3 +399,48 @@ class JClassDeclaration extends JAST implements JTypeDecl {
         output.addNoArgInstruction(RETURN);
     }
 }
+
+/**
+ * A task that compiles (analyzes, or generates code for) one member of a class, in a thread of
+ * the member pool of the compilation unit, with the unit as the current one for that thread.
+ */
+abstract class JMemberTask extends RecursiveAction {
+    // Compilation unit of the member.
+    private JCompilationUnit unit;
+
+    // Buffer for the semantic errors reported while compiling the member, or null.
+    private StringBuilder errors;
+
+    /**
+     * Constructs a task that compiles a member of a class in the specified compilation unit.
+     *
+     * @param unit   compilation unit of the member.
+     * @param errors buffer in which to hold back the semantic errors reported while compiling
+     *               the member, or null to print them as they are reported.
+     */
+    public JMemberTask(JCompilationUnit unit, StringBuilder errors) {
+        this.unit = unit;
+        this.errors = errors;
+    }
+
+    /**
+     * Compiles the member.
+     */
+    protected abstract void compile();
+
+    /**
+     * {@inheritDoc}
+     */
+    protected void compute() {
+        // A thread waiting for other tasks may run this one, so its state is restored after.
+        JCompilationUnit current = JAST.compilationUnit();
+        JAST.setCompilationUnit(unit);
+        StringBuilder held = unit.holdErrors(errors);
+        try {
+            compile();
+        } finally {
+            unit.holdErrors(held);
+            JAST.setCompilationUnit(current);
+        }
+    }
+}
@@ -20,6 +20,38 @@ abstract class JComparisonExpression extends JBooleanBinaryExpression {
         super(line, operator, lhs, rhs);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    protected Object fold(Object lhsValue, Object rhsValue) {
+        if (!(lhsValue instanceof Number) || !(rhsValue instanceof Number)) {
+            return null;
+        }
+        Number l = (Number) lhsValue;
+        Number r = (Number) rhsValue;
+        if (l instanceof Double || r instanceof Double) {
+            // Every comparison with NaN is false.
+            double a = l.doubleValue();
+            double b = r.doubleValue();
+            if (Double.isNaN(a) || Double.isNaN(b)) {
+                return false;
+            }
+            return holds(a < b ? -1 : a > b ? 1 : 0);
+        }
+
+        // An int converts to a long exactly.
+        return holds(Long.compare(l.longValue(), r.longValue()));
+    }
+
+    /**
+     * Returns true if this comparison holds between operands whose comparison (negative if the
+     * lhs is less than the rhs, zero if they are equal, and positive if the lhs is greater)
+     * is the specified value, and false otherwise.
+     *
+     * @param comparison the comparison of the operands.
+     * @return true if this comparison holds, and false otherwise.
+     */
+    protected abstract boolean holds(int comparison);
 }
 
 /**
@@ -39,15 +71,20 @@ class JGreaterThanOp extends JComparisonExpression {
     /**
      * {@inheritDoc}
      */
-    public JExpression analyze(Context context) {
-        lhs = (JExpression) lhs.analyze(context);
-        rhs = (JExpression) rhs.analyze(context);
+    protected JExpression analyzeOperator(Context context) {
         lhs.type().mustMatchOneOf(line(), Type.INT, Type.LONG, Type.DOUBLE );
         rhs.type().mustMatchOneOf(line(), Type.INT, Type.LONG, Type.DOUBLE );
         type = Type.BOOLEAN;
         //if(lhs.type() == )
         return this;
     }
+    /**
+     * {@inheritDoc}
+     */
+    protected boolean holds(int comparison) {
+        return comparison > 0;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -76,15 +113,20 @@ class JLessEqualOp extends JComparisonExpression {
     /**
      * {@inheritDoc}
      */
-    public JExpression analyze(Context context) {
-        lhs = (JExpression) lhs.analyze(context);
-        rhs = (JExpression) rhs.analyze(context);
+    protected JExpression analyzeOperator(Context context) {
         lhs.type().mustMatchOneOf(line(), Type.INT, Type.LONG, Type.DOUBLE );
         rhs.type().mustMatchOneOf(line(), Type.INT, Type.LONG, Type.DOUBLE );
         type = Type.BOOLEAN;
         //if(lhs.type() == )
         return this;
     }
+    /**
+     * {@inheritDoc}
+     */
+    protected boolean holds(int comparison) {
+        return comparison <= 0;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -113,15 +155,20 @@ class JGreaterEqualOp extends JComparisonExpression {
     /**
      * {@inheritDoc}
      */
-    public JExpression analyze(Context context) {
-        lhs = (JExpression) lhs.analyze(context);
-        rhs = (JExpression) rhs.analyze(context);
+    protected JExpression analyzeOperator(Context context) {
         lhs.type().mustMatchOneOf(line(), Type.INT, Type.LONG, Type.DOUBLE );
         rhs.type().mustMatchOneOf(line(), Type.INT, Type.LONG, Type.DOUBLE );
         type = Type.BOOLEAN;
         //if(lhs.type() == )
         return this;
     }
+    /**
+     * {@inheritDoc}
+     */
+    protected boolean holds(int comparison) {
+        return comparison >= 0;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -149,15 +196,20 @@ class JLessThanOp extends JComparisonExpression {
     /**
      * {@inheritDoc}
      */
-    public JExpression analyze(Context context) {
-        lhs = (JExpression) lhs.analyze(context);
-        rhs = (JExpression) rhs.analyze(context);
+    protected JExpression analyzeOperator(Context context) {
         lhs.type().mustMatchOneOf(line(), Type.INT, Type.LONG, Type.DOUBLE );
         rhs.type().mustMatchOneOf(line(), Type.INT, Type.LONG, Type.DOUBLE );
         type = Type.BOOLEAN;
         //if(lhs.type() == )
         return this;
     }
+    /**
+     * {@inheritDoc}
+     */
+    protected boolean holds(int comparison) {
+        return comparison < 0;
+    }
+
     /**
      * {@inheritDoc}
      */
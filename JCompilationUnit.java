@@ -3,6 +3,7 @@
 package jminusminus;
 
 import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * The abstract syntax tree (AST) node representing a compilation unit, and so the root of the AST.
@@ -50,6 +51,14 @@ class JCompilationUnit extends JAST {
     // Whether a semantic error has been found.
     private boolean isInError;
 
+    // Pool of threads among which the members of large classes are analyzed and generated, or
+    // null if all the unit is compiled by the thread that constructed it.
+    private ForkJoinPool memberPool;
+
+    // Where the semantic errors reported by each thread go instead of STDERR, while they are
+    // held back (see holdErrors()).
+    private ThreadLocal<StringBuilder> heldErrors;
+
     /**
      * Constructs an AST node for a compilation unit.
      *
@@ -67,7 +76,8 @@ class JCompilationUnit extends JAST {
         this.imports = imports;
         this.typeDeclarations = typeDeclarations;
         clFiles = new ArrayList<CLFile>();
-        compilationUnit = this;
+        heldErrors = new ThreadLocal<StringBuilder>();
+        setCompilationUnit(this);
     }
 
     /**
@@ -99,6 +109,27 @@ class JCompilationUnit extends JAST {
         return isInError;
     }
 
+    /**
+     * Sets the pool of threads among which the members of the classes in this unit that have
+     * many methods are analyzed, and their code generated, in parallel. If the pool is null,
+     * which is the default, all the unit is compiled by the thread that constructed it.
+     *
+     * @param memberPool the pool of threads, or null.
+     */
+    public void memberPool(ForkJoinPool memberPool) {
+        this.memberPool = memberPool;
+    }
+
+    /**
+     * Returns the pool of threads among which the members of large classes are compiled, or
+     * null.
+     *
+     * @return the pool of threads, or null.
+     */
+    public ForkJoinPool memberPool() {
+        return memberPool;
+    }
+
     /**
      * Reports a semantic error.
      *
@@ -108,9 +139,29 @@ class JCompilationUnit extends JAST {
      */
     public void reportSemanticError(int line, String message, Object... arguments) {
         isInError = true;
-        System.err.printf("%s:%d: error: ", fileName, line);
-        System.err.printf(message, arguments);
-        System.err.println();
+        String error = String.format("%s:%d: error: %s%n", fileName, line,
+                String.format(message, arguments));
+        StringBuilder held = heldErrors.get();
+        if (held != null) {
+            held.append(error);
+        } else {
+            System.err.print(error);
+        }
+    }
+
+    /**
+     * Holds back the semantic errors that the current thread reports from now on, appending
+     * them to the specified buffer rather than printing them, or stops holding them back if the
+     * buffer is null. Members compiled in parallel hold back their errors so that they can be
+     * printed in the order of the members.
+     *
+     * @param errors buffer for the errors, or null.
+     * @return the buffer that the errors went to before, or null.
+     */
+    public StringBuilder holdErrors(StringBuilder errors) {
+        StringBuilder held = heldErrors.get();
+        heldErrors.set(errors);
+        return held;
     }
 
     /**
@@ -130,7 +181,7 @@ class JCompilationUnit extends JAST {
                 Class<?> classRep = Class.forName(imported.toString());
                 context.addType(imported.line(), Type.typeFor(classRep));
             } catch (Exception e) {
-                JAST.compilationUnit.reportSemanticError(imported.line(), "Unable to find %s",
+                JAST.compilationUnit().reportSemanticError(imported.line(), "Unable to find %s",
                         imported.toString());
             }
         }
@@ -23,7 +23,7 @@ public class JContinueStatement extends JStatement {
      */
     public JStatement analyze(Context context) {
         //copied from jbreak and removed switch
-        enclosingStatement = JMember.enclosingStatement.peek();
+        enclosingStatement = JMember.enclosingStatement.get().peek();
         //set the enclosing statement's hasbreak to true
         if(enclosingStatement instanceof JForStatement){
             ((JForStatement) enclosingStatement).hasContinue = true;
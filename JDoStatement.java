@@ -35,11 +35,11 @@ public class JDoStatement extends JStatement {
      * {@inheritDoc}
      */
     public JStatement analyze(Context context) {
-        JMember.enclosingStatement.push(this);
+        JMember.enclosingStatement.get().push(this);
         condition = (JExpression) condition.analyze(context);
         condition.type().mustMatchExpected(line(), Type.BOOLEAN);
         body = (JStatement) body.analyze(context);
-        JMember.enclosingStatement.pop();
+        JMember.enclosingStatement.get().pop();
         return this;
     }
 
@@ -54,6 +54,44 @@ abstract class JExpression extends JStatement {
      */
     public abstract JExpression analyze(Context context);
 
+    /**
+     * Returns the value of this expression if it is a constant, that is, an int, long, double,
+     * boolean, char, or String literal, and null otherwise. The value is boxed as an Integer,
+     * Long, Double, Boolean, Character, or String respectively.
+     *
+     * @return the value of this expression if it is a constant, and null otherwise.
+     */
+    public Object constantValue() {
+        return null;
+    }
+
+    /**
+     * Returns an analyzed literal for the specified constant value, which is boxed as by
+     * constantValue(). Analysis uses this to replace an expression whose value it computes at
+     * compile time.
+     *
+     * @param line  line in which the expression occurs in the source file.
+     * @param value the value of the expression.
+     * @return an analyzed literal for the value.
+     */
+    protected static JExpression literal(int line, Object value) {
+        JExpression literal;
+        if (value instanceof Integer) {
+            literal = new JLiteralInt(line, value.toString());
+        } else if (value instanceof Long) {
+            literal = new JLiteralLong(line, value + "L");
+        } else if (value instanceof Double) {
+            literal = new JLiteralDouble(line, value.toString());
+        } else if (value instanceof Boolean) {
+            literal = new JLiteralBoolean(line, value.toString());
+        } else if (value instanceof Character) {
+            literal = new JLiteralChar(line, "'" + JAST.escape(value.toString(), '\'') + "'");
+        } else {
+            literal = JLiteralString.fromValue(line, (String) value);
+        }
+        return literal.analyze(null);
+    }
+
     /**
      * Performs short-circuit code generation for a boolean expression, given the code emitter,
      * a target label, and whether we branch to that label on true or on false.
@@ -52,7 +52,7 @@ class JForStatement extends JStatement {
     public JForStatement analyze(Context context1) {//looking at whileStatement for reference
         this.context = (LocalContext) context1; //james helped with this
         //push the current for loop onto enclosing statement
-        JMember.enclosingStatement.push(this);//james helped with this
+        JMember.enclosingStatement.get().push(this);//james helped with this
         if(init != null) {
             for(int i = 0; i < init.size(); i++){
                 //System.out.println(init.get(i));
@@ -73,7 +73,7 @@ class JForStatement extends JStatement {
         if(body!=null) {
             body = (JStatement) body.analyze(context);//analyzing body
         }
-        JMember.enclosingStatement.pop();//james helped with this
+        JMember.enclosingStatement.get().pop();//james helped with this
         return this;
     }
 
@@ -90,6 +90,11 @@ class JForStatement extends JStatement {
                 i.codegen(output);
             }
         }
+        if (condition != null && Boolean.FALSE.equals(condition.constantValue())) {
+            // Analysis folded the condition to false, so the body can never run, and only the
+            // initialization is emitted.
+            return;
+        }
         output.addLabel(conditionLabel);
         output.addLabel(continueLabel);
         if(condition != null){
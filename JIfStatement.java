@@ -2,6 +2,8 @@
 
 package jminusminus;
 
+import java.util.ArrayList;
+
 import static jminusminus.CLConstants.*;
 
 /**
@@ -36,11 +38,21 @@ class JIfStatement extends JStatement {
      * {@inheritDoc}
      */
     public JStatement analyze(Context context) {
-        condition = (JExpression) condition.analyze(context);
-        condition.type().mustMatchExpected(line(), Type.BOOLEAN);
-        thenPart = (JStatement) thenPart.analyze(context);
-        if (elsePart != null) {
-            elsePart = (JStatement) elsePart.analyze(context);
+        // An else-if chain is walked with a loop rather than by recursion, so that a long chain
+        // cannot overflow the Java stack.
+        JIfStatement s = this;
+        while (true) {
+            s.condition = (JExpression) s.condition.analyze(context);
+            s.condition.type().mustMatchExpected(s.line(), Type.BOOLEAN);
+            s.thenPart = (JStatement) s.thenPart.analyze(context);
+            if (s.elsePart instanceof JIfStatement) {
+                s = (JIfStatement) s.elsePart;
+            } else {
+                if (s.elsePart != null) {
+                    s.elsePart = (JStatement) s.elsePart.analyze(context);
+                }
+                break;
+            }
         }
         return this;
     }
@@ -49,17 +61,44 @@ class JIfStatement extends JStatement {
      * {@inheritDoc}
      */
     public void codegen(CLEmitter output) {
-        String elseLabel = output.createLabel();
-        String endLabel = output.createLabel();
-        condition.codegen(output, elseLabel, false);
-        thenPart.codegen(output);
-        if (elsePart != null) {
-            output.addBranchInstruction(GOTO, endLabel);
+        // As in analyze(), an else-if chain is walked with a loop. The end labels of the
+        // enclosing if-statements all follow the code for the last else part.
+        ArrayList<String> endLabels = new ArrayList<String>();
+        JIfStatement s = this;
+        while (s != null) {
+            if (s.condition.constantValue() instanceof Boolean) {
+                // Analysis folded the condition to a constant, so the part that can never run is
+                // not emitted at all, nor is the test.
+                JStatement part = (Boolean) s.condition.constantValue() ? s.thenPart : s.elsePart;
+                if (part instanceof JIfStatement) {
+                    s = (JIfStatement) part;
+                    continue;
+                }
+                if (part != null) {
+                    part.codegen(output);
+                }
+                break;
+            }
+            String elseLabel = output.createLabel();
+            String endLabel = output.createLabel();
+            s.condition.codegen(output, elseLabel, false);
+            s.thenPart.codegen(output);
+            if (s.elsePart != null) {
+                output.addBranchInstruction(GOTO, endLabel);
+            }
+            output.addLabel(elseLabel);
+            JIfStatement next = null;
+            if (s.elsePart instanceof JIfStatement) {
+                next = (JIfStatement) s.elsePart;
+                endLabels.add(endLabel);
+            } else if (s.elsePart != null) {
+                s.elsePart.codegen(output);
+                output.addLabel(endLabel);
+            }
+            s = next;
         }
-        output.addLabel(elseLabel);
-        if (elsePart != null) {
-            elsePart.codegen(output);
-            output.addLabel(endLabel);
+        for (int i = endLabels.size() - 1; i >= 0; i--) {
+            output.addLabel(endLabels.get(i));
         }
     }
 
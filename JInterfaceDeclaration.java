@@ -61,8 +61,8 @@ class JInterfaceDeclaration extends JAST implements JTypeDecl {
      * {@inheritDoc}
      */
     public void declareThisType(Context context) {
-        String qualifiedName = JAST.compilationUnit.packageName() == "" ?
-                name : JAST.compilationUnit.packageName() + "/" + name;
+        String qualifiedName = JAST.compilationUnit().packageName() == "" ?
+                name : JAST.compilationUnit().packageName() + "/" + name;
         CLEmitter partial = new CLEmitter(false);
         partial.addClass(mods, qualifiedName, Type.OBJECT.jvmName(), null, false);//superinterfaces shoul dbe a arratylist of strings
         thisType = Type.typeFor(partial.toClass());
@@ -82,7 +82,7 @@ class JInterfaceDeclaration extends JAST implements JTypeDecl {
         // semantics below are violated, so we can't defer these checks to analyze().
         thisType.checkAccess(line, superType);
         if (superType.isFinal()) {
-            JAST.compilationUnit.reportSemanticError(line, "Cannot extend a final type: %s",
+            JAST.compilationUnit().reportSemanticError(line, "Cannot extend a final type: %s",
                     superType.toString());
         }
 
@@ -90,8 +90,8 @@ class JInterfaceDeclaration extends JAST implements JTypeDecl {
         CLEmitter partial = new CLEmitter(false);
 
         // Add the class header to the partial class
-        String qualifiedName = JAST.compilationUnit.packageName() == "" ?
-                name : JAST.compilationUnit.packageName() + "/" + name;
+        String qualifiedName = JAST.compilationUnit().packageName() == "" ?
+                name : JAST.compilationUnit().packageName() + "/" + name;
         partial.addClass(mods, qualifiedName, superType.jvmName(), null, false);
 
         // Pre-analyze the members and add them to the partial class.
@@ -108,7 +108,7 @@ class JInterfaceDeclaration extends JAST implements JTypeDecl {
 
         // Get the ClassRep for the (partial) class and make it the representation for this type.
         Type id = this.context.lookupType(name);
-        if (id != null && !JAST.compilationUnit.errorHasOccurred()) {
+        if (id != null && !JAST.compilationUnit().errorHasOccurred()) {
             id.setClassRep(partial.toClass());
         }
     }
@@ -169,7 +169,7 @@ class JInterfaceDeclaration extends JAST implements JTypeDecl {
             for (Method method : thisType.abstractMethods()) {
                 methods += "\n" + method;
             }
-            JAST.compilationUnit.reportSemanticError(line,
+            JAST.compilationUnit().reportSemanticError(line,
                     "Interface must be abstract since it defines Interface methods: %s", methods);
         }
         return this;
@@ -182,8 +182,8 @@ class JInterfaceDeclaration extends JAST implements JTypeDecl {
         //include a list of implemented interfaces in the class header
         ArrayList <String> str = new ArrayList<>();
         // The class header.
-        String qualifiedName = JAST.compilationUnit.packageName() == "" ?
-                name : JAST.compilationUnit.packageName() + "/" + name;
+        String qualifiedName = JAST.compilationUnit().packageName() == "" ?
+                name : JAST.compilationUnit().packageName() + "/" + name;
         if(superInterfaces != null){
             for(TypeName i : superInterfaces){
                 String name  = i.jvmName();
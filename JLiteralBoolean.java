@@ -30,6 +30,13 @@ class JLiteralBoolean extends JExpression {
         return this;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public Object constantValue() {
+        return text.equals("true");
+    }
+
     /**
      * {@inheritDoc}
      */
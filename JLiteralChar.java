@@ -30,6 +30,13 @@ class JLiteralChar extends JExpression {
         return this;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public Object constantValue() {
+        return JAST.unescape(text).charAt(1);
+    }
+
     /**
      * {@inheritDoc}
      */
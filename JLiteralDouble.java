@@ -37,12 +37,20 @@ class JLiteralDouble extends JExpression {
         return this;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public Object constantValue() {
+        return toDouble();
+    }
+
     /**
      * {@inheritDoc}
      */
     public void codegen(CLEmitter output) {
         double i = toDouble();
-        if(i == 0.0 || i == 0.0D  || i == 0.0d ) {//james helped with this
+        if (Double.doubleToLongBits(i) == 0L) {
+            // Only 0.0, not -0.0 (which a folded literal may be), is pushed by DCONST_0.
             output.addNoArgInstruction(DCONST_0);
         }
         else if(i == 1.0 || i == 1.0D || i == 1.0d) {
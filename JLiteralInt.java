@@ -39,6 +39,18 @@ class JLiteralInt extends JExpression {
         return this;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public Object constantValue() {
+        try {
+            return toInt();
+        } catch (NumberFormatException e) {
+            // Out of range, so left alone.
+            return null;
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -38,6 +38,18 @@ class JLiteralLong extends JExpression {
         return this;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public Object constantValue() {
+        try {
+            return toLong();
+        } catch (NumberFormatException e) {
+            // Out of range, so left alone.
+            return null;
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
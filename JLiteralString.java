@@ -6,9 +6,13 @@ package jminusminus;
  * The AST node for a string literal.
  */
 class JLiteralString extends JExpression {
-    // String representation of the literal.
+    // String representation of the literal, or null until asked for if the literal was made
+    // from its value.
     private String text;
 
+    // The value of the literal, or null until asked for if the literal was made from its text.
+    private String value;
+
     /**
      * Constructs an AST node for a string literal given its line number and text representation.
      *
@@ -20,6 +24,34 @@ class JLiteralString extends JExpression {
         this.text = text;
     }
 
+    /**
+     * Returns an AST node for a string literal given its line number and value, as analysis makes
+     * when it folds a constant expression.
+     *
+     * @param line  line in which the literal occurs in the source file.
+     * @param value value of the literal.
+     * @return an AST node for the string literal.
+     */
+    public static JLiteralString fromValue(int line, String value) {
+        JLiteralString literal = new JLiteralString(line, null);
+        literal.value = value;
+        return literal;
+    }
+
+    /**
+     * Returns the value of this literal, that is, its text without the enclosing quotes and with
+     * escape sequences replaced by the characters they stand for.
+     *
+     * @return the value of this literal.
+     */
+    public String value() {
+        if (value == null) {
+            String s = JAST.unescape(text);
+            value = s.substring(1, s.length() - 1);
+        }
+        return value;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -28,12 +60,18 @@ class JLiteralString extends JExpression {
         return this;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public Object constantValue() {
+        return value();
+    }
+
     /**
      * {@inheritDoc}
      */
     public void codegen(CLEmitter output) {
-        String s = JAST.unescape(text);
-        output.addLDCInstruction(s.substring(1, s.length() - 1));
+        output.addLDCInstruction(value());
     }
 
     /**
@@ -43,6 +81,9 @@ class JLiteralString extends JExpression {
         JSONElement e = new JSONElement();
         json.addChild("JLiteralString:" + line, e);
         e.addAttribute("type", type == null ? "" : type.toString());
+        if (text == null) {
+            text = "\"" + JAST.escape(value, '"') + "\"";
+        }
         e.addAttribute("value", text.substring(1, text.length() - 1));
     }
 }
@@ -8,7 +8,15 @@ import java.util.Stack;
  * An interface supported by all class (or later, interface) members.
  */
 interface JMember {
-    public static  Stack<JStatement> enclosingStatement = new Stack<JStatement>();
+    // Stack of loop and switch statements enclosing the statement being analyzed, one per
+    // compiling thread.
+    public static ThreadLocal<Stack<JStatement>> enclosingStatement =
+            new ThreadLocal<Stack<JStatement>>() {
+                protected Stack<JStatement> initialValue() {
+                    return new Stack<JStatement>();
+                }
+            };
+
     /**
      * Declares the member names in the specified (class) context and generates the member headers
      * in the partial class.
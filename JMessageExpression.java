@@ -72,7 +72,7 @@ class JMessageExpression extends JExpression {
                     target = expr;
                 } else {
                     // Can't even happen syntactically.
-                    JAST.compilationUnit.reportSemanticError(line(), "Badly formed suffix");
+                    JAST.compilationUnit().reportSemanticError(line(), "Badly formed suffix");
                 }
             }
         }
@@ -98,7 +98,7 @@ class JMessageExpression extends JExpression {
         } else {
             target = (JExpression) target.analyze(context);
             if (target.type().isPrimitive()) {
-                JAST.compilationUnit.reportSemanticError(line(),
+                JAST.compilationUnit().reportSemanticError(line(),
                         "Cannot invoke a message on a primitive type: " + target.type());
             }
         }
@@ -107,7 +107,7 @@ class JMessageExpression extends JExpression {
         //System.err.println("expression"+ target.+" type "+target.type());
         method = target.type().methodFor(messageName, argTypes);
         if (method == null) {
-            JAST.compilationUnit.reportSemanticError(line(),
+            JAST.compilationUnit().reportSemanticError(line(),
                     "Cannot find method for: " + Type.signatureFor(messageName, argTypes));
             type = Type.ANY;
         } else {
@@ -118,7 +118,7 @@ class JMessageExpression extends JExpression {
             if (!method.isStatic()) {
                 if (target instanceof JVariable &&
                         ((JVariable) target).iDefn() instanceof TypeNameDefn) {
-                    JAST.compilationUnit.reportSemanticError(line(),
+                    JAST.compilationUnit().reportSemanticError(line(),
                             "Non-static method " + Type.signatureFor(messageName, argTypes) +
                                     " cannot be referenced from a static context");
                 }
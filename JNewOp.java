@@ -49,7 +49,7 @@ class JNewOp extends JExpression {
 
         // Can't instantiate an abstract type.
         if (type.isAbstract()) {
-            JAST.compilationUnit.reportSemanticError(line(),
+            JAST.compilationUnit().reportSemanticError(line(),
                     "Cannot instantiate an abstract type: " + type.toString());
         }
 
@@ -57,7 +57,7 @@ class JNewOp extends JExpression {
         constructor = type.constructorFor(argTypes);
 
         if (constructor == null) {
-            JAST.compilationUnit.reportSemanticError(line(),
+            JAST.compilationUnit().reportSemanticError(line(),
                     "Cannot find constructor: " + Type.signatureFor(type.toString(), argTypes));
         }
         return this;
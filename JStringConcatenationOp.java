@@ -2,6 +2,9 @@
 
 package jminusminus;
 
+import java.util.ArrayList;
+import java.util.Stack;
+
 import static jminusminus.CLConstants.*;
 
 /**
@@ -10,6 +13,20 @@ import static jminusminus.CLConstants.*;
  * rewritten to be string concatenation operations.
  */
 class JStringConcatenationOp extends JBinaryExpression {
+    // Most argument slots (a long or a double taking two) a StringConcatFactory call site may
+    // have.
+    private static final int MAX_CONCAT_SLOTS = 200;
+
+    // Most characters in a recipe, so that it fits in a constant pool item (of at most 65535
+    // bytes in modified UTF-8, which takes up to 3 bytes for a character).
+    private static final int MAX_RECIPE_LENGTH = 65535 / 3;
+
+    // Type descriptor of StringConcatFactory.makeConcatWithConstants().
+    private static final String MAKE_CONCAT_WITH_CONSTANTS =
+            "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;"
+                    + "Ljava/lang/invoke/MethodType;Ljava/lang/String;[Ljava/lang/Object;)"
+                    + "Ljava/lang/invoke/CallSite;";
+
     /**
      * Constructs an AST node for a string concatenation expression.
      *
@@ -26,13 +43,29 @@ class JStringConcatenationOp extends JBinaryExpression {
      */
     public JExpression analyze(Context context) {
         type = Type.STRING;
-        return this;
+        return foldConstant();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected Object fold(Object lhsValue, Object rhsValue) {
+        // The boxed values convert to strings just as the values they box do.
+        String value = "" + lhsValue + rhsValue;
+
+        // Like a recipe, a folded string has to fit in a constant pool item.
+        return value.length() > MAX_RECIPE_LENGTH ? null : value;
     }
 
     /**
      * {@inheritDoc}
      */
     public void codegen(CLEmitter output) {
+        if (output.invokeDynamicConcat()) {
+            invokeDynamicCodegen(output);
+            return;
+        }
+
         // Firstly, create a StringBuilder.
         output.addReferenceInstruction(NEW, "java/lang/StringBuilder");
         output.addNoArgInstruction(DUP);
@@ -48,26 +81,104 @@ class JStringConcatenationOp extends JBinaryExpression {
     }
 
     // Like codegen() method, but we needn't (and shouldn't) create a StringBuilder nor convert
-    // the result to a String, as that will be done in a parent.
+    // the result to a String, as that will be done in a parent. A chain s + a + b + ... leans
+    // left, so it is walked down its lhs operands with a loop rather than by recursion.
     private void nestedCodegen(CLEmitter output) {
-        // Lhs.
-        if (lhs instanceof JStringConcatenationOp) {
-            // This appends lhs
-            ((JStringConcatenationOp) lhs).nestedCodegen(output);
-        } else {
-            lhs.codegen(output);
-            output.addMemberAccessInstruction(INVOKEVIRTUAL, "java/lang/StringBuilder", "append",
-                    "(" + lhs.type().argumentTypeForAppend() + ")Ljava/lang/StringBuilder;");
+        ArrayList<JExpression> operands = new ArrayList<JExpression>();
+        JExpression e = this;
+        while (e instanceof JStringConcatenationOp) {
+            operands.add(((JStringConcatenationOp) e).rhs);
+            e = ((JStringConcatenationOp) e).lhs;
         }
+        operands.add(e);
+
+        // Append the operands, leftmost first.
+        for (int i = operands.size() - 1; i >= 0; i--) {
+            JExpression operand = operands.get(i);
+            if (operand instanceof JStringConcatenationOp) {
+                // This appends operand.
+                ((JStringConcatenationOp) operand).nestedCodegen(output);
+            } else {
+                operand.codegen(output);
+                output.addMemberAccessInstruction(INVOKEVIRTUAL, "java/lang/StringBuilder",
+                        "append", "(" + operand.type().argumentTypeForAppend()
+                                + ")Ljava/lang/StringBuilder;");
+            }
+        }
+    }
 
-        // Rhs.
-        if (rhs instanceof JStringConcatenationOp) {
-            // This appends rhs.
-            ((JStringConcatenationOp) rhs).nestedCodegen(output);
-        } else {
-            rhs.codegen(output);
-            output.addMemberAccessInstruction(INVOKEVIRTUAL, "java/lang/StringBuilder", "append",
-                    "(" + rhs.type().argumentTypeForAppend() + ")Ljava/lang/StringBuilder;");
+    // Generates code that concatenates the operands with invokedynamic calls to
+    // StringConcatFactory.makeConcatWithConstants(). The text of string literals goes into the
+    // recipe, where \1 stands for the next argument on the operand stack, and \2 for the next
+    // constant following the recipe among the bootstrap method arguments; a literal holding
+    // either of those characters is passed as such a constant. A concatenation with more
+    // arguments or a longer recipe than a single call site allows is split across several, each
+    // passing its string on to the next as its first argument.
+    private void invokeDynamicCodegen(CLEmitter output) {
+        // Gather the operands, leftmost first, with an explicit stack (see nestedCodegen()).
+        ArrayList<JExpression> operands = new ArrayList<JExpression>();
+        Stack<JExpression> pending = new Stack<JExpression>();
+        pending.push(this);
+        while (!pending.isEmpty()) {
+            JExpression e = pending.pop();
+            if (e instanceof JStringConcatenationOp) {
+                pending.push(((JStringConcatenationOp) e).rhs);
+                pending.push(((JStringConcatenationOp) e).lhs);
+            } else {
+                operands.add(e);
+            }
         }
+
+        StringBuilder recipe = new StringBuilder();
+        StringBuilder descriptor = new StringBuilder("(");
+        ArrayList<Object> constants = new ArrayList<Object>();
+        int slots = 0;
+        for (JExpression operand : operands) {
+            if (operand instanceof JLiteralString) {
+                String text = ((JLiteralString) operand).value();
+                boolean isConstant = text.indexOf('\u0001') >= 0 || text.indexOf('\u0002') >= 0
+                        || text.length() > MAX_RECIPE_LENGTH;
+                if (recipe.length() + (isConstant ? 1 : text.length()) > MAX_RECIPE_LENGTH) {
+                    invokeConcat(output, recipe, descriptor, constants);
+                    slots = 1;
+                }
+                if (isConstant) {
+                    recipe.append('\u0002');
+                    constants.add(text);
+                } else {
+                    recipe.append(text);
+                }
+                continue;
+            }
+            String argumentType = operand.type().argumentTypeForAppend();
+            int size = argumentType.equals("J") || argumentType.equals("D") ? 2 : 1;
+            if (slots + size > MAX_CONCAT_SLOTS || recipe.length() + 1 > MAX_RECIPE_LENGTH) {
+                invokeConcat(output, recipe, descriptor, constants);
+                slots = 1;
+            }
+            operand.codegen(output);
+            recipe.append('\u0001');
+            descriptor.append(argumentType);
+            slots += size;
+        }
+        invokeConcat(output, recipe, descriptor, constants);
+    }
+
+    // Adds a call site that concatenates according to the given recipe, descriptor arguments,
+    // and constants, and then resets them to those of a call site taking the resulting string
+    // as its first argument.
+    private void invokeConcat(CLEmitter output, StringBuilder recipe, StringBuilder descriptor,
+                              ArrayList<Object> constants) {
+        ArrayList<Object> arguments = new ArrayList<Object>();
+        arguments.add(recipe.toString());
+        arguments.addAll(constants);
+        output.addInvokeDynamicInstruction("java/lang/invoke/StringConcatFactory",
+                "makeConcatWithConstants", MAKE_CONCAT_WITH_CONSTANTS, arguments,
+                "makeConcatWithConstants", descriptor + ")Ljava/lang/String;");
+        recipe.setLength(0);
+        recipe.append('\u0001');
+        descriptor.setLength(0);
+        descriptor.append("(Ljava/lang/String;");
+        constants.clear();
     }
 }
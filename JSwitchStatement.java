@@ -21,14 +21,15 @@ public class JSwitchStatement extends JStatement {
     public String breakLabel;
     public boolean hasContinue;
     public String continueLabel;
-    public static ArrayList<Integer> caseNumbers ;
+    public ArrayList<Integer> caseNumbers ;
 
-    public static int hi;
-    public static int lo;
-    public static int nLabels;
-    public static boolean hasDefault;
-    public static ArrayList<SwitchHolder> switches = new ArrayList<>();
-    static int count;
+    public int hi;
+    public int lo;
+    public int nLabels;
+    public boolean hasDefault;
+
+    // The switch variables gathered by analyze(), for codegen().
+    private SwitchHolder holder;
     /**
      * Constructs an AST node for a switch-statement.
      *
@@ -53,7 +54,7 @@ public class JSwitchStatement extends JStatement {
         lo = 999;
         nLabels = 0;
         caseNumbers = new ArrayList<>();
-        JMember.enclosingStatement.push(this);
+        JMember.enclosingStatement.get().push(this);
         //analyze the condition and make sure its an integer
         condition.analyze(context);
         condition.type().mustMatchExpected(line(),Type.INT);
@@ -61,11 +62,10 @@ public class JSwitchStatement extends JStatement {
         for(int i = 0; i <stmtGroup.size();i++ ){
             //analyze the statements in each casegroup in the new context
             //getting error bc of default, the contents of switchLabels are null
-            stmtGroup.set(i, stmtGroup.get(i).analyze(context));
+            stmtGroup.set(i, stmtGroup.get(i).analyze(context, this));
         }
-        SwitchHolder holder = new SwitchHolder(hi, lo, nLabels, caseNumbers, stmtGroup, condition);
-        switches.add(holder);
-        JMember.enclosingStatement.pop();//james helped with this
+        holder = new SwitchHolder(hi, lo, nLabels, caseNumbers, stmtGroup, condition);
+        JMember.enclosingStatement.get().pop();//james helped with this
         return this;
     }
 
@@ -75,7 +75,7 @@ public class JSwitchStatement extends JStatement {
     public void codegen(CLEmitter output) {
         //String endSwitch = output.createLabel();
         continueLabel  = output.createLabel();
-        SwitchHolder sw = switches.get(count);
+        SwitchHolder sw = holder;
         //for(SwitchHolder sw: switches){ //created a loop to loop through switches but then realized that codegen is call after
             //if(count == switches.size()){
             //    break;
@@ -148,7 +148,6 @@ public class JSwitchStatement extends JStatement {
             if(hasBreak){
                 output.addLabel(breakLabel);
             }
-            count++;
         //}
 
         //output.addLabel(defaultLabel);
@@ -223,7 +222,15 @@ class SwitchStatementGroup {
         this.block = block;
     }
 
-    public SwitchStatementGroup analyze(Context context) {
+    /**
+     * Analyzes the switch statement group, recording its case labels in the enclosing switch
+     * statement, and returns it.
+     *
+     * @param context    context in which names are resolved.
+     * @param switchStmt the enclosing switch statement.
+     * @return the analyzed switch statement group.
+     */
+    public SwitchStatementGroup analyze(Context context, JSwitchStatement switchStmt) {
         high  = 0;
         low = 999;
         for (int i =0; i < switchLabels.size();i++) {
@@ -235,11 +242,11 @@ class SwitchStatementGroup {
                     int num = ((JLiteralInt) switchLabel).toInt();
                     high = num > high? num : high;//getting the highest case label value
                     low = num < low?  num: low;//getting the lowest case label value
-                    JSwitchStatement.caseNumbers.add(num);
-                    JSwitchStatement.nLabels++;
+                    switchStmt.caseNumbers.add(num);
+                    switchStmt.nLabels++;
                 }
                 else{
-                    JAST.compilationUnit.reportSemanticError(switchLabel.line(),
+                    JAST.compilationUnit().reportSemanticError(switchLabel.line(),
                             "expected case label to be an integer");
                 }
                 //sL.type().mustMatchExpected(sl.line(), Type.INT);
@@ -248,7 +255,7 @@ class SwitchStatementGroup {
             else{
                 //was getting a nullpointer exception, after debugging,
                 //found out that the default label is null
-                JSwitchStatement.hasDefault = true;
+                switchStmt.hasDefault = true;
             }
         }
         LocalContext lc = new LocalContext(context);
@@ -257,8 +264,8 @@ class SwitchStatementGroup {
         }
         //compare all switchlabels to get high and low (doen above) and compare
         // each statementgroup to get the highest and lowest cases
-        JSwitchStatement.hi = this.high > JSwitchStatement.hi ? this.high : JSwitchStatement.hi ;
-        JSwitchStatement.lo = this.low < JSwitchStatement.lo  ? this.low : JSwitchStatement.lo;
+        switchStmt.hi = this.high > switchStmt.hi ? this.high : switchStmt.hi ;
+        switchStmt.lo = this.low < switchStmt.lo  ? this.low : switchStmt.lo;
 
         return this;
     }
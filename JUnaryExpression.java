@@ -67,6 +67,9 @@ class JLogicalNotOp extends JUnaryExpression {
         operand = (JExpression) operand.analyze(context);
         operand.type().mustMatchExpected(line(), Type.BOOLEAN);
         type = Type.BOOLEAN;
+        if (operand.constantValue() instanceof Boolean) {
+            return literal(line, !(Boolean) operand.constantValue());
+        }
         return this;
     }
 
@@ -123,6 +126,14 @@ class JNegateOp extends JUnaryExpression {
         else if (operand.type() == Type.DOUBLE) {
             type = Type.DOUBLE;
         }
+        Object value = operand.constantValue();
+        if (value instanceof Integer) {
+            return literal(line, -(Integer) value);
+        } else if (value instanceof Long) {
+            return literal(line, -(Long) value);
+        } else if (value instanceof Double) {
+            return literal(line, -(Double) value);
+        }
         return this;
     }
 
@@ -162,7 +173,7 @@ class JPostDecrementOp extends JUnaryExpression {
      */
     public JExpression analyze(Context context) {
         if (!(operand instanceof JLhs)) {
-            JAST.compilationUnit.reportSemanticError(line, "Operand to -- must have an LValue.");
+            JAST.compilationUnit().reportSemanticError(line, "Operand to -- must have an LValue.");
             type = Type.ANY;
         } else {
             operand = (JExpression) operand.analyze(context);
@@ -218,7 +229,7 @@ class JPreIncrementOp extends JUnaryExpression {
      */
     public JExpression analyze(Context context) {
         if (!(operand instanceof JLhs)) {
-            JAST.compilationUnit.reportSemanticError(line, "Operand to ++ must have an LValue.");
+            JAST.compilationUnit().reportSemanticError(line, "Operand to ++ must have an LValue.");
             type = Type.ANY;
         } else {
             operand = (JExpression) operand.analyze(context);
@@ -287,6 +298,9 @@ class JUnaryPlusOp extends JUnaryExpression {
         else if (operand.type() == Type.DOUBLE) {
             type = Type.DOUBLE;
         }
+        if (operand.constantValue() instanceof Number) {
+            return operand;
+        }
         return this;
     }
 
@@ -329,6 +343,9 @@ class JComplementOp extends JUnaryExpression {
         operand = operand.analyze(context);
         operand.type().mustMatchExpected(line(), Type.INT);
         type = Type.INT;
+        if (operand.constantValue() instanceof Integer) {
+            return literal(line, ~(Integer) operand.constantValue());
+        }
         return this;
     }
 
@@ -366,7 +383,7 @@ class JPostIncrementOp extends JUnaryExpression {
 //        type = Type.INT;
 //        return this;
         if (!(operand instanceof JLhs)) {
-            JAST.compilationUnit.reportSemanticError(line, "Operand to ++ must have an LValue.");
+            JAST.compilationUnit().reportSemanticError(line, "Operand to ++ must have an LValue.");
             type = Type.ANY;
         } else {
             operand = (JExpression) operand.analyze(context);
@@ -428,7 +445,7 @@ class JPreDecrementOp extends JUnaryExpression {
 //        type = Type.INT;
 //        return this;
         if (!(operand instanceof JLhs)) {
-            JAST.compilationUnit.reportSemanticError(line, "Operand to -- must have an LValue.");
+            JAST.compilationUnit().reportSemanticError(line, "Operand to -- must have an LValue.");
             type = Type.ANY;
         } else {
             operand = (JExpression) operand.analyze(context);
@@ -45,7 +45,7 @@ class JVariableDeclaration extends JStatement {
             // First, check for shadowing.
             IDefn previousDefn = context.lookup(decl.name());
             if (previousDefn != null && previousDefn instanceof LocalVariableDefn) {
-                JAST.compilationUnit.reportSemanticError(decl.line(),
+                JAST.compilationUnit().reportSemanticError(decl.line(),
                         "The name " + decl.name() + " overshadows another local variable");
             }
             if(decl.type() == Type.LONG || decl.type() == Type.DOUBLE){
@@ -36,12 +36,12 @@ class JWhileStatement extends JStatement {
      */
     public JWhileStatement analyze(Context context) {
         //adding reference to stack
-        JMember.enclosingStatement.push(this);
+        JMember.enclosingStatement.get().push(this);
         condition = condition.analyze(context);
         condition.type().mustMatchExpected(line(), Type.BOOLEAN);
         body = (JStatement) body.analyze(context);
         //removing from stack
-        JMember.enclosingStatement.pop();//james helped with this
+        JMember.enclosingStatement.get().pop();//james helped with this
         return this;
     }
 
@@ -49,6 +49,11 @@ class JWhileStatement extends JStatement {
      * {@inheritDoc}
      */
     public void codegen(CLEmitter output) {
+        if (Boolean.FALSE.equals(condition.constantValue())) {
+            // Analysis folded the condition to false, so the body can never run, and no code at
+            // all is emitted for the loop.
+            return;
+        }
         String conditionLabel = output.createLabel();
         String out = output.createLabel();
         breakLabel = output.createLabel();
@@ -2,7 +2,6 @@
 
 package jminusminus;
 
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 
 /**
@@ -84,8 +83,7 @@ public class JavaCCMain {
 
         JavaCCParserTokenManager javaCCScanner = null;
         try {
-            javaCCScanner = new JavaCCParserTokenManager(new
-                    SimpleCharStream(new FileInputStream(sourceFile), 1, 1));
+            javaCCScanner = new JavaCCParserTokenManager(new DirectCharStream(sourceFile));
         } catch (FileNotFoundException e) {
             System.err.println("Error: file " + sourceFile + " not found.");
         }
@@ -129,7 +127,7 @@ public class JavaCCMain {
 
         // Do pre-analysis.
         ast.preAnalyze();
-        errorHasOccurred |= JAST.compilationUnit.errorHasOccurred();
+        errorHasOccurred |= JAST.compilationUnit().errorHasOccurred();
         if (debugOption.equals("-pa")) {
             JSONElement json = new JSONElement();
             ast.toJSON(json);
@@ -142,7 +140,7 @@ public class JavaCCMain {
 
         // Do analysis.
         ast.analyze(null);
-        errorHasOccurred |= JAST.compilationUnit.errorHasOccurred();
+        errorHasOccurred |= JAST.compilationUnit().errorHasOccurred();
         if (debugOption.equals("-a")) {
             JSONElement json = new JSONElement();
             ast.toJSON(json);
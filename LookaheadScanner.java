@@ -3,8 +3,7 @@
 package jminusminus;
 
 import java.io.FileNotFoundException;
-import java.util.Stack;
-import java.util.Vector;
+import java.util.Arrays;
 
 /**
  * A lexical analyzer for j-- that interfaces with the hand-written parser (Parser). It
@@ -15,23 +14,24 @@ class LookaheadScanner {
     // The underlying hand-written scanner.
     private Scanner scanner;
 
-    // Backtracking queue.
-    private Vector<TokenInfo> backtrackingQueue;
+    // Tokens scanned since the outermost recorded position (and the token before it); when we
+    // are not looking ahead, just the previous and current tokens.
+    private TokenStream tokens;
 
-    // Token queue.
-    private Vector<TokenInfo> nextQueue;
+    // Index (within the tokens stream) of the current token; the previous token is at pos - 1.
+    private int pos;
 
-    // Stack of token queues for nested lookahead.
-    private Stack<Vector<TokenInfo>> queueStack;
+    // Position (in the input stream of tokens) of the token at index 0 of the tokens stream.
+    private int offset;
 
-    // Whether we are looking ahead.
-    public boolean isLookingAhead;
+    // Stack of recorded positions (indices into the tokens stream) for nested lookahead.
+    private int[] marks;
 
-    // Previous token.
-    private TokenInfo previousToken;
+    // Number of recorded positions in the marks stack.
+    private int markCount;
 
-    // Current token.
-    private TokenInfo token;
+    // Whether we are looking ahead.
+    public boolean isLookingAhead;
 
     /**
      * Constructs a LookaheadScanner.
@@ -41,9 +41,11 @@ class LookaheadScanner {
      */
     public LookaheadScanner(String fileName) throws FileNotFoundException {
         scanner = new Scanner(fileName);
-        backtrackingQueue = new Vector<TokenInfo>();
-        nextQueue = new Vector<TokenInfo>();
-        queueStack = new Stack<Vector<TokenInfo>>();
+        tokens = new TokenStream(scanner);
+        pos = -1;
+        offset = 0;
+        marks = new int[16];
+        markCount = 0;
         isLookingAhead = false;
     }
 
@@ -51,44 +53,49 @@ class LookaheadScanner {
      * Scans to the next token in the input.
      */
     public void next() {
-        previousToken = token;
-        if (backtrackingQueue.size() == 0) {
-            token = scanner.getNextToken();
-        } else {
-            token = backtrackingQueue.remove(0);
+        if (pos + 1 < tokens.size()) {
+            // Replay a token that was scanned while looking ahead.
+            pos++;
+            return;
         }
-        if (isLookingAhead) {
-            nextQueue.add(token);
+        if (!isLookingAhead && tokens.size() > 1) {
+            // No position to return to, so only the previous token needs keeping.
+            offset += tokens.size() - 1;
+            tokens.keepLast();
+            pos = 0;
         }
+        tokens.scan();
+        pos++;
     }
 
     /**
      * Records the current position in the input, so that we can start looking ahead in the input
-     * (and later return to this position) --- the current and subsequent tokens are queued until
+     * (and later return to this position) --- the current and subsequent tokens are kept until
      * returnToPosition() is invoked.
      */
     public void recordPosition() {
         isLookingAhead = true;
-        queueStack.push(nextQueue);
-        nextQueue = new Vector<TokenInfo>();
-        nextQueue.add(previousToken);
-        nextQueue.add(token);
+        if (markCount == marks.length) {
+            marks = Arrays.copyOf(marks, 2 * markCount);
+        }
+        marks[markCount++] = pos;
     }
 
     /**
      * Returns to the previously recorded position in the input stream of tokens.
      */
     public void returnToPosition() {
-        while (backtrackingQueue.size() > 0) {
-            nextQueue.add(backtrackingQueue.remove(0));
-        }
-        backtrackingQueue = nextQueue;
-        nextQueue = queueStack.pop();
-        isLookingAhead = !(queueStack.empty());
+        pos = marks[--markCount];
+        isLookingAhead = markCount > 0;
+    }
 
-        // Restore previous and current tokens
-        previousToken = backtrackingQueue.remove(0);
-        token = backtrackingQueue.remove(0);
+    /**
+     * Returns the position of the current token in the input stream of tokens, counting from 0.
+     *
+     * @return the position of the current token in the input stream of tokens.
+     */
+    public int position() {
+        return offset + pos;
     }
 
     /**
@@ -97,7 +104,7 @@ class LookaheadScanner {
      * @return the current token.
      */
     public TokenInfo token() {
-        return token;
+        return tokens.token(pos);
     }
 
     /**
@@ -106,7 +113,43 @@ class LookaheadScanner {
      * @return the previous token.
      */
     public TokenInfo previousToken() {
-        return previousToken;
+        return pos > 0 ? tokens.token(pos - 1) : null;
+    }
+
+    /**
+     * Returns the kind of the current token.
+     *
+     * @return the kind of the current token.
+     */
+    public TokenKind kind() {
+        return tokens.kind(pos);
+    }
+
+    /**
+     * Returns the line in which the current token occurs.
+     *
+     * @return the line in which the current token occurs.
+     */
+    public int line() {
+        return tokens.line(pos);
+    }
+
+    /**
+     * Returns the image of the current token.
+     *
+     * @return the image of the current token.
+     */
+    public String image() {
+        return tokens.image(pos);
+    }
+
+    /**
+     * Returns the image of the previous token.
+     *
+     * @return the image of the previous token.
+     */
+    public String previousImage() {
+        return tokens.image(pos - 1);
     }
 
     /**
@@ -2,13 +2,29 @@
 
 package jminusminus;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import static jminusminus.TokenKind.EOF;
 
 /**
  * Driver class for j-- compiler using hand-written front-end. This is the main entry point for
- * the compiler. The compiler proceeds as follows:
+ * the compiler. The compiler proceeds as follows, for each source file (several source files are
+ * compiled in parallel, each by a single thread, which shares the analysis and code generation of
+ * the methods of a class with many of them among other threads):
  * <ol>
  *   <li>It reads arguments that affects its behavior.</li>
  *
@@ -41,18 +57,33 @@ public class Main {
      * @param args the command-line arguments.
      */
     public static void main(String args[]) {
+        if (Arrays.asList(args).contains("-server")) {
+            serve();
+        } else {
+            run(args);
+        }
+    }
+
+    // Compiles as directed by the given command-line arguments, setting errorHasOccurred.
+    private static void run(String args[]) {
         String caller = "java jminusminus.Main";
-        String sourceFile = "";
+        ArrayList<String> sourceFiles = new ArrayList<String>();
         String debugOption = "";
         String outputDir = ".";
         boolean spimOutput = false;
         String registerAllocation = "";
+        boolean invokeDynamicConcat = false;
+        String optimizeOption = "";
+        int majorVersion = CLConstants.MAJOR_VERSION;
+        int threads = Runtime.getRuntime().availableProcessors();
         errorHasOccurred = false;
         for (int i = 0; i < args.length; i++) {
             if (args[i].equals("j--")) {
                 caller = "j--";
             } else if (args[i].endsWith(".java")) {
-                sourceFile = args[i];
+                sourceFiles.add(args[i]);
+            } else if (!args[i].startsWith("-") && new File(args[i]).isDirectory()) {
+                addSourceFiles(new File(args[i]), sourceFiles);
             } else if (args[i].equals("-t") || args[i].equals("-p") || args[i].equals("-pa") ||
                     args[i].equals("-a")) {
                 debugOption = args[i];
@@ -63,41 +94,175 @@ public class Main {
                 registerAllocation = args[++i];
                 if (!registerAllocation.equals("naive") && !registerAllocation.equals("linear") &&
                         !registerAllocation.equals("graph") || registerAllocation.equals("")) {
+                    errorHasOccurred = true;
                     printUsage(caller);
                     return;
                 }
             } else if (args[i].endsWith("-r") && (i + 1) < args.length) {
                 NPhysicalRegister.MAX_COUNT = Math.min(18, Integer.parseInt(args[++i]));
                 NPhysicalRegister.MAX_COUNT = Math.max(1, NPhysicalRegister.MAX_COUNT);
+            } else if (args[i].equals("-j") && (i + 1) < args.length) {
+                threads = Math.max(1, Integer.parseInt(args[++i]));
+            } else if (args[i].equals("-indy")) {
+                invokeDynamicConcat = true;
+            } else if (args[i].equals("-O") || args[i].equals("-Ov")) {
+                optimizeOption = args[i];
+            } else if (args[i].equals("-target") && (i + 1) < args.length) {
+                try {
+                    majorVersion = Integer.parseInt(args[++i]);
+                } catch (NumberFormatException e) {
+                    majorVersion = -1;
+                }
+                if (majorVersion < CLConstants.MAJOR_VERSION) {
+                    errorHasOccurred = true;
+                    printUsage(caller);
+                    return;
+                }
             } else {
+                errorHasOccurred = true;
                 printUsage(caller);
                 return;
             }
         }
-        if (sourceFile.equals("")) {
+        if (sourceFiles.isEmpty()) {
+            errorHasOccurred = true;
             printUsage(caller);
             return;
         }
 
+        // The members of large classes are compiled in parallel in their own pool of threads,
+        // so that a thread compiling a unit does not run parts of another while it waits. The
+        // SPIM back-end prints constant pool indices, which then vary from run to run, so it
+        // gets its input from a single thread.
+        ForkJoinPool memberPool = threads > 1 && !spimOutput ? new ForkJoinPool(threads) : null;
+        try {
+            compileAll(sourceFiles, debugOption, outputDir, spimOutput, registerAllocation,
+                    invokeDynamicConcat, optimizeOption, majorVersion, threads, memberPool);
+        } finally {
+            if (memberPool != null) {
+                memberPool.shutdown();
+            }
+        }
+    }
+
+    // Compiles the given source files as directed by the remaining arguments, setting
+    // errorHasOccurred.
+    private static void compileAll(ArrayList<String> sourceFiles, String debugOption,
+                                   String outputDir, boolean spimOutput,
+                                   String registerAllocation, boolean invokeDynamicConcat,
+                                   String optimizeOption, int majorVersion, int threads,
+                                   final ForkJoinPool memberPool) {
+        // Debug output (and the -Ov report) goes to STDOUT and must not interleave, and the SPIM
+        // back-end keeps its numbering in static fields, so those compile one unit at a time.
+        if (sourceFiles.size() == 1 || threads == 1 || !debugOption.equals("") || spimOutput ||
+                optimizeOption.equals("-Ov")) {
+            for (String sourceFile : sourceFiles) {
+                errorHasOccurred |= compile(sourceFile, debugOption, outputDir, spimOutput,
+                        registerAllocation, invokeDynamicConcat, optimizeOption, majorVersion,
+                        memberPool);
+            }
+            return;
+        }
+
+        // Compile the units in parallel. Each unit is compiled start to finish by one thread, so
+        // the per-thread compilation unit and class loader stay consistent.
+        final String dir = outputDir;
+        final boolean indy = invokeDynamicConcat;
+        final String optimize = optimizeOption;
+        final int target = majorVersion;
+        ForkJoinPool pool = new ForkJoinPool(Math.min(threads, sourceFiles.size()));
+        ArrayList<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+        for (final String sourceFile : sourceFiles) {
+            results.add(pool.submit(new Callable<Boolean>() {
+                public Boolean call() {
+                    return compile(sourceFile, "", dir, false, "", indy, optimize, target,
+                            memberPool);
+                }
+            }));
+        }
+        for (int i = 0; i < results.size(); i++) {
+            try {
+                errorHasOccurred |= results.get(i).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                errorHasOccurred = true;
+            } catch (ExecutionException e) {
+                System.err.printf("Error: compiling %s failed: %s%n", sourceFiles.get(i),
+                        e.getCause());
+                errorHasOccurred = true;
+            }
+        }
+        pool.shutdown();
+    }
+
+    // Reads compile requests from STDIN until end of input or a "quit" line, and runs each in
+    // this JVM. A request is a line holding the command-line arguments, separated by whitespace,
+    // of one invocation of the compiler. Its output is followed by a line on STDOUT of the form
+    // "done ok|error <milliseconds> ms". Types of classes loaded from the class path, and what
+    // has been looked up in them, are kept from one request to the next.
+    private static void serve() {
+        int registerCount = NPhysicalRegister.MAX_COUNT;
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                line = line.trim();
+                if (line.equals("quit")) {
+                    break;
+                } else if (line.equals("")) {
+                    continue;
+                }
+                long start = System.nanoTime();
+                try {
+                    run(line.split("\\s+"));
+                } catch (RuntimeException | StackOverflowError e) {
+                    e.printStackTrace();
+                    errorHasOccurred = true;
+                }
+                long elapsed = (System.nanoTime() - start) / 1000000;
+                Type.forgetCompiledTypes();
+                NPhysicalRegister.MAX_COUNT = registerCount;
+                System.err.flush();
+                System.out.printf("done %s %d ms\n", errorHasOccurred ? "error" : "ok", elapsed);
+                System.out.flush();
+            }
+        } catch (IOException e) {
+            System.err.println("Error: cannot read compile requests: " + e.getMessage());
+        }
+    }
+
+    // Compiles the given source file as directed by the remaining arguments, and returns true if
+    // an error occurred, and false otherwise.
+    private static boolean compile(String sourceFile, String debugOption, String outputDir,
+                                   boolean spimOutput, String registerAllocation,
+                                   boolean invokeDynamicConcat, String optimizeOption,
+                                   int majorVersion, ForkJoinPool memberPool) {
+        boolean errorHasOccurred = false;
         LookaheadScanner scanner = null;
         try {
             scanner = new LookaheadScanner(sourceFile);
         } catch (FileNotFoundException e) {
             System.err.println("Error: file " + sourceFile + " not found.");
-            return;
+            return true;
         }
 
         if (debugOption.equals("-t")) {
-            // Just tokenize input and print the tokens to STDOUT.
-            TokenInfo token;
+            // Just tokenize input and print the tokens to STDOUT, through a buffer that is
+            // written out a block at a time.
+            PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(
+                    System.out), 1 << 16));
             do {
                 scanner.next();
-                token = scanner.token();
-                System.out.printf("%d\t : %s = %s\n", token.line(), token.tokenRep(),
-                        token.image());
-            } while (token.kind() != EOF);
+                out.print(scanner.line());
+                out.print("\t : ");
+                out.print(scanner.kind().tokenRep());
+                out.print(" = ");
+                out.print(scanner.image());
+                out.print('\n');
+            } while (scanner.kind() != EOF);
+            out.flush();
             errorHasOccurred |= scanner.errorHasOccured();
-            return;
+            return errorHasOccurred;
         }
 
         // Parse input.
@@ -108,61 +273,102 @@ public class Main {
             JSONElement json = new JSONElement();
             ast.toJSON(json);
             System.out.println(json.toString());
-            return;
+            return errorHasOccurred;
         }
         if (errorHasOccurred) {
-            return;
+            return errorHasOccurred;
         }
 
         // Do pre-analysis.
+        ast.memberPool(memberPool);
         ast.preAnalyze();
-        errorHasOccurred |= JAST.compilationUnit.errorHasOccurred();
+        errorHasOccurred |= JAST.compilationUnit().errorHasOccurred();
         if (debugOption.equals("-pa")) {
             JSONElement json = new JSONElement();
             ast.toJSON(json);
             System.out.println(json.toString());
-            return;
+            return errorHasOccurred;
         }
         if (errorHasOccurred) {
-            return;
+            return errorHasOccurred;
         }
 
         // Do analysis.
         ast.analyze(null);
-        errorHasOccurred |= JAST.compilationUnit.errorHasOccurred();
+        errorHasOccurred |= JAST.compilationUnit().errorHasOccurred();
         if (debugOption.equals("-a")) {
             JSONElement json = new JSONElement();
             ast.toJSON(json);
             System.out.println(json.toString());
-            return;
+            return errorHasOccurred;
         }
         if (errorHasOccurred) {
-            return;
+            return errorHasOccurred;
         }
 
         // Generate JVM code.
         CLEmitter clEmitter = new CLEmitter(!spimOutput);
         clEmitter.destinationDir(outputDir);
+
+        // The SPIM back-end translates only the instructions that StringBuilder code needs.
+        clEmitter.invokeDynamicConcat(invokeDynamicConcat && !spimOutput);
+
+        // Likewise, it expects the code as CLEmitter is given it, so it is not optimized, nor are
+        // its unreachable parts replaced to give them stack map frames.
+        if (!optimizeOption.equals("") && !spimOutput) {
+            clEmitter.peepholeOptimizer(new CLPeepholeOptimizer());
+        }
+        if (!spimOutput) {
+            clEmitter.majorVersion(majorVersion);
+        }
         ast.codegen(clEmitter);
         errorHasOccurred |= clEmitter.errorHasOccurred();
+        if (optimizeOption.equals("-Ov") && !spimOutput) {
+            System.out.println("Peephole rule hits in " + sourceFile + ":");
+            System.out.print(clEmitter.peepholeOptimizer().report());
+        }
         if (errorHasOccurred) {
-            return;
+            return errorHasOccurred;
         }
 
         // If SPIM output was asked for, convert the in-memory JVM instructions to SPIM using the
-        // specified register allocation scheme.
+        // specified register allocation scheme, optimizing their high-level form as asked for.
         if (spimOutput) {
-            NEmitter nEmitter = new NEmitter(sourceFile, ast.clFiles(), registerAllocation);
+            NHIROptimizer optimizer = optimizeOption.equals("") ? null : new NHIROptimizer();
+            NEmitter nEmitter = new NEmitter(sourceFile, ast.clFiles(), registerAllocation,
+                    optimizer);
             nEmitter.destinationDir(outputDir);
             nEmitter.write();
             errorHasOccurred |= nEmitter.errorHasOccurred();
+            if (optimizeOption.equals("-Ov")) {
+                System.out.println("HIR instructions removed or replaced in " + sourceFile + ":");
+                System.out.print(optimizer.report());
+            }
+        }
+        return errorHasOccurred;
+    }
+
+    // Adds the .java files in the given directory and its subdirectories to sourceFiles, in name
+    // order.
+    private static void addSourceFiles(File dir, ArrayList<String> sourceFiles) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files);
+        for (File file : files) {
+            if (file.isDirectory()) {
+                addSourceFiles(file, sourceFiles);
+            } else if (file.getName().endsWith(".java")) {
+                sourceFiles.add(file.getPath());
+            }
         }
     }
 
     // Prints command usage to STDOUT.
     private static void printUsage(String caller) {
         String usage = "Usage: " + caller
-                + " <options> <source file>\n"
+                + " <options> <source files or directories>\n"
                 + "Where possible options include:\n"
                 + "  -t  Only tokenize input and print tokens to STDOUT\n"
                 + "  -p  Only parse input and print AST to STDOUT\n"
@@ -170,7 +376,17 @@ public class Main {
                 + "  -a  Only parse, pre-analyze, and analyze input and print AST to STDOUT\n"
                 + "  -s  <naive|linear|graph> Generate SPIM code\n"
                 + "  -r  <num> Physical registers (1-18) available for allocation; default = 8\n"
-                + "  -d  <dir> Specify where to place output files; default = .";
+                + "  -d  <dir> Specify where to place output files; default = .\n"
+                + "  -j  <num> Threads compiling source files, and the methods of classes with\n"
+                + "            many of them, in parallel; default = number of processors\n"
+                + "  -indy     Compile string concatenation to invokedynamic (JDK 9 or later)\n"
+                + "  -O        Optimize the bytecode of each method with peephole rules (with -s,\n"
+                + "            optimize the high-level instructions of each method instead)\n"
+                + "  -Ov       As -O, and print the number of times each rule (or each pass, with\n"
+                + "            -s) applied to STDOUT\n"
+                + "  -target <version> Class file major version (49 or later; from 50 on, with\n"
+                + "            stack map frames); default = 49\n"
+                + "  -server   Serve compile requests, one argument line each, read from STDIN";
         System.out.println(usage);
     }
 }
@@ -4,6 +4,8 @@ package jminusminus;
 
 import java.util.ArrayList;
 import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.Stack;
@@ -121,11 +123,6 @@ class NBasicBlock {
      */
     public boolean visited;
 
-    /**
-     * Is this block active?
-     */
-    public boolean active;
-
     /**
      * Is this block a loop head?
      */
@@ -137,15 +134,20 @@ class NBasicBlock {
     public boolean isLoopTail;
 
     /**
-     * Index of a loop.
+     * Index (in the cfg's list of loops) of the loop this block is the head of.
      */
     public int loopIndex;
 
     /**
-     * Depth of a loop.
+     * Number of loops containing this block.
      */
     public int loopDepth;
 
+    /**
+     * The innermost loop containing this block, or null.
+     */
+    public NLoop loop;
+
     /**
      * Number of forward branches to this block.
      */
@@ -157,14 +159,24 @@ class NBasicBlock {
     public int bwdBranches;
 
     /**
-     * Ref count of this block.
+     * The immediate dominator of this block.
      */
-    public int ref;
+    public NBasicBlock dom;
 
     /**
-     * The dominator of this block.
+     * The blocks this block immediately dominates, ie, its children in the dominator tree.
      */
-    public NBasicBlock dom;
+    public ArrayList<NBasicBlock> dominated;
+
+    /**
+     * Preorder number of this block in the dominator tree.
+     */
+    public int domPreorder;
+
+    /**
+     * Postorder number of this block in the dominator tree.
+     */
+    public int domPostorder;
 
     /**
      * All virtual registers locally defined within this block.
@@ -200,6 +212,7 @@ class NBasicBlock {
         successors = new ArrayList<NBasicBlock>();
         hir = new ArrayList<Integer>();
         lir = new ArrayList<NLIRInstruction>();
+        dominated = new ArrayList<NBasicBlock>();
         isLoopHead = false;
     }
 
@@ -274,7 +287,8 @@ class NBasicBlock {
         s = "Locals: ";
         if (locals != null) {
             for (int i = 0; i < locals.length; i++) {
-                if (!(cfg.hirMap.get(locals[i]) instanceof NHIRLocal)) {
+                if (cfg.hirMap.get(locals[i]) != null &&
+                        !(cfg.hirMap.get(locals[i]) instanceof NHIRLocal)) {
                     s += cfg.hirMap.get(locals[i]).id() + " ";
                 }
             }
@@ -371,6 +385,95 @@ class NBasicBlock {
     }
 }
 
+/**
+ * Representation of a natural loop in a control flow graph: the header, and the blocks from
+ * which the source of a back edge (an edge to a block that dominates its source) into the header
+ * can be reached without going through the header. Loops sharing a header are one loop. The loops
+ * of a cfg form a forest, in which the parent of a loop is the innermost loop containing it.
+ */
+class NLoop {
+    /**
+     * Index of this loop in the cfg's list of loops.
+     */
+    public int index;
+
+    /**
+     * The header of this loop, which dominates all of its blocks.
+     */
+    public NBasicBlock header;
+
+    /**
+     * The blocks of this loop, header first.
+     */
+    public ArrayList<NBasicBlock> blocks;
+
+    /**
+     * The sources of the back edges into the header.
+     */
+    public ArrayList<NBasicBlock> tails;
+
+    /**
+     * The innermost loop containing this loop, or null.
+     */
+    public NLoop parent;
+
+    /**
+     * The loops immediately nested in this loop.
+     */
+    public ArrayList<NLoop> children;
+
+    /**
+     * Nesting depth of this loop, 1 for an outermost loop.
+     */
+    public int depth;
+
+    // Ids of the blocks of this loop.
+    private BitSet blockIds;
+
+    /**
+     * Constructs a loop with the given header.
+     *
+     * @param header the header of the loop.
+     */
+    public NLoop(NBasicBlock header) {
+        this.header = header;
+        blocks = new ArrayList<NBasicBlock>();
+        tails = new ArrayList<NBasicBlock>();
+        children = new ArrayList<NLoop>();
+        blockIds = new BitSet();
+        add(header);
+    }
+
+    /**
+     * Adds the given block to this loop.
+     *
+     * @param block the block.
+     */
+    public void add(NBasicBlock block) {
+        blocks.add(block);
+        blockIds.set(block.id);
+    }
+
+    /**
+     * Returns true if this loop contains the given block, and false otherwise.
+     *
+     * @param block the block.
+     * @return true if this loop contains the given block, and false otherwise.
+     */
+    public boolean contains(NBasicBlock block) {
+        return blockIds.get(block.id);
+    }
+
+    /**
+     * Returns a string identifier of this loop.
+     *
+     * @return a string identifier of this loop.
+     */
+    public String id() {
+        return "L" + index;
+    }
+}
+
 /**
  * Representation of a control flow graph (cfg) for a method.
  */
@@ -409,11 +512,6 @@ class NControlFlowGraph {
      */
     public int offset;
 
-    /**
-     * Loop identifier.
-     */
-    public static int loopIndex;
-
     /**
      * Name of the method this cfg corresponds to.
      */
@@ -429,6 +527,11 @@ class NControlFlowGraph {
      */
     public ArrayList<NBasicBlock> basicBlocks;
 
+    /**
+     * The loops in this cfg, each ahead of the loops nested in it.
+     */
+    public ArrayList<NLoop> loops;
+
     /**
      * Maps HIR instruction ids in this cfg to HIR instructions.
      */
@@ -478,7 +581,7 @@ class NControlFlowGraph {
         desc = new String(((CLConstantUtf8Info) cp.cpItem(m.descriptorIndex)).b);
         basicBlocks = new ArrayList<NBasicBlock>();
         pcToBasicBlock = new HashMap<Integer, NBasicBlock>();
-        ArrayList<Integer> code = getByteCode();
+        CLByteBuffer code = getByteCode();
         ArrayList<NTuple> tuples = bytecodeToTuples(code);
         if (tuples.size() == 0) {
             return;
@@ -581,35 +684,40 @@ class NControlFlowGraph {
                     }
             }
         }
-
-        // Calculate the ref count and number of forward branches to each block in the this cfg.
-        for (NBasicBlock block : basicBlocks) {
-            block.ref = block.predecessors.size();
-            block.fwdBranches = block.predecessors.size() - block.bwdBranches;
-        }
     }
 
     /**
-     * Implements loop detection algorithm to figure out if the specified block is a loop head or
-     * a loop tail. Also calculates the number of backward branches to the block.
+     * Returns the blocks in this cfg that can be reached from the begin block (B0), in postorder
+     * of a depth-first walk from there: each block comes after its successors, except for those
+     * it reaches through a backward branch.
      *
-     * @param block a block.
-     * @param pred  block's predecessor or null.
-     */
-    public void detectLoops(NBasicBlock block, NBasicBlock pred) {
-        if (!block.visited) {
-            block.visited = true;
-            block.active = true;
-            for (NBasicBlock succ : block.successors) {
-                detectLoops(succ, block);
+     * @return the reachable blocks in this cfg, in postorder.
+     */
+    public ArrayList<NBasicBlock> postorder() {
+        ArrayList<NBasicBlock> order = new ArrayList<NBasicBlock>();
+        BitSet seen = new BitSet();
+        Stack<NBasicBlock> blocks = new Stack<NBasicBlock>();
+        Stack<Integer> next = new Stack<Integer>();
+        NBasicBlock begin = basicBlocks.get(0);
+        seen.set(begin.id);
+        blocks.push(begin);
+        next.push(0);
+        while (!blocks.isEmpty()) {
+            NBasicBlock block = blocks.peek();
+            int i = next.pop();
+            if (i < block.successors.size()) {
+                next.push(i + 1);
+                NBasicBlock successor = block.successors.get(i);
+                if (!seen.get(successor.id)) {
+                    seen.set(successor.id);
+                    blocks.push(successor);
+                    next.push(0);
+                }
+            } else {
+                order.add(blocks.pop());
             }
-            block.active = false;
-        } else if (block.active) {
-            block.isLoopHead = true;
-            pred.isLoopTail = true;
-            block.bwdBranches++;
-            block.loopIndex = NControlFlowGraph.loopIndex++;
         }
+        return order;
     }
 
     /**
@@ -618,9 +726,13 @@ class NControlFlowGraph {
      */
     public void removeUnreachableBlocks() {
         // Create a list of blocks that cannot be reached.
+        BitSet reachable = new BitSet();
+        for (NBasicBlock block : postorder()) {
+            reachable.set(block.id);
+        }
         ArrayList<NBasicBlock> toRemove = new ArrayList<NBasicBlock>();
         for (NBasicBlock block : basicBlocks) {
-            if (!block.visited) {
+            if (!reachable.get(block.id)) {
                 toRemove.add(block);
             }
         }
@@ -639,24 +751,160 @@ class NControlFlowGraph {
     }
 
     /**
-     * Computes the dominator of each block in this cfg recursively given the starting block and
-     * its predecessor.
+     * Computes the immediate dominator of each block in this cfg, using the iterative algorithm
+     * of Cooper, Harvey and Kennedy over a postorder numbering of the blocks, and builds the
+     * dominator tree. The begin block (B0) has no dominator.
+     */
+    public void computeDominators() {
+        ArrayList<NBasicBlock> order = postorder();
+        int maxId = 0;
+        for (NBasicBlock block : order) {
+            maxId = Math.max(maxId, block.id);
+        }
+        int[] number = new int[maxId + 1];
+        for (int i = 0; i < order.size(); i++) {
+            NBasicBlock block = order.get(i);
+            number[block.id] = i;
+            block.dom = null;
+            block.dominated.clear();
+        }
+        NBasicBlock begin = basicBlocks.get(0);
+        begin.dom = begin;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+
+            // Visit the blocks in reverse postorder, so that a block's predecessors are mostly
+            // visited before it.
+            for (int i = order.size() - 1; i >= 0; i--) {
+                NBasicBlock block = order.get(i);
+                if (block == begin) {
+                    continue;
+                }
+                NBasicBlock dom = null;
+                for (NBasicBlock pred : block.predecessors) {
+                    if (pred.dom != null) {
+                        dom = dom == null ? pred : commonDom(pred, dom, number);
+                    }
+                }
+                if (dom != block.dom) {
+                    block.dom = dom;
+                    changed = true;
+                }
+            }
+        }
+        begin.dom = null;
+        for (NBasicBlock block : order) {
+            if (block != begin) {
+                block.dom.dominated.add(block);
+            }
+        }
+
+        // Number the blocks in the dominator tree, so dominates() can compare the numbers.
+        int preorder = 0;
+        int postorder = 0;
+        Stack<NBasicBlock> blocks = new Stack<NBasicBlock>();
+        Stack<Integer> next = new Stack<Integer>();
+        begin.domPreorder = preorder++;
+        blocks.push(begin);
+        next.push(0);
+        while (!blocks.isEmpty()) {
+            NBasicBlock block = blocks.peek();
+            int i = next.pop();
+            if (i < block.dominated.size()) {
+                next.push(i + 1);
+                NBasicBlock child = block.dominated.get(i);
+                child.domPreorder = preorder++;
+                blocks.push(child);
+                next.push(0);
+            } else {
+                blocks.pop().domPostorder = postorder++;
+            }
+        }
+    }
+
+    /**
+     * Returns true if block a dominates block b, ie, if every path from the begin block (B0) to
+     * b goes through a, and false otherwise. Every block dominates itself. The dominators must
+     * have been computed.
      *
-     * @param block starting block.
-     * @param pred  block's predecessor.
+     * @param a a block.
+     * @param b a block.
+     * @return true if block a dominates block b, and false otherwise.
+     */
+    public boolean dominates(NBasicBlock a, NBasicBlock b) {
+        return a.domPreorder <= b.domPreorder && b.domPostorder <= a.domPostorder;
+    }
+
+    /**
+     * Finds the natural loops in this cfg, and arranges them in a forest by nesting. The source
+     * of a back edge is marked as a loop tail, and its target as a loop head. Also sets the loop,
+     * loop index and loop depth of each block, and the number of forward and backward branches
+     * to it. The dominators must have been computed.
      */
-    public void computeDominators(NBasicBlock block, NBasicBlock pred) {
-        if (block.ref > 0) {
-            block.ref--;
+    public void detectLoops() {
+        loops = new ArrayList<NLoop>();
+        HashMap<NBasicBlock, NLoop> loopAt = new HashMap<NBasicBlock, NLoop>();
+        for (NBasicBlock block : basicBlocks) {
+            block.isLoopHead = false;
+            block.isLoopTail = false;
+            block.bwdBranches = 0;
+            block.loop = null;
         }
-        if (block.dom == null) {
-            block.dom = pred;
-        } else {
-            block.dom = commonDom(block.dom, pred);
+        for (NBasicBlock header : basicBlocks) {
+            for (NBasicBlock tail : header.predecessors) {
+                if (!dominates(header, tail)) {
+                    continue;
+                }
+                header.isLoopHead = true;
+                tail.isLoopTail = true;
+                header.bwdBranches++;
+                NLoop loop = loopAt.get(header);
+                if (loop == null) {
+                    loop = new NLoop(header);
+                    loopAt.put(header, loop);
+                    loops.add(loop);
+                }
+                loop.tails.add(tail);
+
+                // Add the blocks from which the tail can be reached without going through the
+                // header.
+                Stack<NBasicBlock> stack = new Stack<NBasicBlock>();
+                stack.push(tail);
+                while (!stack.isEmpty()) {
+                    NBasicBlock block = stack.pop();
+                    if (!loop.contains(block)) {
+                        loop.add(block);
+                        stack.addAll(block.predecessors);
+                    }
+                }
+            }
+            header.fwdBranches = header.predecessors.size() - header.bwdBranches;
         }
-        if (block.ref == block.bwdBranches) {
-            for (NBasicBlock s : block.successors) {
-                computeDominators(s, block);
+
+        // A loop containing another is bigger, so it comes first; by then the innermost loop
+        // containing the header of a loop is the loop's parent.
+        Collections.sort(loops, new Comparator<NLoop>() {
+            public int compare(NLoop a, NLoop b) {
+                return b.blocks.size() - a.blocks.size();
+            }
+        });
+        for (int i = 0; i < loops.size(); i++) {
+            NLoop loop = loops.get(i);
+            loop.index = i;
+            loop.parent = loop.header.loop;
+            if (loop.parent != null) {
+                loop.parent.children.add(loop);
+            }
+            loop.depth = loop.parent == null ? 1 : loop.parent.depth + 1;
+            for (NBasicBlock block : loop.blocks) {
+                block.loop = loop;
+            }
+        }
+        for (NBasicBlock block : basicBlocks) {
+            block.loopDepth = block.loop == null ? 0 : block.loop.depth;
+            if (block.isLoopHead) {
+                block.loopIndex = block.loop.index;
             }
         }
     }
@@ -667,7 +915,6 @@ class NControlFlowGraph {
     public void tuplesToHir() {
         clearBlockVisitations();
         hirId = 0;
-        loopIndex = 0;
         hirMap = new TreeMap<Integer, NHIRInstruction>();
         int numLocals = numLocals();
         int[] locals = new int[numLocals];
@@ -1051,10 +1298,15 @@ class NControlFlowGraph {
     }
 
     /**
-     * Carries out optimizations on the high-level instructions.
+     * Carries out optimizations on the high-level instructions with the given optimizer, if it's
+     * not null.
+     *
+     * @param optimizer the optimizer, or null.
      */
-    public void optimize() {
-        // Unsupported.
+    public void optimize(NHIROptimizer optimizer) {
+        if (optimizer != null) {
+            optimizer.optimize(this);
+        }
     }
 
     /**
@@ -1117,11 +1369,12 @@ class NControlFlowGraph {
      * Resolves the phi functions in this cfg, i.e., for each x = phi(x1, x2, ..., xn) generate
      * an (LIR) move xi, x instruction at the end of the predecessor i of thte block defining the
      * phi function; if the instruction there is a branch, add the instruction prior to the branch.
+     * A phi function replaced by another (whose id maps to the other) is not resolved again.
      */
     public void resolvePhiFunctions() {
         for (int ins1 : hirMap.keySet()) {
             NHIRInstruction hir = hirMap.get(ins1);
-            if (hir instanceof NHIRPhiFunction) {
+            if (hir instanceof NHIRPhiFunction && hir.id == ins1) {
                 NHIRPhiFunction phi = (NHIRPhiFunction) hir;
                 NBasicBlock block = phi.block;
                 for (int i = 0; i < phi.getArguments().size(); i++) {
@@ -1130,10 +1383,10 @@ class NControlFlowGraph {
                         continue;
                     }
                     NBasicBlock targetBlock = block.predecessors.get(i);
-                    NLIRMove move = new NLIRMove(arg.block, lirId++, arg.lir, phi.lir);
+                    NLIRMove move = new NLIRMove(targetBlock, lirId++, arg.lir, phi.lir);
                     int len = targetBlock.hir.size();
-                    if (isHIRJmp(hirMap.get(targetBlock.hir.get(len - 1)))) {
-                        targetBlock.lir.add(len - 1, move);
+                    if (len > 0 && isHIRJmp(hirMap.get(targetBlock.hir.get(len - 1)))) {
+                        targetBlock.lir.add(targetBlock.lir.size() - 1, move);
                     } else {
                         targetBlock.lir.add(move);
                     }
@@ -1348,19 +1601,18 @@ class NControlFlowGraph {
         }
     }
 
-    // Returns the common dominator of the given basic block and its predecessor.
-    private NBasicBlock commonDom(NBasicBlock b, NBasicBlock pred) {
-        NBasicBlock dom = b;
-        clearBlockVisitations();
-        while (dom != null) {
-            dom.visited = true;
-            dom = dom.dom;
-        }
-        dom = pred;
-        while (!dom.visited) {
-            dom = dom.dom;
+    // Returns the nearest common dominator of the given blocks, given the postorder number of
+    // each block (by id), and the dominators found so far.
+    private NBasicBlock commonDom(NBasicBlock a, NBasicBlock b, int[] number) {
+        while (a != b) {
+            while (number[a.id] < number[b.id]) {
+                a = a.dom;
+            }
+            while (number[b.id] < number[a.id]) {
+                b = b.dom;
+            }
         }
-        return dom;
+        return a;
     }
 
     // Merges the locals from each of the predecessors of the specified block with the locals in
@@ -1390,7 +1642,7 @@ class NControlFlowGraph {
     }
 
     // Converts the bytecode in the specified list to their tuple representations.
-    private ArrayList<NTuple> bytecodeToTuples(ArrayList<Integer> code) {
+    private ArrayList<NTuple> bytecodeToTuples(CLByteBuffer code) {
         ArrayList<NTuple> tuples = new ArrayList<NTuple>();
         for (int i = 0; i < code.size(); i++) {
             int pc = i;
@@ -1402,28 +1654,28 @@ class NControlFlowGraph {
                 case 0:
                     break;
                 case 1:
-                    operandByte1 = code.get(++i).shortValue();
+                    operandByte1 = (short) code.get(++i);
                     operands.add(operandByte1);
                     break;
                 case 2:
-                    operandByte1 = code.get(++i).shortValue();
-                    operandByte2 = code.get(++i).shortValue();
+                    operandByte1 = (short) code.get(++i);
+                    operandByte2 = (short) code.get(++i);
                     operands.add(operandByte1);
                     operands.add(operandByte2);
                     break;
                 case 3:
-                    operandByte1 = code.get(++i).shortValue();
-                    operandByte2 = code.get(++i).shortValue();
-                    operandByte3 = code.get(++i).shortValue();
+                    operandByte1 = (short) code.get(++i);
+                    operandByte2 = (short) code.get(++i);
+                    operandByte3 = (short) code.get(++i);
                     operands.add(operandByte1);
                     operands.add(operandByte2);
                     operands.add(operandByte3);
                     break;
                 case 4:
-                    operandByte1 = code.get(++i).shortValue();
-                    operandByte2 = code.get(++i).shortValue();
-                    operandByte3 = code.get(++i).shortValue();
-                    operandByte4 = code.get(++i).shortValue();
+                    operandByte1 = (short) code.get(++i);
+                    operandByte2 = (short) code.get(++i);
+                    operandByte3 = (short) code.get(++i);
+                    operandByte4 = (short) code.get(++i);
                     operands.add(operandByte1);
                     operands.add(operandByte2);
                     operands.add(operandByte3);
@@ -1448,8 +1700,8 @@ class NControlFlowGraph {
     }
 
     // Extracts and returns the JVM bytecode for the method denoted by this cfg.
-    private ArrayList<Integer> getByteCode() {
-        ArrayList<Integer> code = null;
+    private CLByteBuffer getByteCode() {
+        CLByteBuffer code = null;
         for (CLAttributeInfo info : m.attributes) {
             if (info instanceof CLCodeAttribute) {
                 code = ((CLCodeAttribute) info).code;
@@ -1484,7 +1736,7 @@ class NControlFlowGraph {
 
     // Returns the number of local variables in the method denoted by this cfg.
     private int numLocals() {
-        ArrayList<Integer> code = null;
+        CLByteBuffer code = null;
         int numLocals = 0;
         for (CLAttributeInfo info : m.attributes) {
             if (info instanceof CLCodeAttribute) {
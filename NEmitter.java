@@ -38,6 +38,20 @@ public class NEmitter {
      * @param ra         register allocation scheme (naive, linear, or graph).
      */
     public NEmitter(String sourceFile, ArrayList<CLFile> clFiles, String ra) {
+        this(sourceFile, clFiles, ra, null);
+    }
+
+    /**
+     * Constructs an NEmitter object, which optimizes the high-level instructions of each method
+     * with the given optimizer, if it's not null.
+     *
+     * @param sourceFile the source j-- program file name.
+     * @param clFiles    list of CLFile objects.
+     * @param ra         register allocation scheme (naive, linear, or graph).
+     * @param optimizer  optimizer for the high-level instructions, or null.
+     */
+    public NEmitter(String sourceFile, ArrayList<CLFile> clFiles, String ra,
+                    NHIROptimizer optimizer) {
         this.sourceFile = sourceFile.substring(sourceFile.lastIndexOf(File.separator) + 1);
         classes = new HashMap<CLFile, HashMap<CLMethodInfo, NControlFlowGraph>>();
         for (CLFile clFile : clFiles) {
@@ -58,15 +72,15 @@ public class NEmitter {
                 p.printf(">>> %s %s\n", cfg.name, cfg.desc);
                 cfg.writeTuplesToStdOut(p);
 
-                // Identify blocks in cfg that are loop heads and loop tails. Also, compute
-                // number of backward branches to blocks.
-                cfg.detectLoops(cfg.basicBlocks.get(0), null);
-
                 // Remove unreachable blocks from cfg.
                 cfg.removeUnreachableBlocks();
 
                 // Compute the dominator of each block in the cfg.
-                cfg.computeDominators(cfg.basicBlocks.get(0), null);
+                cfg.computeDominators();
+
+                // Find the loops in cfg, identifying blocks that are loop heads and loop tails.
+                // Also, compute the loop depth of blocks and number of backward branches to them.
+                cfg.detectLoops();
 
                 // Convert the tuples in each block in the cfg to high-level (HIR) instructions.
                 cfg.tuplesToHir();
@@ -76,7 +90,7 @@ public class NEmitter {
                 cfg.eliminateRedundantPhiFunctions();
 
                 // Perform optimizations on the high-level instructions.
-                cfg.optimize();
+                cfg.optimize(optimizer);
 
                 // Write the HIR instructions in cfg to standard output.
                 cfg.writeHirToStdOut(p);
@@ -121,6 +135,9 @@ public class NEmitter {
 
                 // Write the liveness intervals in cfg to standard output.
                 cfg.writeIntervalsToStdOut(p);
+
+                // Write the number of spills, stores, loads and moves to standard output.
+                regAllocator.writeStatisticsToStdOut(p);
             }
 
             // Store the cfgs for the methods in this class in a map.
@@ -229,8 +246,7 @@ public class NEmitter {
 
     // Reports any error that occurs while creating/writing the spim file, to standard error.
     private void reportEmitterError(String message, Object... args) {
-        System.err.printf("Error: " + message, args);
-        System.err.println();
+        System.err.printf("Error: %s%n", String.format(message, args));
         errorHasOccurred = true;
     }
 
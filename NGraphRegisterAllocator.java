@@ -2,10 +2,55 @@
 
 package jminusminus;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Stack;
+
+import static jminusminus.NPhysicalRegister.*;
+
 /**
- * Implements register allocation using graph coloring algorithm.
+ * Implements register allocation using the graph coloring method of Chaitin, with the
+ * improvements of Briggs. The nodes of the interference graph are the intervals of the virtual
+ * registers, and two nodes interfere if their intervals intersect. The ends of a move between
+ * virtual registers that don't otherwise interfere are coalesced into one node as long as that
+ * can't make the graph harder to color, and the move is then removed.
+ *
+ * Nodes with fewer neighbors than there are registers are simplified away first. When there are
+ * none left, the node that is cheapest to spill relative to its degree is set aside optimistically,
+ * the cost of a virtual register being the number of its uses, each weighted by ten to the power
+ * of the loop depth of its block. If a node cannot be colored after all, its virtual registers are
+ * given stack slots, leaving only a short interval at each of their uses in a register, and the
+ * allocation is tried again.
  */
 public class NGraphRegisterAllocator extends NRegisterAllocator {
+    // Number of registers available for allocation, starting at t0.
+    private int registerCount;
+
+    // Intervals that need a register: those of the virtual registers that haven't been spilled,
+    // and the parts at the uses of the ones that have.
+    private ArrayList<NInterval> nodes;
+
+    // Maps the id of an interval to its index in nodes, or -1.
+    private int[] nodeOf;
+
+    // The interference graph as a bit matrix, with a row for each node.
+    private BitSet[] adjacent;
+
+    // Index of the node each node has been coalesced into, or the node's own index.
+    private int[] alias;
+
+    // Spill cost of each node.
+    private double[] cost;
+
+    // Ends (as node indices) of the moves between virtual registers.
+    private ArrayList<int[]> moves;
+
+    // Maps the id of each move between virtual registers to the move.
+    private HashMap<Integer, NLIRMove> movesAt;
+
     /**
      * Constructs an NGraphRegisterAllocator object.
      *
@@ -20,5 +65,369 @@ public class NGraphRegisterAllocator extends NRegisterAllocator {
      */
     public void allocation() {
         buildIntervals();
+        preprocess();
+        registerCount = Math.max(MIN_COUNT, MAX_COUNT);
+        for (int i = 32; i < cfg.intervals.size(); i++) {
+            NInterval interval = cfg.intervals.get(i);
+            if (interval.spill && !interval.ranges.isEmpty()) {
+                // A formal parameter fourth or above stays in the caller's frame until its first
+                // use, which is where it needs a register.
+                Integer use = interval.usePositions.higherKey(interval.firstNRangeStart());
+                if (use != null) {
+                    interval.splitAt(use);
+                    interval.spill();
+                }
+            }
+        }
+
+        boolean coalescing = true;
+        int[] color;
+        while (true) {
+            buildGraph();
+            if (coalescing) {
+                coalesce();
+            }
+            color = new int[nodes.size()];
+            ArrayList<Integer> uncolored = colorGraph(color);
+            if (uncolored.isEmpty()) {
+                break;
+            }
+            if (!spill(uncolored)) {
+                // Only parts at single uses are left to spill, and they can always be colored
+                // once they aren't coalesced with anything.
+                coalescing = false;
+            }
+        }
+
+        for (int i = 0; i < nodes.size(); i++) {
+            NInterval node = nodes.get(i);
+            node.pRegister = regInfo[T0 + color[find(i)]];
+            if (!cfg.pRegisters.contains(node.pRegister)) {
+                cfg.pRegisters.add(node.pRegister);
+            }
+        }
+        insertSpillCode();
+        removeCoalescedMoves();
+    }
+
+    // Collects the nodes, the moves between them, and the interference graph.
+    private void buildGraph() {
+        nodes = new ArrayList<NInterval>();
+        nodeOf = new int[cfg.maxIntervals];
+        for (int i = 0; i < nodeOf.length; i++) {
+            nodeOf[i] = -1;
+        }
+        for (int i = 32; i < cfg.intervals.size(); i++) {
+            NInterval interval = cfg.intervals.get(i);
+            if (!interval.spill && !interval.ranges.isEmpty()) {
+                addNode(interval);
+            }
+            for (NInterval child : interval.children) {
+                if (!child.usePositions.isEmpty()) {
+                    addNode(child);
+                }
+            }
+        }
+        int n = nodes.size();
+        alias = new int[n];
+        cost = new double[n];
+        adjacent = new BitSet[n];
+        for (int i = 0; i < n; i++) {
+            alias[i] = i;
+            cost[i] = spillCost(nodes.get(i));
+            adjacent[i] = new BitSet(n);
+        }
+
+        moves = new ArrayList<int[]>();
+        movesAt = new HashMap<Integer, NLIRMove>();
+        for (NBasicBlock block : cfg.basicBlocks) {
+            for (NLIRInstruction lir : block.lir) {
+                if (!(lir instanceof NLIRMove) || lir.reads.get(0).number() < 32
+                        || lir.write.number() < 32
+                        || lir.reads.get(0).number() == lir.write.number()) {
+                    continue;
+                }
+                int from = nodeOf[cfg.intervals.get(lir.reads.get(0).number()).childAt(lir.id)
+                        .vRegId];
+                int to = nodeOf[cfg.intervals.get(lir.write.number()).childAt(lir.id).vRegId];
+                if (from >= 0 && to >= 0) {
+                    moves.add(new int[]{from, to});
+                    movesAt.put(lir.id, (NLIRMove) lir);
+                }
+            }
+        }
+
+        // Intervals are compared with those starting no later than they end.
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return nodes.get(a).firstNRangeStart() - nodes.get(b).firstNRangeStart();
+            }
+        });
+        for (int i = 0; i < n; i++) {
+            NInterval a = nodes.get(order[i]);
+            for (int j = i + 1; j < n; j++) {
+                NInterval b = nodes.get(order[j]);
+                if (b.firstNRangeStart() > a.lastNRangeStop()) {
+                    break;
+                }
+                if (interfere(a, b)) {
+                    adjacent[order[i]].set(order[j]);
+                    adjacent[order[j]].set(order[i]);
+                }
+            }
+        }
+    }
+
+    // Adds the given interval to the nodes.
+    private void addNode(NInterval interval) {
+        nodeOf[interval.vRegId] = nodes.size();
+        nodes.add(interval);
+    }
+
+    // Returns true if the given intervals need different registers, ie, if they intersect
+    // anywhere other than at a move from one to the other.
+    private boolean interfere(NInterval a, NInterval b) {
+        for (NRange r : a.ranges) {
+            for (NRange s : b.ranges) {
+                int start = Math.max(r.start, s.start);
+                int stop = Math.min(r.stop, s.stop);
+                if (start < stop || start == stop && !isMoveBetween(start, a, b)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // Returns true if the instruction with the given id is a move from one of the given
+    // intervals to the other, and false otherwise.
+    private boolean isMoveBetween(int id, NInterval a, NInterval b) {
+        NLIRMove move = movesAt.get(id);
+        if (move == null) {
+            return false;
+        }
+        int from = move.reads.get(0).number();
+        int to = move.write.number();
+        return from == vRegOf(a) && to == vRegOf(b) || from == vRegOf(b) && to == vRegOf(a);
+    }
+
+    // Merges the ends of moves that don't interfere, as long as the merged node has fewer
+    // neighbors of significant degree than there are registers (the Briggs test), so that it
+    // can still be simplified.
+    private void coalesce() {
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int[] move : moves) {
+                int a = find(move[0]);
+                int b = find(move[1]);
+                if (a == b || adjacent[a].get(b)) {
+                    continue;
+                }
+                BitSet neighbors = (BitSet) adjacent[a].clone();
+                neighbors.or(adjacent[b]);
+                int significant = 0;
+                for (int m = neighbors.nextSetBit(0); m >= 0; m = neighbors.nextSetBit(m + 1)) {
+                    int degree = adjacent[m].cardinality();
+                    if (adjacent[m].get(a) && adjacent[m].get(b)) {
+                        degree--;
+                    }
+                    if (degree >= registerCount) {
+                        significant++;
+                    }
+                }
+                if (significant >= registerCount) {
+                    continue;
+                }
+                for (int m = adjacent[b].nextSetBit(0); m >= 0;
+                     m = adjacent[b].nextSetBit(m + 1)) {
+                    adjacent[m].clear(b);
+                    adjacent[m].set(a);
+                }
+                adjacent[a].or(adjacent[b]);
+                adjacent[b].clear();
+                alias[b] = a;
+                cost[a] += cost[b];
+                changed = true;
+            }
+        }
+    }
+
+    // Colors the coalesced nodes, filling in the given colors (register indices) of the ones
+    // that could be colored, and returns the ones that couldn't.
+    private ArrayList<Integer> colorGraph(int[] color) {
+        int n = nodes.size();
+        int[] degree = new int[n];
+        BitSet remaining = new BitSet(n);
+        for (int i = 0; i < n; i++) {
+            if (alias[i] == i) {
+                degree[i] = adjacent[i].cardinality();
+                remaining.set(i);
+            }
+        }
+
+        // Simplify.
+        Stack<Integer> stack = new Stack<Integer>();
+        while (!remaining.isEmpty()) {
+            int node = -1;
+            for (int i = remaining.nextSetBit(0); i >= 0; i = remaining.nextSetBit(i + 1)) {
+                if (degree[i] < registerCount) {
+                    node = i;
+                    break;
+                }
+            }
+            if (node == -1) {
+                // Every node is of significant degree, so set aside the cheapest one to spill,
+                // hoping it can be colored anyway.
+                for (int i = remaining.nextSetBit(0); i >= 0; i = remaining.nextSetBit(i + 1)) {
+                    if (node == -1 || cost[i] / degree[i] < cost[node] / degree[node]) {
+                        node = i;
+                    }
+                }
+            }
+            remaining.clear(node);
+            stack.push(node);
+            for (int m = adjacent[node].nextSetBit(0); m >= 0;
+                 m = adjacent[node].nextSetBit(m + 1)) {
+                degree[m]--;
+            }
+        }
+
+        // Select.
+        ArrayList<Integer> uncolored = new ArrayList<Integer>();
+        for (int i = 0; i < n; i++) {
+            color[i] = -1;
+        }
+        while (!stack.isEmpty()) {
+            int node = stack.pop();
+            boolean[] taken = new boolean[registerCount];
+            for (int m = adjacent[node].nextSetBit(0); m >= 0;
+                 m = adjacent[node].nextSetBit(m + 1)) {
+                if (color[m] >= 0) {
+                    taken[color[m]] = true;
+                }
+            }
+            for (int r = 0; r < registerCount && color[node] == -1; r++) {
+                if (!taken[r]) {
+                    color[node] = r;
+                }
+            }
+            if (color[node] == -1) {
+                uncolored.add(node);
+            }
+        }
+        return uncolored;
+    }
+
+    // Gives stack slots to the virtual registers of the given uncolored nodes, or, for a node
+    // made up of parts at single uses only, to those of its neighbors. Returns false if there
+    // was nothing to spill.
+    private boolean spill(ArrayList<Integer> uncolored) {
+        boolean spilled = false;
+        for (int node : uncolored) {
+            boolean spilledNode = false;
+            for (int i = 0; i < nodes.size(); i++) {
+                if (find(i) == node && spill(nodes.get(i))) {
+                    spilledNode = true;
+                }
+            }
+            for (int m = adjacent[node].nextSetBit(0); m >= 0 && !spilledNode;
+                 m = adjacent[node].nextSetBit(m + 1)) {
+                for (int i = 0; i < nodes.size(); i++) {
+                    if (find(i) == m && spill(nodes.get(i))) {
+                        spilled = true;
+                    }
+                }
+            }
+            spilled |= spilledNode;
+        }
+        return spilled;
+    }
+
+    // Moves the given interval into the stack slot of its virtual register, except at its uses.
+    // Returns false if the interval covers nothing but a single use already.
+    private boolean spill(NInterval interval) {
+        if (isSingleUse(interval)) {
+            return false;
+        }
+        NInterval parent = interval.isChild() ? interval.parent : interval;
+        if (parent.offset == -1) {
+            spillCount++;
+        }
+        splitAtUses(interval);
+        parent.spill();
+        return true;
+    }
+
+    // Splits the given interval so that each of its uses is in a part of its own, which covers
+    // just the use; the rest stays in memory.
+    private void splitAtUses(NInterval interval) {
+        ArrayList<Integer> uses = new ArrayList<Integer>(interval.usePositions.keySet());
+        NInterval rest = interval;
+        for (int use : uses) {
+            NInterval part = rest;
+            if (rest == interval || rest.firstNRangeStart() < use) {
+                part = rest.splitAt(use);
+            }
+            if (part.lastNRangeStop() <= use) {
+                break;
+            }
+            rest = part.splitAt(use + 5);
+        }
+    }
+
+    // Removes the moves whose ends ended up in the same register.
+    private void removeCoalescedMoves() {
+        for (NBasicBlock block : cfg.basicBlocks) {
+            ArrayList<NLIRInstruction> newLir = new ArrayList<NLIRInstruction>();
+            for (NLIRInstruction lir : block.lir) {
+                if (lir instanceof NLIRMove && lir.reads.get(0).number() >= 32
+                        && lir.write.number() >= 32) {
+                    NInterval from = cfg.intervals.get(lir.reads.get(0).number()).childAt(lir.id);
+                    NInterval to = cfg.intervals.get(lir.write.number()).childAt(lir.id);
+                    if (from.pRegister == to.pRegister) {
+                        continue;
+                    }
+                }
+                newLir.add(lir);
+            }
+            block.lir = newLir;
+        }
+    }
+
+    // Returns the cost of spilling the given interval: the number of its uses, each weighted by
+    // ten to the power of the loop depth of its block. An interval covering a single use cannot
+    // be spilled.
+    private double spillCost(NInterval interval) {
+        if (isSingleUse(interval)) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double cost = 0;
+        for (int id : interval.usePositions.keySet()) {
+            cost += Math.pow(10, cfg.blockAt(id).loopDepth);
+        }
+        return cost;
+    }
+
+    // Returns true if the given interval covers nothing but a single use, and false otherwise.
+    private static boolean isSingleUse(NInterval interval) {
+        return interval.firstNRangeStart() == interval.lastNRangeStop();
+    }
+
+    // Returns the node the given node has been coalesced into.
+    private int find(int node) {
+        while (alias[node] != node) {
+            node = alias[node];
+        }
+        return node;
+    }
+
+    // Returns the number of the virtual register of the given interval.
+    private static int vRegOf(NInterval interval) {
+        return interval.isChild() ? interval.parent.vRegId : interval.vRegId;
     }
 }
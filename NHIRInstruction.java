@@ -99,6 +99,15 @@ abstract class NHIRInstruction {
         return this.id == other.id;
     }
 
+    /**
+     * Returns a list containing the HIR ids of the values this instruction uses.
+     *
+     * @return a list containing the HIR ids of the values this instruction uses.
+     */
+    public ArrayList<Integer> operands() {
+        return new ArrayList<Integer>();
+    }
+
     /**
      * Converts and returns a low-level representation (LIR) of this HIR instruction. Also adds
      * the returned LIR instruction to the list of LIR instructions for the block containing this
@@ -158,6 +167,43 @@ class NHIRArithmetic extends NHIRInstruction {
         this.rhs = rhs;
     }
 
+    /**
+     * Returns the opcode for the arithmetic operator.
+     *
+     * @return the opcode for the arithmetic operator.
+     */
+    public int getOpcode() {
+        return opcode;
+    }
+
+    /**
+     * Returns the lhs HIR id.
+     *
+     * @return the lhs HIR id.
+     */
+    public int getLhs() {
+        return lhs;
+    }
+
+    /**
+     * Returns the rhs HIR id.
+     *
+     * @return the rhs HIR id.
+     */
+    public int getRhs() {
+        return rhs;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public ArrayList<Integer> operands() {
+        ArrayList<Integer> operands = new ArrayList<Integer>();
+        operands.add(lhs);
+        operands.add(rhs);
+        return operands;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -200,6 +246,15 @@ class NHIRIntConstant extends NHIRInstruction {
         this.value = value;
     }
 
+    /**
+     * Returns the constant int value.
+     *
+     * @return the constant int value.
+     */
+    public int getValue() {
+        return value;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -241,6 +296,15 @@ class NHIRStringConstant extends NHIRInstruction {
         this.value = value;
     }
 
+    /**
+     * Returns the constant string value.
+     *
+     * @return the constant string value.
+     */
+    public String getValue() {
+        return value;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -301,6 +365,61 @@ class NHIRConditionalJump extends NHIRInstruction {
         this.onFalseDestination = onFalseDestination;
     }
 
+    /**
+     * Returns the lhs HIR id.
+     *
+     * @return the lhs HIR id.
+     */
+    public int getLhs() {
+        return lhs;
+    }
+
+    /**
+     * Returns the rhs HIR id.
+     *
+     * @return the rhs HIR id.
+     */
+    public int getRhs() {
+        return rhs;
+    }
+
+    /**
+     * Returns the opcode in the test.
+     *
+     * @return the opcode in the test.
+     */
+    public int getOpcode() {
+        return opcode;
+    }
+
+    /**
+     * Returns the block to jump to on true.
+     *
+     * @return the block to jump to on true.
+     */
+    public NBasicBlock getOnTrueDestination() {
+        return onTrueDestination;
+    }
+
+    /**
+     * Returns the block to jump to on false.
+     *
+     * @return the block to jump to on false.
+     */
+    public NBasicBlock getOnFalseDestination() {
+        return onFalseDestination;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public ArrayList<Integer> operands() {
+        ArrayList<Integer> operands = new ArrayList<Integer>();
+        operands.add(lhs);
+        operands.add(rhs);
+        return operands;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -402,6 +521,13 @@ class NHIRInvoke extends NHIRInstruction {
         this.arguments = arguments;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public ArrayList<Integer> operands() {
+        return new ArrayList<Integer>(arguments);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -511,6 +637,17 @@ class NHIRReturn extends NHIRInstruction {
         this.value = value;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public ArrayList<Integer> operands() {
+        ArrayList<Integer> operands = new ArrayList<Integer>();
+        if (value != -1) {
+            operands.add(value);
+        }
+        return operands;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -580,6 +717,15 @@ class NHIRPutField extends NHIRInstruction {
         this.value = value;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public ArrayList<Integer> operands() {
+        ArrayList<Integer> operands = new ArrayList<Integer>();
+        operands.add(value);
+        return operands;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -735,6 +881,16 @@ class NHIRALoad extends NHIRInstruction {
         this.index = index;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public ArrayList<Integer> operands() {
+        ArrayList<Integer> operands = new ArrayList<Integer>();
+        operands.add(arrayRef);
+        operands.add(index);
+        return operands;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -796,6 +952,17 @@ class NHIRAStore extends NHIRInstruction {
         this.value = value;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public ArrayList<Integer> operands() {
+        ArrayList<Integer> operands = new ArrayList<Integer>();
+        operands.add(arrayRef);
+        operands.add(index);
+        operands.add(value);
+        return operands;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -877,6 +1044,13 @@ class NHIRPhiFunction extends NHIRInstruction {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public ArrayList<Integer> operands() {
+        return new ArrayList<Integer>(arguments);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -0,0 +1,571 @@
+// Copyright 2012- Bill Campbell, Swami Iyer and Bahar Akbal-Delibas
+
+package jminusminus;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.Stack;
+
+import static jminusminus.CLConstants.*;
+
+/**
+ * An optimizer for the high-level (HIR) instructions of a method, which are in SSA form: each HIR
+ * id names a single value, and the values a local has on the paths into a block meet in a phi
+ * function. The optimizer runs these passes over a cfg, in order:
+ *
+ * <pre>
+ *   sccp              sparse conditional constant propagation: replaces the values that are
+ *                     constant on the paths that can be taken with constants, and conditional
+ *                     jumps that can go only one way with gotos, and removes the blocks that
+ *                     cannot be reached
+ *   copy-propagation  replaces each phi function whose arguments (besides itself) are all the
+ *                     same value with that value
+ *   gvn               global value numbering: replaces each instruction that computes the same
+ *                     value as one in a block dominating it with that instruction
+ *   dce               dead code elimination: removes the instructions without side effects
+ *                     whose values are not used
+ * </pre>
+ * <p>
+ * An instruction is replaced by mapping its HIR id (in the cfg's hirMap) to the instruction
+ * replacing it, or to a constant with the same id, so the instructions using it need not change.
+ * The optimizer counts, for each pass, the instructions it removed or replaced, over all the cfgs
+ * it optimized.
+ */
+public class NHIROptimizer {
+    // Names of the passes, in the order in which they run.
+    private static final String[] PASSES = {"sccp", "copy-propagation", "gvn", "dce"};
+
+    // Lattice values in sccp: not known yet, a known constant, or not a constant.
+    private static final int UNKNOWN = 0;
+    private static final int CONSTANT = 1;
+    private static final int VARYING = 2;
+
+    // counts[i] is the number of instructions removed or replaced by PASSES[i].
+    private int[] counts;
+
+    // The cfg being optimized.
+    private NControlFlowGraph cfg;
+
+    // Lattice value of each HIR id in sccp, and the constant for those that are CONSTANT.
+    private int[] state;
+    private int[] value;
+
+    // Ids of the blocks sccp found can be reached, and the predecessors each such block can be
+    // reached from.
+    private BitSet executable;
+    private HashMap<NBasicBlock, HashSet<NBasicBlock>> reachedFrom;
+
+    // Edges (pairs of blocks) and instructions sccp has yet to visit.
+    private LinkedList<NBasicBlock[]> edgeWork;
+    private LinkedList<NHIRInstruction> instructionWork;
+
+    // The instructions using each HIR id, for sccp.
+    private HashMap<Integer, ArrayList<NHIRInstruction>> users;
+
+    /**
+     * Constructs an NHIROptimizer object.
+     */
+    public NHIROptimizer() {
+        counts = new int[PASSES.length];
+    }
+
+    /**
+     * Optimizes the HIR instructions in the given cfg, which must have its dominators computed.
+     * The cfg's loops are found again if blocks are removed.
+     *
+     * @param cfg the control flow graph.
+     */
+    public void optimize(NControlFlowGraph cfg) {
+        this.cfg = cfg;
+        canonicalize();
+        counts[0] += propagateConstants();
+        canonicalize();
+        counts[1] += propagateCopies();
+        canonicalize();
+        counts[2] += numberValues();
+        canonicalize();
+        counts[3] += eliminateDeadCode();
+        canonicalize();
+        this.cfg = null;
+    }
+
+    /**
+     * Returns a report of the number of instructions each pass removed or replaced, one pass per
+     * line.
+     *
+     * @return a report of the number of instructions each pass removed or replaced.
+     */
+    public String report() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < PASSES.length; i++) {
+            sb.append(String.format("  %-20s %d\n", PASSES[i], counts[i]));
+        }
+        return sb.toString();
+    }
+
+    // Sparse conditional constant propagation, after Wegman and Zadeck: starting with nothing
+    // known about any value and only the begin block reached, the values are worked out from the
+    // edges found to be taken, and the edges from the values of the conditional jumps. Returns
+    // the number of instructions replaced or removed.
+    private int propagateConstants() {
+        int size = cfg.hirMap.lastKey() + 1;
+        state = new int[size];
+        value = new int[size];
+        executable = new BitSet();
+        reachedFrom = new HashMap<NBasicBlock, HashSet<NBasicBlock>>();
+        edgeWork = new LinkedList<NBasicBlock[]>();
+        instructionWork = new LinkedList<NHIRInstruction>();
+        users = new HashMap<Integer, ArrayList<NHIRInstruction>>();
+
+        // Values not defined by an instruction in a block (uninitialized locals) are not
+        // constants.
+        for (int id : cfg.hirMap.keySet()) {
+            state[id] = VARYING;
+        }
+        boolean wellFormed = true;
+        for (NBasicBlock block : cfg.basicBlocks) {
+            reachedFrom.put(block, new HashSet<NBasicBlock>());
+            for (NHIRInstruction ins : instructions(block)) {
+                state[ins.id] = UNKNOWN;
+                for (int operand : ins.operands()) {
+                    int id = cfg.hirMap.get(operand).id;
+                    ArrayList<NHIRInstruction> list = users.get(id);
+                    if (list == null) {
+                        list = new ArrayList<NHIRInstruction>();
+                        users.put(id, list);
+                    }
+                    list.add(ins);
+                }
+                if (ins instanceof NHIRPhiFunction && ((NHIRPhiFunction) ins).getArguments()
+                        .size() != block.predecessors.size()) {
+                    wellFormed = false;
+                }
+            }
+        }
+
+        reach(cfg.basicBlocks.get(0));
+        while (!edgeWork.isEmpty() || !instructionWork.isEmpty()) {
+            if (!edgeWork.isEmpty()) {
+                NBasicBlock[] edge = edgeWork.remove();
+                NBasicBlock from = edge[0];
+                NBasicBlock to = edge[1];
+                if (!reachedFrom.get(to).add(from)) {
+                    continue;
+                }
+                if (!executable.get(to.id)) {
+                    reach(to);
+                } else {
+                    for (NHIRInstruction ins : instructions(to)) {
+                        if (ins instanceof NHIRPhiFunction) {
+                            evaluate(ins);
+                        }
+                    }
+                }
+            } else {
+                evaluate(instructionWork.remove());
+            }
+        }
+
+        // Replace the constant values with constants.
+        int count = 0;
+        for (NBasicBlock block : cfg.basicBlocks) {
+            for (NHIRInstruction ins : instructions(block)) {
+                if (state[ins.id] == CONSTANT && !(ins instanceof NHIRIntConstant)) {
+                    cfg.hirMap.put(ins.id, new NHIRIntConstant(block, ins.id, value[ins.id]));
+                    count++;
+                }
+            }
+        }
+
+        // The phi functions of a block merging more than two blocks may have fewer arguments
+        // than the block has predecessors, so edges can only be removed if there are none.
+        if (!wellFormed) {
+            return count;
+        }
+
+        // Remove the edges that are never taken, turning conditional jumps that lose one of
+        // their edges into gotos, and remove the blocks that cannot be reached.
+        boolean changed = false;
+        for (NBasicBlock block : cfg.basicBlocks) {
+            for (NBasicBlock successor : new ArrayList<NBasicBlock>(block.successors)) {
+                if (!reachedFrom.get(successor).contains(block)) {
+                    removeEdge(block, successor);
+                    changed = true;
+                }
+            }
+            int last = block.hir.isEmpty() ? -1 : block.hir.get(block.hir.size() - 1);
+            if (executable.get(block.id) && cfg.hirMap.get(last) instanceof NHIRConditionalJump) {
+                NHIRConditionalJump jump = (NHIRConditionalJump) cfg.hirMap.get(last);
+                NBasicBlock destination = null;
+                if (!block.successors.contains(jump.getOnTrueDestination())) {
+                    destination = jump.getOnFalseDestination();
+                } else if (!block.successors.contains(jump.getOnFalseDestination())) {
+                    destination = jump.getOnTrueDestination();
+                }
+                if (destination != null) {
+                    cfg.hirMap.put(last, new NHIRGoto(block, last, destination));
+                    count++;
+                }
+            }
+        }
+        for (NBasicBlock block : new ArrayList<NBasicBlock>(cfg.basicBlocks)) {
+            if (!executable.get(block.id)) {
+                for (int id : block.hir) {
+                    cfg.hirMap.remove(id);
+                    count++;
+                }
+                cfg.basicBlocks.remove(block);
+                changed = true;
+            }
+        }
+        if (changed) {
+            cfg.computeDominators();
+            cfg.detectLoops();
+        }
+        return count;
+    }
+
+    // Marks the given block as reached in sccp, and evaluates its instructions. Unless the block
+    // ends in a conditional jump, which decides which of its edges are taken, all of its edges
+    // are.
+    private void reach(NBasicBlock block) {
+        executable.set(block.id);
+        NHIRInstruction last = null;
+        for (NHIRInstruction ins : instructions(block)) {
+            evaluate(ins);
+            last = ins;
+        }
+        if (!(last instanceof NHIRConditionalJump)) {
+            for (NBasicBlock successor : block.successors) {
+                edgeWork.add(new NBasicBlock[] {block, successor});
+            }
+        }
+    }
+
+    // Works out the lattice value of the given instruction in sccp (or the edges taken, for a
+    // conditional jump), if its block has been reached, and queues the instructions using it if
+    // the value changed.
+    private void evaluate(NHIRInstruction ins) {
+        NBasicBlock block = ins.block;
+        if (!executable.get(block.id)) {
+            return;
+        }
+        if (ins instanceof NHIRConditionalJump) {
+            NHIRConditionalJump jump = (NHIRConditionalJump) ins;
+            int lhs = cfg.hirMap.get(jump.getLhs()).id;
+            int rhs = cfg.hirMap.get(jump.getRhs()).id;
+            NBasicBlock onTrue = jump.getOnTrueDestination();
+            NBasicBlock onFalse = jump.getOnFalseDestination();
+            if (state[lhs] == CONSTANT && state[rhs] == CONSTANT &&
+                    isComparison(jump.getOpcode())) {
+                boolean taken = compare(jump.getOpcode(), value[lhs], value[rhs]);
+                edgeWork.add(new NBasicBlock[] {block, taken ? onTrue : onFalse});
+            } else if (state[lhs] == VARYING || state[rhs] == VARYING ||
+                    !isComparison(jump.getOpcode())) {
+                edgeWork.add(new NBasicBlock[] {block, onTrue});
+                edgeWork.add(new NBasicBlock[] {block, onFalse});
+            }
+            return;
+        }
+
+        int newState = VARYING;
+        int newValue = 0;
+        if (ins instanceof NHIRIntConstant) {
+            newState = CONSTANT;
+            newValue = ((NHIRIntConstant) ins).getValue();
+        } else if (ins instanceof NHIRArithmetic) {
+            NHIRArithmetic arithmetic = (NHIRArithmetic) ins;
+            int lhs = cfg.hirMap.get(arithmetic.getLhs()).id;
+            int rhs = cfg.hirMap.get(arithmetic.getRhs()).id;
+            if (state[lhs] == VARYING || state[rhs] == VARYING ||
+                    !isArithmetic(arithmetic.getOpcode())) {
+                newState = VARYING;
+            } else if (state[lhs] == UNKNOWN || state[rhs] == UNKNOWN) {
+                newState = UNKNOWN;
+            } else {
+                newState = CONSTANT;
+                newValue = fold(arithmetic.getOpcode(), value[lhs], value[rhs]);
+            }
+        } else if (ins instanceof NHIRPhiFunction) {
+            ArrayList<Integer> arguments = ((NHIRPhiFunction) ins).getArguments();
+            if (arguments.size() == block.predecessors.size()) {
+                newState = UNKNOWN;
+                for (int i = 0; i < arguments.size() && newState != VARYING; i++) {
+                    int argument = cfg.hirMap.get(arguments.get(i)).id;
+                    if (!reachedFrom.get(block).contains(block.predecessors.get(i)) ||
+                            state[argument] == UNKNOWN) {
+                        continue;
+                    }
+                    if (state[argument] == VARYING ||
+                            newState == CONSTANT && newValue != value[argument]) {
+                        newState = VARYING;
+                    } else {
+                        newState = CONSTANT;
+                        newValue = value[argument];
+                    }
+                }
+            }
+        }
+
+        // Values only ever go down the lattice.
+        if (newState == CONSTANT && state[ins.id] == CONSTANT && newValue != value[ins.id]) {
+            newState = VARYING;
+        }
+        if (newState > state[ins.id]) {
+            state[ins.id] = newState;
+            value[ins.id] = newValue;
+            ArrayList<NHIRInstruction> list = users.get(ins.id);
+            if (list != null) {
+                instructionWork.addAll(list);
+            }
+        }
+    }
+
+    // Removes the edge from one block to another, along with the arguments of the phi functions
+    // in the latter for that edge.
+    private void removeEdge(NBasicBlock from, NBasicBlock to) {
+        int i = to.predecessors.indexOf(from);
+        to.predecessors.remove(i);
+        from.successors.remove(to);
+        for (NHIRInstruction ins : instructions(to)) {
+            if (ins instanceof NHIRPhiFunction) {
+                ((NHIRPhiFunction) ins).getArguments().remove(i);
+            }
+        }
+    }
+
+    // Replaces each phi function whose arguments, other than the phi function itself, are all
+    // the same value with that value, until there are no more such phi functions. Returns the
+    // number of phi functions replaced.
+    private int propagateCopies() {
+        int count = 0;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (NBasicBlock block : cfg.basicBlocks) {
+                for (NHIRInstruction ins : instructions(block)) {
+                    if (!(ins instanceof NHIRPhiFunction)) {
+                        continue;
+                    }
+                    NHIRInstruction copy = null;
+                    for (int argument : ((NHIRPhiFunction) ins).getArguments()) {
+                        NHIRInstruction arg = valueOf(argument);
+                        if (arg == ins) {
+                            continue;
+                        }
+                        if (arg == null || copy != null && arg != copy) {
+                            copy = null;
+                            break;
+                        }
+                        copy = arg;
+                    }
+                    if (copy != null) {
+                        cfg.hirMap.put(ins.id, copy);
+                        block.hir.remove((Integer) ins.id);
+                        count++;
+                        changed = true;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    // Global value numbering over the dominator tree: each block is visited after the blocks
+    // dominating it, with the instructions in those blocks available by the values they compute.
+    // Returns the number of instructions replaced.
+    private int numberValues() {
+        int count = 0;
+        HashMap<String, NHIRInstruction> available = new HashMap<String, NHIRInstruction>();
+        Stack<NBasicBlock> blocks = new Stack<NBasicBlock>();
+        Stack<Integer> next = new Stack<Integer>();
+        Stack<ArrayList<String>> added = new Stack<ArrayList<String>>();
+        blocks.push(cfg.basicBlocks.get(0));
+        next.push(-1);
+        while (!blocks.isEmpty()) {
+            NBasicBlock block = blocks.peek();
+            int i = next.pop();
+            if (i == -1) {
+                // Entering the block.
+                ArrayList<String> keys = new ArrayList<String>();
+                for (NHIRInstruction ins : instructions(block)) {
+                    String key = valueKey(ins);
+                    if (key == null) {
+                        continue;
+                    }
+                    NHIRInstruction leader = available.get(key);
+                    if (leader != null) {
+                        cfg.hirMap.put(ins.id, leader);
+                        block.hir.remove((Integer) ins.id);
+                        count++;
+                    } else {
+                        available.put(key, ins);
+                        keys.add(key);
+                    }
+                }
+                added.push(keys);
+                i = 0;
+            }
+            if (i < block.dominated.size()) {
+                next.push(i + 1);
+                blocks.push(block.dominated.get(i));
+                next.push(-1);
+            } else {
+                blocks.pop();
+                for (String key : added.pop()) {
+                    available.remove(key);
+                }
+            }
+        }
+        return count;
+    }
+
+    // Returns a key identifying the value the given instruction computes, from its operation and
+    // the values of its operands, or null if the instruction is not numbered.
+    private String valueKey(NHIRInstruction ins) {
+        if (ins instanceof NHIRIntConstant) {
+            return "I " + ((NHIRIntConstant) ins).getValue();
+        } else if (ins instanceof NHIRStringConstant) {
+            return "L " + ((NHIRStringConstant) ins).getValue();
+        } else if (ins instanceof NHIRArithmetic) {
+            NHIRArithmetic arithmetic = (NHIRArithmetic) ins;
+            NHIRInstruction lhs = valueOf(arithmetic.getLhs());
+            NHIRInstruction rhs = valueOf(arithmetic.getRhs());
+            if (lhs == null || rhs == null) {
+                return null;
+            }
+            int opcode = arithmetic.getOpcode();
+            int a = lhs.id;
+            int b = rhs.id;
+            if ((opcode == IADD || opcode == IMUL) && a > b) {
+                a = rhs.id;
+                b = lhs.id;
+            }
+            return opcode + " " + a + " " + b;
+        } else if (ins instanceof NHIRPhiFunction && !ins.sType.equals("")) {
+            String key = "phi " + ins.block.id;
+            for (int argument : ((NHIRPhiFunction) ins).getArguments()) {
+                NHIRInstruction arg = valueOf(argument);
+                if (arg == null) {
+                    return null;
+                }
+                key += " " + arg.id;
+            }
+            return key;
+        }
+        return null;
+    }
+
+    // Removes the instructions without side effects whose values are not used by an instruction
+    // with side effects, directly or through other instructions. Returns the number of
+    // instructions removed.
+    private int eliminateDeadCode() {
+        HashSet<NHIRInstruction> live = new HashSet<NHIRInstruction>();
+        Stack<NHIRInstruction> work = new Stack<NHIRInstruction>();
+        for (NBasicBlock block : cfg.basicBlocks) {
+            for (NHIRInstruction ins : instructions(block)) {
+                if (!isRemovable(ins) && live.add(ins)) {
+                    work.push(ins);
+                }
+            }
+        }
+        while (!work.isEmpty()) {
+            for (int operand : work.pop().operands()) {
+                NHIRInstruction ins = valueOf(operand);
+                if (ins != null && live.add(ins)) {
+                    work.push(ins);
+                }
+            }
+        }
+        int count = 0;
+        for (NBasicBlock block : cfg.basicBlocks) {
+            for (NHIRInstruction ins : instructions(block)) {
+                if (!live.contains(ins)) {
+                    block.hir.remove((Integer) ins.id);
+                    cfg.hirMap.remove(ins.id);
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    // Returns true if the given instruction has no side effects, and may be removed if its value
+    // is not used, and false otherwise.
+    private static boolean isRemovable(NHIRInstruction ins) {
+        return ins instanceof NHIRIntConstant || ins instanceof NHIRStringConstant ||
+                ins instanceof NHIRArithmetic || ins instanceof NHIRPhiFunction ||
+                ins instanceof NHIRGetField || ins instanceof NHIRALoad;
+    }
+
+    // Returns the instructions in the given block.
+    private ArrayList<NHIRInstruction> instructions(NBasicBlock block) {
+        ArrayList<NHIRInstruction> instructions = new ArrayList<NHIRInstruction>();
+        for (int id : block.hir) {
+            instructions.add(cfg.hirMap.get(id));
+        }
+        return instructions;
+    }
+
+    // Returns the instruction that computes the value with the given HIR id, following the ids
+    // of the instructions replaced, or null if the value has been removed.
+    private NHIRInstruction valueOf(int id) {
+        NHIRInstruction ins = cfg.hirMap.get(id);
+        while (ins != null && cfg.hirMap.get(ins.id) != ins) {
+            ins = cfg.hirMap.get(ins.id);
+        }
+        return ins;
+    }
+
+    // Maps each HIR id in the cfg directly to the instruction computing its value, and removes
+    // the ids of the values that have been removed.
+    private void canonicalize() {
+        for (int id : new ArrayList<Integer>(cfg.hirMap.keySet())) {
+            NHIRInstruction ins = valueOf(id);
+            if (ins == null) {
+                cfg.hirMap.remove(id);
+            } else {
+                cfg.hirMap.put(id, ins);
+            }
+        }
+    }
+
+    // Returns true if the given opcode is that of an arithmetic instruction sccp can fold, and
+    // false otherwise.
+    private static boolean isArithmetic(int opcode) {
+        return opcode == IADD || opcode == ISUB || opcode == IMUL;
+    }
+
+    // Returns the result of the given arithmetic operation on the given values.
+    private static int fold(int opcode, int lhs, int rhs) {
+        switch (opcode) {
+            case IADD:
+                return lhs + rhs;
+            case ISUB:
+                return lhs - rhs;
+            default:
+                return lhs * rhs;
+        }
+    }
+
+    // Returns true if the given opcode is that of a conditional jump sccp can decide, and false
+    // otherwise.
+    private static boolean isComparison(int opcode) {
+        return opcode == IF_ICMPNE || opcode == IF_ICMPGT || opcode == IF_ICMPLE;
+    }
+
+    // Returns true if the given comparison holds for the given values, and false otherwise.
+    private static boolean compare(int opcode, int lhs, int rhs) {
+        switch (opcode) {
+            case IF_ICMPNE:
+                return lhs != rhs;
+            case IF_ICMPGT:
+                return lhs > rhs;
+            default:
+                return lhs <= rhs;
+        }
+    }
+}
@@ -118,30 +118,25 @@ class NInterval implements Comparable<NInterval> {
     }
 
     /**
-     * Returns the very first position where an intersection with another interval occurs.
+     * Returns the very first position where an intersection with another interval occurs, or -1
+     * if the two intervals do not intersect. Both ends of a range are part of it.
      *
      * @param otherInterval the interval to compare against for intersection.
-     * @return the position where the intersection begins.
+     * @return the position where the intersection begins, or -1.
      */
     public int nextIntersection(NInterval otherInterval) {
-        int a = -1, b = -2;
+        int position = -1;
         for (NRange r : this.ranges) {
-            if (otherInterval.isLiveAt(r.start)) {
-                a = r.start;
-                break;
-            }
-        }
-        for (NRange r : otherInterval.ranges) {
-            if (this.isLiveAt(r.start)) {
-                b = r.start;
-                break;
+            for (NRange s : otherInterval.ranges) {
+                if (r.rangeOverlaps(s)) {
+                    int start = Math.max(r.start, s.start);
+                    if (position == -1 || start < position) {
+                        position = start;
+                    }
+                }
             }
         }
-        if (a >= 0 && b >= 0) {
-            return a <= b ? a : b;
-        } else {
-            return a > b ? a : b;
-        }
+        return position;
     }
 
     /**
@@ -210,6 +205,18 @@ class NInterval implements Comparable<NInterval> {
         return false;
     }
 
+    /**
+     * Returns true if one of the ranges of this interval (both ends included) contains the LIR
+     * instruction with the given id, and false otherwise.
+     *
+     * @param id the LIR instruction id.
+     * @return true if one of the ranges of this interval contains the given id, and false
+     * otherwise.
+     */
+    public boolean covers(int id) {
+        return liveRangeAt(id) != null;
+    }
+
     /**
      * Returns the range in this interval in which the LIR instruction with the given id is live,
      * or null.
@@ -315,35 +322,23 @@ class NInterval implements Comparable<NInterval> {
     }
 
     /**
-     * Splits the current interval at the given index. Responsible for splitting a range if the
-     * index falls on one, moving remaining ranges over to child, and moving appropriate
-     * usePositions over to the child.
+     * Splits the current interval at the given index. This interval keeps the positions before
+     * the index, and a new child interval gets the ones at or after it, along with their use
+     * positions; a range that contains the index is cut in two.
      *
      * @param idx the index at which this interval is to be split
-     * @return the child interval which is to be sorted onto unhandled. If there was no child
-     * created in the case of a pruning this interval is returned.
+     * @return the child interval which is to be sorted onto unhandled.
      */
     public NInterval splitAt(int idx) {
         ArrayList<NRange> childsRanges = new ArrayList<NRange>();
-        if (this.isLiveAt(idx)) { // means split falls on a range
-            // Assumptions: if a range is LIVE on an index, then there exist usePositions at or
-            // before the index within this same range.
-            NRange liveRange = this.liveRangeAt(idx);
-            int splitTo = idx;
-            splitTo = usePositions.ceilingKey(idx);
-            childsRanges.add((liveRange.splitRange(splitTo, idx - 5)));
-        }
-
-        // The following two for loops take care of any untouched ranges which start after the
-        // split position and must be moved to the child interval.
         for (NRange r : ranges) {
-            if (r.start > idx) {
+            if (r.start >= idx) {
                 childsRanges.add(r);
+            } else if (r.stop >= idx) {
+                childsRanges.add(r.splitRange(idx, idx - 5));
             }
         }
-        for (NRange r : childsRanges) {
-            ranges.remove(r);
-        }
+        ranges.removeAll(childsRanges);
 
         NInterval child = new NInterval(cfg.maxIntervals++, cfg, childsRanges, getParent());
         cfg.registers.add(null); // expand size of cfg.registers to avoid NPE when printing
@@ -375,7 +370,7 @@ class NInterval implements Comparable<NInterval> {
      */
     public NInterval childAt(int idx) {
         for (NInterval child : children) {
-            if (child.isLiveAt(idx)) {
+            if (child.covers(idx)) {
                 return child;
             }
         }
@@ -392,7 +387,7 @@ class NInterval implements Comparable<NInterval> {
     public NInterval childAtOrEndingBefore(NBasicBlock b) {
         int idx = b.getLastLIRInstId();
         for (NInterval child : children) {
-            if (child.isLiveAt(idx)) {
+            if (child.covers(idx)) {
                 return child;
             }
         }
@@ -419,7 +414,7 @@ class NInterval implements Comparable<NInterval> {
     public NInterval childAtOrStartingAfter(NBasicBlock b) {
         int idx = b.getFirstLIRInstId();
         for (NInterval child : children) {
-            if (child.isLiveAt(idx)) {
+            if (child.covers(idx)) {
                 return child;
             }
         }
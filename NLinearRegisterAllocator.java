@@ -2,10 +2,37 @@
 
 package jminusminus;
 
+import java.util.ArrayList;
+import java.util.PriorityQueue;
+
+import static jminusminus.NPhysicalRegister.*;
+
 /**
- * Implements register allocation using linear scan algorithm.
+ * Implements the linear scan register allocation method of Wimmer and Mossenbock. Intervals are
+ * visited in the order of their start positions, keeping track of the active intervals (those
+ * holding a register at the current position) and the inactive ones (those holding a register,
+ * but in a lifetime hole at the current position). An interval gets a register that is free for
+ * its whole lifetime if there is one; otherwise it, or the interval whose register it takes, is
+ * split, and the parts that cannot stay in a register live in a stack slot until their next use.
+ *
+ * Every definition of a virtual register with a stack slot is stored to that slot, so a part
+ * that goes back into a register is simply loaded from the slot, both within a basic block and
+ * on the edges where a register is kept in different places at the end of a predecessor and at
+ * the start of a successor.
  */
 public class NLinearRegisterAllocator extends NRegisterAllocator {
+    // Intervals waiting for a register, in the order of their start positions.
+    private PriorityQueue<NInterval> unhandled;
+
+    // Intervals holding a register at the current position.
+    private ArrayList<NInterval> active;
+
+    // Intervals holding a register, but in a lifetime hole at the current position.
+    private ArrayList<NInterval> inactive;
+
+    // Number of registers available for allocation, starting at t0.
+    private int registerCount;
+
     /**
      * Constructs an NLinearRegisterAllocator object.
      *
@@ -20,5 +47,182 @@ public class NLinearRegisterAllocator extends NRegisterAllocator {
      */
     public void allocation() {
         buildIntervals();
+        preprocess();
+        registerCount = Math.max(MIN_COUNT, MAX_COUNT);
+        unhandled = new PriorityQueue<NInterval>();
+        active = new ArrayList<NInterval>();
+        inactive = new ArrayList<NInterval>();
+        for (int i = 32; i < cfg.intervals.size(); i++) {
+            NInterval interval = cfg.intervals.get(i);
+            if (interval.ranges.isEmpty()) {
+                continue;
+            }
+            if (interval.spill) {
+                // A formal parameter fourth or above stays in the caller's frame until its first
+                // use, which is where it needs a register.
+                Integer use = interval.usePositions.higherKey(interval.firstNRangeStart());
+                if (use != null) {
+                    unhandled.add(interval.splitAt(use));
+                }
+            } else {
+                unhandled.add(interval);
+            }
+        }
+
+        while (!unhandled.isEmpty()) {
+            NInterval current = unhandled.poll();
+            int position = current.firstNRangeStart();
+
+            // Retire the intervals that ended before the current position, and move the others
+            // between the active and inactive lists as needed.
+            for (NInterval interval : new ArrayList<NInterval>(active)) {
+                if (interval.lastNRangeStop() < position) {
+                    active.remove(interval);
+                } else if (!interval.covers(position)) {
+                    active.remove(interval);
+                    inactive.add(interval);
+                }
+            }
+            for (NInterval interval : new ArrayList<NInterval>(inactive)) {
+                if (interval.lastNRangeStop() < position) {
+                    inactive.remove(interval);
+                } else if (interval.covers(position)) {
+                    inactive.remove(interval);
+                    active.add(interval);
+                }
+            }
+
+            if (!tryAllocateFreeRegister(current, position)) {
+                allocateBlockedRegister(current, position);
+            }
+            if (current.pRegister != null) {
+                active.add(current);
+                if (!cfg.pRegisters.contains(current.pRegister)) {
+                    cfg.pRegisters.add(current.pRegister);
+                }
+            }
+        }
+
+        // Hand the stack slots of spilled virtual registers down to the parts split off last.
+        for (int i = 32; i < cfg.intervals.size(); i++) {
+            NInterval interval = cfg.intervals.get(i);
+            if (interval.spill) {
+                interval.spill();
+            }
+        }
+
+        insertSpillCode();
+    }
+
+    // Assigns current a register that is free at the given position, splitting current if the
+    // register is taken again before current ends. Returns false if there is no such register.
+    private boolean tryAllocateFreeRegister(NInterval current, int position) {
+        int[] freeUntil = new int[registerCount];
+        for (int r = 0; r < registerCount; r++) {
+            freeUntil[r] = Integer.MAX_VALUE;
+        }
+        for (NInterval interval : active) {
+            freeUntil[indexOf(interval.pRegister)] = -1;
+        }
+        for (NInterval interval : inactive) {
+            int intersection = interval.nextIntersection(current);
+            int r = indexOf(interval.pRegister);
+            if (intersection >= 0 && intersection < freeUntil[r]) {
+                freeUntil[r] = intersection;
+            }
+        }
+        int reg = 0;
+        for (int r = 1; r < registerCount; r++) {
+            if (freeUntil[r] > freeUntil[reg]) {
+                reg = r;
+            }
+        }
+        if (freeUntil[reg] <= position) {
+            return false;
+        }
+        current.pRegister = regInfo[T0 + reg];
+        if (freeUntil[reg] <= current.lastNRangeStop()) {
+            spillFrom(current, freeUntil[reg]);
+        }
+        return true;
+    }
+
+    // Assigns current the register whose next use is farthest away, spilling the intervals
+    // holding that register; if all registers are used before current is, current itself is
+    // spilled until its first use.
+    private void allocateBlockedRegister(NInterval current, int position) {
+        int[] nextUse = new int[registerCount];
+        for (int r = 0; r < registerCount; r++) {
+            nextUse[r] = Integer.MAX_VALUE;
+        }
+        for (NInterval interval : active) {
+            int r = indexOf(interval.pRegister);
+            nextUse[r] = Math.min(nextUse[r], nextUse(interval, position));
+        }
+        for (NInterval interval : inactive) {
+            if (interval.nextIntersection(current) >= 0) {
+                int r = indexOf(interval.pRegister);
+                nextUse[r] = Math.min(nextUse[r], nextUse(interval, position));
+            }
+        }
+        int reg = 0;
+        for (int r = 1; r < registerCount; r++) {
+            if (nextUse[r] > nextUse[reg]) {
+                reg = r;
+            }
+        }
+
+        if (nextUse(current, position) > nextUse[reg]) {
+            spillFrom(current, position);
+            return;
+        }
+        current.pRegister = regInfo[T0 + reg];
+        for (NInterval interval : new ArrayList<NInterval>(active)) {
+            if (interval.pRegister == current.pRegister) {
+                spillFrom(interval, position);
+            }
+        }
+        for (NInterval interval : new ArrayList<NInterval>(inactive)) {
+            int intersection = interval.nextIntersection(current);
+            if (interval.pRegister == current.pRegister && intersection >= 0) {
+                spillFrom(interval, intersection);
+            }
+        }
+    }
+
+    // Moves the part of the given interval from the given position on into the stack slot of
+    // its virtual register, up to the next use, from where on it waits for a register again.
+    private void spillFrom(NInterval interval, int position) {
+        NInterval parent = interval.isChild() ? interval.parent : interval;
+        if (parent.offset == -1) {
+            spillCount++;
+        }
+        parent.spill();
+        NInterval spilled = interval;
+        if (interval.firstNRangeStart() < position) {
+            spilled = interval.splitAt(position);
+        } else {
+            interval.pRegister = null;
+            active.remove(interval);
+            inactive.remove(interval);
+        }
+        Integer use = spilled.usePositions.ceilingKey(position);
+        if (use != null && use == spilled.firstNRangeStart()) {
+            unhandled.add(spilled);
+        } else if (use != null) {
+            unhandled.add(spilled.splitAt(use));
+        }
+    }
+
+    // Returns the first use of the given interval at or after the given position, or
+    // Integer.MAX_VALUE if there is none.
+    private static int nextUse(NInterval interval, int position) {
+        Integer use = interval.usePositions.ceilingKey(position);
+        return use == null ? Integer.MAX_VALUE : use;
+    }
+
+    // Returns the index of the given register among those available for allocation.
+    private static int indexOf(NPhysicalRegister pRegister) {
+        return pRegister.number() - T0;
     }
 }
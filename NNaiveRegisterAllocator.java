@@ -50,12 +50,14 @@ public class NNaiveRegisterAllocator extends NRegisterAllocator {
                     if (spilled.offset == -1) {
                         spilled.offset = cfg.offset++;
                         spilled.offsetFrom = OffsetFrom.SP;
+                        spillCount++;
                     }
                     interval.pRegister = spilled.pRegister;
                     interval.spill = true;
                     if (interval.offset == -1) {
                         interval.offset = cfg.offset++;
                         interval.offsetFrom = OffsetFrom.SP;
+                        spillCount++;
                     }
                 } else {
                     // Allocate free register to interval.
@@ -94,6 +96,7 @@ public class NNaiveRegisterAllocator extends NRegisterAllocator {
                         NLIRLoad load = new NLIRLoad(block, id - lir.reads.size() + j, input.offset,
                                 input.offsetFrom, input.pRegister);
                         newLir.add(newLir.indexOf(lir), load);
+                        loadCount++;
                     }
                 }
 
@@ -104,6 +107,7 @@ public class NNaiveRegisterAllocator extends NRegisterAllocator {
                         NLIRStore store = new NLIRStore(block, id + 1, output.offset,
                                 output.offsetFrom, lir.write);
                         newLir.add(newLir.indexOf(lir) + 1, store);
+                        storeCount++;
                     }
                 }
             }
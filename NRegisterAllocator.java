@@ -4,6 +4,7 @@ package jminusminus;
 
 import java.util.ArrayList;
 import java.util.BitSet;
+import java.util.HashMap;
 
 import static jminusminus.NPhysicalRegister.*;
 
@@ -12,11 +13,39 @@ import static jminusminus.NPhysicalRegister.*;
  * physical registers on the target (MIPS) machine.
  */
 public abstract class NRegisterAllocator {
+    /**
+     * Fewest registers the linear scan and graph coloring allocators can work with: an
+     * instruction reads up to three registers, or reads two and writes a third, and the three must
+     * be distinct.
+     */
+    protected static final int MIN_COUNT = 3;
+
     /**
      * The control flow graph for a method.
      */
     protected NControlFlowGraph cfg;
 
+    /**
+     * Number of virtual registers given a stack slot by the allocator.
+     */
+    protected int spillCount;
+
+    /**
+     * Number of stores to stack slots inserted by the allocator.
+     */
+    protected int storeCount;
+
+    /**
+     * Number of loads from stack slots inserted by the allocator within basic blocks.
+     */
+    protected int loadCount;
+
+    /**
+     * Number of instructions inserted by the allocator at basic block edges to move values to
+     * the location the successor expects them in.
+     */
+    protected int moveCount;
+
     /**
      * Constructs an NRegisterAllocator object.
      *
@@ -52,12 +81,22 @@ public abstract class NRegisterAllocator {
                 int currLIRid = currBlock.lir.get(j).id;
                 NRegister output = currBlock.lir.get(j).write;
                 if (output != null) {
-                    cfg.intervals.get(output.number).newFirstRangeStart(currLIRid);
-                    cfg.intervals.get(output.number).addUsePosition(currLIRid,
-                            InstructionType.write);
+                    NInterval interval = cfg.intervals.get(output.number);
+                    if (interval.covers(currLIRid)) {
+                        interval.newFirstRangeStart(currLIRid);
+                    } else {
+                        // The value is never used, but it still occupies a register when written.
+                        interval.addOrExtendNRange(new NRange(currLIRid, currLIRid));
+                    }
+                    interval.addUsePosition(currLIRid, InstructionType.write);
                 }
                 ArrayList<NRegister> inputs = currBlock.lir.get(j).reads;
                 for (NRegister reg : inputs) {
+                    if (currBlock.lir.get(j) instanceof NLIRInvoke && reg.number >= 32) {
+                        // Arguments past the fourth are stored on the stack ahead of the call,
+                        // so the call itself doesn't need them in registers.
+                        continue;
+                    }
                     cfg.intervals.get(reg.number).addOrExtendNRange(new NRange(blockStart,
                             currLIRid));
                     cfg.intervals.get(reg.number).addUsePosition(currLIRid, InstructionType.read);
@@ -96,6 +135,24 @@ public abstract class NRegisterAllocator {
         }
     }
 
+    /**
+     * Inserts the loads and stores that go with intervals that have been split and given stack
+     * slots: a store after every definition of a virtual register with a stack slot, a load in
+     * front of every use that starts a part of an interval going back into a register within a
+     * basic block, and a load on every control flow edge where the successor expects a virtual
+     * register in a register other than the one it's in at the end of the predecessor.
+     */
+    protected void insertSpillCode() {
+        // The instructions are added to the blocks once they have all been worked out, since
+        // adding them changes where the blocks start and end.
+        ArrayList<NLIRInstruction> spillCode = new ArrayList<NLIRInstruction>();
+        addLoadsAndStores(spillCode);
+        resolveDataFlow(spillCode);
+        for (NLIRInstruction lir : spillCode) {
+            lir.block.insertLIRInst(lir);
+        }
+    }
+
     /**
      * The work horse that does the allocation, implemented in the sub-classes of this class.
      */
@@ -159,6 +216,98 @@ public abstract class NRegisterAllocator {
         p.indentLeft();
     }
 
+    /**
+     * Prints the number of spilled virtual registers, and of the stores, loads and moves the
+     * allocator inserted, to standard output.
+     *
+     * @param p for pretty printing with indentation.
+     */
+    public void writeStatisticsToStdOut(PrettyPrinter p) {
+        p.indentRight();
+        p.printf("[[ ALLOCATION STATISTICS ]]\n\n");
+        p.printf("spills: %d\n", spillCount);
+        p.printf("stores: %d\n", storeCount);
+        p.printf("loads: %d\n", loadCount);
+        p.printf("moves: %d\n", moveCount);
+        p.indentLeft();
+        p.println();
+    }
+
+    // Adds a store after every definition of a virtual register that has a stack slot, and a
+    // load in front of every use that starts a part of an interval going back into a register
+    // within a block, to the given spill code.
+    private void addLoadsAndStores(ArrayList<NLIRInstruction> spillCode) {
+        for (NBasicBlock block : cfg.basicBlocks) {
+            for (NLIRInstruction lir : block.lir) {
+                int id = lir.id;
+                ArrayList<NInterval> loaded = new ArrayList<NInterval>();
+                for (NRegister reg : lir.reads) {
+                    if (reg.number() < 32) {
+                        continue;
+                    }
+                    NInterval parent = cfg.intervals.get(reg.number());
+                    NInterval input = parent.childAt(id);
+                    if (input.isChild() && input.firstNRangeStart() == id
+                            && id != block.getFirstLIRInstId() && !loaded.contains(input)) {
+                        spillCode.add(new NLIRLoad(block, id - 1, parent.offset,
+                                parent.offsetFrom, input.pRegister));
+                        loaded.add(input);
+                        loadCount++;
+                    }
+                }
+                if (lir.write != null && lir.write.number() >= 32) {
+                    NInterval parent = cfg.intervals.get(lir.write.number());
+                    if (parent.spill && parent.offsetFrom == OffsetFrom.SP) {
+                        spillCode.add(new NLIRStore(block, id + 1, parent.offset,
+                                parent.offsetFrom, parent.childAt(id).pRegister));
+                        storeCount++;
+                    }
+                }
+            }
+        }
+    }
+
+    // Adds a load of a virtual register on a control flow edge to the given spill code when the
+    // successor expects it in a register other than the one it's in at the end of the
+    // predecessor. Where the predecessor has a single successor the load goes at its end, and
+    // otherwise at the start of the successor, which is safe on all of its incoming edges since
+    // the stack slot is up to date.
+    private void resolveDataFlow(ArrayList<NLIRInstruction> spillCode) {
+        for (NBasicBlock succ : cfg.basicBlocks) {
+            if (succ.lir.isEmpty()) {
+                continue;
+            }
+            BitSet loadedAtStart = new BitSet();
+            for (NBasicBlock pred : succ.predecessors) {
+                if (pred.lir.isEmpty()) {
+                    continue;
+                }
+                NLIRInstruction last = pred.lir.get(pred.lir.size() - 1);
+                BitSet liveIn = succ.liveIn;
+                for (int i = liveIn.nextSetBit(32); i >= 0; i = liveIn.nextSetBit(i + 1)) {
+                    NInterval parent = cfg.intervals.get(i);
+                    NInterval from = parent.childAt(last.id);
+                    NInterval to = parent.childAt(succ.getFirstLIRInstId());
+                    if (to.pRegister == null || to.pRegister == from.pRegister) {
+                        continue;
+                    }
+                    if (pred.successors.size() == 1 && !(last instanceof NLIRConditionalJump)) {
+                        int id = last instanceof NLIRGoto ? last.id - 1 : last.id + 2;
+                        spillCode.add(new NLIRLoad(pred, id, parent.offset, parent.offsetFrom,
+                                to.pRegister));
+                    } else if (!loadedAtStart.get(i)) {
+                        spillCode.add(new NLIRLoad(succ, succ.getFirstLIRInstId() - 1,
+                                parent.offset, parent.offsetFrom, to.pRegister));
+                        loadedAtStart.set(i);
+                    } else {
+                        continue;
+                    }
+                    moveCount++;
+                }
+            }
+        }
+    }
+
     // Iterates through a list of basic blocks in order, and sets their liveUse and liveDef
     // fields to the appropriate virtual registers.
     private void computeLocalLiveSets() {
@@ -178,29 +327,40 @@ public abstract class NRegisterAllocator {
         }
     }
 
-    // Iterates through a list of basic blocks in reverse order, and sets their lliveIn and
-    // liveOut fields to reflect global use-def information.
+    // Sets the liveIn and liveOut fields of the basic blocks to reflect global use-def
+    // information. The blocks are worked through from a worklist, in postorder so that a block is
+    // mostly seen after its successors, and only the predecessors of a block whose liveIn
+    // changed are visited again.
     private void computeGlobalLiveSets() {
-        boolean changed = false;
-        for (NBasicBlock b : cfg.basicBlocks) {
-            b.liveOut = new BitSet(cfg.registers.size());
+        ArrayList<NBasicBlock> order = cfg.postorder();
+        HashMap<NBasicBlock, Integer> index = new HashMap<NBasicBlock, Integer>();
+        for (int i = 0; i < order.size(); i++) {
+            NBasicBlock block = order.get(i);
+            index.put(block, i);
+            block.liveOut.clear();
+            block.liveIn.clear();
+            block.liveIn.or(block.liveUse);
         }
-        do {
-            changed = false;
-            for (int i = cfg.basicBlocks.size() - 1; i >= 0; i--) {
-                NBasicBlock currBlock = cfg.basicBlocks.get(i);
-                BitSet newLiveOut = new BitSet(cfg.registers.size());
-                for (NBasicBlock successor : currBlock.successors) {
-                    newLiveOut.or(successor.liveIn);
-                }
-                if (!currBlock.liveOut.equals(newLiveOut)) {
-                    currBlock.liveOut = newLiveOut;
-                    changed = true;
+        BitSet worklist = new BitSet(order.size());
+        worklist.set(0, order.size());
+        BitSet newLiveIn = new BitSet(cfg.registers.size());
+        for (int i = worklist.nextSetBit(0); i >= 0; i = worklist.nextSetBit(0)) {
+            worklist.clear(i);
+            NBasicBlock block = order.get(i);
+            for (NBasicBlock successor : block.successors) {
+                block.liveOut.or(successor.liveIn);
+            }
+            newLiveIn.clear();
+            newLiveIn.or(block.liveOut);
+            newLiveIn.andNot(block.liveDef);
+            newLiveIn.or(block.liveUse);
+            if (!newLiveIn.equals(block.liveIn)) {
+                block.liveIn.clear();
+                block.liveIn.or(newLiveIn);
+                for (NBasicBlock predecessor : block.predecessors) {
+                    worklist.set(index.get(predecessor));
                 }
-                currBlock.liveIn = (BitSet) currBlock.liveOut.clone();
-                currBlock.liveIn.andNot(currBlock.liveDef);
-                currBlock.liveIn.or(currBlock.liveUse);
             }
-        } while (changed);
+        }
     }
 }
@@ -3,6 +3,8 @@
 package jminusminus;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 
 import static jminusminus.TokenKind.*;
 
@@ -21,6 +23,51 @@ public class Parser {
     // Whether we have recovered from a parser error.
     private boolean isRecovered;
 
+    // Memoized results of the lookahead predicates, keyed by lookaheadKey().
+    private HashMap<Long, Boolean> lookaheads;
+
+    // Highest token position for which a lookahead result is memoized.
+    private int lookaheadLimit;
+
+    // Number of lookahead predicate evaluations answered from (hits) and not from (misses) the
+    // memoized results.
+    private int lookaheadHits, lookaheadMisses;
+
+    // Whether have() was asked to match at EOF (which it reports as an error) during the lookahead
+    // being evaluated; such results are not memoized, so that the error is reported every time.
+    private boolean lookaheadSawEOF;
+
+    // The binary operators, one row per precedence level from the lowest to the highest. Within
+    // a row, operators are in the order in which the parser seeks them.
+    private static final TokenKind[][] BINARY_OPERATORS = {
+        { LOR },
+        { LAND },
+        { BITOR },
+        { BITXOR },
+        { BITAND },
+        { EQUAL, NOT_EQUAL },
+        { GE, GT, LE, LT, INSTANCEOF },
+        { SHIFT_LEFT, SHIFT_RIGHT, LOGICAL_RIGHT },
+        { MINUS, PLUS },
+        { STAR, DIV, REM }
+    };
+
+    // The level of the relational operators in BINARY_OPERATORS.
+    private static final int RELATIONAL = 6;
+
+    // Maps a token kind's ordinal to its level in BINARY_OPERATORS, or to -1 if the token is not a
+    // binary operator.
+    private static final int[] PRECEDENCE = new int[TokenKind.values().length];
+
+    static {
+        Arrays.fill(PRECEDENCE, -1);
+        for (int level = 0; level < BINARY_OPERATORS.length; level++) {
+            for (TokenKind kind : BINARY_OPERATORS[level]) {
+                PRECEDENCE[kind.ordinal()] = level;
+            }
+        }
+    }
+
     /**
      * Constructs a parser from the given lexical analyzer.
      *
@@ -30,6 +77,8 @@ public class Parser {
         this.scanner = scanner;
         isInError = false;
         isRecovered = true;
+        lookaheads = new HashMap<Long, Boolean>();
+        lookaheadLimit = -1;
 
         // Prime the pump.
         scanner.next();
@@ -44,6 +93,25 @@ public class Parser {
         return isInError;
     }
 
+    /**
+     * Returns the number of lookahead predicate evaluations that were answered from memoized
+     * results.
+     *
+     * @return the number of memoized lookahead hits.
+     */
+    public int lookaheadHits() {
+        return lookaheadHits;
+    }
+
+    /**
+     * Returns the number of lookahead predicate evaluations that had to scan the input.
+     *
+     * @return the number of memoized lookahead misses.
+     */
+    public int lookaheadMisses() {
+        return lookaheadMisses;
+    }
+
     /**
      * Parses a compilation unit (a program file) and returns an AST for it.
      *
@@ -57,7 +125,7 @@ public class Parser {
      * @return an AST for a compilation unit.
      */
     public JCompilationUnit compilationUnit() {
-        int line = scanner.token().line();
+        int line = scanner.line();
         String fileName = scanner.fileName();
         TypeName packageName = null;
         if (have(PACKAGE)) {
@@ -90,12 +158,12 @@ public class Parser {
      * @return a qualified identifier.
      */
     private TypeName qualifiedIdentifier() {
-        int line = scanner.token().line();
+        int line = scanner.line();
         mustBe(IDENTIFIER);
-        String qualifiedIdentifier = scanner.previousToken().image();
+        String qualifiedIdentifier = scanner.previousImage();
         while (have(DOT)) {
             mustBe(IDENTIFIER);
-            qualifiedIdentifier += "." + scanner.previousToken().image();
+            qualifiedIdentifier += "." + scanner.previousImage();
         }
         return new TypeName(line, qualifiedIdentifier);
     }
@@ -202,10 +270,10 @@ public class Parser {
      * @return an AST for a class declaration.
      */
     private JClassDeclaration classDeclaration(ArrayList<String> mods) {
-        int line = scanner.token().line();
+        int line = scanner.line();
         mustBe(CLASS);
         mustBe(IDENTIFIER);
-        String name = scanner.previousToken().image();
+        String name = scanner.previousImage();
         Type superClass ;
         ArrayList<TypeName> superInterfaces = null;
         if (have(EXTENDS)) {
@@ -237,10 +305,10 @@ public class Parser {
      * @return an AST for an interface declaration.
      */
     private JInterfaceDeclaration interfaceDeclaration(ArrayList <String> mods){
-        int line = scanner.token().line();
+        int line = scanner.line();
         mustBe(INTERFACE);
         mustBe(IDENTIFIER);
-        String name = scanner.previousToken().image();
+        String name = scanner.previousImage();
 
         if(have(EXTENDS)){
             ArrayList<TypeName> superInterfaces = new ArrayList();
@@ -305,11 +373,11 @@ public class Parser {
      * @return an AST for a member declaration.
      */
     private JMember memberDecl(ArrayList<String> mods) {
-        int line = scanner.token().line();
+        int line = scanner.line();
         JMember memberDecl = null;
         if (seeIdentLParen()) {
             mustBe(IDENTIFIER);
-            String name = scanner.previousToken().image();
+            String name = scanner.previousImage();
             ArrayList<JFormalParameter> params = formalParameters();
             ArrayList<TypeName> exceptions = new ArrayList<>();
             if(have(THROWS)){
@@ -330,7 +398,7 @@ public class Parser {
                 // A void method.
                 type = Type.VOID;
                 mustBe(IDENTIFIER);
-                String name = scanner.previousToken().image();
+                String name = scanner.previousImage();
                 ArrayList<JFormalParameter> params = formalParameters();
                 if(have(THROWS)){
                     ArrayList<TypeName> exceptions = new ArrayList<>();
@@ -350,7 +418,7 @@ public class Parser {
                 if (seeIdentLParen()) {
                     // A non void method.
                     mustBe(IDENTIFIER);
-                    String name = scanner.previousToken().image();
+                    String name = scanner.previousImage();
                     ArrayList<JFormalParameter> params = formalParameters();
                     if(have(THROWS)){
                         ArrayList<TypeName> exceptions = new ArrayList<>();
@@ -387,7 +455,7 @@ public class Parser {
      * @return an AST for an interface member declaration.
      */
     private JMember interfaceMemberDecl(ArrayList<String> mods){ //similar to memberDecl
-        int line = scanner.token().line();
+        int line = scanner.line();
         Type type;
         JMember memberDecl = null;
         if (have(VOID)) {
@@ -399,7 +467,7 @@ public class Parser {
             // A void method.
             type = Type.VOID;
             mustBe(IDENTIFIER);
-            String name = scanner.previousToken().image();
+            String name = scanner.previousImage();
             ArrayList<JFormalParameter> params = formalParameters();
             if(have(THROWS)){
                 ArrayList<TypeName> exceptions = new ArrayList<>();
@@ -420,7 +488,7 @@ public class Parser {
                 mods.add(ABSTRACT.image());
                 // A non void method.
                 mustBe(IDENTIFIER);
-                String name = scanner.previousToken().image();
+                String name = scanner.previousImage();
                 ArrayList<JFormalParameter> params = formalParameters();
                 if(have(THROWS)){
                     ArrayList<TypeName> exceptions = new ArrayList<>();
@@ -455,7 +523,7 @@ public class Parser {
      * @return an AST for a block.
      */
     private JBlock block() {
-        int line = scanner.token().line();
+        int line = scanner.line();
         ArrayList<JStatement> statements = new ArrayList<JStatement>();
         mustBe(LCURLY);
         while (!see(RCURLY) && !see(EOF)) {
@@ -505,7 +573,7 @@ public class Parser {
      * @return an AST for a statement.
      */
     private JStatement statement() {
-        int line = scanner.token().line();
+        int line = scanner.line();
         if (see(LCURLY)) {
             return block();
         }
@@ -545,10 +613,31 @@ public class Parser {
             return new JForStatement(line, init, condition, update, body);
         }
         else if (have(IF)) { //if (condition) {} else{}
-            JExpression test = parExpression();
-            JStatement consequent = statement();
-            JStatement alternate = have(ELSE) ? statement() : null;
-            return new JIfStatement(line, test, consequent, alternate);
+            // An else-if chain is parsed with a loop rather than by recursion, so that a long
+            // chain cannot overflow the Java stack.
+            ArrayList<Integer> lines = new ArrayList<Integer>();
+            ArrayList<JExpression> tests = new ArrayList<JExpression>();
+            ArrayList<JStatement> consequents = new ArrayList<JStatement>();
+            JStatement alternate = null;
+            int ifLine = line;
+            while (true) {
+                lines.add(ifLine);
+                tests.add(parExpression());
+                consequents.add(statement());
+                if (!have(ELSE)) {
+                    break;
+                }
+                ifLine = scanner.line();
+                if (!have(IF)) {
+                    alternate = statement();
+                    break;
+                }
+            }
+            for (int i = tests.size() - 1; i >= 0; i--) {
+                alternate = new JIfStatement(lines.get(i), tests.get(i), consequents.get(i),
+                        alternate);
+            }
+            return alternate;
         }
         else if (have(RETURN)) {
             if (have(SEMI)) {
@@ -646,10 +735,10 @@ public class Parser {
      * @return an AST for a formal parameter.
      */
     private JFormalParameter formalParameter() {
-        int line = scanner.token().line();
+        int line = scanner.line();
         Type type = type();
         mustBe(IDENTIFIER);
-        String name = scanner.previousToken().image();
+        String name = scanner.previousImage();
         return new JFormalParameter(line, name, type);
     }
 
@@ -683,7 +772,7 @@ public class Parser {
        ArrayList <JStatement> list = new ArrayList<JStatement>();
        if(seeLocalVariableDeclaration()){
            // the following code is from localVariableDeclarationStatement
-           int line = scanner.token().line();
+           int line = scanner.line();
            Type type = type();
            ArrayList<JVariableDeclarator> vDecls = variableDeclarators(type);
            //mustBe(SEMI);
@@ -740,11 +829,11 @@ public class Parser {
     private SwitchStatementGroup switchBlockStatementGroup(){ //case : expression
         ArrayList<JExpression> switchLabels  = new ArrayList<>(); //from SwitchStatementGroup constructor
         ArrayList<JStatement> block = new ArrayList<>();
-        //System.err.println("Beginning OF LOOP- token is "+ scanner.token().image());
+        //System.err.println("Beginning OF LOOP- token is "+ scanner.image());
         //switchLabels.add(switchLabel());
         do{
             if(see(CASE) || see(DEFAULT)){
-                //System.err.println( "do while loop : "+scanner.token().image());
+                //System.err.println( "do while loop : "+scanner.image());
                 switchLabels.add(switchLabel());
             }
             else {
@@ -752,7 +841,7 @@ public class Parser {
             }
         }while(true);
         while(!see(CASE) && !see(DEFAULT) && !see(RCURLY)){
-            //System.err.println("switchblock while: " + scanner.token().image());
+            //System.err.println("switchblock while: " + scanner.image());
             JStatement blockStatement = blockStatement();
             block.add(blockStatement);
         }
@@ -770,10 +859,10 @@ public class Parser {
      * @return an AST for a switch label .
      */
     private JExpression switchLabel() { //case exp :
-        //System.out.println("token: " + " " +scanner.token().image());
-        //System.err.println("switchLabel token: " + scanner.token().image());
+        //System.out.println("token: " + " " +scanner.image());
+        //System.err.println("switchLabel token: " + scanner.image());
         if (have(CASE)) {
-            //System.err.println("switchLabel case: " + scanner.token().image());
+            //System.err.println("switchLabel case: " + scanner.image());
             JExpression expr = expression();
             mustBe(COLON);
             return expr;
@@ -792,7 +881,7 @@ public class Parser {
      * @return an AST for a local variable declaration statement.
      */
     private JVariableDeclaration localVariableDeclarationStatement() {
-        int line = scanner.token().line();
+        int line = scanner.line();
         Type type = type();
         ArrayList<JVariableDeclarator> vdecls = variableDeclarators(type);
         mustBe(SEMI);
@@ -828,9 +917,9 @@ public class Parser {
      * @return an AST for a variable declarator.
      */
     private JVariableDeclarator variableDeclarator(Type type) {
-        int line = scanner.token().line();
+        int line = scanner.line();
         mustBe(IDENTIFIER);
-        String name = scanner.previousToken().image();
+        String name = scanner.previousImage();
         JExpression initial = have(ASSIGN) ? variableInitializer(type) : null;
         return new JVariableDeclarator(line, name, type, initial);
     }
@@ -864,7 +953,7 @@ public class Parser {
      * @return an AST for an array initializer.
      */
     private JArrayInitializer arrayInitializer(Type type) {
-        int line = scanner.token().line();
+        int line = scanner.line();
         ArrayList<JExpression> initials = new ArrayList<JExpression>();
         mustBe(LCURLY);
         if (have(RCURLY)) {
@@ -942,9 +1031,9 @@ public class Parser {
             return Type.LONG;
         }
         else {
-//            reportParserError(scanner.token().image()+" have double: "+have(DOUBLE));
-//            reportParserError(scanner.token().image()+" have long: "+have(LONG));
-            reportParserError("Type sought where %s found", scanner.token().image());
+//            reportParserError(scanner.image()+" have double: "+have(DOUBLE));
+//            reportParserError(scanner.image()+" have long: "+have(LONG));
+            reportParserError("Type sought where %s found", scanner.image());
             return Type.ANY;
         }
     }
@@ -987,7 +1076,7 @@ public class Parser {
      * @return an AST for a statement expression.
      */
     private JStatement statementExpression() {
-        int line = scanner.token().line();
+        int line = scanner.line();
         JExpression expr = expression();
         if (expr instanceof JAssignment
                 || expr instanceof JPreIncrementOp
@@ -1034,7 +1123,7 @@ public class Parser {
      * @return an AST for an assignment expression.
      */
     private JExpression assignmentExpression() {
-        int line = scanner.token().line();
+        int line = scanner.line();
         JExpression lhs = conditionalExpression();
         if(have(ALSHIFT_ASSIGN)){
             return new JALeftShiftAssignOp(line,lhs,assignmentExpression());
@@ -1087,8 +1176,8 @@ public class Parser {
      * @return an AST for a conditional expression.
      */
     private JExpression conditionalExpression(){//james' piazza post
-        int line = scanner.token().line();
-        JExpression cor  = conditionalOrExpression();
+        int line = scanner.line();
+        JExpression cor  = binaryExpression(0);
         if(have(QUESTION)){
             JExpression exp = expression();
             mustBe(COLON);
@@ -1100,268 +1189,117 @@ public class Parser {
         }
     }
     /**
-     * Parses a conditionalOrexpression and returns an AST for it.
+     * Parses the binary operator expressions whose precedence level is at least minLevel, that
+     * is, those on the levels BINARY_OPERATORS[minLevel] through the last, and returns an AST for
+     * them. Rather than descending through a method per level for every operand, this climbs the
+     * precedence levels in BINARY_OPERATORS: all operators are left associative, except the
+     * relational ones, of which at most one may occur.
      *
      * <pre>
-     *   conditionalOrExpression ::= conditionalAndExpression
-     *                                {LOR conditionalAndExpression}
-     * </pre>
+     *   conditionalOrExpression ::= conditionalAndExpression { LOR conditionalAndExpression }
      *
-     * @return an AST for a conditionalOrExpression.
-     */
-    private JExpression conditionalOrExpression(){
-        int line  = scanner.token().line();
-        boolean more = true;
-        JExpression lhs = conditionalAndExpression();
-        while(more){
-            if(have(LOR)){
-                lhs = new JLogicalOrOp(line, lhs, conditionalAndExpression());
-            }
-            else {
-                more = false;
-            }
-        }
-        return lhs;
-    }
-    /**
-     * Parses a conditional-and expression and returns an AST for it.
+     *   conditionalAndExpression ::= inclusiveOrExpression { LAND inclusiveOrExpression }
      *
-     * <pre>
-     *   conditionalAndExpression ::= inclusiveOrExpression{ LAND inclusiveOrExpression- }
-     * </pre>
+     *   inclusiveOrExpression ::= exclusiveOrExpression { BITOR exclusiveOrExpression }
      *
-     * @return an AST for a conditional-and expression.
-     */
-    private JExpression conditionalAndExpression() {
-        int line = scanner.token().line();
-        boolean more = true;
-        JExpression lhs = inclusiveOrExpression();
-        while (more) {
-            if (have(LAND)) {
-                lhs = new JLogicalAndOp(line, lhs, inclusiveOrExpression());
-            }
-            else {
-                more = false;
-            }
-        }
-        return lhs;
-    }
-    /**
-     * Parses an or expression and returns an AST for it.
+     *   exclusiveOrExpression ::= andExpression { BITXOR andExpression }
      *
-     * <pre>
-     *   inclusiveOrExpression ::= exclusiveOrExpression
-     *                                { Or exclusiveOrExpression}
-     * </pre>
-     *
-     * @return an AST for an assignment expression.
-     */
-    private JExpression inclusiveOrExpression() {
-        int line = scanner.token().line();
-        JExpression lhs = exclusiveOrExpression();
-        boolean more = true;
-        while (more){
-            if(have(BITOR)){
-                lhs = new JOrOp(line, lhs, exclusiveOrExpression());
-            }
-            else{
-                more = false;
-            }
-        }
-        return lhs;
-    }
-    /**
-     * Parses a XOR expression and returns an AST for it.
+     *   andExpression ::= equalityExpression { BITAND equalityExpression }
      *
-     * <pre>
-     *   exclusiveOrExpression ::= andExpression
-     *                                { XOR andExpression}
-     * </pre>
+     *   equalityExpression ::= relationalExpression
+     *                              { ( EQUAL | NOT_EQUAL ) relationalExpression }
      *
-     * @return an AST for an assignment expression.
-     */
-    private JExpression exclusiveOrExpression() {
-        int line = scanner.token().line();
-        JExpression lhs = andExpression();
-        boolean more = true;
-        while (more){
-            if(have(BITXOR)){
-                lhs = new JXorOp(line, lhs,andExpression());
-            }
-            else{
-                more = false;
-            }
-        }
-        return lhs;
-    }
-
-    /**
-     * Parses an and expression and returns an AST for it
+     *   relationalExpression ::= shiftExpression [ ( GE | GT | LE | LT ) shiftExpression
+     *                                            | INSTANCEOF referenceType ]
      *
-     * <pre>
-     *   andExpression ::= equalityExpression
-     *                                { AND equalityExpression}
-     * </pre>
+     *   shiftExpression ::= additiveExpression
+     *                           { ( SHIFT_LEFT | SHIFT_RIGHT | LOGICAL_RIGHT ) additiveExpression }
      *
-     * @return an AST for an andexpression.
-     */
-    private JExpression andExpression() {
-        int line = scanner.token().line();
-        JExpression lhs = equalityExpression();
-        boolean more = true;
-        while (more){
-            if(have(BITAND)){
-                lhs = new JAndOp(line, lhs,equalityExpression());
-            }
-            else{
-                more = false;
-            }
-        }
-        return lhs;
-    }
-
-    /**
-     * Parses an equality expression and returns an AST for it.
+     *   additiveExpression ::= multiplicativeExpression
+     *                              { ( MINUS | PLUS ) multiplicativeExpression }
      *
-     * <pre>
-     *   equalityExpression ::= relationalExpression { EQUAL relationalExpression }
+     *   multiplicativeExpression ::= unaryExpression { ( STAR | DIV | REM ) unaryExpression }
      * </pre>
      *
-     * @return an AST for an equality expression.
+     * @param minLevel the lowest precedence level parsed.
+     * @return an AST for a binary operator expression.
      */
-    private JExpression equalityExpression() {
-        int line = scanner.token().line();
-        boolean more = true;
-        JExpression lhs = relationalExpression();
-        while (more) {
-            if (have(EQUAL)) {
-                lhs = new JEqualOp(line, lhs, relationalExpression());
-            }
-            else if(have(NOT_EQUAL)){
-                lhs = new JNotEqualOp(line, lhs, relationalExpression());
-            }
-            else {
-                more = false;
-            }
-        }
-        return lhs;
-    }
+    private JExpression binaryExpression(int minLevel) {
+        int line = scanner.line();
+        JExpression lhs = unaryExpression();
 
-    /**
-     * Parses a relational expression and returns an AST for it.
-     *
-     * <pre>
-     *   relationalExpression ::= additiveExpression [ ( GT | LE ) additiveExpression
-     *                                               | INSTANCEOF referenceType ]
-     * </pre>
-     *
-     * @return an AST for a relational expression.
-     */
-    private JExpression relationalExpression() {
-        int line = scanner.token().line();
-        JExpression lhs = shiftExpression();
-        if(have(GE)){
-          return new JGreaterEqualOp(line, lhs, shiftExpression());
-        }
-        else if (have(GT)) {
-            return new JGreaterThanOp(line, lhs, shiftExpression());
-        }
-        else if (have(LE)) {
-            return new JLessEqualOp(line, lhs, shiftExpression());
-        }
-        else if (have(LT)){
-            return new JLessThanOp(line, lhs, shiftExpression());
-        }
-        else if (have(INSTANCEOF)) {
-            return new JInstanceOfOp(line, lhs, referenceType());
-        }
-        else {
-            return lhs;
-        }
-    }
-    /**
-     * Parses a shift expression and returns an AST for it.
-     *
-     * <pre>
-     *   shiftExpression ::= additiveExpression
-     *                                { ( ALSHIFT| ARSHIFT | LRSHIFT ) additiveExpression }
-     * </pre>
-     *
-     * @return an AST for an assignment expression.
-     */
-    private JExpression shiftExpression() {
-        int line = scanner.token().line();
-        JExpression lhs = additiveExpression();
-        boolean more = true;
-        while (more){
-            if (have(SHIFT_LEFT)) {
-                lhs = new JALeftShiftOp(line, lhs, additiveExpression());
-            } else if (have(SHIFT_RIGHT)) {
-                lhs = new JARightShiftOp(line, lhs, additiveExpression());
-            }
-            else if(have(LOGICAL_RIGHT)) {
-                lhs =  new JLRightShiftOp(line, lhs,additiveExpression());
+        // The highest level whose operators may still follow lhs.
+        int level = BINARY_OPERATORS.length - 1;
+        while (true) {
+            TokenKind kind = scanner.kind();
+            if (kind == EOF) {
+                // Report EOF once for every operator sought, as have() does.
+                for (int i = level; i >= minLevel; i--) {
+                    for (TokenKind sought : BINARY_OPERATORS[i]) {
+                        have(sought);
+                    }
+                }
+                return lhs;
             }
-            else{
-                more = false;
+            int operatorLevel = PRECEDENCE[kind.ordinal()];
+            if (operatorLevel < minLevel || operatorLevel > level) {
+                return lhs;
             }
-        }
-        return lhs;
-    }
-    /**
-     * Parses an additive expression and returns an AST for it.
-     *
-     * <pre>
-     *   additiveExpression ::= multiplicativeExpression
-     *                              { ( MINUS | PLUS ) multiplicativeExpression }
-     * </pre>
-     *
-     * @return an AST for an additive expression.
-     */
-    private JExpression additiveExpression(){
-        int line = scanner.token().line();
-        boolean more = true;
-        JExpression lhs = multiplicativeExpression();
-        while (more) {
-            if (have(MINUS)) {
-                lhs = new JSubtractOp(line, lhs, multiplicativeExpression());
-            } else if (have(PLUS)) {
-                lhs = new JPlusOp(line, lhs, multiplicativeExpression());
+            scanner.next();
+            if (kind == INSTANCEOF) {
+                lhs = new JInstanceOfOp(line, lhs, referenceType());
             } else {
-                more = false;
+                lhs = binaryOperation(kind, line, lhs, binaryExpression(operatorLevel + 1));
             }
+            level = operatorLevel == RELATIONAL ? operatorLevel - 1 : operatorLevel;
         }
-        return lhs;
     }
 
-    /**
-     * Parses a multiplicative expression and returns an AST for it.
-     *
-     * <pre>
-     *   multiplicativeExpression ::= unaryExpression { STAR unaryExpression }
-     * </pre>
-     *
-     * @return an AST for a multiplicative expression.
-     */
-    private JExpression multiplicativeExpression() {
-        int line = scanner.token().line();
-        boolean more = true;
-        JExpression lhs = unaryExpression();
-        while (more) {
-            if (have(STAR)) {
-                lhs = new JMultiplyOp(line, lhs, unaryExpression());
-            }
-            else if (have(DIV)){
-                lhs = new JDivideOp(line, lhs, unaryExpression());
-            }
-            else if (have(REM)){
-                lhs = new JRemainderOp(line, lhs, unaryExpression());
-            }
-            else {
-                more = false;
-            }
+    // Returns an AST for the binary operation lhs op rhs, where op is the given operator kind.
+    private JExpression binaryOperation(TokenKind kind, int line, JExpression lhs,
+                                        JExpression rhs) {
+        switch (kind) {
+            case LOR:
+                return new JLogicalOrOp(line, lhs, rhs);
+            case LAND:
+                return new JLogicalAndOp(line, lhs, rhs);
+            case BITOR:
+                return new JOrOp(line, lhs, rhs);
+            case BITXOR:
+                return new JXorOp(line, lhs, rhs);
+            case BITAND:
+                return new JAndOp(line, lhs, rhs);
+            case EQUAL:
+                return new JEqualOp(line, lhs, rhs);
+            case NOT_EQUAL:
+                return new JNotEqualOp(line, lhs, rhs);
+            case GE:
+                return new JGreaterEqualOp(line, lhs, rhs);
+            case GT:
+                return new JGreaterThanOp(line, lhs, rhs);
+            case LE:
+                return new JLessEqualOp(line, lhs, rhs);
+            case LT:
+                return new JLessThanOp(line, lhs, rhs);
+            case SHIFT_LEFT:
+                return new JALeftShiftOp(line, lhs, rhs);
+            case SHIFT_RIGHT:
+                return new JARightShiftOp(line, lhs, rhs);
+            case LOGICAL_RIGHT:
+                return new JLRightShiftOp(line, lhs, rhs);
+            case MINUS:
+                return new JSubtractOp(line, lhs, rhs);
+            case PLUS:
+                return new JPlusOp(line, lhs, rhs);
+            case STAR:
+                return new JMultiplyOp(line, lhs, rhs);
+            case DIV:
+                return new JDivideOp(line, lhs, rhs);
+            case REM:
+                return new JRemainderOp(line, lhs, rhs);
+            default:
+                throw new IllegalArgumentException(kind.image());
         }
-        return lhs;
     }
 
     /**
@@ -1378,7 +1316,7 @@ public class Parser {
      * @return an AST for an unary expression.
      */
     private JExpression unaryExpression() {
-        int line = scanner.token().line();
+        int line = scanner.line();
         if(have(DEC)){
             return new JPreDecrementOp(line,unaryExpression());
         }
@@ -1412,7 +1350,7 @@ public class Parser {
      * @return an AST for a simple unary expression.
      */
     private JExpression simpleUnaryExpression() {
-        int line = scanner.token().line();
+        int line = scanner.line();
         if (have(LNOT)) {
             return new JLogicalNotOp(line, unaryExpression());
         } else if (seeCast()) {
@@ -1437,7 +1375,7 @@ public class Parser {
      * @return an AST for a postfix expression.
      */
     private JExpression postfixExpression() {
-        int line = scanner.token().line();
+        int line = scanner.line();
         JExpression primaryExpr = primary();
         while (see(DOT) || see(LBRACK)) {
             primaryExpr = selector(primaryExpr);
@@ -1463,11 +1401,11 @@ public class Parser {
      * @return an AST for a selector.
      */
     private JExpression selector(JExpression target) {
-        int line = scanner.token().line();
+        int line = scanner.line();
         if (have(DOT)) {
             // target.selector.
             mustBe(IDENTIFIER);
-            String name = scanner.previousToken().image();
+            String name = scanner.previousImage();
             if (see(LPAREN)) {
                 ArrayList<JExpression> args = arguments();
                 return new JMessageExpression(line, target, name, args);
@@ -1497,7 +1435,7 @@ public class Parser {
      * @return an AST for a primary expression.
      */
     private JExpression primary() {
-        int line = scanner.token().line();
+        int line = scanner.line();
         if (see(LPAREN)) {
             return parExpression();
         } else if (have(NEW)) {
@@ -1515,7 +1453,7 @@ public class Parser {
                 return new JSuperConstruction(line, args);
             } else {
                 mustBe(IDENTIFIER);
-                String name = scanner.previousToken().image();
+                String name = scanner.previousImage();
                 JExpression newTarget = new JSuper(line);
                 if (see(LPAREN)) {
                     ArrayList<JExpression> args = arguments();
@@ -1556,7 +1494,7 @@ public class Parser {
      * @return an AST for a creator.
      */
     private JExpression creator() {
-        int line = scanner.token().line();
+        int line = scanner.line();
         Type type = seeBasicType() ? basicType() : qualifiedIdentifier();
         if (see(LPAREN)) {
             ArrayList<JExpression> args = arguments();
@@ -1573,7 +1511,7 @@ public class Parser {
                 return newArrayDeclarator(line, type);
             }
         } else {
-            reportParserError("( or [ sought where %s found", scanner.token().image());
+            reportParserError("( or [ sought where %s found", scanner.image());
             return new JWildExpression(line);
         }
     }
@@ -1624,33 +1562,33 @@ public class Parser {
      * @return an AST for a literal.
      */
     private JExpression literal() {
-        int line = scanner.token().line();
+        int line = scanner.line();
         if (have(CHAR_LITERAL)) {
-            return new JLiteralChar(line, scanner.previousToken().image());
+            return new JLiteralChar(line, scanner.previousImage());
         }
         else if (have(DOUBLE_LITERAL)){
-            return new JLiteralDouble(line, scanner.previousToken().image());
+            return new JLiteralDouble(line, scanner.previousImage());
         }
         else if (have(FALSE)) {
-            return new JLiteralBoolean(line, scanner.previousToken().image());
+            return new JLiteralBoolean(line, scanner.previousImage());
         }
         else if (have(INT_LITERAL)) {
-            return new JLiteralInt(line, scanner.previousToken().image());
+            return new JLiteralInt(line, scanner.previousImage());
         }
         else if (have(LONG_LITERAL)){
-            return new JLiteralLong(line,scanner.previousToken().image());
+            return new JLiteralLong(line,scanner.previousImage());
         }
         else if (have(NULL)) {
             return new JLiteralNull(line);
         }
         else if (have(STRING_LITERAL)) {
-            return new JLiteralString(line, scanner.previousToken().image());
+            return new JLiteralString(line, scanner.previousImage());
         }
         else if (have(TRUE)) {
-            return new JLiteralBoolean(line, scanner.previousToken().image());
+            return new JLiteralBoolean(line, scanner.previousImage());
         }
         else {
-            reportParserError("Literal sought where %s found", scanner.token().image());
+            reportParserError("Literal sought where %s found", scanner.image());
             reportParserError(" %d" ,line);
             return new JWildExpression(line);
         }
@@ -1662,13 +1600,14 @@ public class Parser {
 
     // Returns true if the current token equals sought, and false otherwise.
     private boolean see(TokenKind sought) {
-        return (sought == scanner.token().kind());
+        return (sought == scanner.kind());
     }
 
     // If the current token equals sought, scans it and returns true. Otherwise, returns false
     // without scanning the token.
     private boolean have(TokenKind sought) {
-        if(scanner.token().image() == EOF.image()){
+        if(scanner.kind() == EOF){
+            lookaheadSawEOF = true;
             reportParserError("EOF "+ sought.image());
         }
         if (see(sought)) {
@@ -1688,14 +1627,14 @@ public class Parser {
     // gives us a kind of poor man's syntactic error recovery, a strategy due to David Turner and
     // Ron Morrison.
     private void mustBe(TokenKind sought) {
-        if (scanner.token().kind() == sought) {
+        if (scanner.kind() == sought) {
             scanner.next();
             isRecovered = true;
         } else if (isRecovered) {
-            System.err.println(scanner.previousToken().image());
-            System.err.println(scanner.token().image());
+            System.err.println(scanner.previousImage());
+            System.err.println(scanner.image());
             isRecovered = false;
-            reportParserError("%s found where %s sought", scanner.token().image(), sought.image());
+            reportParserError("%s found where %s sought", scanner.image(), sought.image());
         } else {
             // Do not report the (possibly spurious) error, but rather attempt to recover by
             // forcing a match.
@@ -1720,25 +1659,98 @@ public class Parser {
     private void reportParserError(String message, Object... args) {
         isInError = true;
         isRecovered = false;
-        System.err.printf("%s:%d: error: ", scanner.fileName(), scanner.token().line());
-        System.err.printf(message, args);
-        System.err.println();
+        System.err.printf("%s:%d: error: %s%n", scanner.fileName(), scanner.line(),
+                String.format(message, args));
     }
 
     //////////////////////////////////////////////////
     // Lookahead Methods
     //////////////////////////////////////////////////
 
+    // Lookahead predicates whose results are memoized.
+    private static final int IDENT_LPAREN = 0, CAST = 1, LOCAL_VARIABLE_DECLARATION = 2,
+            REFERENCE_TYPE = 3, DIMS = 4;
+
     // Returns true if we are looking at an IDENTIFIER followed by a LPAREN, and false otherwise.
     private boolean seeIdentLParen() {
+        return lookahead(IDENT_LPAREN);
+    }
+
+    // Returns true if we are looking at a cast (basic or reference), and false otherwise.
+    private boolean seeCast() {
+        return lookahead(CAST);
+    }
+
+    // Returns true if we are looking at a local variable declaration, and false otherwise.
+    private boolean seeLocalVariableDeclaration() {
+        return lookahead(LOCAL_VARIABLE_DECLARATION);
+    }
+
+    // Returns true if we are looking at a reference type, and false otherwise.
+    private boolean seeReferenceType() {
+        return lookahead(REFERENCE_TYPE);
+    }
+
+    // Returns true if we are looking at a [] pair, and false otherwise.
+    private boolean seeDims() {
+        return lookahead(DIMS);
+    }
+
+    // Returns the result of the specified lookahead predicate at the current token, evaluating
+    // it at most once per token position.
+    private boolean lookahead(int predicate) {
+        int position = scanner.position();
+        if (!scanner.isLookingAhead && position > lookaheadLimit) {
+            // We can never return to the positions memoized so far.
+            lookaheads.clear();
+        }
+        long key = lookaheadKey(predicate, position);
+        Boolean result = lookaheads.get(key);
+        if (result != null) {
+            lookaheadHits++;
+            return result;
+        }
+        lookaheadMisses++;
+        lookaheadSawEOF = false;
+        switch (predicate) {
+            case IDENT_LPAREN:
+                result = scanIdentLParen();
+                break;
+            case CAST:
+                result = scanCast();
+                break;
+            case LOCAL_VARIABLE_DECLARATION:
+                result = scanLocalVariableDeclaration();
+                break;
+            case REFERENCE_TYPE:
+                result = scanReferenceType();
+                break;
+            default:
+                result = scanDims();
+        }
+        if (!lookaheadSawEOF) {
+            lookaheads.put(key, result);
+            lookaheadLimit = Math.max(lookaheadLimit, position);
+        }
+        return result;
+    }
+
+    // Returns the key under which the result of the specified lookahead predicate at the
+    // specified token position is memoized.
+    private static long lookaheadKey(int predicate, int position) {
+        return ((long) position << 3) | predicate;
+    }
+
+    // Evaluates seeIdentLParen() without memoization.
+    private boolean scanIdentLParen() {
         scanner.recordPosition();
         boolean result = have(IDENTIFIER) && see(LPAREN);
         scanner.returnToPosition();
         return result;
     }
 
-    // Returns true if we are looking at a cast (basic or reference), and false otherwise.
-    private boolean seeCast() {
+    // Evaluates seeCast() without memoization.
+    private boolean scanCast() {
         scanner.recordPosition();
         if (!have(LPAREN)) {
             scanner.returnToPosition();
@@ -1775,8 +1787,8 @@ public class Parser {
         return true;
     }
 
-    // Returns true if we are looking at a local variable declaration, and false otherwise.
-    private boolean seeLocalVariableDeclaration() {
+    // Evaluates seeLocalVariableDeclaration() without memoization.
+    private boolean scanLocalVariableDeclaration() {
         scanner.recordPosition();
         if (have(IDENTIFIER)) {
             // A qualified identifier is ok.
@@ -1817,9 +1829,8 @@ public class Parser {
         return (see(BOOLEAN) || see(CHAR) ||see(DOUBLE) || see(INT) || see(LONG));//reserved words in tokenKind
     }
 
-    // Returns true if we are looking at a reference type, and false otherwise.
-    private boolean
-    seeReferenceType() {
+    // Evaluates seeReferenceType() without memoization.
+    private boolean scanReferenceType() {
         if (see(IDENTIFIER)) {
             return true;
         } else {
@@ -1835,8 +1846,8 @@ public class Parser {
         return false;
     }
 
-    // Returns true if we are looking at a [] pair, and false otherwise.
-    private boolean seeDims() {
+    // Evaluates seeDims() without memoization.
+    private boolean scanDims() {
         scanner.recordPosition();
         boolean result = have(LBRACK) && see(RBRACK);
         scanner.returnToPosition();
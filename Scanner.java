@@ -2,11 +2,11 @@
 
 package jminusminus;
 
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.LineNumberReader;
-import java.util.Hashtable;
+import java.nio.charset.Charset;
+import java.util.Arrays;
 
 import static jminusminus.TokenKind.*;
 
@@ -17,8 +17,11 @@ class Scanner {
     // End of file character.
     public final static char EOFCH = CharReader.EOFCH;
 
-    // Keywords in j--.
-    private Hashtable<String, TokenKind> reserved;
+    // Keywords in j--; reserved[n] holds the keywords whose images have n characters.
+    private TokenKind[][] reserved;
+
+    // Identifier names seen so far, so that each distinct name is a single String.
+    private IdentifierTable identifiers;
 
     // Source characters.
     private CharReader input;
@@ -35,6 +38,9 @@ class Scanner {
     // Line number of current token.
     private int line;
 
+    // Offset in the source of the first character of the current token.
+    private int start;
+
     /**
      * Constructs a Scanner from a file name.
      *
@@ -46,48 +52,26 @@ class Scanner {
         this.fileName = fileName;
         isInError = false;
 
-        // Keywords in j--
-        reserved = new Hashtable<String, TokenKind>();
-        reserved.put(ABSTRACT.image(), ABSTRACT);
-        reserved.put(BOOLEAN.image(), BOOLEAN);
-        reserved.put(CHAR.image(), CHAR);
-        reserved.put(CLASS.image(), CLASS);
-        reserved.put(ELSE.image(), ELSE);
-        reserved.put(EXTENDS.image(), EXTENDS);
-        reserved.put(FALSE.image(), FALSE);
-        reserved.put(IF.image(), IF);
-        reserved.put(IMPORT.image(), IMPORT);
-        reserved.put(INSTANCEOF.image(), INSTANCEOF);
-        reserved.put(INT.image(), INT);
-        reserved.put(NEW.image(), NEW);
-        reserved.put(NULL.image(), NULL);
-        reserved.put(PACKAGE.image(), PACKAGE);
-        reserved.put(PRIVATE.image(), PRIVATE);
-        reserved.put(PROTECTED.image(), PROTECTED);
-        reserved.put(PUBLIC.image(), PUBLIC);
-        reserved.put(RETURN.image(), RETURN);
-        reserved.put(STATIC.image(), STATIC);
-        reserved.put(SUPER.image(), SUPER);
-        reserved.put(THIS.image(), THIS);
-        reserved.put(TRUE.image(), TRUE);
-        reserved.put(VOID.image(), VOID);
-        reserved.put(WHILE.image(), WHILE);
-        reserved.put(BREAK.image(), BREAK);
-        reserved.put(CASE.image(), CASE);
-        reserved.put(CATCH.image(), CATCH);
-        reserved.put(CONTINUE.image(), CONTINUE);
-        reserved.put(DEFAULT.image(), DEFAULT);
-        reserved.put(DO.image(), DO);
-        reserved.put(DOUBLE.image(), DOUBLE);
-        reserved.put(FINALLY.image(), FINALLY);
-        reserved.put(FOR.image(), FOR);
-        reserved.put(IMPLEMENTS.image(), IMPLEMENTS);
-        reserved.put(INTERFACE.image(), INTERFACE);
-        reserved.put(LONG.image(), LONG);
-        reserved.put(SWITCH.image(), SWITCH);
-        reserved.put(THROW.image(), THROW);
-        reserved.put(THROWS.image(), THROWS);
-        reserved.put(TRY.image(), TRY);
+        // Keywords in j--, bucketed by the length of their images.
+        TokenKind[] keywords = {
+                ABSTRACT, BOOLEAN, CHAR, CLASS, ELSE, EXTENDS, FALSE, IF, IMPORT, INSTANCEOF, INT,
+                NEW, NULL, PACKAGE, PRIVATE, PROTECTED, PUBLIC, RETURN, STATIC, SUPER, THIS, TRUE,
+                VOID, WHILE, BREAK, CASE, CATCH, CONTINUE, DEFAULT, DO, DOUBLE, FINALLY, FOR,
+                IMPLEMENTS, INTERFACE, LONG, SWITCH, THROW, THROWS, TRY
+        };
+        int maxLength = 0;
+        for (TokenKind keyword : keywords) {
+            maxLength = Math.max(maxLength, keyword.image().length());
+        }
+        reserved = new TokenKind[maxLength + 1][];
+        for (TokenKind keyword : keywords) {
+            int length = keyword.image().length();
+            TokenKind[] bucket = reserved[length] == null ? new TokenKind[1] :
+                    Arrays.copyOf(reserved[length], reserved[length].length + 1);
+            bucket[bucket.length - 1] = keyword;
+            reserved[length] = bucket;
+        }
+        identifiers = new IdentifierTable();
 
         // Prime the pump.
         nextCh();
@@ -99,13 +83,57 @@ class Scanner {
      * @return the next scanned token.
      */
     public TokenInfo getNextToken() {
-        StringBuffer buffer;
+        TokenKind kind = scanToken();
+        int length = input.offset() - start;
+        return new TokenInfo(kind, image(kind, start, length), line);
+    }
+
+    /**
+     * Scans the next token from input and appends it to the specified token stream, without
+     * making its image.
+     *
+     * @param tokens the token stream.
+     */
+    public void scan(TokenStream tokens) {
+        TokenKind kind = scanToken();
+        tokens.add(kind, start, input.offset() - start, line);
+    }
+
+    /**
+     * Returns the image of a token scanned by this scanner, given its kind and where it occurs in
+     * the source. Tokens of a kind with a fixed image share that image, and identifiers with the
+     * same name share a single String.
+     *
+     * @param kind   the token's kind.
+     * @param start  offset in the source of the token's first character.
+     * @param length number of characters in the token.
+     * @return the token's image.
+     */
+    public String image(TokenKind kind, int start, int length) {
+        switch (kind) {
+            case IDENTIFIER:
+                return identifiers.intern(input.chars(), start, length);
+            case CHAR_LITERAL:
+            case INT_LITERAL:
+            case STRING_LITERAL:
+            case LONG_LITERAL:
+            case DOUBLE_LITERAL:
+                return new String(input.chars(), start, length);
+            default:
+                return kind.image();
+        }
+    }
+
+    // Scans the next token from input, and returns its kind; it starts at offset start in the
+    // source, ends just before the current character, and occurs on line line.
+    private TokenKind scanToken() {
         boolean moreWhiteSpace = true;
         while (moreWhiteSpace) {
             while (isWhitespace(ch)) {
                 nextCh();
             }
             if (ch == '/') {
+                start = input.offset();
                 nextCh();
                 if (ch == '/') {
                     // CharReader maps all new lines to '\n'.
@@ -115,7 +143,7 @@ class Scanner {
                 }
                 else if(ch =='='){
                     nextCh();
-                    return new TokenInfo(DIV_ASSIGN, line);
+                    return DIV_ASSIGN;
                 }
                 else if(ch == '*'){// /* .................
                     while(true){//ignore characters until its the end of the file, or */
@@ -135,101 +163,100 @@ class Scanner {
                 }
                 else {
                     //reportScannerError("Operator / is not supported in j--");
-                    return new TokenInfo(DIV,line);
+                    return DIV;
                 }
             } else {
                 moreWhiteSpace = false;
             }
         }
         line = input.line();
+        start = input.offset();
         switch (ch) {
             case '?':
                 nextCh();
-                return new TokenInfo(QUESTION,line);
+                return QUESTION;
             case ':':{
                 nextCh();
-                return new TokenInfo(COLON, line);
+                return COLON;
             }
             case ',':
                 nextCh();
-                return new TokenInfo(COMMA, line);
+                return COMMA;
             case '.':
                 nextCh();
                 if(isDigit(ch)){ // the next character is a number
-                    buffer = new StringBuffer();
-                    buffer.append('.');
-                    TokenInfo tk = decimalState(buffer);
+                    TokenKind tk = decimalState();
                     if(tk != null){
                         return tk;
                     }
                 }
-                return new TokenInfo(DOT, line);
+                return DOT;
             case '[':
                 nextCh();
-                return new TokenInfo(LBRACK, line);
+                return LBRACK;
             case '{':
                 nextCh();
-                return new TokenInfo(LCURLY, line);
+                return LCURLY;
             case '(':
                 nextCh();
-                return new TokenInfo(LPAREN, line);
+                return LPAREN;
             case ']':
                 nextCh();
-                return new TokenInfo(RBRACK, line);
+                return RBRACK;
             case '}':
                 nextCh();
-                return new TokenInfo(RCURLY, line);
+                return RCURLY;
             case ')':
                 nextCh();
-                return new TokenInfo(RPAREN, line);
+                return RPAREN;
             case ';':
                 nextCh();
-                return new TokenInfo(SEMI, line);
+                return SEMI;
             case '*':
                 nextCh();
                 if(ch == '='){
                     nextCh();
-                    return new TokenInfo(STAR_EQUAL, line);
+                    return STAR_EQUAL;
                 }
-                return new TokenInfo(STAR, line);
+                return STAR;
             case '%':
                 nextCh();
                 if(ch == '='){
                     nextCh();
-                    return new TokenInfo(REM_ASSIGN, line);
+                    return REM_ASSIGN;
                 }
-                return new TokenInfo(REM,line);
+                return REM;
             case '+':
                 nextCh();
                 if (ch == '=') {
                     nextCh();
-                    return new TokenInfo(PLUS_ASSIGN, line);
+                    return PLUS_ASSIGN;
                 } else if (ch == '+') {
                     nextCh();
-                    return new TokenInfo(INC, line);
+                    return INC;
                 } else {
-                    return new TokenInfo(PLUS, line);
+                    return PLUS;
                 }
             case '-':
                 nextCh();
                 if (ch == '-') {
                     nextCh();
-                    return new TokenInfo(DEC, line);
+                    return DEC;
                 }
                 else if(ch == '='){
                    nextCh();
-                   return new TokenInfo(MINUS_EQUAL, line);
+                   return MINUS_EQUAL;
                 }
                 else {
-                    return new TokenInfo(MINUS, line);
+                    return MINUS;
                 }
             case '=':
                 nextCh();
                 if (ch == '=') {
                     nextCh();
-                    return new TokenInfo(EQUAL, line);
+                    return EQUAL;
                 } else {
-                    return new TokenInfo(ASSIGN, line);
+                    return ASSIGN;
                 }
             case '>':
                 //no GE?
@@ -240,113 +267,106 @@ class Scanner {
                         nextCh();
                         if(ch == '='){
                             nextCh();
-                            return new TokenInfo(LRSHIFT_ASSIGN, line);
+                            return LRSHIFT_ASSIGN;
                         }
-                        return new TokenInfo(LOGICAL_RIGHT, line);
+                        return LOGICAL_RIGHT;
                     }
                     else if(ch == '='){
                         nextCh();
-                        return new TokenInfo(ARSHIFT_ASSIGN, line);
+                        return ARSHIFT_ASSIGN;
                     }
-                    return new TokenInfo(SHIFT_RIGHT, line);
+                    return SHIFT_RIGHT;
                 }
                 else if(ch == '='){
                     nextCh();
-                    return new TokenInfo(GE, line);
+                    return GE;
                 }
-                return new TokenInfo(GT, line);
+                return GT;
             case '<':
                 nextCh();
                 if (ch == '=') {
                     nextCh();
-                    return new TokenInfo(LE, line);
+                    return LE;
                 }
                 else if(ch == '<'){
                     nextCh();
 		    if(ch == '='){
 			nextCh();
-			return new TokenInfo(ALSHIFT_ASSIGN, line);
+			return ALSHIFT_ASSIGN;
 		    }
-                    return new TokenInfo(SHIFT_LEFT, line);
+                    return SHIFT_LEFT;
                 }
                 else {
-                     return new TokenInfo(LT, line);
+                     return LT;
                 }
             case '!':
                 nextCh();
                 if(ch == '='){
                     nextCh();
-                    return new TokenInfo(NOT_EQUAL,line);
+                    return NOT_EQUAL;
                 }
-                return new TokenInfo(LNOT, line);
+                return LNOT;
             case '~':
                 nextCh();
-                return new TokenInfo(BITNOT, line);
+                return BITNOT;
             case '|':
                 nextCh();
                 if(ch == '='){
                     nextCh();
-                    return new TokenInfo(OR_ASSIGN,line);
+                    return OR_ASSIGN;
                 }
                 else if(ch == '|'){
                     nextCh();
-                    return new TokenInfo(LOR, line);
+                    return LOR;
                 }
-                return new TokenInfo(BITOR, line);
+                return BITOR;
             case '^':
                 nextCh();
                 if(ch == '='){
                     nextCh();
-                    return new TokenInfo(XOR_ASSIGN, line);
+                    return XOR_ASSIGN;
                 }
-                return new TokenInfo(BITXOR, line);
+                return BITXOR;
             case '&':
                 nextCh();
                 if (ch == '&') {
                     nextCh();
-                    return new TokenInfo(LAND, line);
+                    return LAND;
                 }
                 else if (ch == '='){
                     nextCh();
-                    return new TokenInfo(AND_ASSIGN, line);
+                    return AND_ASSIGN;
                 }
                 else {
                     //reportScannerError("Operator & is not supported in j--");
-                    return new TokenInfo(BITAND, line);
+                    return BITAND;
                 }
             case '\'':
-                buffer = new StringBuffer();
-                buffer.append('\'');
                 nextCh();
                 if (ch == '\\') {
                     nextCh();
-                    buffer.append(escape());
+                    escape();
                 } else {
-                    buffer.append(ch);
                     nextCh();
                 }
                 if (ch == '\'') {
-                    buffer.append('\'');
                     nextCh();
-                    return new TokenInfo(CHAR_LITERAL, buffer.toString(), line);
+                    return CHAR_LITERAL;
                 } else {
                     // Expected a ' ; report error and try to recover.
                     reportScannerError(ch + " found by scanner where closing ' was expected");
                     while (ch != '\'' && ch != ';' && ch != '\n') {
                         nextCh();
                     }
-                    return new TokenInfo(CHAR_LITERAL, buffer.toString(), line);
+                    return CHAR_LITERAL;
                 }
             case '"':
-                buffer = new StringBuffer();
-                buffer.append("\"");
                 nextCh();
                 while (ch != '"' && ch != '\n' && ch != EOFCH) {
                     if (ch == '\\') {
                         nextCh();
-                        buffer.append(escape());
+                        escape();
                     } else {
-                        buffer.append(ch);
                         nextCh();
                     }
                 }
@@ -357,11 +377,10 @@ class Scanner {
                 } else {
                     // Scan the closing "
                     nextCh();
-                    buffer.append("\"");
                 }
-                return new TokenInfo(STRING_LITERAL, buffer.toString(), line);
+                return STRING_LITERAL;
             case EOFCH:
-                return new TokenInfo(EOF, line);
+                return EOF;
             case '0':
             case '1':
             case '2':
@@ -372,123 +391,105 @@ class Scanner {
             case '7':
             case '8':
             case '9':
-                buffer = new StringBuffer();
                 while (isDigit(ch)) {
-                    buffer.append(ch);
                     nextCh();
                 }
                 if(ch == 'l' || ch == 'L'){
-                    buffer.append(ch);
                     nextCh();
-                    return new TokenInfo(LONG_LITERAL, buffer.toString(), line);
+                    return LONG_LITERAL;
                 }
                else if(ch == '.'){
-                  TokenInfo token = decimalState(buffer);
+                  TokenKind token = decimalState();
                   if(token != null){
                       return token;
                   }
                 }
                 else if(ch == 'e' || ch == 'E'){//exponent  / create void or TOKEN exponent(buffer) that will do everything inside of brackets
-                    TokenInfo token = exponentState(buffer);
+                    TokenKind token = exponentState();
                     if(token != null){
                         return token;
                     }
                 }
                 else if (ch == 'd' || ch == 'D'){
-                    buffer.append(ch);
                     nextCh();
-                    return new TokenInfo(DOUBLE_LITERAL, buffer.toString(), line);
+                    return DOUBLE_LITERAL;
                 }
-                return new TokenInfo(INT_LITERAL, buffer.toString(), line);
+                return INT_LITERAL;
             default:
                 if (isIdentifierStart(ch)) {
-                    buffer = new StringBuffer();
                     while (isIdentifierPart(ch)) {
-                        buffer.append(ch);
                         nextCh();
                     }
-                    String identifier = buffer.toString();
-                    if (reserved.containsKey(identifier)) {
-                        return new TokenInfo(reserved.get(identifier), line);
-                    } else {
-                        return new TokenInfo(IDENTIFIER, identifier, line);
-                    }
+                    TokenKind keyword = reserved(input.chars(), start, input.offset() - start);
+                    return keyword != null ? keyword : IDENTIFIER;
                 } else {
                     reportScannerError("Unidentified input token: '%c'", ch);
                     nextCh();
-                    return getNextToken();
+                    return scanToken();
                 }
         }
     }
-    private TokenInfo decimalState(StringBuffer buffer){
-        buffer.append(ch);
+    private TokenKind decimalState(){
         nextCh();
         while (isDigit(ch)){
-            buffer.append(ch);
             nextCh();
         }
         if(ch == 'e' || ch == 'E'){
-            TokenInfo token = exponentState(buffer);
+            TokenKind token = exponentState();
             if(token != null){
                 return token;
             }
         }
         else if (ch == 'd' || ch == 'D'){
-            buffer.append(ch);
             nextCh();
-            return new TokenInfo(DOUBLE_LITERAL, buffer.toString(), line);
+            return DOUBLE_LITERAL;
         }
         else if (!isDigit(ch) && ch != 'd' && ch != 'D' && ch != 'e' && ch != 'E'){
-            return new TokenInfo(DOUBLE_LITERAL, buffer.toString(),line);
+            return DOUBLE_LITERAL;
         }
         return null;
     }
-    private TokenInfo exponentState(StringBuffer buffer){
-        buffer.append(ch);
+    private TokenKind exponentState(){
         nextCh();
         if(ch == 'd'|| ch == 'D'){
-            buffer.append(ch);
             nextCh();
-            return new TokenInfo(DOUBLE_LITERAL, buffer.toString(),line);
+            return DOUBLE_LITERAL;
         }
         else if(isDigit(ch)){
-            TokenInfo token = digitState(buffer);
+            TokenKind token = digitState();
             if(token != null){
                 return token;
             }
         }
         else if(ch == '+' || ch == '-'){
-            buffer.append(ch);
             nextCh();
             if(isDigit(ch) || ch == 'D'|| ch =='d'){
-                TokenInfo token = digitState(buffer);
+                TokenKind token = digitState();
                 if(token != null){
                     return token;
                 }
             }
             else if (!isDigit(ch) && ch != 'd' && ch != 'D'){
-                return new TokenInfo(DOUBLE_LITERAL,buffer.toString(),line);
+                return DOUBLE_LITERAL;
             }
         }
         else if(!isDigit(ch) && ch!= 'd' && ch != 'D'){
-            return new TokenInfo(DOUBLE_LITERAL, buffer.toString(), line);
+            return DOUBLE_LITERAL;
         }
         return null;
     }
-    private TokenInfo digitState(StringBuffer buffer){
+    private TokenKind digitState(){
         //buffer.append(ch);
         //nextCh();
         while(isDigit(ch)){
-            buffer.append(ch);
             nextCh();
         }
         if(ch == 'D'|| ch == 'd'){
-            buffer.append(ch);
             nextCh();
-            return new TokenInfo(DOUBLE_LITERAL, buffer.toString(), line);
+            return DOUBLE_LITERAL;
         }
         else if(ch != 'd' && ch!= 'D'){
-            return new TokenInfo(DOUBLE_LITERAL, buffer.toString(), line);
+            return DOUBLE_LITERAL;
         }
         return null;
     }
@@ -511,57 +512,54 @@ class Scanner {
         return fileName;
     }
 
-    // Scans and returns an escaped character.
-    private String escape() {
+    // Scans an escaped character.
+    private void escape() {
         switch (ch) {
             case 'b':
-                nextCh();
-                return "\\b";
             case 't':
-                nextCh();
-                return "\\t";
             case 'n':
-                nextCh();
-                return "\\n";
             case 'f':
-                nextCh();
-                return "\\f";
             case 'r':
-                nextCh();
-                return "\\r";
             case '"':
-                nextCh();
-                return "\\\"";
             case '\'':
-                nextCh();
-                return "\\'";
             case '\\':
                 nextCh();
-                return "\\\\";
+                break;
             default:
                 reportScannerError("Badly formed escape: \\%c", ch);
                 nextCh();
-                return "";
         }
     }
 
     // Advances ch to the next character from input, and updates the line number.
     private void nextCh() {
         line = input.line();
-        try {
-            ch = input.nextChar();
-        } catch (Exception e) {
-            reportScannerError("Unable to read characters from input");
+        ch = input.nextChar();
+    }
+
+    // Returns the keyword spelled by the length characters of chars from offset start, or null.
+    private TokenKind reserved(char[] chars, int start, int length) {
+        if (length >= reserved.length || reserved[length] == null) {
+            return null;
+        }
+        for (TokenKind keyword : reserved[length]) {
+            String image = keyword.image();
+            int i = 0;
+            while (i < length && image.charAt(i) == chars[start + i]) {
+                i++;
+            }
+            if (i == length) {
+                return keyword;
+            }
         }
+        return null;
     }
 
     // Reports a lexical error and records the fact that an error has occurred. This fact can be
     // ascertained from the Scanner by sending it an errorHasOccurred message.
     private void reportScannerError(String message, Object... args) {
         isInError = true;
-        System.err.printf("%s:%d: error: ", fileName, line);
-        System.err.printf(message, args);
-        System.err.println();
+        System.err.printf("%s:%d: error: %s%n", fileName, line, String.format(message, args));
     }
 
     // Returns true if the specified character is a digit (0-9), and false otherwise.
@@ -586,16 +584,107 @@ class Scanner {
     }
 }
 
+/**
+ * A table of the identifier names seen by the scanner, so that each distinct name is represented
+ * by a single String, which is created only the first time the name is scanned.
+ */
+class IdentifierTable {
+    // Open-addressed hash table of names; its length is always a power of two.
+    private String[] names;
+
+    // Number of names in the table.
+    private int size;
+
+    /**
+     * Constructs an empty IdentifierTable.
+     */
+    public IdentifierTable() {
+        names = new String[256];
+        size = 0;
+    }
+
+    /**
+     * Returns the name spelled by the length characters of chars from offset start, adding it to
+     * the table if it is not already there.
+     *
+     * @param chars  the characters of the name.
+     * @param start  offset of the name's first character in chars.
+     * @param length number of characters in the name.
+     * @return the name spelled by the length characters of chars from offset start.
+     */
+    public String intern(char[] chars, int start, int length) {
+        int h = 0;
+        for (int i = 0; i < length; i++) {
+            h = 31 * h + chars[start + i];
+        }
+        int mask = names.length - 1;
+        int i = (h ^ (h >>> 16)) & mask;
+        while (names[i] != null) {
+            if (spells(names[i], chars, start, length)) {
+                return names[i];
+            }
+            i = (i + 1) & mask;
+        }
+        String name = new String(chars, start, length);
+        names[i] = name;
+        if (++size > names.length / 2) {
+            rehash();
+        }
+        return name;
+    }
+
+    // Returns true if name is spelled by the length characters of chars from offset start, and
+    // false otherwise.
+    private static boolean spells(String name, char[] chars, int start, int length) {
+        if (name.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (name.charAt(i) != chars[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Doubles the capacity of the table.
+    private void rehash() {
+        String[] old = names;
+        names = new String[2 * old.length];
+        int mask = names.length - 1;
+        for (String name : old) {
+            if (name != null) {
+                int h = name.hashCode();
+                int i = (h ^ (h >>> 16)) & mask;
+                while (names[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                names[i] = name;
+            }
+        }
+    }
+}
+
 /**
  * A buffered character reader, which abstracts out differences between platforms, mapping all new
- * lines to '\n', and also keeps track of line numbers.
+ * lines to '\n', and also keeps track of line numbers. The whole source is read and decoded into
+ * memory up front, so scanning a character is just an array access.
  */
 class CharReader {
     // Representation of the end of file as a character.
     public final static char EOFCH = (char) -1;
 
-    // The underlying reader records line numbers.
-    private LineNumberReader lineNumberReader;
+    // The source characters, with all new lines mapped to '\n'.
+    private char[] buffer;
+
+    // Number of characters in buffer.
+    private int length;
+
+    // Index of the next character to scan.
+    private int pos;
+
+    // Number of new lines scanned so far.
+    private int lineNumber;
 
     // Name of the file that is being read.
     private String fileName;
@@ -607,18 +696,73 @@ class CharReader {
      * @throws FileNotFoundException if the file is not found.
      */
     public CharReader(String fileName) throws FileNotFoundException {
-        lineNumberReader = new LineNumberReader(new FileReader(fileName));
         this.fileName = fileName;
+        FileInputStream in = new FileInputStream(fileName);
+        char[] source;
+        try {
+            // Decode with the default charset, as FileReader does.
+            source = new String(in.readAllBytes(), Charset.defaultCharset()).toCharArray();
+            in.close();
+        } catch (IOException e) {
+            FileNotFoundException notRead = new FileNotFoundException(fileName
+                    + " (unable to read)");
+            notRead.initCause(e);
+            throw notRead;
+        }
+
+        // Map "\r\n" and "\r" to '\n' in place, as LineNumberReader does.
+        int j = 0;
+        for (int i = 0; i < source.length; i++) {
+            char c = source[i];
+            if (c == '\r') {
+                if (i + 1 < source.length && source[i + 1] == '\n') {
+                    i++;
+                }
+                c = '\n';
+            }
+            source[j++] = c;
+        }
+        buffer = source;
+        length = j;
+        pos = 0;
+        lineNumber = 0;
     }
 
     /**
-     * Scans and returns the next character.
+     * Scans and returns the next character, or EOFCH at the end of the file.
      *
      * @return the character scanned.
-     * @throws IOException if an I/O error occurs.
      */
-    public char nextChar() throws IOException {
-        return (char) lineNumberReader.read();
+    public char nextChar() {
+        if (pos >= length) {
+            pos = length + 1;
+            return EOFCH;
+        }
+        char c = buffer[pos++];
+        if (c == '\n') {
+            lineNumber++;
+        }
+        return c;
+    }
+
+    /**
+     * Returns the offset in the source of the character last scanned; this is the length of the
+     * source once EOFCH has been scanned.
+     *
+     * @return the offset in the source of the character last scanned.
+     */
+    public int offset() {
+        return pos - 1;
+    }
+
+    /**
+     * Returns the source characters, with all new lines mapped to '\n'. Only offsets less than
+     * that of the character last scanned are meaningful.
+     *
+     * @return the source characters.
+     */
+    public char[] chars() {
+        return buffer;
     }
 
     /**
@@ -627,7 +771,7 @@ class CharReader {
      * @return the current line number in the source file.
      */
     public int line() {
-        return lineNumberReader.getLineNumber() + 1; // LineNumberReader counts lines from 0
+        return lineNumber + 1; // lineNumber counts lines from 0
     }
 
     /**
@@ -640,11 +784,11 @@ class CharReader {
     }
 
     /**
-     * Closes the file.
-     *
-     * @throws IOException if an I/O error occurs.
+     * Closes the file, releasing the buffered source.
      */
-    public void close() throws IOException {
-        lineNumberReader.close();
+    public void close() {
+        buffer = null;
+        length = 0;
+        pos = 0;
     }
 }
@@ -2,6 +2,8 @@
 
 package jminusminus;
 
+import java.util.Arrays;
+
 /**
  * An enum of token kinds. Each entry in this enum represents the kind of a token along with its
  * image (string representation).
@@ -44,6 +46,9 @@ enum TokenKind {
     // The token kind's string representation.
     private String image;
 
+    // What tokenRep() returns, once it has been asked for.
+    private String tokenRep;
+
     /**
      * Constructs an instance of TokenKind given its string representation.
      *
@@ -59,13 +64,16 @@ enum TokenKind {
      * @return the token kind's string representation.
      */
     public String tokenRep() {
-        if (this == EOF) {
-            return "<EOF>";
+        if (tokenRep == null) {
+            if (this == EOF) {
+                tokenRep = "<EOF>";
+            } else if (image.startsWith("<") && image.endsWith(">")) {
+                tokenRep = image;
+            } else {
+                tokenRep = "\"" + image + "\"";
+            }
         }
-        if (image.startsWith("<") && image.endsWith(">")) {
-            return image;
-        }
-        return "\"" + image + "\"";
+        return tokenRep;
     }
 
     /**
@@ -156,3 +164,132 @@ public class TokenInfo {
         return image;
     }
 }
+
+/**
+ * A sequence of tokens scanned by a Scanner, packed into parallel arrays of kinds, source offsets,
+ * lengths, and line numbers, so that scanning a token creates no objects. A token's image is made
+ * from the source, by the scanner, only when it is asked for.
+ */
+class TokenStream {
+    // The scanner that scans the tokens, and that makes their images.
+    private Scanner scanner;
+
+    // Token kinds.
+    private TokenKind[] kinds;
+
+    // Offsets in the source of the tokens' first characters.
+    private int[] starts;
+
+    // Numbers of characters in the tokens.
+    private int[] lengths;
+
+    // Lines in which the tokens occur in the source file.
+    private int[] lines;
+
+    // Number of tokens in the stream.
+    private int size;
+
+    /**
+     * Constructs an empty TokenStream for tokens scanned by the specified scanner.
+     *
+     * @param scanner the scanner.
+     */
+    public TokenStream(Scanner scanner) {
+        this.scanner = scanner;
+        kinds = new TokenKind[64];
+        starts = new int[64];
+        lengths = new int[64];
+        lines = new int[64];
+        size = 0;
+    }
+
+    /**
+     * Scans the next token from input and appends it to this stream.
+     */
+    public void scan() {
+        scanner.scan(this);
+    }
+
+    /**
+     * Appends a token to this stream.
+     *
+     * @param kind   the token's kind.
+     * @param start  offset in the source of the token's first character.
+     * @param length number of characters in the token.
+     * @param line   the line in which the token occurs in the source file.
+     */
+    public void add(TokenKind kind, int start, int length, int line) {
+        if (size == kinds.length) {
+            kinds = Arrays.copyOf(kinds, 2 * size);
+            starts = Arrays.copyOf(starts, 2 * size);
+            lengths = Arrays.copyOf(lengths, 2 * size);
+            lines = Arrays.copyOf(lines, 2 * size);
+        }
+        kinds[size] = kind;
+        starts[size] = start;
+        lengths[size] = length;
+        lines[size] = line;
+        size++;
+    }
+
+    /**
+     * Removes all but the last token from this stream.
+     */
+    public void keepLast() {
+        int last = size - 1;
+        kinds[0] = kinds[last];
+        starts[0] = starts[last];
+        lengths[0] = lengths[last];
+        lines[0] = lines[last];
+        size = 1;
+    }
+
+    /**
+     * Returns the number of tokens in this stream.
+     *
+     * @return the number of tokens in this stream.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the kind of the token at the specified index.
+     *
+     * @param i index of the token.
+     * @return the kind of the token at the specified index.
+     */
+    public TokenKind kind(int i) {
+        return kinds[i];
+    }
+
+    /**
+     * Returns the line in which the token at the specified index occurs.
+     *
+     * @param i index of the token.
+     * @return the line in which the token at the specified index occurs.
+     */
+    public int line(int i) {
+        return lines[i];
+    }
+
+    /**
+     * Returns the image of the token at the specified index.
+     *
+     * @param i index of the token.
+     * @return the image of the token at the specified index.
+     */
+    public String image(int i) {
+        return scanner.image(kinds[i], starts[i], lengths[i]);
+    }
+
+    /**
+     * Returns the token at the specified index as a TokenInfo object.
+     *
+     * @param i index of the token.
+     * @return the token at the specified index.
+     */
+    public TokenInfo token(int i) {
+        return new TokenInfo(kinds[i], image(i), lines[i]);
+    }
+}
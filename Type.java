@@ -7,7 +7,10 @@ import java.lang.reflect.Modifier;
 
 import java.util.Arrays;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A class for representing j-- types. All types are represented underneath (in the classRep
@@ -28,6 +31,17 @@ class Type {
     // Maps type names to their Type representations.
     private static Hashtable<String, Type> types = new Hashtable<String, Type>();
 
+    // Members found by methodFor(), constructorFor(), and fieldFor(), keyed by their signatures;
+    // a null value records a failed lookup.
+    private HashMap<String, Member> memberCache;
+
+    // Value of classRepVersion when memberCache was started.
+    private int memberCacheVersion;
+
+    // Incremented whenever the class representation of a type is replaced, since that may change
+    // the members found along the superclass chain of any type.
+    private static AtomicInteger classRepVersion = new AtomicInteger();
+
     /**
      * The int type.
      */
@@ -122,13 +136,31 @@ class Type {
      * @param classRep the Java class representation.
      * @return a type representation of classRep.
      */
-    public static Type typeFor(Class<?> classRep) {
+    public static synchronized Type typeFor(Class<?> classRep) {
         if (types.get(descriptorFor(classRep)) == null) {
             types.put(descriptorFor(classRep), new Type(classRep));
         }
         return types.get(descriptorFor(classRep));
     }
 
+    /**
+     * Removes the types of classes compiled in this JVM, and arrays of them, from the table of
+     * types, so that a later compilation may declare classes of the same names. Types of classes
+     * loaded from the class path are kept, along with the members found in them.
+     */
+    public static synchronized void forgetCompiledTypes() {
+        Iterator<Type> it = types.values().iterator();
+        while (it.hasNext()) {
+            Class<?> classRep = it.next().classRep;
+            while (classRep != null && classRep.isArray()) {
+                classRep = classRep.getComponentType();
+            }
+            if (classRep != null && classRep.getClassLoader() instanceof ByteClassLoader) {
+                it.remove();
+            }
+        }
+    }
+
     /**
      * Returns the class representation for this type.
      *
@@ -145,6 +177,7 @@ class Type {
      */
     public void setClassRep(Class<?> classRep) {
         this.classRep = classRep;
+        classRepVersion.incrementAndGet();
     }
 
     /**
@@ -313,7 +346,7 @@ class Type {
                 return;
             }
         }
-        JAST.compilationUnit.reportSemanticError(line,
+        JAST.compilationUnit().reportSemanticError(line,
                 "Type %s doesn't match any of the expected types %s", this,
                 Arrays.toString(expectedTypes));
     }
@@ -327,7 +360,7 @@ class Type {
      */
     public void mustMatchExpected(int line, Type expectedType) {
         if (!matchesExpected(expectedType)) {
-            JAST.compilationUnit.reportSemanticError(line, "Type %s doesn't match type %s", this,
+            JAST.compilationUnit().reportSemanticError(line, "Type %s doesn't match type %s", this,
                     expectedType);
         }
     }
@@ -426,7 +459,52 @@ class Type {
      * @param argTypes the argument types.
      * @return a method in this type having the given name and argument types, or null.
      */
-    public Method methodFor(String name, Type[] argTypes) {
+    public synchronized Method methodFor(String name, Type[] argTypes) {
+        String key = memberKey(name, argTypes);
+        HashMap<String, Member> cache = memberCache();
+        if (cache.containsKey(key)) {
+            return (Method) cache.get(key);
+        }
+        Method method = findMethod(name, argTypes);
+        cache.put(key, method);
+        return method;
+    }
+
+    /**
+     * Finds and returns a constructor in this type having the given argument types, or null.
+     *
+     * @param argTypes the argument types.
+     * @return a constructor in this type having the given argument types, or null.
+     */
+    public synchronized Constructor constructorFor(Type[] argTypes) {
+        String key = memberKey("<init>", argTypes);
+        HashMap<String, Member> cache = memberCache();
+        if (cache.containsKey(key)) {
+            return (Constructor) cache.get(key);
+        }
+        Constructor constructor = findConstructor(argTypes);
+        cache.put(key, constructor);
+        return constructor;
+    }
+
+    /**
+     * Finds and returns a field in this type having the given name, or null.
+     *
+     * @param name the name of the field we want.
+     * @return a field in this type having the given name, or null.
+     */
+    public synchronized Field fieldFor(String name) {
+        HashMap<String, Member> cache = memberCache();
+        if (cache.containsKey(name)) {
+            return (Field) cache.get(name);
+        }
+        Field field = findField(name);
+        cache.put(name, field);
+        return field;
+    }
+
+    // Finds and returns a method in this type having the given name and argument types, or null.
+    private Method findMethod(String name, Type[] argTypes) {
         Class[] classes = new Class[argTypes.length];
         for (int i = 0; i < argTypes.length; i++) {
             classes[i] = argTypes[i].classRep;
@@ -448,13 +526,8 @@ class Type {
         return null;
     }
 
-    /**
-     * Finds and returns a constructor in this type having the given argument types, or null.
-     *
-     * @param argTypes the argument types.
-     * @return a constructor in this type having the given argument types, or null.
-     */
-    public Constructor constructorFor(Type[] argTypes) {
+    // Finds and returns a constructor in this type having the given argument types, or null.
+    private Constructor findConstructor(Type[] argTypes) {
         Class[] classes = new Class[argTypes.length];
         for (int i = 0; i < argTypes.length; i++) {
             classes[i] = argTypes[i].classRep;
@@ -471,13 +544,8 @@ class Type {
         return null;
     }
 
-    /**
-     * Finds and returns a field in this type having the given name, or null.
-     *
-     * @param name the name of the field we want.
-     * @return a field in this type having the given name, or null.
-     */
-    public Field fieldFor(String name) {
+    // Finds and returns a field in this type having the given name, or null.
+    private Field findField(String name) {
         Class<?> cls = classRep;
         while (cls != null) {
             java.lang.reflect.Field[] fields = cls.getDeclaredFields();
@@ -537,7 +605,7 @@ class Type {
                     .isJavaAssignableFrom(this)) {
                 return true;
             } else {
-                JAST.compilationUnit.reportSemanticError(line,
+                JAST.compilationUnit().reportSemanticError(line,
                         "The protected member, " + member.name() + ", is not accessible.");
                 return false;
             }
@@ -547,7 +615,7 @@ class Type {
                     descriptorFor(member.member().getDeclaringClass()))) {
                 return true;
             } else {
-                JAST.compilationUnit.reportSemanticError(line,
+                JAST.compilationUnit().reportSemanticError(line,
                         "The private member, " + member.name() + ", is not accessible.");
                 return false;
             }
@@ -557,7 +625,7 @@ class Type {
         if (packageName().equals(member.declaringType().packageName())) {
             return true;
         } else {
-            JAST.compilationUnit.reportSemanticError(line, "The member, " + member.name() +
+            JAST.compilationUnit().reportSemanticError(line, "The member, " + member.name() +
                     ", is not accessible because it's in a different package.");
             return false;
         }
@@ -597,8 +665,9 @@ class Type {
                 (p1 == null ? "" : p1.getName()).equals((p2 == null ? "" : p2.getName()))) {
             return true;
         } else {
-            JAST.compilationUnit.reportSemanticError(line, "The type, " + type.getCanonicalName() +
-                    ", is not accessible from " + referencingType.getCanonicalName());
+            JAST.compilationUnit().reportSemanticError(line, "The type, " +
+                    type.getCanonicalName() + ", is not accessible from " +
+                    referencingType.getCanonicalName());
             return false;
         }
     }
@@ -638,6 +707,28 @@ class Type {
         this.classRep = classRep;
     }
 
+    // Returns the member cache for this type, starting a new one if the class representation of
+    // any type has been replaced since the current one was started.
+    private HashMap<String, Member> memberCache() {
+        int version = classRepVersion.get();
+        if (memberCache == null || memberCacheVersion != version) {
+            memberCache = new HashMap<String, Member>();
+            memberCacheVersion = version;
+        }
+        return memberCache;
+    }
+
+    // Returns the key under which a method (or constructor, named "<init>") with the given name
+    // and argument types is cached. Argument types are compared by descriptor, as in
+    // argTypesMatch(), and field names cannot clash with these keys since they contain no "(".
+    private static String memberKey(String name, Type[] argTypes) {
+        StringBuilder key = new StringBuilder(name).append('(');
+        for (Type argType : argTypes) {
+            key.append(descriptorFor(argType.classRep));
+        }
+        return key.append(')').toString();
+    }
+
     // Returns the JVM descriptor of a type's class representation.
     private static String descriptorFor(Class<?> classRep) {
         return classRep == null ? "V" : classRep == void.class ? "V"
@@ -725,7 +816,7 @@ class TypeName extends Type {
                 resolvedType = typeFor(Class.forName(name));
                 context.addType(line, resolvedType);
             } catch (Exception e) {
-                JAST.compilationUnit.reportSemanticError(line, "Unable to locate %s", name);
+                JAST.compilationUnit().reportSemanticError(line, "Unable to locate %s", name);
                 resolvedType = Type.ANY;
             }
         }